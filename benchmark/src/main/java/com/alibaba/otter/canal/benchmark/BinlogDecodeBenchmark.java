@@ -0,0 +1,148 @@
+package com.alibaba.otter.canal.benchmark;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+import com.taobao.tddl.dbsync.binlog.event.RowsLogBuffer;
+import com.taobao.tddl.dbsync.binlog.event.RowsLogEvent;
+import com.taobao.tddl.dbsync.binlog.event.TableMapLogEvent.ColumnInfo;
+
+/**
+ * binlog解析链路的benchmark，每次操作完整回放一遍录制的binlog文件
+ *
+ * <pre>
+ * 1. decode : LogDecoder把binlog解析为LogEvent，events即每秒解析的event数
+ * 2. decodeRows : 在decode基础上通过RowsLogBuffer解析出所有行的字段值，rows即每秒解析的行数
+ * 3. convert : 在decode基础上通过LogEventConvert转换为CanalEntry，rows即每秒转换的行数
+ * </pre>
+ *
+ * @since 1.1.5
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinlogDecodeBenchmark {
+
+    private BinlogFixture fixture;
+
+    @Setup
+    public void setup() throws IOException {
+        fixture = BinlogFixture.load();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        public long events;
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            events = 0;
+            rows = 0;
+        }
+    }
+
+    @Benchmark
+    public void decode(Counters counters, Blackhole blackhole) throws IOException {
+        BinlogFixture.Reader reader = fixture.reader();
+        LogEvent event;
+        while ((event = reader.next()) != null) {
+            counters.events++;
+            blackhole.consume(event);
+        }
+    }
+
+    @Benchmark
+    public void decodeRows(Counters counters, Blackhole blackhole) throws IOException {
+        BinlogFixture.Reader reader = fixture.reader();
+        LogEvent event;
+        while ((event = reader.next()) != null) {
+            counters.events++;
+            if (event instanceof RowsLogEvent) {
+                RowsLogEvent rowsEvent = (RowsLogEvent) event;
+                if (rowsEvent.getTable() == null) {
+                    continue;
+                }
+
+                ColumnInfo[] columnInfo = rowsEvent.getTable().getColumnInfo();
+                RowsLogBuffer buffer = rowsEvent.getRowsBuf("UTF-8");
+                int type = rowsEvent.getHeader().getType();
+                boolean update = type == LogEvent.UPDATE_ROWS_EVENT || type == LogEvent.UPDATE_ROWS_EVENT_V1
+                                 || type == LogEvent.PARTIAL_UPDATE_ROWS_EVENT;
+                while (buffer.nextOneRow(rowsEvent.getColumns())) {
+                    readRow(buffer, columnInfo, rowsEvent.getColumns(), blackhole);
+                    if (update && buffer.nextOneRow(rowsEvent.getChangeColumns(), true)) {
+                        readRow(buffer, columnInfo, rowsEvent.getChangeColumns(), blackhole);
+                    }
+                    counters.rows++;
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void convert(Counters counters, Blackhole blackhole) throws IOException {
+        BinlogFixture.Converter converter = new BinlogFixture.Converter();
+        BinlogFixture.Reader reader = fixture.reader();
+        LogEvent event;
+        while ((event = reader.next()) != null) {
+            counters.events++;
+            Entry entry = converter.convert(event);
+            if (entry != null && entry.getEntryType() == EntryType.ROWDATA) {
+                counters.rows += rowsCount(entry);
+            }
+            blackhole.consume(entry);
+        }
+    }
+
+    private static void readRow(RowsLogBuffer buffer, ColumnInfo[] columnInfo, BitSet columns, Blackhole blackhole) {
+        for (int i = 0; i < columnInfo.length; i++) {
+            if (!columns.get(i)) {
+                continue;
+            }
+
+            ColumnInfo info = columnInfo[i];
+            if (!buffer.nextColumn("", i, info.type, info.meta, false)) {
+                if (buffer.isLongValue()) {
+                    blackhole.consume(buffer.getLongValue());
+                } else if (buffer.isBytesValue()) {
+                    blackhole.consume(buffer.getLength());
+                } else {
+                    blackhole.consume(buffer.getValue());
+                }
+            }
+        }
+    }
+
+    private static int rowsCount(Entry entry) {
+        for (int i = 0; i < entry.getHeader().getPropsCount(); i++) {
+            if ("rowsCount".equals(entry.getHeader().getProps(i).getKey())) {
+                return Integer.parseInt(entry.getHeader().getProps(i).getValue());
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,156 @@
+package com.alibaba.otter.canal.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.position.LogIdentity;
+import com.alibaba.otter.canal.store.model.Event;
+import com.taobao.tddl.dbsync.binlog.LogBuffer;
+import com.taobao.tddl.dbsync.binlog.LogContext;
+import com.taobao.tddl.dbsync.binlog.LogDecoder;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+import com.taobao.tddl.dbsync.binlog.LogPosition;
+import com.taobao.tddl.dbsync.binlog.event.RowsLogEvent;
+
+/**
+ * 基于录制的binlog文件构造benchmark的输入数据
+ *
+ * <pre>
+ * 1. 默认使用classpath下的binlog/mysql-bin.000001，可以通过-Dcanal.benchmark.binlog=/path/to/mysql-bin.xxx指定线上录制的binlog
+ * 2. 整个文件一次性读入内存，benchmark只衡量解析本身，不包含磁盘io
+ * 3. 表结构直接根据TABLE_MAP_EVENT的列类型构造，不依赖数据库及tsdb，参见{@linkplain OfflineLogEventConvert}
+ * </pre>
+ *
+ * @since 1.1.5
+ */
+public class BinlogFixture {
+
+    public static final String   BINLOG_PROPERTY = "canal.benchmark.binlog";
+    public static final String   DEFAULT_BINLOG  = "binlog/mysql-bin.000001";
+    private static final int     BINLOG_MAGIC    = 4;                        // binlog文件头的magic number
+
+    private final String         fileName;
+    private final byte[]         data;
+    private final LogIdentity    logIdentity     = new LogIdentity(new InetSocketAddress("127.0.0.1", 3306), 1234L);
+
+    private BinlogFixture(String fileName, byte[] data){
+        this.fileName = fileName;
+        this.data = data;
+    }
+
+    public static BinlogFixture load() throws IOException {
+        String path = System.getProperty(BINLOG_PROPERTY);
+        if (path != null && path.length() > 0) {
+            File file = new File(path);
+            return new BinlogFixture(file.getName(), Files.readAllBytes(file.toPath()));
+        }
+
+        try (InputStream input = BinlogFixture.class.getClassLoader().getResourceAsStream(DEFAULT_BINLOG)) {
+            if (input == null) {
+                throw new IOException("not found binlog fixture : " + DEFAULT_BINLOG);
+            }
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = input.read(buffer)) != -1) {
+                output.write(buffer, 0, len);
+            }
+            return new BinlogFixture(new File(DEFAULT_BINLOG).getName(), output.toByteArray());
+        }
+    }
+
+    /**
+     * 从文件头开始顺序解析，每次调用都是一次独立的完整回放
+     */
+    public Reader reader() {
+        return new Reader();
+    }
+
+    /**
+     * 解析出所有的event
+     */
+    public List<LogEvent> decodeAll() throws IOException {
+        List<LogEvent> events = new ArrayList<>();
+        Reader reader = reader();
+        LogEvent event;
+        while ((event = reader.next()) != null) {
+            events.add(event);
+        }
+        return events;
+    }
+
+    /**
+     * 解析并转换出所有的entry
+     */
+    public List<Entry> convertAll() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        Converter converter = new Converter();
+        Reader reader = reader();
+        LogEvent event;
+        while ((event = reader.next()) != null) {
+            Entry entry = converter.convert(event);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    public Event toEvent(Entry entry, boolean raw) {
+        return new Event(logIdentity, entry, raw);
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public int getSize() {
+        return data.length;
+    }
+
+    public class Reader {
+
+        private final LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
+        private final LogContext context = new LogContext();
+        private final LogBuffer  buffer  = new LogBuffer(data, BINLOG_MAGIC, data.length - BINLOG_MAGIC);
+
+        private Reader(){
+            context.setLogPosition(new LogPosition(fileName));
+        }
+
+        /**
+         * 返回下一个event，文件结束时返回null
+         */
+        public LogEvent next() throws IOException {
+            return decoder.decode(buffer, context);
+        }
+    }
+
+    /**
+     * 使用{@linkplain OfflineLogEventConvert}转换event
+     */
+    public static class Converter {
+
+        private final OfflineLogEventConvert convert = new OfflineLogEventConvert();
+
+        public Entry convert(LogEvent event) {
+            if (event instanceof RowsLogEvent) {
+                RowsLogEvent rowsEvent = (RowsLogEvent) event;
+                if (rowsEvent.getTable() == null) {
+                    return null;
+                }
+                return convert.parseRowsEvent(rowsEvent, convert.parseRowsEventForTableMeta(rowsEvent));
+            }
+
+            return convert.parse(event, false);
+        }
+    }
+}
@@ -0,0 +1,580 @@
+package com.alibaba.otter.canal.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.alibaba.otter.canal.common.utils.NamedThreadFactory;
+import com.alibaba.otter.canal.connector.core.producer.FlatMessageEncoder;
+import com.alibaba.otter.canal.connector.core.producer.MQDestination;
+import com.alibaba.otter.canal.connector.core.util.CanalMessageSerializerUtil;
+import com.alibaba.otter.canal.parse.inbound.EventTransactionBuffer;
+import com.alibaba.otter.canal.parse.inbound.MultiStageCoprocessor;
+import com.alibaba.otter.canal.parse.inbound.mysql.LocalBinLogConnection;
+import com.alibaba.otter.canal.parse.inbound.mysql.MysqlMultiStageCoprocessor;
+import com.alibaba.otter.canal.protocol.Message;
+import com.alibaba.otter.canal.server.netty.NettyUtils;
+import com.alibaba.otter.canal.sink.entry.EntryEventSink;
+import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer;
+import com.alibaba.otter.canal.store.model.BatchMode;
+import com.alibaba.otter.canal.store.model.Event;
+import com.alibaba.otter.canal.store.model.Events;
+import com.taobao.tddl.dbsync.binlog.LogBuffer;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+import com.taobao.tddl.dbsync.binlog.event.LogHeader;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * 离线回放一个目录下录制的binlog文件，端到端压测instance的完整链路，不依赖mysql
+ *
+ * <pre>
+ * 链路：LocalBinLogConnection -> MysqlMultiStageCoprocessor -> EventTransactionBuffer -> EntryEventSink -> MemoryEventStoreWithBuffer -> get/ack
+ * 1. dump线程尽可能快地读取binlog文件投递给coprocessor，表结构由{@linkplain OfflineLogEventConvert}根据TABLE_MAP_EVENT构造
+ * 2. 消费线程模拟server的get/ack，按output参数把每一批数据编码为tcp协议包(tcp)、flatMessage(flat)、protobuf(protobuf)或不编码(none)
+ * 3. 报告每个阶段的吞吐、按event采样的端到端延迟及每批处理延迟的分位数、按线程分组的内存分配速率以及gc情况
+ * 4. 同一个jvm内按rounds参数重复回放，前几轮可以视作预热，每轮都使用全新的链路
+ *
+ * 参数均通过-Dcanal.replay.xxx指定：
+ *   dir               : binlog目录，目录下的mysql-bin.xxx文件会按顺序回放，默认使用classpath下录制的binlog
+ *   file              : 起始的binlog文件，默认为目录下的第一个文件
+ *   rounds            : 回放轮数，默认5
+ *   parserThreadCount : 对应canal.instance.parser.parallelThreadSize，默认cpu数的60%
+ *   ringBufferSize    : 对应canal.instance.parser.parallelBufferSize，默认256
+ *   transactionSize   : 对应canal.instance.transaction.size，默认1024
+ *   storeSize         : 对应canal.instance.memory.buffer.size，默认16384
+ *   batchSize         : 每次get的数量，默认1000
+ *   getTimeout        : get的超时时间(ms)，对应客户端getWithoutAck的timeout，默认0即不等待凑满batchSize(tryGet)
+ *   output            : tcp/flat/protobuf/none，默认tcp
+ *   partitionsNum     : flat模式下的分区数，默认1
+ *   partitionHash     : flat模式下的分区规则，默认为空
+ *   sampleInterval    : 每隔多少个event采样一次端到端延迟，默认64
+ *
+ * 运行方式：java -cp canal-benchmarks.jar -Dcanal.replay.dir=/path/to/binlog com.alibaba.otter.canal.benchmark.BinlogReplayBenchmark
+ * jdk9及以上运行tcp模式需要额外指定--add-opens=java.base/java.nio=ALL-UNNAMED
+ * </pre>
+ *
+ * @since 1.1.5
+ */
+public class BinlogReplayBenchmark {
+
+    private static final String            PREFIX         = "canal.replay.";
+    private static final String            DESTINATION    = "replay";
+    private static final InetSocketAddress ADDRESS        = new InetSocketAddress("127.0.0.1", 3306);
+    private static final String            BINLOG_PATTERN = "mysql-bin\\.\\d+";
+    private static final long              IDLE_PARK      = 100 * 1000L;                              // store为空时的等待，单位ns
+    private static final long              QUIET_PERIOD   = 500;                                      // 链路无进展多久视为回放结束，单位ms
+    private static final int               MAX_SAMPLES    = 1 << 20;
+
+    private String                         directory;
+    private String                         file;
+    private int                            rounds;
+    private int                            parserThreadCount;
+    private int                            ringBufferSize;
+    private int                            transactionSize;
+    private int                            storeSize;
+    private int                            batchSize;
+    private long                           getTimeout;
+    private String                         output;
+    private MQDestination                  destination;
+    private int                            sampleInterval;
+
+    public static void main(String[] args) throws Exception {
+        BinlogReplayBenchmark benchmark = new BinlogReplayBenchmark();
+        benchmark.init();
+        for (int round = 1; round <= benchmark.rounds; round++) {
+            benchmark.replay().print(round);
+        }
+        System.exit(0);
+    }
+
+    private void init() throws IOException {
+        directory = System.getProperty(PREFIX + "dir");
+        if (directory == null || directory.isEmpty()) {
+            directory = extractFixture();
+        }
+        file = System.getProperty(PREFIX + "file");
+        if (file == null || file.isEmpty()) {
+            file = firstBinlog(directory);
+        }
+        rounds = Integer.getInteger(PREFIX + "rounds", 5);
+        parserThreadCount = Integer.getInteger(PREFIX + "parserThreadCount",
+            Math.max(Runtime.getRuntime().availableProcessors() * 60 / 100, 1));
+        ringBufferSize = Integer.getInteger(PREFIX + "ringBufferSize", 256);
+        transactionSize = Integer.getInteger(PREFIX + "transactionSize", 1024);
+        storeSize = Integer.getInteger(PREFIX + "storeSize", 16384);
+        batchSize = Integer.getInteger(PREFIX + "batchSize", 1000);
+        getTimeout = Long.getLong(PREFIX + "getTimeout", 0L);
+        output = System.getProperty(PREFIX + "output", "tcp");
+        destination = new MQDestination();
+        destination.setTopic("replay");
+        destination.setPartitionsNum(Integer.getInteger(PREFIX + "partitionsNum", 1));
+        destination.setPartitionHash(System.getProperty(PREFIX + "partitionHash", ""));
+        sampleInterval = Integer.getInteger(PREFIX + "sampleInterval", 64);
+
+        System.out.println(String.format("replay %s from %s, parserThreadCount=%d ringBufferSize=%d transactionSize=%d storeSize=%d batchSize=%d getTimeout=%d output=%s",
+            directory,
+            file,
+            parserThreadCount,
+            ringBufferSize,
+            transactionSize,
+            storeSize,
+            batchSize,
+            getTimeout,
+            output));
+    }
+
+    /**
+     * 完整回放一轮，每轮都构造新的链路
+     */
+    private Report replay() throws Exception {
+        Report report = new Report();
+        Map<Long, Long> allocated = allocatedBytes();
+        long gcCount = gcCount();
+        long gcTime = gcTime();
+
+        MemoryEventStoreWithBuffer store = new MemoryEventStoreWithBuffer(BatchMode.ITEMSIZE);
+        store.setBufferSize(storeSize);
+        store.start();
+
+        EntryEventSink sink = new EntryEventSink();
+        sink.setEventStore(store);
+        sink.start();
+
+        EventTransactionBuffer transactionBuffer = new EventTransactionBuffer(transaction -> {
+            sink.sink(transaction, ADDRESS, DESTINATION);
+            report.sinkEntries.addAndGet(transaction.size());
+            report.sinkEnd = System.nanoTime();
+        });
+        transactionBuffer.setBufferSize(transactionSize);
+        transactionBuffer.start();
+
+        MysqlMultiStageCoprocessor coprocessor = new MysqlMultiStageCoprocessor(ringBufferSize,
+            parserThreadCount,
+            new OfflineLogEventConvert(),
+            transactionBuffer,
+            DESTINATION);
+        coprocessor.setEventsPublishBlockingTime(report.publishBlockingTime);
+        coprocessor.start();
+
+        Consumer consumer = new Consumer(store, report);
+        Thread consumerThread = new Thread(consumer, "replay-consumer");
+        LocalBinLogConnection connection = new LocalBinLogConnection(directory, false);
+        try {
+            connection.connect();
+            report.start = System.nanoTime();
+            consumerThread.start();
+            connection.dump(file, 4L, new SamplingCoprocessor(coprocessor, report));
+            report.dumpEnd = System.nanoTime();
+
+            // 等待链路中剩余的数据处理完成
+            long last = -1;
+            long quietSince = System.nanoTime();
+            while (report.error == null
+                   && System.nanoTime() - quietSince < TimeUnit.MILLISECONDS.toNanos(QUIET_PERIOD)) {
+                Thread.sleep(10);
+                long progress = report.sinkEntries.get() + report.consumeEvents;
+                if (progress != last) {
+                    last = progress;
+                    quietSince = System.nanoTime();
+                }
+            }
+
+            // 在线程池销毁之前统计内存分配
+            report.allocated = allocatedSince(allocated);
+            report.gcCount = gcCount() - gcCount;
+            report.gcTime = gcTime() - gcTime;
+            if (report.error != null) {
+                throw new IllegalStateException("replay consumer failed", report.error);
+            }
+        } finally {
+            consumer.running = false;
+            consumerThread.join();
+            connection.disconnect();
+            coprocessor.stop();
+            transactionBuffer.stop();
+            sink.stop();
+            store.stop();
+        }
+        return report;
+    }
+
+    /**
+     * 模拟server的get/ack，按output参数编码每一批数据
+     */
+    private class Consumer implements Runnable {
+
+        private final MemoryEventStoreWithBuffer store;
+        private final Report                     report;
+        private final ThreadPoolExecutor         executor;
+        private volatile boolean                 running = true;
+
+        public Consumer(MemoryEventStoreWithBuffer store, Report report){
+            this.store = store;
+            this.report = report;
+            this.executor = new ThreadPoolExecutor(4,
+                4,
+                0,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(4 * 2),
+                new NamedThreadFactory("replay-encoder"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+
+        public void run() {
+            long batchId = 0;
+            try {
+                while (running) {
+                    Events<Event> events = getTimeout > 0 ? store.get(null,
+                        batchSize,
+                        getTimeout,
+                        TimeUnit.MILLISECONDS) : store.tryGet(null, batchSize);
+                    if (events.getEvents().isEmpty()) {
+                        LockSupport.parkNanos(IDLE_PARK);
+                        continue;
+                    }
+
+                    long begin = System.nanoTime();
+                    report.consumeBytes += encode(++batchId, events.getEvents());
+                    store.ack(events.getPositionRange().getEnd(), events.getPositionRange().getEndSeq());
+                    long end = System.nanoTime();
+                    report.batchLatency.add(end - begin);
+
+                    for (Event event : events.getEvents()) {
+                        report.consumeRows += event.getRowsCount();
+                        Long published = report.samples.remove(sampleKey(event.getJournalName(), event.getPosition()));
+                        if (published != null) {
+                            report.endToEndLatency.add(end - published);
+                        }
+                    }
+                    report.consumeBatches++;
+                    report.consumeEnd = end;
+                    report.consumeEvents += events.getEvents().size();
+                }
+            } catch (Throwable e) {
+                report.error = e;
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        private long encode(long batchId, List<Event> events) throws IOException {
+            List entries = new ArrayList<>(events.size());
+            for (Event event : events) {
+                entries.add(event.getRawEntry());
+            }
+            Message message = new Message(batchId, true, entries);
+
+            long bytes = 0;
+            switch (output) {
+                case "tcp":
+                    ByteBuf buf = NettyUtils.messagesPacket(PooledByteBufAllocator.DEFAULT, message);
+                    bytes = buf.readableBytes();
+                    buf.release();
+                    break;
+                case "flat":
+                    for (List<FlatMessageEncoder.FlatMessagePart> parts : FlatMessageEncoder.encode(message,
+                        executor,
+                        destination,
+                        !destination.getPartitionHash().isEmpty(),
+                        false).values()) {
+                        for (FlatMessageEncoder.FlatMessagePart part : parts) {
+                            bytes += part.data.length;
+                        }
+                    }
+                    break;
+                case "protobuf":
+                    bytes = CanalMessageSerializerUtil.serializer(message, true).length;
+                    break;
+                default:
+                    for (Event event : events) {
+                        bytes += event.getRawLength();
+                    }
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * 统计dump线程的投递情况，并按sampleInterval采样投递时间
+     */
+    private class SamplingCoprocessor implements MultiStageCoprocessor {
+
+        private final MultiStageCoprocessor delegate;
+        private final Report                report;
+
+        public SamplingCoprocessor(MultiStageCoprocessor delegate, Report report){
+            this.delegate = delegate;
+            this.report = report;
+        }
+
+        public boolean publish(LogEvent event) {
+            LogHeader header = event.getHeader();
+            long count = ++report.dumpEvents;
+            report.dumpBytes += header.getEventLen();
+            if (count % sampleInterval == 0 && report.samples.size() < MAX_SAMPLES) {
+                report.samples.put(sampleKey(header.getLogFileName(), header.getLogPos() - header.getEventLen()),
+                    System.nanoTime());
+            }
+            return delegate.publish(event);
+        }
+
+        public boolean publish(LogBuffer buffer) {
+            return delegate.publish(buffer);
+        }
+
+        public void start() {
+            delegate.start();
+        }
+
+        public void stop() {
+            delegate.stop();
+        }
+
+        public boolean isStart() {
+            return delegate.isStart();
+        }
+    }
+
+    private static long sampleKey(String fileName, long position) {
+        return ((long) fileName.hashCode() << 32) ^ position;
+    }
+
+    /**
+     * 一轮回放的统计结果，各计数器只由对应阶段的单个线程更新
+     */
+    private static class Report {
+
+        private final Map<Long, Long> samples             = new ConcurrentHashMap<>();
+        private final Latency         endToEndLatency     = new Latency();
+        private final Latency         batchLatency        = new Latency();
+        private final AtomicLong      sinkEntries         = new AtomicLong();
+        private final AtomicLong      publishBlockingTime = new AtomicLong();
+        private volatile long         start;
+        private volatile long         dumpEnd;
+        private volatile long         dumpEvents;
+        private volatile long         dumpBytes;
+        private volatile long         sinkEnd;
+        private volatile long         consumeEnd;
+        private volatile long         consumeEvents;
+        private volatile long         consumeRows;
+        private volatile long         consumeBatches;
+        private volatile long         consumeBytes;
+        private Map<String, Long>     allocated;
+        private long                  gcCount;
+        private long                  gcTime;
+        private volatile Throwable    error;
+
+        public void print(int round) {
+            long end = Math.max(Math.max(dumpEnd, sinkEnd), consumeEnd);
+            StringBuilder builder = new StringBuilder();
+            builder.append(String.format("%n== round %d, elapsed %.1f ms%n", round, millis(end - start)));
+            builder.append(String.format("%-10s %12s %12s %14s %10s%n", "stage", "count", "elapsed(ms)", "ops/s", "MB/s"));
+            builder.append(stage("dump", dumpEvents, dumpEnd - start, dumpBytes));
+            builder.append(stage("sink", sinkEntries.get(), Math.max(sinkEnd - start, 0), -1));
+            builder.append(stage("consume", consumeEvents, Math.max(consumeEnd - start, 0), consumeBytes));
+            builder.append(stage("rows", consumeRows, Math.max(consumeEnd - start, 0), -1));
+            builder.append(String.format("publish blocking %.1f ms%n", millis(publishBlockingTime.get())));
+            builder.append(String.format("batches %d, avg %.1f events/batch%n",
+                consumeBatches,
+                consumeBatches == 0 ? 0D : (double) consumeEvents / consumeBatches));
+
+            builder.append(String.format("%-10s %10s %10s %10s %10s %10s %10s%n",
+                "latency",
+                "samples",
+                "p50(us)",
+                "p90(us)",
+                "p99(us)",
+                "p999(us)",
+                "max(us)"));
+            builder.append(endToEndLatency.format("endToEnd"));
+            builder.append(batchLatency.format("batch"));
+
+            builder.append(String.format("%-10s %12s %12s%n", "alloc", "MB", "MB/s"));
+            long total = 0;
+            for (Map.Entry<String, Long> entry : allocated.entrySet()) {
+                total += entry.getValue();
+                builder.append(alloc(entry.getKey(), entry.getValue(), end - start));
+            }
+            builder.append(alloc("total", total, end - start));
+            builder.append(String.format("gc count %d, time %d ms%n", gcCount, gcTime));
+            System.out.print(builder);
+        }
+
+        private static String stage(String name, long count, long nanos, long bytes) {
+            double seconds = Math.max(nanos, 1) / 1e9;
+            return String.format("%-10s %12d %12.1f %14.0f %10s%n",
+                name,
+                count,
+                millis(nanos),
+                count / seconds,
+                bytes < 0 ? "-" : String.format("%.2f", bytes / seconds / 1024 / 1024));
+        }
+
+        private static String alloc(String name, long bytes, long nanos) {
+            return String.format("%-10s %12.1f %12.1f%n",
+                name,
+                bytes / 1024D / 1024,
+                bytes / 1024D / 1024 / (nanos / 1e9));
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+
+    /**
+     * 只由单线程写入的延迟样本，超过MAX_SAMPLES之后丢弃
+     */
+    private static class Latency {
+
+        private long[] values = new long[1024];
+        private int    size;
+
+        public void add(long nanos) {
+            if (size == values.length) {
+                if (size >= MAX_SAMPLES) {
+                    return;
+                }
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+
+        public String format(String name) {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return String.format("%-10s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                name,
+                size,
+                percentile(sorted, 0.5),
+                percentile(sorted, 0.9),
+                percentile(sorted, 0.99),
+                percentile(sorted, 0.999),
+                percentile(sorted, 1));
+        }
+
+        private static double percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(index, 0)] / 1e3;
+        }
+    }
+
+    // ================== allocation / gc ===================
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        return (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+
+    private static Map<Long, Long> allocatedBytes() {
+        Map<Long, Long> allocated = new HashMap<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            allocated.put(thread.getId(), threadBean().getThreadAllocatedBytes(thread.getId()));
+        }
+        return allocated;
+    }
+
+    /**
+     * 按线程分组统计本轮的内存分配，本轮新建的线程基线为0
+     */
+    private static Map<String, Long> allocatedSince(Map<Long, Long> baseline) {
+        Map<String, Long> allocated = new LinkedHashMap<>();
+        for (String group : new String[] { "dump", "simple", "parser", "consumer", "encoder" }) {
+            allocated.put(group, 0L);
+        }
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            String group = threadGroup(thread);
+            if (group == null) {
+                continue;
+            }
+
+            long bytes = threadBean().getThreadAllocatedBytes(thread.getId());
+            Long base = baseline.get(thread.getId());
+            allocated.merge(group, bytes - (base == null ? 0 : base), Long::sum);
+        }
+        return allocated;
+    }
+
+    private static String threadGroup(Thread thread) {
+        String name = thread.getName();
+        if (thread == Thread.currentThread()) {
+            return "dump";
+        } else if (name.startsWith("MultiStageCoprocessor-other-")) {
+            // SimpleParserStage + SinkStoreStage(包括sink/store put)
+            return "simple";
+        } else if (name.startsWith("MultiStageCoprocessor-Parser-")) {
+            return "parser";
+        } else if (name.equals("replay-consumer")) {
+            return "consumer";
+        } else if (name.startsWith("replay-encoder")) {
+            return "encoder";
+        }
+        return null;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(bean.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(bean.getCollectionTime(), 0);
+        }
+        return time;
+    }
+
+    // ================== binlog files ===================
+
+    private static String firstBinlog(String directory) throws IOException {
+        String[] names = new File(directory).list((dir, name) -> name.matches(BINLOG_PATTERN));
+        if (names == null || names.length == 0) {
+            throw new IOException("not found binlog file in " + directory);
+        }
+        Arrays.sort(names);
+        return names[0];
+    }
+
+    /**
+     * 未指定目录时，把classpath下录制的binlog复制到临时目录
+     */
+    private static String extractFixture() throws IOException {
+        File dir = Files.createTempDirectory("canal-replay").toFile();
+        dir.deleteOnExit();
+        File target = new File(dir, new File(BinlogFixture.DEFAULT_BINLOG).getName());
+        target.deleteOnExit();
+        try (InputStream input = BinlogReplayBenchmark.class.getClassLoader()
+            .getResourceAsStream(BinlogFixture.DEFAULT_BINLOG)) {
+            if (input == null) {
+                throw new IOException("not found binlog fixture : " + BinlogFixture.DEFAULT_BINLOG);
+            }
+            Files.copy(input, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return dir.getAbsolutePath();
+    }
+}
@@ -0,0 +1,119 @@
+package com.alibaba.otter.canal.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer;
+import com.alibaba.otter.canal.store.model.BatchMode;
+import com.alibaba.otter.canal.store.model.Event;
+import com.alibaba.otter.canal.store.model.Events;
+
+/**
+ * MemoryEventStoreWithBuffer在生产者/消费者并发下的吞吐
+ *
+ * <pre>
+ * 1. put线程模拟sink，每次put一批录制binlog转换出的event
+ * 2. get线程模拟server，get之后立即ack，puts/gets即每秒put/get的event数
+ * 3. 通过lockFree参数对比加锁模式和无锁模式，无锁模式只支持单生产者
+ * 4. put/get都带超时，避免iteration结束时一方停止后另一方永久阻塞
+ * </pre>
+ *
+ * @since 1.1.5
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventStoreBenchmark {
+
+    private static final long          TIMEOUT    = 100;
+
+    @Param({ "false", "true" })
+    public boolean                     lockFree;
+
+    @Param({ "16384" })
+    public int                         bufferSize;
+
+    @Param({ "64" })
+    public int                         batchSize;
+
+    private MemoryEventStoreWithBuffer store;
+    private List<Event>                batch;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        BinlogFixture fixture = BinlogFixture.load();
+        List<Entry> entries = fixture.convertAll();
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(fixture.toEvent(entries.get(i % entries.size()), true));
+        }
+
+        // 每个iteration使用新的store，避免上一轮残留的数据影响结果
+        store = new MemoryEventStoreWithBuffer(BatchMode.ITEMSIZE);
+        store.setBufferSize(bufferSize);
+        store.setLockFree(lockFree);
+        store.start();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        store.stop();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        public long puts;
+        public long gets;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            puts = 0;
+            gets = 0;
+        }
+    }
+
+    @Benchmark
+    @Group("store")
+    @GroupThreads(1)
+    public void put(Counters counters) throws InterruptedException {
+        if (store.put(batch, TIMEOUT, TimeUnit.MILLISECONDS)) {
+            counters.puts += batch.size();
+        }
+    }
+
+    @Benchmark
+    @Group("store")
+    @GroupThreads(1)
+    public void get(Counters counters) throws InterruptedException {
+        Events<Event> events = store.get(null, batchSize, TIMEOUT, TimeUnit.MILLISECONDS);
+        if (!events.getEvents().isEmpty()) {
+            store.ack(events.getPositionRange().getEnd(), events.getPositionRange().getEndSeq());
+            counters.gets += events.getEvents().size();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.alibaba.otter.canal.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.alibaba.otter.canal.connector.core.producer.FlatMessageEncoder;
+import com.alibaba.otter.canal.connector.core.producer.MQDestination;
+import com.alibaba.otter.canal.connector.core.producer.MQMessageUtils;
+import com.alibaba.otter.canal.connector.core.producer.MQMessageUtils.EntryRowData;
+import com.alibaba.otter.canal.connector.core.util.CanalMessageSerializerUtil;
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.FlatMessage;
+import com.alibaba.otter.canal.protocol.Message;
+
+/**
+ * 一批message的序列化开销，message由录制的binlog转换得到
+ *
+ * <pre>
+ * 1. flatMessage : FlatMessageEncoder单次遍历完成解析、分区及json序列化(mq flatMessage模式)
+ * 2. flatMessageLegacy : buildMessageData -> messageConverter -> messagePartition -> toJSONBytes，作为对照
+ * 3. protobuf : CanalMessageSerializerUtil序列化(mq非flatMessage模式)
+ * </pre>
+ *
+ * @since 1.1.5
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageSerializeBenchmark {
+
+    @Param({ "1", "8" })
+    public int                 partitionsNum;
+
+    @Param({ ".*\\..*:$pk$" })
+    public String              partitionHash;
+
+    private Message            message;
+    private MQDestination      destination;
+    private ThreadPoolExecutor executor;
+
+    @Setup
+    public void setup() throws IOException {
+        List<Entry> entries = BinlogFixture.load().convertAll();
+        message = new Message(1L, entries);
+        destination = new MQDestination();
+        destination.setTopic("benchmark");
+        destination.setPartitionsNum(partitionsNum);
+        destination.setPartitionHash(partitionHash);
+        executor = new ThreadPoolExecutor(4,
+            4,
+            0,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(4 * 2),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void flatMessage(Blackhole blackhole) {
+        for (List<FlatMessageEncoder.FlatMessagePart> parts : FlatMessageEncoder.encode(message,
+            executor,
+            destination,
+            true,
+            false).values()) {
+            for (FlatMessageEncoder.FlatMessagePart part : parts) {
+                blackhole.consume(part.data);
+            }
+        }
+    }
+
+    @Benchmark
+    public void flatMessageLegacy(Blackhole blackhole) {
+        EntryRowData[] datas = MQMessageUtils.buildMessageData(message, executor);
+        List<FlatMessage> flatMessages = MQMessageUtils.messageConverter(datas, message.getId());
+        for (FlatMessage flatMessage : flatMessages) {
+            FlatMessage[] partitions = MQMessageUtils.messagePartition(flatMessage,
+                partitionsNum,
+                partitionHash,
+                false);
+            for (FlatMessage partition : partitions) {
+                if (partition != null) {
+                    blackhole.consume(JSON.toJSONBytes(partition, SerializerFeature.WriteMapNullValue));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] protobuf() {
+        return CanalMessageSerializerUtil.serializer(message, true);
+    }
+}
@@ -0,0 +1,121 @@
+package com.alibaba.otter.canal.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.alibaba.otter.canal.parse.driver.mysql.packets.server.ResultSetPacket;
+import com.alibaba.otter.canal.parse.inbound.TableMeta;
+import com.alibaba.otter.canal.parse.inbound.TableMeta.FieldMeta;
+import com.alibaba.otter.canal.parse.inbound.mysql.MysqlConnection;
+import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.LogEventConvert;
+import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.TableMetaCache;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+import com.taobao.tddl.dbsync.binlog.event.RowsLogEvent;
+import com.taobao.tddl.dbsync.binlog.event.TableMapLogEvent;
+import com.taobao.tddl.dbsync.binlog.event.TableMapLogEvent.ColumnInfo;
+import com.taobao.tddl.dbsync.binlog.exception.TableIdNotFoundException;
+
+/**
+ * 不依赖数据库的LogEventConvert，用于离线回放录制的binlog
+ *
+ * <pre>
+ * 1. 表结构直接根据TABLE_MAP_EVENT的列类型构造，列名优先使用binlog_row_metadata=FULL记录的列名，否则为c0,c1...，第一列作为主键
+ * 2. 使用一个不连接数据库的TableMetaCache，ddl依旧按非seek模式走一遍apply，和线上的解析路径保持一致
+ * 3. 表结构按tableId缓存，列数或表名变化时重新构造，可以被多个解析线程并发访问
+ * </pre>
+ *
+ * @since 1.1.5
+ */
+public class OfflineLogEventConvert extends LogEventConvert {
+
+    private final Map<Long, TableMeta> tableMetas = new ConcurrentHashMap<>();
+
+    public OfflineLogEventConvert(){
+        setTableMetaCache(new TableMetaCache(new OfflineConnection(), null));
+    }
+
+    @Override
+    public TableMeta parseRowsEventForTableMeta(RowsLogEvent event) {
+        TableMapLogEvent table = event.getTable();
+        if (table == null) {
+            // tableId对应的记录不存在
+            throw new TableIdNotFoundException("not found tableId:" + event.getTableId());
+        }
+        return tableMeta(table);
+    }
+
+    public TableMeta tableMeta(TableMapLogEvent table) {
+        TableMeta tableMeta = tableMetas.get(table.getTableId());
+        if (tableMeta == null || tableMeta.getFields().size() != table.getColumnCnt()
+            || !tableMeta.getTable().equals(table.getTableName())) {
+            ColumnInfo[] columnInfo = table.getColumnInfo();
+            List<FieldMeta> fields = new ArrayList<>(columnInfo.length);
+            for (int i = 0; i < columnInfo.length; i++) {
+                ColumnInfo info = columnInfo[i];
+                String name = info.name != null ? info.name : "c" + i;
+                fields.add(new FieldMeta(name, columnType(info.type), true, i == 0, null));
+            }
+            tableMeta = new TableMeta(table.getDbName(), table.getTableName(), fields);
+            tableMetas.put(table.getTableId(), tableMeta);
+        }
+        return tableMeta;
+    }
+
+    private static String columnType(int type) {
+        switch (type) {
+            case LogEvent.MYSQL_TYPE_TINY:
+                return "tinyint(4)";
+            case LogEvent.MYSQL_TYPE_SHORT:
+                return "smallint(6)";
+            case LogEvent.MYSQL_TYPE_INT24:
+                return "mediumint(9)";
+            case LogEvent.MYSQL_TYPE_LONG:
+                return "int(11)";
+            case LogEvent.MYSQL_TYPE_LONGLONG:
+                return "bigint(20)";
+            case LogEvent.MYSQL_TYPE_FLOAT:
+                return "float";
+            case LogEvent.MYSQL_TYPE_DOUBLE:
+                return "double";
+            case LogEvent.MYSQL_TYPE_NEWDECIMAL:
+                return "decimal";
+            case LogEvent.MYSQL_TYPE_TIMESTAMP:
+            case LogEvent.MYSQL_TYPE_TIMESTAMP2:
+                return "timestamp";
+            case LogEvent.MYSQL_TYPE_DATETIME:
+            case LogEvent.MYSQL_TYPE_DATETIME2:
+                return "datetime";
+            case LogEvent.MYSQL_TYPE_DATE:
+                return "date";
+            case LogEvent.MYSQL_TYPE_TIME:
+            case LogEvent.MYSQL_TYPE_TIME2:
+                return "time";
+            case LogEvent.MYSQL_TYPE_YEAR:
+                return "year";
+            case LogEvent.MYSQL_TYPE_BIT:
+                return "bit";
+            case LogEvent.MYSQL_TYPE_BLOB:
+                return "text";
+            case LogEvent.MYSQL_TYPE_JSON:
+                return "json";
+            case LogEvent.MYSQL_TYPE_STRING:
+                return "char";
+            default:
+                return "varchar";
+        }
+    }
+
+    /**
+     * 不连接数据库，所有查询返回空结果
+     */
+    private static class OfflineConnection extends MysqlConnection {
+
+        @Override
+        public ResultSetPacket query(String cmd) throws IOException {
+            return new ResultSetPacket();
+        }
+    }
+}
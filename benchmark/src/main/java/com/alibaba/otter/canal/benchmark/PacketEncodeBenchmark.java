@@ -0,0 +1,77 @@
+package com.alibaba.otter.canal.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.Message;
+import com.alibaba.otter.canal.server.netty.NettyUtils;
+import com.google.protobuf.ByteString;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+/**
+ * SessionHandler返回给客户端的MESSAGES packet编码开销
+ *
+ * <pre>
+ * 1. messagesPacket : 非raw模式，逐个entry序列化后构造packet
+ * 2. rawMessagesPacket : raw模式，直接把store中的raw entry写入池化的direct buffer
+ * 3. netty在jdk9+需要打开java.nio的反射权限，通过IgnoreUnrecognizedVMOptions兼容jdk8
+ * </pre>
+ *
+ * @since 1.1.5
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-XX:+IgnoreUnrecognizedVMOptions",
+                                   "--add-opens=java.base/java.nio=ALL-UNNAMED" })
+public class PacketEncodeBenchmark {
+
+    private Message message;
+    private Message rawMessage;
+
+    @Setup
+    public void setup() throws IOException {
+        List<Entry> entries = BinlogFixture.load().convertAll();
+        List<ByteString> rawEntries = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            rawEntries.add(entry.toByteString());
+        }
+
+        message = new Message(1L, entries);
+        rawMessage = new Message(1L, true, rawEntries);
+    }
+
+    @Benchmark
+    public int messagesPacket() throws IOException {
+        return release(NettyUtils.messagesPacket(PooledByteBufAllocator.DEFAULT, message));
+    }
+
+    @Benchmark
+    public int rawMessagesPacket() throws IOException {
+        return release(NettyUtils.messagesPacket(PooledByteBufAllocator.DEFAULT, rawMessage));
+    }
+
+    private static int release(ByteBuf buf) {
+        int length = buf.readableBytes();
+        buf.release();
+        return length;
+    }
+}
@@ -1,26 +1,73 @@
 package com.alibaba.otter.canal.client.adapter.support;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
 
+import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.alibaba.druid.DbType;
 import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.sql.SQLUtils;
+import com.alibaba.druid.sql.ast.SQLLimit;
+import com.alibaba.druid.sql.ast.SQLOrderBy;
+import com.alibaba.druid.sql.ast.SQLStatement;
+import com.alibaba.druid.sql.ast.expr.SQLIntegerExpr;
+import com.alibaba.druid.sql.ast.statement.SQLSelectQueryBlock;
+import com.alibaba.druid.sql.ast.statement.SQLSelectStatement;
 import com.google.common.base.Joiner;
 
+/**
+ * ETL全量导入的基类
+ *
+ * <pre>
+ * 1. 按切分字段(默认为主键, 可通过etlSplitColumn指定源表中有序的真实字段)的取值范围把数据切成(lower, upper]的分片
+ * 2. 切分条件直接加到源sql自身的where中, 不把源sql包成派生表, 避免每个分片和边界查询都重新执行join/group by
+ * 3. 分片边界通过 ORDER BY 切分字段 LIMIT 逐个向后查找, 只查询切分字段, 总代价与数据量线性相关
+ * 4. 分片由固定大小的线程池并发导入, 每个分片使用流式游标读取
+ * 5. 连续完成的分片上界连同其jdbc类型记录到checkpoint, 导入失败后再次执行会从checkpoint之后继续, 全部成功后删除checkpoint
+ * 6. 找不到切分字段或者源sql无法改写(union/limit/having)时退化为单线程流式导入
+ * </pre>
+ */
 public abstract class AbstractEtlService {
 
-    protected Logger      logger       = LoggerFactory.getLogger(this.getClass());
+    protected Logger             logger                    = LoggerFactory.getLogger(this.getClass());
 
-    private String        type;
-    private AdapterConfig config;
-    private final long    CNT_PER_TASK = 10000L;
+    public static final String   CHECKPOINT_DIR_PROPERTY   = "canal.adapter.etl.checkpoint.dir";
+
+    private String               type;
+    private AdapterConfig        config;
+    private final long           CNT_PER_TASK              = 10000L;
 
     public AbstractEtlService(String type, AdapterConfig config){
         this.type = type;
@@ -28,9 +75,21 @@ public abstract class AbstractEtlService {
     }
 
     protected EtlResult importData(String sql, List<String> params) {
+        return importData(sql, params, true);
+    }
+
+    /**
+     * 导入数据
+     *
+     * @param sql 源表查询sql
+     * @param params etl条件参数
+     * @param resume 是否从上一次未完成导入的checkpoint继续
+     * @return 导入结果
+     */
+    protected EtlResult importData(String sql, List<String> params, boolean resume) {
         EtlResult etlResult = new EtlResult();
         AtomicLong impCount = new AtomicLong();
-        List<String> errMsg = new ArrayList<>();
+        List<String> errMsg = Collections.synchronizedList(new ArrayList<>());
         if (config == null) {
             logger.warn("{} mapping config is null, etl go end ", type);
             etlResult.setErrorMessage(type + "mapping config is null, etl go end ");
@@ -57,52 +116,17 @@ public abstract class AbstractEtlService {
                 logger.debug("etl sql : {}", sql);
             }
 
-            // 获取总数
-            String countSql = "SELECT COUNT(1) FROM ( " + sql + ") _CNT ";
-            long cnt = (Long) Util.sqlRS(dataSource, countSql, values, rs -> {
-                Long count = null;
-                try {
-                    if (rs.next()) {
-                        count = ((Number) rs.getObject(1)).longValue();
-                    }
-                } catch (Exception e) {
-                    logger.error(e.getMessage(), e);
-                }
-                return count == null ? 0L : count;
-            });
-
-            // 当大于1万条记录时开启多线程
-            if (cnt >= 10000) {
-                int threadCount = Runtime.getRuntime().availableProcessors();
-
-                long offset;
-                long size = CNT_PER_TASK;
-                long workerCnt = cnt / size + (cnt % size == 0 ? 0 : 1);
-
-                if (logger.isDebugEnabled()) {
-                    logger.debug("workerCnt {} for cnt {} threadCount {}", workerCnt, cnt, threadCount);
-                }
-
-                ExecutorService executor = Util.newFixedThreadPool(threadCount, 5000L);
-                List<Future<Boolean>> futures = new ArrayList<>();
-                for (long i = 0; i < workerCnt; i++) {
-                    offset = size * i;
-                    String sqlFinal = sql + " LIMIT " + offset + "," + size;
-                    Future<Boolean> future = executor.submit(() -> executeSqlImport(dataSource,
-                        sqlFinal,
-                        values,
-                        config.getMapping(),
-                        impCount,
-                        errMsg));
-                    futures.add(future);
-                }
+            String splitColumn = config.getMapping().getEtlSplitColumn();
+            if (StringUtils.isEmpty(splitColumn)) {
+                splitColumn = getSplitColumn(dataSource);
+            }
 
-                for (Future<Boolean> future : futures) {
-                    future.get();
-                }
-                executor.shutdown();
-            } else {
+            SplitSql splitSql = StringUtils.isEmpty(splitColumn) ? null : SplitSql.parse(sql, splitColumn);
+            if (splitSql == null) {
+                logger.warn("{} etl can not be split by column {}, import with single thread", type, splitColumn);
                 executeSqlImport(dataSource, sql, values, config.getMapping(), impCount, errMsg);
+            } else {
+                importByRange(dataSource, sql, splitSql, values, splitColumn, resume, impCount, errMsg);
             }
 
             logger.info("数据全量导入完成, 一共导入 {} 条数据, 耗时: {}", impCount.get(), System.currentTimeMillis() - start);
@@ -119,8 +143,413 @@ public abstract class AbstractEtlService {
         return etlResult;
     }
 
+    /**
+     * 按切分字段分片并发导入
+     */
+    private void importByRange(DataSource dataSource, String sql, SplitSql splitSql, List<Object> values,
+                               String splitColumn, boolean resume, AtomicLong impCount,
+                               List<String> errMsg) throws Exception {
+        EtlCheckpoint checkpoint = new EtlCheckpoint(checkpointFile(sql), sql, values, splitColumn);
+        Object lower = null;
+        if (resume) {
+            lower = checkpoint.load();
+            if (lower != null) {
+                logger.info("{} etl resume from checkpoint {} > {}", type, splitColumn, lower);
+            }
+        } else {
+            checkpoint.delete();
+        }
+
+        RangeTracker tracker = new RangeTracker(checkpoint);
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        // 线程池满时提交线程阻塞, 控制分片边界的查找进度
+        ExecutorService executor = Util.newFixedThreadPool(threadCount, 5000L);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        try {
+            int index = 0;
+            if (lower == null) {
+                // 切分字段为null的数据不在任何范围内, 单独作为一个分片
+                futures.add(submitRange(executor,
+                    tracker,
+                    index++,
+                    dataSource,
+                    splitSql.range(splitColumn + " IS NULL"),
+                    values,
+                    null,
+                    impCount,
+                    errMsg));
+            }
+
+            while (true) {
+                List<Object> rangeValues = new ArrayList<>(values);
+                String lowerCondition;
+                if (lower == null) {
+                    lowerCondition = splitColumn + " IS NOT NULL";
+                } else {
+                    lowerCondition = splitColumn + " > ?";
+                    rangeValues.add(lower);
+                }
+                // 查找从当前下界开始第CNT_PER_TASK条数据的切分字段值, 作为分片的上界
+                Object upper = Util.sqlRS(dataSource,
+                    splitSql.boundary(lowerCondition, CNT_PER_TASK - 1),
+                    new ArrayList<>(rangeValues),
+                    rs -> {
+                        try {
+                            if (!rs.next()) {
+                                return null;
+                            }
+                            checkpoint.setJdbcType(rs.getMetaData().getColumnType(1));
+                            return rs.getObject(1);
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+
+                String rangeCondition = lowerCondition;
+                if (upper != null) {
+                    rangeCondition += " AND " + splitColumn + " <= ?";
+                    rangeValues.add(upper);
+                }
+                futures.add(submitRange(executor,
+                    tracker,
+                    index++,
+                    dataSource,
+                    splitSql.range(rangeCondition),
+                    rangeValues,
+                    upper,
+                    impCount,
+                    errMsg));
+
+                if (upper == null) {
+                    break;
+                }
+                lower = upper;
+            }
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("{} etl split into {} ranges by {}, threadCount {}", type, index, splitColumn, threadCount);
+            }
+
+            for (Future<Boolean> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    logger.error(e.getMessage(), e);
+                    errMsg.add(type + " 数据导入异常 =>" + e.getCause().getMessage());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        if (errMsg.isEmpty()) {
+            checkpoint.delete();
+        } else {
+            logger.warn("{} etl failed, it will resume from checkpoint {} next time", type, checkpoint.getFile());
+        }
+    }
+
+    private Future<Boolean> submitRange(ExecutorService executor, RangeTracker tracker, int index,
+                                        DataSource dataSource, String sql, List<Object> values, Object upper,
+                                        AtomicLong impCount, List<String> errMsg) {
+        return executor.submit(() -> {
+            List<String> rangeErrMsg = new ArrayList<>();
+            boolean succeeded = executeSqlImport(dataSource, sql, values, config.getMapping(), impCount, rangeErrMsg);
+            if (succeeded && rangeErrMsg.isEmpty()) {
+                tracker.complete(index, upper);
+            } else {
+                errMsg.addAll(rangeErrMsg);
+                if (!succeeded && rangeErrMsg.isEmpty()) {
+                    errMsg.add(type + " 数据导入失败 => " + sql);
+                }
+            }
+            return succeeded;
+        });
+    }
+
+    /**
+     * 获取默认的切分字段, 需要是查询结果中的有序字段, 返回null时不切分
+     */
+    protected String getSplitColumn(DataSource ds) {
+        return null;
+    }
+
+    /**
+     * 获取源表主键的第一个字段
+     */
+    protected String getPrimaryKey(DataSource ds, String database, String table) {
+        try (Connection conn = ds.getConnection()) {
+            DatabaseMetaData metaData = conn.getMetaData();
+            String pk = getPrimaryKey(metaData.getPrimaryKeys(database, null, table));
+            if (pk == null) {
+                pk = getPrimaryKey(metaData.getPrimaryKeys(null, database, table));
+            }
+            return pk;
+        } catch (Exception e) {
+            logger.warn("get primary key of {}.{} failed: {}", database, table, e.getMessage());
+            return null;
+        }
+    }
+
+    private static String getPrimaryKey(ResultSet rs) throws Exception {
+        try {
+            while (rs.next()) {
+                if (rs.getInt("KEY_SEQ") == 1) {
+                    return rs.getString("COLUMN_NAME");
+                }
+            }
+            return null;
+        } finally {
+            rs.close();
+        }
+    }
+
+    private File checkpointFile(String sql) {
+        String dir = System.getProperty(CHECKPOINT_DIR_PROPERTY);
+        File checkpointDir;
+        if (dir != null) {
+            checkpointDir = new File(dir);
+        } else {
+            try {
+                checkpointDir = new File(Util.getConfDirPath(), "etl");
+            } catch (Exception e) {
+                checkpointDir = new File(System.getProperty("java.io.tmpdir"), "canal-adapter-etl");
+            }
+        }
+        return new File(checkpointDir,
+            type + "_" + config.getDataSourceKey() + "_" + Integer.toHexString(sql.hashCode()) + ".checkpoint");
+    }
+
     protected abstract boolean executeSqlImport(DataSource ds, String sql, List<Object> values,
                                                 AdapterConfig.AdapterMapping mapping, AtomicLong impCount,
                                                 List<String> errMsg);
 
+    /**
+     * 分片查询的改写, 切分条件作为源sql where的最后一个条件, 绑定参数排在源sql自身的参数之后
+     */
+    private static class SplitSql {
+
+        private static final Logger logger = LoggerFactory.getLogger(SplitSql.class);
+
+        private final String        sql;
+        private final String        column;
+
+        private SplitSql(String sql, String column){
+            this.sql = sql;
+            this.column = column;
+        }
+
+        /**
+         * 校验源sql是否可以改写, union/limit/having(参数在切分条件之后)无法改写时返回null
+         */
+        static SplitSql parse(String sql, String column) {
+            try {
+                SplitSql splitSql = new SplitSql(sql, column);
+                SQLSelectQueryBlock query = splitSql.parseQuery();
+                if (query == null || query.getLimit() != null
+                    || (query.getGroupBy() != null && query.getGroupBy().getHaving() != null)) {
+                    logger.warn("etl sql with union/limit/having can not be split: {}", sql);
+                    return null;
+                }
+                SQLUtils.toSQLExpr(column, DbType.mysql);
+                return splitSql;
+            } catch (Exception e) {
+                logger.warn("parse etl sql {} with split column {} failed: {}", sql, column, e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * 分片的查询sql
+         */
+        String range(String condition) {
+            SQLSelectQueryBlock query = parseQuery();
+            query.addCondition(SQLUtils.toSQLExpr(condition, DbType.mysql));
+            return SQLUtils.toSQLString(query, DbType.mysql);
+        }
+
+        /**
+         * 查询满足条件的第offset + 1条数据的切分字段值
+         */
+        String boundary(String condition, long offset) {
+            SQLSelectQueryBlock query = parseQuery();
+            query.getSelectList().clear();
+            query.addSelectItem(SQLUtils.toSQLExpr(column, DbType.mysql));
+            query.addCondition(SQLUtils.toSQLExpr(condition, DbType.mysql));
+            query.setOrderBy(new SQLOrderBy(SQLUtils.toSQLExpr(column, DbType.mysql)));
+            query.setLimit(new SQLLimit(new SQLIntegerExpr(offset), new SQLIntegerExpr(1)));
+            return SQLUtils.toSQLString(query, DbType.mysql);
+        }
+
+        private SQLSelectQueryBlock parseQuery() {
+            SQLStatement statement = SQLUtils.parseSingleStatement(sql, DbType.mysql);
+            if (!(statement instanceof SQLSelectStatement)) {
+                return null;
+            }
+            return ((SQLSelectStatement) statement).getSelect().getQueryBlock();
+        }
+    }
+
+    /**
+     * 按分片顺序推进checkpoint, 只有之前的分片都完成后才记录当前分片的上界
+     */
+    private static class RangeTracker {
+
+        private final EtlCheckpoint        checkpoint;
+        private final Map<Integer, Object> completed = new HashMap<>(); // 已完成但前面还有未完成分片的上界
+        private int                        next      = 0;               // 下一个需要完成的分片
+
+        RangeTracker(EtlCheckpoint checkpoint){
+            this.checkpoint = checkpoint;
+        }
+
+        synchronized void complete(int index, Object upper) {
+            completed.put(index, upper);
+            Object watermark = null;
+            while (completed.containsKey(next)) {
+                Object value = completed.remove(next++);
+                if (value != null) {
+                    watermark = value;
+                }
+            }
+            if (watermark != null) {
+                checkpoint.save(watermark);
+            }
+        }
+    }
+
+    /**
+     * 记录已连续导入完成的切分字段上界, 上界以字符串保存, 读取时按照保存的jdbc类型转换回来, 避免按字符串比较
+     */
+    private static class EtlCheckpoint {
+
+        private static final Logger logger   = LoggerFactory.getLogger(EtlCheckpoint.class);
+
+        private final File          file;
+        private final String        sql;
+        private final String        values;
+        private final String        column;
+        private volatile int        jdbcType = Types.VARCHAR;
+
+        EtlCheckpoint(File file, String sql, List<Object> values, String column){
+            this.file = file;
+            this.sql = sql;
+            this.values = String.valueOf(values);
+            this.column = column;
+        }
+
+        /**
+         * 读取checkpoint, 不存在或者与当前导入条件不一致时返回null
+         */
+        Object load() {
+            if (!file.exists()) {
+                return null;
+            }
+            Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            } catch (Exception e) {
+                logger.warn("load etl checkpoint {} failed: {}", file, e.getMessage());
+                return null;
+            }
+            if (!sql.equals(properties.getProperty("sql")) || !values.equals(properties.getProperty("values"))
+                || !column.equals(properties.getProperty("column"))) {
+                return null;
+            }
+            String watermark = properties.getProperty("watermark");
+            int type = Integer.parseInt(properties.getProperty("watermarkType", String.valueOf(Types.VARCHAR)));
+            try {
+                return toWatermark(watermark, type);
+            } catch (Exception e) {
+                logger.warn("convert etl checkpoint {} watermark {} to jdbc type {} failed: {}",
+                    file,
+                    watermark,
+                    type,
+                    e.getMessage());
+                return null;
+            }
+        }
+
+        void save(Object watermark) {
+            Properties properties = new Properties();
+            properties.setProperty("sql", sql);
+            properties.setProperty("values", values);
+            properties.setProperty("column", column);
+            properties.setProperty("watermark", toString(watermark));
+            properties.setProperty("watermarkType", String.valueOf(jdbcType));
+            try {
+                File dir = file.getParentFile();
+                if (!dir.exists()) {
+                    dir.mkdirs();
+                }
+                // 先写临时文件再替换, 避免中途失败留下不完整的checkpoint
+                File tmp = new File(dir, file.getName() + ".tmp");
+                try (OutputStream out = new FileOutputStream(tmp)) {
+                    properties.store(out, null);
+                }
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (Exception e) {
+                logger.warn("save etl checkpoint {} failed: {}", file, e.getMessage());
+            }
+        }
+
+        void delete() {
+            if (file.exists() && !file.delete()) {
+                logger.warn("delete etl checkpoint {} failed", file);
+            }
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        void setJdbcType(int jdbcType) {
+            this.jdbcType = jdbcType;
+        }
+
+        private static String toString(Object watermark) {
+            if (watermark instanceof LocalDateTime) {
+                return Timestamp.valueOf((LocalDateTime) watermark).toString();
+            } else if (watermark instanceof LocalDate) {
+                return Date.valueOf((LocalDate) watermark).toString();
+            } else if (watermark instanceof LocalTime) {
+                return Time.valueOf((LocalTime) watermark).toString();
+            } else if (watermark instanceof BigDecimal) {
+                return ((BigDecimal) watermark).toPlainString();
+            }
+            return String.valueOf(watermark);
+        }
+
+        /**
+         * 按jdbc类型把字符串转换为绑定参数, 时间类型保留完整精度
+         */
+        private static Object toWatermark(String value, int jdbcType) {
+            switch (jdbcType) {
+                case Types.BIT:
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                    return Integer.valueOf(value);
+                case Types.BIGINT:
+                    BigInteger bigint = new BigInteger(value);
+                    return bigint.bitLength() < 64 ? (Object) bigint.longValue() : bigint;
+                case Types.DECIMAL:
+                case Types.NUMERIC:
+                    return new BigDecimal(value);
+                case Types.REAL:
+                    return Float.valueOf(value);
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                    return Double.valueOf(value);
+                case Types.DATE:
+                    return Date.valueOf(value);
+                case Types.TIME:
+                    return Time.valueOf(value);
+                case Types.TIMESTAMP:
+                    return Timestamp.valueOf(value);
+                default:
+                    return value;
+            }
+        }
+    }
 }
@@ -7,5 +7,12 @@ public interface AdapterConfig {
 
     interface AdapterMapping {
         String getEtlCondition();
+
+        /**
+         * etl分片使用的有序字段, 为空时使用源表主键
+         */
+        default String getEtlSplitColumn() {
+            return null;
+        }
     }
 }
@@ -25,6 +25,8 @@ public class CanalClientConfig {
     private Integer            batchSize;
     // 同步分批提交大小
     private Integer            syncBatchSize = 1000;
+    // 单个事务在一次同步中的最大行数, 超过时在事务内部切分
+    private Integer            syncMaxTxSize = 10000;
     // 重试次数
     private Integer            retries;
     // 消费超时时间
@@ -106,6 +108,14 @@ public class CanalClientConfig {
         this.syncBatchSize = syncBatchSize;
     }
 
+    public Integer getSyncMaxTxSize() {
+        return syncMaxTxSize;
+    }
+
+    public void setSyncMaxTxSize(Integer syncMaxTxSize) {
+        this.syncMaxTxSize = syncMaxTxSize;
+    }
+
     public void setRetries(Integer retries) {
         this.retries = retries;
     }
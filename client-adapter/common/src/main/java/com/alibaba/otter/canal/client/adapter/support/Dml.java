@@ -28,6 +28,7 @@ public class Dml implements Serializable {
     private String                    sql;                                    // 执行的sql, dml sql为空
     private List<Map<String, Object>> data;                                   // 数据列表
     private List<Map<String, Object>> old;                                    // 旧数据列表, 用于update, size和data的size一一对应
+    private Long                      txId;                                   // 源库事务序号, 同一事务内的dml相同, 为空代表无事务边界
 
     public String getDestination() {
         return destination;
@@ -125,6 +126,14 @@ public class Dml implements Serializable {
         this.es = es;
     }
 
+    public Long getTxId() {
+        return txId;
+    }
+
+    public void setTxId(Long txId) {
+        this.txId = txId;
+    }
+
     public void clear() {
         database = null;
         table = null;
@@ -134,6 +143,7 @@ public class Dml implements Serializable {
         data = null;
         old = null;
         sql = null;
+        txId = null;
     }
 
     @Override
@@ -0,0 +1,218 @@
+package com.alibaba.otter.canal.client.adapter.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * 同一事务内按(表, 主键)合并行变更, 减少对目标端的重复写入
+ *
+ * <pre>
+ * 1. insert + update 合并为 insert, 数据为最后的镜像
+ * 2. update + update 合并为 update, 数据为最后的镜像, old为所有变更过的字段最早的旧值
+ * 3. delete以及delete之后的变更不合并, 修改主键的update也不合并
+ * 4. 合并后的变更放在该行第一次变更的位置, 不会越过其他行的变更, 保证父子表(外键)的写入顺序; 连续的同表同类型的行重新组成一个dml
+ * 5. 只在同一个事务内合并, 事务切换和ddl作为屏障; 事务未知(txId为空)、没有主键或未开启合并的表原样输出
+ * </pre>
+ *
+ * 合并只改变同一事务内的中间状态, 事务同步完成后目标端的数据与逐条同步一致
+ *
+ * @since 1.1.5
+ */
+public class DmlCoalescer {
+
+    private final boolean     all;
+    private final Set<String> tables = new HashSet<>();
+
+    /**
+     * @param tables 需要合并的表, 逗号分隔的 库名.表名, * 代表全部表
+     */
+    public DmlCoalescer(String tables){
+        boolean all = false;
+        for (String table : StringUtils.split(StringUtils.trimToEmpty(tables), ",")) {
+            table = table.trim().toLowerCase();
+            if ("*".equals(table)) {
+                all = true;
+            } else if (!table.isEmpty()) {
+                this.tables.add(table);
+            }
+        }
+        this.all = all;
+    }
+
+    public boolean isEmpty() {
+        return !all && tables.isEmpty();
+    }
+
+    public List<Dml> coalesce(List<Dml> dmls) {
+        if (dmls == null || isEmpty()) {
+            return dmls;
+        }
+
+        List<Change> changes = new ArrayList<>(); // 按位置排列的变更
+        Map<String, Integer> open = new HashMap<>(); // 行的主键 -> 可以继续合并的变更位置
+        Long txId = null; // open中的变更所属的事务
+        for (Dml dml : dmls) {
+            boolean ddl = Boolean.TRUE.equals(dml.getIsDdl());
+            if (ddl || dml.getTxId() == null || !dml.getTxId().equals(txId)) {
+                // ddl、事务切换或者事务未知时, 不再和之前的变更合并
+                open.clear();
+                txId = ddl ? null : dml.getTxId();
+            }
+            if (txId == null || !canCoalesce(dml)) {
+                changes.add(new Change(dml));
+                continue;
+            }
+
+            List<Map<String, Object>> old = dml.getOld();
+            for (int i = 0; i < dml.getData().size(); i++) {
+                Map<String, Object> data = dml.getData().get(i);
+                Map<String, Object> rowOld = "UPDATE".equals(dml.getType()) && old != null && i < old.size() ? old
+                    .get(i) : null;
+                String key = rowKey(dml, data);
+
+                if (rowOld != null && !Collections.disjoint(rowOld.keySet(), dml.getPkNames())) {
+                    // 修改了主键, 新旧主键都不再参与合并
+                    Map<String, Object> before = new HashMap<>(data);
+                    before.putAll(rowOld);
+                    open.remove(rowKey(dml, before));
+                    open.remove(key);
+                    changes.add(new Change(dml, dml.getType(), data, rowOld));
+                    continue;
+                }
+
+                Integer pos = open.get(key);
+                Change merged = pos == null ? null : changes.get(pos).merge(dml, data, rowOld);
+                if (merged != null) {
+                    // 留在第一次变更的位置, 携带最后的镜像
+                    changes.set(pos, merged);
+                } else if ("DELETE".equals(dml.getType())) {
+                    changes.add(new Change(dml, dml.getType(), data, rowOld));
+                    open.remove(key);
+                } else {
+                    changes.add(new Change(dml, dml.getType(), data, rowOld));
+                    open.put(key, changes.size() - 1);
+                }
+            }
+        }
+
+        return toDmls(changes);
+    }
+
+    private boolean canCoalesce(Dml dml) {
+        if (dml.getPkNames() == null || dml.getPkNames().isEmpty() || dml.getData() == null) {
+            return false;
+        }
+        if (!"INSERT".equals(dml.getType()) && !"UPDATE".equals(dml.getType()) && !"DELETE".equals(dml.getType())) {
+            return false;
+        }
+        return all || tables.contains((dml.getDatabase() + "." + dml.getTable()).toLowerCase());
+    }
+
+    private static String rowKey(Dml dml, Map<String, Object> data) {
+        StringBuilder key = new StringBuilder(dml.getDatabase()).append('.').append(dml.getTable());
+        for (String pkName : dml.getPkNames()) {
+            key.append('|').append(data.get(pkName));
+        }
+        return key.toString();
+    }
+
+    private static List<Dml> toDmls(List<Change> changes) {
+        List<Dml> result = new ArrayList<>();
+        Dml last = null;
+        for (Change change : changes) {
+            if (change.data == null) {
+                result.add(change.dml);
+                last = null;
+                continue;
+            }
+            if (last == null || !sameDml(last, change)) {
+                last = new Dml();
+                last.setDestination(change.dml.getDestination());
+                last.setGroupId(change.dml.getGroupId());
+                last.setDatabase(change.dml.getDatabase());
+                last.setTable(change.dml.getTable());
+                last.setPkNames(change.dml.getPkNames());
+                last.setIsDdl(false);
+                last.setType(change.type);
+                last.setEs(change.dml.getEs());
+                last.setTs(change.dml.getTs());
+                last.setSql(change.dml.getSql());
+                last.setTxId(change.dml.getTxId());
+                last.setData(new ArrayList<>());
+                if ("UPDATE".equals(change.type)) {
+                    last.setOld(new ArrayList<>());
+                }
+                result.add(last);
+            }
+            last.getData().add(change.data);
+            if (last.getOld() != null) {
+                last.getOld().add(change.old != null ? change.old : new LinkedHashMap<>());
+            }
+        }
+        return result;
+    }
+
+    private static boolean sameDml(Dml dml, Change change) {
+        return Objects.equals(dml.getDestination(), change.dml.getDestination())
+               && Objects.equals(dml.getGroupId(), change.dml.getGroupId())
+               && Objects.equals(dml.getDatabase(), change.dml.getDatabase())
+               && Objects.equals(dml.getTable(), change.dml.getTable())
+               && Objects.equals(dml.getType(), change.type)
+               && Objects.equals(dml.getTxId(), change.dml.getTxId());
+    }
+
+    /**
+     * 单行变更, data为空时代表原样输出的整个dml
+     */
+    private static class Change {
+
+        private final Dml                 dml;
+        private final String              type;
+        private final Map<String, Object> data;
+        private final Map<String, Object> old;
+
+        Change(Dml dml){
+            this(dml, dml.getType(), null, null);
+        }
+
+        Change(Dml dml, String type, Map<String, Object> data, Map<String, Object> old){
+            this.dml = dml;
+            this.type = type;
+            this.data = data;
+            this.old = old;
+        }
+
+        /**
+         * 与同一行之后的变更合并, 不能合并时返回null
+         */
+        Change merge(Dml next, Map<String, Object> nextData, Map<String, Object> nextOld) {
+            if (!"INSERT".equals(type) && !"UPDATE".equals(type)) {
+                return null;
+            }
+            if (!"UPDATE".equals(next.getType())) {
+                return null;
+            }
+            if ("INSERT".equals(type)) {
+                return new Change(next, type, nextData, null);
+            }
+            // 保留每个字段最早的旧值
+            Map<String, Object> mergedOld = new LinkedHashMap<>();
+            if (nextOld != null) {
+                mergedOld.putAll(nextOld);
+            }
+            if (old != null) {
+                mergedOld.putAll(old);
+            }
+            return new Change(next, type, nextData, mergedOld);
+        }
+    }
+}
@@ -20,9 +20,16 @@ public class MessageUtil {
         }
         List<CanalEntry.Entry> entries = message.getEntries();
         List<Dml> dmls = new ArrayList<>(entries.size());
+        // 按TRANSACTIONBEGIN递增事务序号, 不在BEGIN/END之间的数据(过滤了事务头尾或者跨批次的事务)事务未知, 序号为空
+        long txSeq = 0L;
+        Long txId = null;
         for (CanalEntry.Entry entry : entries) {
-            if (entry.getEntryType() == CanalEntry.EntryType.TRANSACTIONBEGIN
-                || entry.getEntryType() == CanalEntry.EntryType.TRANSACTIONEND) {
+            if (entry.getEntryType() == CanalEntry.EntryType.TRANSACTIONBEGIN) {
+                txId = ++txSeq;
+                continue;
+            }
+            if (entry.getEntryType() == CanalEntry.EntryType.TRANSACTIONEND) {
+                txId = null;
                 continue;
             }
 
@@ -47,6 +54,7 @@ public class MessageUtil {
             dml.setIsDdl(rowChange.getIsDdl());
             dml.setTs(System.currentTimeMillis());
             dml.setSql(rowChange.getSql());
+            dml.setTxId(txId);
             dmls.add(dml);
             List<Map<String, Object>> data = new ArrayList<>();
             List<Map<String, Object>> old = new ArrayList<>();
@@ -161,6 +169,7 @@ public class MessageUtil {
         dml.setTs(commonMessage.getTs());
         dml.setEs(commonMessage.getEs());
         dml.setSql(commonMessage.getSql());
+        dml.setTxId(commonMessage.getTxId());
         // if (flatMessage.getSqlType() == null || flatMessage.getMysqlType() == null) {
         // throw new RuntimeException("SqlType or mysqlType is null");
         // }
@@ -20,6 +20,8 @@ public class OuterAdapterConfig {
 
     private Map<String, String> properties; // 其余参数, 可填写适配器中的所需的配置信息
 
+    private String              coalesce;   // 同步前按主键合并同一批次内变更的表, 逗号分隔的 库名.表名, * 代表全部表
+
     public String getName() {
         return name;
     }
@@ -52,6 +54,14 @@ public class OuterAdapterConfig {
         this.properties = properties;
     }
 
+    public String getCoalesce() {
+        return coalesce;
+    }
+
+    public void setCoalesce(String coalesce) {
+        this.coalesce = coalesce;
+    }
+
     public String getZkHosts() {
         return zkHosts;
     }
@@ -0,0 +1,186 @@
+package com.alibaba.otter.canal.client.adapter.support;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.druid.filter.FilterAdapter;
+import com.alibaba.druid.filter.FilterChain;
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.proxy.jdbc.StatementProxy;
+
+public class AbstractEtlServiceTest {
+
+    private static final String DATA_SOURCE_KEY = "etlTest";
+    private static final int    COUNT           = 25000;
+
+    private DruidDataSource     dataSource;
+    private File                checkpointDir;
+
+    @Before
+    public void setUp() throws Exception {
+        checkpointDir = Files.createTempDirectory("etl").toFile();
+        System.setProperty(AbstractEtlService.CHECKPOINT_DIR_PROPERTY, checkpointDir.getPath());
+
+        dataSource = new DruidDataSource();
+        dataSource.setDriverClassName("org.h2.Driver");
+        dataSource.setUrl("jdbc:h2:mem:etl_test;DB_CLOSE_DELAY=-1");
+        // h2不支持mysql流式读取的fetchSize
+        dataSource.setProxyFilters(Collections.singletonList(new FilterAdapter() {
+
+            @Override
+            public void statement_setFetchSize(FilterChain chain, StatementProxy statement, int rows)
+                                                                                                   throws SQLException {
+                chain.statement_setFetchSize(statement, Math.max(rows, 0));
+            }
+        }));
+        dataSource.init();
+        DatasourceConfig.DATA_SOURCES.put(DATA_SOURCE_KEY, dataSource);
+
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE user (id BIGINT PRIMARY KEY, name VARCHAR(32))");
+            stmt.execute("INSERT INTO user SELECT X, CONCAT('name', X) FROM SYSTEM_RANGE(1, " + COUNT + ")");
+            stmt.execute("CREATE TABLE role (id BIGINT PRIMARY KEY, user_id BIGINT)");
+            stmt.execute("CREATE INDEX idx_role_user_id ON role (user_id)");
+            stmt.execute("INSERT INTO role SELECT X, X FROM SYSTEM_RANGE(1, " + COUNT + ")");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE user");
+            stmt.execute("DROP TABLE role");
+        }
+        DatasourceConfig.DATA_SOURCES.remove(DATA_SOURCE_KEY);
+        dataSource.close();
+        System.clearProperty(AbstractEtlService.CHECKPOINT_DIR_PROPERTY);
+        for (File file : checkpointDir.listFiles()) {
+            file.delete();
+        }
+        checkpointDir.delete();
+    }
+
+    @Test
+    public void testImportByRange() {
+        TestEtlService etlService = new TestEtlService(null);
+        EtlResult result = etlService.importData("SELECT * FROM user", null);
+        Assert.assertTrue(result.getErrorMessage(), result.getSucceeded());
+        Assert.assertEquals(COUNT, etlService.ids.size());
+        // null分片 + 3个按主键切分的分片
+        Assert.assertEquals(4, etlService.ranges.size());
+        Assert.assertEquals(0, checkpointDir.listFiles().length);
+    }
+
+    @Test
+    public void testImportJoinByRange() {
+        TestEtlService etlService = new TestEtlService(null, "u.id");
+        EtlResult result = etlService.importData("SELECT u.id, u.name, COUNT(r.id) AS cnt FROM user u "
+                                                 + "LEFT JOIN role r ON r.user_id = u.id GROUP BY u.id, u.name",
+            null);
+        Assert.assertTrue(result.getErrorMessage(), result.getSucceeded());
+        Assert.assertEquals(COUNT, etlService.ids.size());
+        Assert.assertEquals(4, etlService.ranges.size());
+        // 切分条件加在源sql自身的where中, 不再包成派生表
+        for (String sql : etlService.sqls) {
+            Assert.assertFalse(sql, sql.contains("_ETL"));
+            Assert.assertTrue(sql, sql.contains("WHERE u.id"));
+        }
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() {
+        // 第三个分片(10000, 20000]导入失败
+        TestEtlService etlService = new TestEtlService(15000L);
+        EtlResult result = etlService.importData("SELECT * FROM user", null);
+        Assert.assertFalse(result.getSucceeded());
+        Assert.assertEquals(1, checkpointDir.listFiles().length);
+
+        // 从checkpoint之后继续, 下界按切分字段原来的类型绑定
+        etlService = new TestEtlService(null);
+        result = etlService.importData("SELECT * FROM user", null);
+        Assert.assertTrue(result.getErrorMessage(), result.getSucceeded());
+        Assert.assertEquals(COUNT - 10000, etlService.ids.size());
+        Assert.assertFalse(etlService.ids.contains(10000L));
+        Assert.assertTrue(etlService.ids.contains(10001L));
+        Assert.assertEquals(Arrays.asList(10000L, 20000L), etlService.ranges.get(0));
+        Assert.assertEquals(0, checkpointDir.listFiles().length);
+    }
+
+    private static class TestEtlService extends AbstractEtlService {
+
+        private final Long               failId;
+        private final Set<Long>          ids    = ConcurrentHashMap.newKeySet();
+        private final List<List<Object>> ranges = new CopyOnWriteArrayList<>();
+        private final List<String>       sqls   = new CopyOnWriteArrayList<>();
+        private final String             splitColumn;
+
+        TestEtlService(Long failId){
+            this(failId, "id");
+        }
+
+        TestEtlService(Long failId, String splitColumn){
+            super("test", new AdapterConfig() {
+
+                @Override
+                public String getDataSourceKey() {
+                    return DATA_SOURCE_KEY;
+                }
+
+                @Override
+                public AdapterMapping getMapping() {
+                    return () -> null;
+                }
+            });
+            this.failId = failId;
+            this.splitColumn = splitColumn;
+        }
+
+        @Override
+        protected String getSplitColumn(DataSource ds) {
+            return splitColumn;
+        }
+
+        @Override
+        protected boolean executeSqlImport(DataSource ds, String sql, List<Object> values,
+                                           AdapterConfig.AdapterMapping mapping, AtomicLong impCount,
+                                           List<String> errMsg) {
+            ranges.add(values);
+            sqls.add(sql);
+            List<Long> rows = new ArrayList<>();
+            Util.sqlRS(ds, sql, values, rs -> {
+                try {
+                    while (rs.next()) {
+                        rows.add(rs.getLong("id"));
+                    }
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+                return null;
+            });
+            if (failId != null && rows.contains(failId)) {
+                return false;
+            }
+            ids.addAll(rows);
+            impCount.addAndGet(rows.size());
+            return true;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.alibaba.otter.canal.client.adapter.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DmlCoalescerTest {
+
+    @Test
+    public void testInsertUpdateDelete() {
+        List<Dml> dmls = new ArrayList<>();
+        dmls.add(dml("user", "INSERT", 1L, row(1, "a", 0), null));
+        dmls.add(dml("user", "UPDATE", 1L, row(1, "a", 1), row(null, null, 0)));
+        dmls.add(dml("user", "UPDATE", 1L, row(2, "b", 1), row(null, "x", null)));
+        dmls.add(dml("user", "UPDATE", 1L, row(2, "c", 2), row(null, "b", 1)));
+        dmls.add(dml("user", "UPDATE", 1L, row(1, "a", 2), row(null, null, 1)));
+        dmls.add(dml("user", "DELETE", 1L, row(1, "a", 2), null));
+
+        List<Dml> result = new DmlCoalescer("test.user").coalesce(dmls);
+        Assert.assertEquals(3, result.size());
+
+        // id=1 的 insert + update 合并为 insert, 留在第一次变更的位置
+        Assert.assertEquals("INSERT", result.get(0).getType());
+        Assert.assertEquals(row(1, "a", 2), result.get(0).getData().get(0));
+
+        // id=2 的两次update只保留最后的镜像, old为最早的旧值
+        Assert.assertEquals("UPDATE", result.get(1).getType());
+        Assert.assertEquals(row(2, "c", 2), result.get(1).getData().get(0));
+        Assert.assertEquals(row(null, "x", 1), result.get(1).getOld().get(0));
+
+        // delete不合并
+        Assert.assertEquals("DELETE", result.get(2).getType());
+        Assert.assertEquals(row(1, "a", 2), result.get(2).getData().get(0));
+    }
+
+    @Test
+    public void testCrossKeyOrder() {
+        List<Dml> dmls = new ArrayList<>();
+        dmls.add(dml("parent", "INSERT", 1L, row(1, "a", 0), null));
+        Map<String, Object> child = row(10, "b", 0);
+        child.put("parent_id", 1);
+        dmls.add(dml("child", "INSERT", 1L, child, null));
+        dmls.add(dml("parent", "UPDATE", 1L, row(1, "c", 0), row(null, "a", null)));
+
+        // 合并后的parent不能越过依赖它的child
+        List<Dml> result = new DmlCoalescer("*").coalesce(dmls);
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals("parent", result.get(0).getTable());
+        Assert.assertEquals("INSERT", result.get(0).getType());
+        Assert.assertEquals(row(1, "c", 0), result.get(0).getData().get(0));
+        Assert.assertEquals("child", result.get(1).getTable());
+        Assert.assertEquals(child, result.get(1).getData().get(0));
+    }
+
+    @Test
+    public void testTransactionBarrier() {
+        List<Dml> dmls = new ArrayList<>();
+        dmls.add(dml("user", "UPDATE", 1L, row(1, "b", 0), row(null, "a", null)));
+        dmls.add(dml("user", "UPDATE", 2L, row(1, "c", 0), row(null, "b", null)));
+        // 事务未知的数据原样输出
+        dmls.add(dml("user", "UPDATE", null, row(1, "d", 0), row(null, "c", null)));
+        dmls.add(dml("user", "UPDATE", null, row(1, "e", 0), row(null, "d", null)));
+
+        List<Dml> result = new DmlCoalescer("test.user").coalesce(dmls);
+        Assert.assertEquals(4, result.size());
+        Assert.assertEquals(Long.valueOf(1L), result.get(0).getTxId());
+        Assert.assertEquals(Long.valueOf(2L), result.get(1).getTxId());
+        Assert.assertSame(dmls.get(2), result.get(2));
+        Assert.assertSame(dmls.get(3), result.get(3));
+    }
+
+    @Test
+    public void testInsertThenUpdate() {
+        List<Dml> dmls = new ArrayList<>();
+        dmls.add(dml("user", "INSERT", 1L, row(1, "a", 0), null));
+        dmls.add(dml("user", "UPDATE", 1L, row(1, "b", 0), row(null, "a", null)));
+        dmls.add(dml("user", "INSERT", 1L, row(2, "c", 0), null));
+
+        List<Dml> result = new DmlCoalescer("*").coalesce(dmls);
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals("INSERT", result.get(0).getType());
+        Assert.assertEquals(Arrays.asList(row(1, "b", 0), row(2, "c", 0)), result.get(0).getData());
+        Assert.assertNull(result.get(0).getOld());
+    }
+
+    @Test
+    public void testBarrier() {
+        List<Dml> dmls = new ArrayList<>();
+        dmls.add(dml("user", "DELETE", 1L, row(1, "a", 0), null));
+        dmls.add(dml("user", "INSERT", 2L, row(1, "a", 0), null));
+        Dml ddl = dml("user", "ALTER", 3L, null, null);
+        ddl.setIsDdl(true);
+        dmls.add(ddl);
+        dmls.add(dml("user", "UPDATE", 4L, row(1, "b", 0), row(null, "a", null)));
+        // 未开启合并的表原样输出
+        dmls.add(dml("role", "UPDATE", 5L, row(1, "r", 0), row(null, "s", null)));
+        dmls.add(dml("role", "UPDATE", 6L, row(1, "t", 0), row(null, "r", null)));
+
+        List<Dml> result = new DmlCoalescer("test.user").coalesce(dmls);
+        Assert.assertEquals(6, result.size());
+        Assert.assertEquals("DELETE", result.get(0).getType());
+        Assert.assertEquals("INSERT", result.get(1).getType());
+        Assert.assertSame(ddl, result.get(2));
+        Assert.assertEquals("UPDATE", result.get(3).getType());
+        Assert.assertSame(dmls.get(4), result.get(4));
+    }
+
+    @Test
+    public void testPkChanged() {
+        List<Dml> dmls = new ArrayList<>();
+        dmls.add(dml("user", "UPDATE", 1L, row(1, "b", 0), row(null, "a", null)));
+        dmls.add(dml("user", "UPDATE", 1L, row(2, "b", 0), row(1, null, null)));
+        dmls.add(dml("user", "UPDATE", 1L, row(1, "c", 0), row(null, "b", null)));
+
+        List<Dml> result = new DmlCoalescer("test.user").coalesce(dmls);
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals(3, result.get(0).getData().size());
+    }
+
+    private static Dml dml(String table, String type, Long txId, Map<String, Object> data, Map<String, Object> old) {
+        Dml dml = new Dml();
+        dml.setDestination("example");
+        dml.setDatabase("test");
+        dml.setTable(table);
+        dml.setPkNames(Collections.singletonList("id"));
+        dml.setIsDdl(false);
+        dml.setType(type);
+        dml.setTxId(txId);
+        if (data != null) {
+            dml.setData(new ArrayList<>(Collections.singletonList(data)));
+        }
+        if (old != null) {
+            dml.setOld(new ArrayList<>(Collections.singletonList(old)));
+        }
+        return dml;
+    }
+
+    private static Map<String, Object> row(Object id, Object name, Object count) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        if (id != null) {
+            row.put("id", id);
+        }
+        if (name != null) {
+            row.put("name", name);
+        }
+        if (count != null) {
+            row.put("count", count);
+        }
+        return row;
+    }
+}
@@ -44,7 +44,8 @@ public class ES6xAdapter extends ESAdapter {
             } else {
                 esConnection = new ESConnection(hostArray, properties, ESConnection.ESClientMode.TRANSPORT);
             }
-            this.esTemplate = new ES6xTemplate(esConnection);
+            this.esTemplate = new ES6xTemplate(esConnection,
+                newBulkProcessor(() -> esConnection.new ES6xBulkRequest(), properties));
 
             envProperties.put("es.version", "es6");
             super.init(configuration, envProperties);
@@ -3,6 +3,7 @@ package com.alibaba.otter.canal.client.adapter.es6x.etl;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.otter.canal.client.adapter.es.core.config.ESSyncConfig;
 import com.alibaba.otter.canal.client.adapter.es.core.config.ESSyncConfig.ESMapping;
+import com.alibaba.otter.canal.client.adapter.es.core.config.SchemaItem.ColumnItem;
 import com.alibaba.otter.canal.client.adapter.es.core.config.SchemaItem.FieldItem;
 import com.alibaba.otter.canal.client.adapter.es.core.service.ESSyncService;
 import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest;
@@ -59,6 +60,18 @@ public class ESEtlService extends AbstractEtlService {
         return importData(sql, params);
     }
 
+    @Override
+    protected String getSplitColumn(DataSource ds) {
+        ESMapping mapping = config.getEsMapping();
+        // 切分条件加在源sql自身的where中, 使用_id引用的源表字段, 而不是查询结果中的别名
+        FieldItem idFieldItem = mapping.getSchemaItem().getIdFieldItem(mapping);
+        ColumnItem column = idFieldItem == null ? null : idFieldItem.getColumn();
+        if (column == null || column.getColumnName() == null) {
+            return null;
+        }
+        return column.getOwner() == null ? column.getColumnName() : column.getOwner() + "." + column.getColumnName();
+    }
+
     protected boolean executeSqlImport(DataSource ds, String sql, List<Object> values,
                                        AdapterConfig.AdapterMapping adapterMapping, AtomicLong impCount,
                                        List<String> errMsg) {
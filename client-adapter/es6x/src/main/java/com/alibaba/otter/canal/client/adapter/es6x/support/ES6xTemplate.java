@@ -1,11 +1,11 @@
 package com.alibaba.otter.canal.client.adapter.es6x.support;
 
-import com.alibaba.fastjson.JSON;
 import com.alibaba.otter.canal.client.adapter.es.core.config.ESSyncConfig;
 import com.alibaba.otter.canal.client.adapter.es.core.config.ESSyncConfig.ESMapping;
 import com.alibaba.otter.canal.client.adapter.es.core.config.SchemaItem;
 import com.alibaba.otter.canal.client.adapter.es.core.config.SchemaItem.ColumnItem;
 import com.alibaba.otter.canal.client.adapter.es.core.config.SchemaItem.FieldItem;
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkProcessor;
 import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest;
 import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.*;
 import com.alibaba.otter.canal.client.adapter.es.core.support.ESSyncUtil;
@@ -32,51 +32,30 @@ import java.util.concurrent.ConcurrentMap;
 
 public class ES6xTemplate implements ESTemplate {
 
-    private static final Logger                               logger         = LoggerFactory
+    private static final Logger                               logger       = LoggerFactory
         .getLogger(ESTemplate.class);
 
-    private static final int                                  MAX_BATCH_SIZE = 1000;
-
     private ESConnection                                      esConnection;
 
-    private ESBulkRequest                                     esBulkRequest;
+    private ESBulkProcessor                                   bulkProcessor;
 
     // es 字段类型本地缓存
-    private static ConcurrentMap<String, Map<String, Object>> esFieldTypes   = new ConcurrentHashMap<>();
+    private static ConcurrentMap<String, Map<String, Object>> esFieldTypes = new ConcurrentHashMap<>();
 
     public ES6xTemplate(ESConnection esConnection){
-        this.esConnection = esConnection;
-        this.esBulkRequest = this.esConnection.new ES6xBulkRequest();
-    }
-
-    public ESBulkRequest getBulk() {
-        return esBulkRequest;
+        this(esConnection, new ESBulkProcessor(() -> esConnection.new ES6xBulkRequest(), 0));
     }
 
-    public void resetBulkRequestBuilder() {
-        this.esBulkRequest.resetBulk();
+    public ES6xTemplate(ESConnection esConnection, ESBulkProcessor bulkProcessor){
+        this.esConnection = esConnection;
+        this.bulkProcessor = bulkProcessor;
     }
 
     /**
-     * 加入批
+     * 加入批, 由bulkProcessor按条数和字节数异步提交
      */
-    private void addToBulk(IESRequest esRequest, ESMapping mapping, Map<String, Object> esFieldData) {
-        getBulk().add(esRequest, mapping.getCommitBatchSize(), bytesSizeToAdd -> {
-            if (getBulk().numberOfActions() <= 0) {
-                try {
-                    getBulk().add(esRequest);
-                    commit();
-                } catch (Exception e) {
-                    logger.error("批次中单条数据已达上限, 尝试单独推送失败！" + JSON.toJSONString(esFieldData), e);
-                    throw e;
-                }
-                return false;
-            }
-
-            //提交后可添加新的进去
-            commit();
-            return true;
-        });
+    private void addToBulk(Object id, ESBulkRequest.IESRequest esRequest, ESMapping mapping) {
+        bulkProcessor.add(id, esRequest, mapping.getCommitBatchSize());
     }
 
     @Override
@@ -90,7 +69,7 @@ public class ES6xTemplate implements ESTemplate {
                 if (StringUtils.isNotEmpty(parentVal)) {
                     updateRequest.setRouting(parentVal);
                 }
-                addToBulk(updateRequest, mapping, esFieldData);
+                addToBulk(pkVal, updateRequest, mapping);
             } else {
                 ESIndexRequest indexRequest = esConnection.new ES6xIndexRequest(mapping.get_index(),
                     mapping.get_type(),
@@ -98,9 +77,8 @@ public class ES6xTemplate implements ESTemplate {
                 if (StringUtils.isNotEmpty(parentVal)) {
                     indexRequest.setRouting(parentVal);
                 }
-                addToBulk(indexRequest, mapping, esFieldData);
+                addToBulk(pkVal, indexRequest, mapping);
             }
-            commitBulk();
         } else {
             ESSearchRequest esSearchRequest = this.esConnection.new ESSearchRequest(mapping.get_index(),
                 mapping.get_type()).setQuery(QueryBuilders.termQuery(mapping.getPk(), pkVal)).size(10000);
@@ -110,8 +88,7 @@ public class ES6xTemplate implements ESTemplate {
                 ESUpdateRequest esUpdateRequest = this.esConnection.new ES6xUpdateRequest(mapping.get_index(),
                     mapping.get_type(),
                     hit.getId()).setDoc(esFieldData);
-                addToBulk(esUpdateRequest, mapping, esFieldData);
-                commitBulk();
+                addToBulk(hit.getId(), esUpdateRequest, mapping);
             }
         }
     }
@@ -121,7 +98,6 @@ public class ES6xTemplate implements ESTemplate {
         Map<String, Object> esFieldDataTmp = new LinkedHashMap<>(esFieldData.size());
         esFieldData.forEach((k, v) -> esFieldDataTmp.put(Util.cleanColumn(k), v));
         append4Update(mapping, pkVal, esFieldDataTmp);
-        commitBulk();
     }
 
     @Override
@@ -150,7 +126,6 @@ public class ES6xTemplate implements ESTemplate {
                 while (rs.next()) {
                     Object idVal = getIdValFromRS(mapping, rs);
                     append4Update(mapping, idVal, esFieldData);
-                    commitBulk();
                     count++;
                 }
             } catch (Exception e) {
@@ -169,8 +144,7 @@ public class ES6xTemplate implements ESTemplate {
             ESDeleteRequest esDeleteRequest = this.esConnection.new ES6xDeleteRequest(mapping.get_index(),
                 mapping.get_type(),
                 pkVal.toString());
-            addToBulk(esDeleteRequest, mapping, esFieldData);
-            commitBulk();
+            addToBulk(pkVal, esDeleteRequest, mapping);
         } else {
             ESSearchRequest esSearchRequest = this.esConnection.new ESSearchRequest(mapping.get_index(),
                 mapping.get_type()).setQuery(QueryBuilders.termQuery(mapping.getPk(), pkVal)).size(10000);
@@ -179,21 +153,14 @@ public class ES6xTemplate implements ESTemplate {
                 ESUpdateRequest esUpdateRequest = this.esConnection.new ES6xUpdateRequest(mapping.get_index(),
                     mapping.get_type(),
                     hit.getId()).setDoc(esFieldData);
-                addToBulk(esUpdateRequest, mapping, esFieldData);
-                commitBulk();
+                addToBulk(hit.getId(), esUpdateRequest, mapping);
             }
         }
     }
 
     @Override
     public void commit() {
-        if (getBulk().numberOfActions() > 0) {
-            ESBulkResponse response = getBulk().bulk();
-            if (response.hasFailures()) {
-                response.processFailBulkResponse("ES sync commit error ");
-            }
-            resetBulkRequestBuilder();
-        }
+        bulkProcessor.flush();
     }
 
     @Override
@@ -368,15 +335,6 @@ public class ES6xTemplate implements ESTemplate {
         return resultIdVal;
     }
 
-    /**
-     * 如果大于批量数则提交批次
-     */
-    private void commitBulk() {
-        if (getBulk().numberOfActions() >= MAX_BATCH_SIZE) {
-            commit();
-        }
-    }
-
     private void append4Update(ESMapping mapping, Object pkVal, Map<String, Object> esFieldData) {
         if (mapping.get_id() != null) {
             String parentVal = (String) esFieldData.remove("$parent_routing");
@@ -387,7 +345,7 @@ public class ES6xTemplate implements ESTemplate {
                 if (StringUtils.isNotEmpty(parentVal)) {
                     esUpdateRequest.setRouting(parentVal);
                 }
-                addToBulk(esUpdateRequest, mapping, esFieldData);
+                addToBulk(pkVal, esUpdateRequest, mapping);
             } else {
                 ESUpdateRequest esUpdateRequest = this.esConnection.new ES6xUpdateRequest(mapping.get_index(),
                     mapping.get_type(),
@@ -395,7 +353,7 @@ public class ES6xTemplate implements ESTemplate {
                 if (StringUtils.isNotEmpty(parentVal)) {
                     esUpdateRequest.setRouting(parentVal);
                 }
-                addToBulk(esUpdateRequest, mapping, esFieldData);
+                addToBulk(pkVal, esUpdateRequest, mapping);
             }
         } else {
             ESSearchRequest esSearchRequest = this.esConnection.new ESSearchRequest(mapping.get_index(),
@@ -405,7 +363,7 @@ public class ES6xTemplate implements ESTemplate {
                 ESUpdateRequest esUpdateRequest = this.esConnection.new ES6xUpdateRequest(mapping.get_index(),
                     mapping.get_type(),
                     hit.getId()).setDoc(esFieldData);
-                addToBulk(esUpdateRequest, mapping, esFieldData);
+                addToBulk(hit.getId(), esUpdateRequest, mapping);
             }
         }
     }
@@ -39,6 +39,9 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
@@ -565,8 +568,13 @@ public class ESConnection {
 
         @Override
         public void processFailBulkResponse(String errorMsg) {
+            processFailBulkResponse(errorMsg, Collections.emptyList());
+        }
+
+        @Override
+        public void processFailBulkResponse(String errorMsg, List<Integer> retryItems) {
             for (BulkItemResponse itemResponse : bulkResponse.getItems()) {
-                if (!itemResponse.isFailed()) {
+                if (!itemResponse.isFailed() || retryItems.contains(itemResponse.getItemId())) {
                     continue;
                 }
 
@@ -577,6 +585,18 @@ public class ESConnection {
                 }
             }
         }
+
+        @Override
+        public List<Integer> rejectedItems() {
+            List<Integer> items = new ArrayList<>();
+            for (BulkItemResponse itemResponse : bulkResponse.getItems()) {
+                if (itemResponse.isFailed()
+                    && itemResponse.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+                    items.add(itemResponse.getItemId());
+                }
+            }
+            return items;
+        }
     }
 
     // ------ get/set ------
@@ -0,0 +1,156 @@
+package com.alibaba.otter.canal.client.adapter.es6x.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkProcessor;
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest;
+
+public class ESBulkProcessorTest {
+
+    private final List<String> sent     = new CopyOnWriteArrayList<>();
+    private final Set<String>  rejected = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    @Test
+    public void bulkActionsTest() {
+        ESBulkProcessor processor = new ESBulkProcessor(MockBulkRequest::new, 2);
+        processor.setBulkActions(2);
+        try {
+            for (int i = 0; i < 10; i++) {
+                processor.add(i % 3, new MockRequest(i % 3 + "-" + i, 10), 1024);
+            }
+            processor.flush();
+        } finally {
+            processor.close();
+        }
+        Assert.assertEquals(10, sent.size());
+
+        // 同一文档的请求按加入顺序提交
+        List<String> doc1 = new ArrayList<>();
+        for (String id : sent) {
+            if (id.startsWith("1-")) {
+                doc1.add(id);
+            }
+        }
+        Assert.assertEquals(Arrays.asList("1-1", "1-4", "1-7"), doc1);
+    }
+
+    @Test
+    public void retryRejectedTest() {
+        ESBulkProcessor processor = new ESBulkProcessor(MockBulkRequest::new, 0);
+        processor.setBackoffDelay(1);
+        rejected.add("b");
+        processor.add("a", new MockRequest("a", 10), 1024);
+        processor.add("b", new MockRequest("b", 10), 1024);
+        processor.flush();
+        // b第一次被拒绝, 重试时只提交b
+        Assert.assertEquals(Arrays.asList("a", "b"), sent);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void retryExhaustedTest() {
+        ESBulkProcessor processor = new ESBulkProcessor(MockBulkRequest::new, 1);
+        processor.setBackoffDelay(1);
+        processor.setBackoffRetries(0);
+        rejected.add("a");
+        try {
+            processor.add("a", new MockRequest("a", 10), 1024);
+            processor.flush();
+        } finally {
+            processor.close();
+        }
+    }
+
+    private class MockRequest implements ESBulkRequest.IESRequest {
+
+        private final String id;
+        private final long   size;
+
+        MockRequest(String id, long size){
+            this.id = id;
+            this.size = size;
+        }
+
+        @Override
+        public ESBulkRequest add(ESBulkRequest esBulkRequest) {
+            ((MockBulkRequest) esBulkRequest).requests.add(this);
+            return esBulkRequest;
+        }
+
+        @Override
+        public boolean add(ESBulkRequest esBulkRequest, int commitBatchSize,
+                           Function<Long, Boolean> ifGtCommitBatchSize) {
+            if (esBulkRequest.estimatedSizeInBytes() + size > commitBatchSize && !ifGtCommitBatchSize.apply(size)) {
+                return false;
+            }
+            add(esBulkRequest);
+            return true;
+        }
+    }
+
+    private class MockBulkRequest implements ESBulkRequest {
+
+        private List<MockRequest> requests = new ArrayList<>();
+
+        @Override
+        public void resetBulk() {
+            requests = new ArrayList<>();
+        }
+
+        @Override
+        public int numberOfActions() {
+            return requests.size();
+        }
+
+        @Override
+        public long estimatedSizeInBytes() {
+            return requests.stream().mapToLong(request -> request.size).sum();
+        }
+
+        @Override
+        public ESBulkResponse bulk() {
+            List<Integer> failed = new ArrayList<>();
+            for (int i = 0; i < requests.size(); i++) {
+                String id = requests.get(i).id;
+                if (rejected.remove(id)) {
+                    failed.add(i);
+                } else {
+                    sent.add(id);
+                }
+            }
+            return new ESBulkResponse() {
+
+                @Override
+                public boolean hasFailures() {
+                    return !failed.isEmpty();
+                }
+
+                @Override
+                public void processFailBulkResponse(String errorMsg, List<Integer> retryItems) {
+                    if (!retryItems.containsAll(failed)) {
+                        throw new RuntimeException(errorMsg);
+                    }
+                }
+
+                @Override
+                public void processFailBulkResponse(String errorMsg) {
+                    processFailBulkResponse(errorMsg, Collections.emptyList());
+                }
+
+                @Override
+                public List<Integer> rejectedItems() {
+                    return failed;
+                }
+            };
+        }
+    }
+}
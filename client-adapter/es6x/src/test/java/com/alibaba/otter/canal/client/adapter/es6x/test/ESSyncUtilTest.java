@@ -0,0 +1,50 @@
+package com.alibaba.otter.canal.client.adapter.es6x.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.client.adapter.es.core.config.ESSyncConfig.ESMapping;
+import com.alibaba.otter.canal.client.adapter.es.core.config.SqlParser;
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESSyncUtil;
+
+public class ESSyncUtilTest {
+
+    @Test
+    public void pkConditionTest() {
+        ESMapping mapping = new ESMapping();
+        mapping.set_id("_id");
+        mapping.setSchemaItem(SqlParser.parse("select a.id as _id, a.name, a.role_id, b.name as role_name from user a "
+                                              + "left join role b on b.id=a.role_id"));
+
+        List<Map<String, Object>> dataList = new ArrayList<>();
+        for (Object id : new Object[] { 1L, 2L, 1L }) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("id", id);
+            dataList.add(data);
+        }
+
+        Assert.assertEquals(" a.id IN (1) ", ESSyncUtil.pkConditionSql(mapping, dataList.subList(0, 1)));
+        // 多行合并为一个IN条件，重复的主键只查一次
+        Assert.assertEquals(" a.id IN (1,2) ", ESSyncUtil.pkConditionSql(mapping, dataList));
+    }
+
+    @Test
+    public void inConditionTest() {
+        List<List<Object>> rows = Arrays.asList(Arrays.asList(1, "a"), Arrays.asList(2, "b"));
+        Assert.assertEquals("((c.id=1 AND c.name='a') OR (c.id=2 AND c.name='b'))",
+            ESSyncUtil.inCondition(Arrays.asList("c.id", "c.name"), rows, null));
+
+        List<Object> params = new ArrayList<>();
+        Assert.assertEquals("user_id IN (?,?)",
+            ESSyncUtil.inCondition(Arrays.asList("user_id"),
+                Arrays.asList(Arrays.asList((Object) 1), Arrays.asList((Object) 2)),
+                params));
+        Assert.assertEquals(Arrays.asList((Object) 1, 2), params);
+    }
+}
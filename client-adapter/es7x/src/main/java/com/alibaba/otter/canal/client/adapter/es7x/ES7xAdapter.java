@@ -44,7 +44,8 @@ public class ES7xAdapter extends ESAdapter {
             } else {
                 esConnection = new ESConnection(hostArray, properties, ESConnection.ESClientMode.TRANSPORT);
             }
-            this.esTemplate = new ES7xTemplate(esConnection);
+            this.esTemplate = new ES7xTemplate(esConnection,
+                newBulkProcessor(() -> esConnection.new ES7xBulkRequest(), properties));
 
             envProperties.put("es.version", "es7");
             super.init(configuration, envProperties);
@@ -1,13 +1,12 @@
 package com.alibaba.otter.canal.client.adapter.es7x.support;
 
-import com.alibaba.fastjson.JSON;
 import com.alibaba.otter.canal.client.adapter.es.core.config.ESSyncConfig;
 import com.alibaba.otter.canal.client.adapter.es.core.config.ESSyncConfig.ESMapping;
 import com.alibaba.otter.canal.client.adapter.es.core.config.SchemaItem;
 import com.alibaba.otter.canal.client.adapter.es.core.config.SchemaItem.ColumnItem;
 import com.alibaba.otter.canal.client.adapter.es.core.config.SchemaItem.FieldItem;
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkProcessor;
 import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest;
-import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESBulkResponse;
 import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESDeleteRequest;
 import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESIndexRequest;
 import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESUpdateRequest;
@@ -35,51 +34,30 @@ import java.util.concurrent.ConcurrentMap;
 
 public class ES7xTemplate implements ESTemplate {
 
-    private static final Logger                               logger         = LoggerFactory
+    private static final Logger                               logger       = LoggerFactory
         .getLogger(ESTemplate.class);
 
-    private static final int                                  MAX_BATCH_SIZE = 1000;
-
     private ESConnection                                      esConnection;
 
-    private ESBulkRequest                                     esBulkRequest;
+    private ESBulkProcessor                                   bulkProcessor;
 
     // es 字段类型本地缓存
-    private static ConcurrentMap<String, Map<String, Object>> esFieldTypes   = new ConcurrentHashMap<>();
+    private static ConcurrentMap<String, Map<String, Object>> esFieldTypes = new ConcurrentHashMap<>();
 
     public ES7xTemplate(ESConnection esConnection){
-        this.esConnection = esConnection;
-        this.esBulkRequest = this.esConnection.new ES7xBulkRequest();
-    }
-
-    public ESBulkRequest getBulk() {
-        return esBulkRequest;
+        this(esConnection, new ESBulkProcessor(() -> esConnection.new ES7xBulkRequest(), 0));
     }
 
-    public void resetBulkRequestBuilder() {
-        this.esBulkRequest.resetBulk();
+    public ES7xTemplate(ESConnection esConnection, ESBulkProcessor bulkProcessor){
+        this.esConnection = esConnection;
+        this.bulkProcessor = bulkProcessor;
     }
 
     /**
-     * 加入批
+     * 加入批, 由bulkProcessor按条数和字节数异步提交
      */
-    private void addToBulk(ESBulkRequest.IESRequest esRequest, ESMapping mapping, Map<String, Object> esFieldData) {
-        getBulk().add(esRequest, mapping.getCommitBatchSize(), bytesSizeToAdd -> {
-            if (getBulk().numberOfActions() <= 0) {
-                try {
-                    getBulk().add(esRequest);
-                    commit();
-                } catch (Exception e) {
-                    logger.error("批次中单条数据已达上限, 尝试单独推送失败！" + JSON.toJSONString(esFieldData), e);
-                    throw e;
-                }
-                return false;
-            }
-
-            //提交后可添加新的进去
-            commit();
-            return true;
-        });
+    private void addToBulk(Object id, ESBulkRequest.IESRequest esRequest, ESMapping mapping) {
+        bulkProcessor.add(id, esRequest, mapping.getCommitBatchSize());
     }
 
     @Override
@@ -92,16 +70,15 @@ public class ES7xTemplate implements ESTemplate {
                 if (StringUtils.isNotEmpty(parentVal)) {
                     updateRequest.setRouting(parentVal);
                 }
-                addToBulk(updateRequest, mapping, esFieldData);
+                addToBulk(pkVal, updateRequest, mapping);
             } else {
                 ESIndexRequest indexRequest = esConnection.new ES7xIndexRequest(mapping.get_index(), pkVal.toString())
                     .setSource(esFieldData);
                 if (StringUtils.isNotEmpty(parentVal)) {
                     indexRequest.setRouting(parentVal);
                 }
-                addToBulk(indexRequest, mapping, esFieldData);
+                addToBulk(pkVal, indexRequest, mapping);
             }
-            commitBulk();
         } else {
             ESSearchRequest esSearchRequest = this.esConnection.new ESSearchRequest(mapping.get_index())
                 .setQuery(QueryBuilders.termQuery(mapping.getPk(), pkVal))
@@ -111,8 +88,7 @@ public class ES7xTemplate implements ESTemplate {
             for (SearchHit hit : response.getHits()) {
                 ESUpdateRequest esUpdateRequest = this.esConnection.new ES7xUpdateRequest(mapping.get_index(),
                     hit.getId()).setDoc(esFieldData);
-                addToBulk(esUpdateRequest, mapping, esFieldData);
-                commitBulk();
+                addToBulk(hit.getId(), esUpdateRequest, mapping);
             }
         }
     }
@@ -122,7 +98,6 @@ public class ES7xTemplate implements ESTemplate {
         Map<String, Object> esFieldDataTmp = new LinkedHashMap<>(esFieldData.size());
         esFieldData.forEach((k, v) -> esFieldDataTmp.put(Util.cleanColumn(k), v));
         append4Update(mapping, pkVal, esFieldDataTmp);
-        commitBulk();
     }
 
     @Override
@@ -151,7 +126,6 @@ public class ES7xTemplate implements ESTemplate {
                 while (rs.next()) {
                     Object idVal = getIdValFromRS(mapping, rs);
                     append4Update(mapping, idVal, esFieldData);
-                    commitBulk();
                     count++;
                 }
             } catch (Exception e) {
@@ -169,8 +143,7 @@ public class ES7xTemplate implements ESTemplate {
         if (mapping.get_id() != null) {
             ESDeleteRequest esDeleteRequest = this.esConnection.new ES7xDeleteRequest(mapping.get_index(),
                 pkVal.toString());
-            addToBulk(esDeleteRequest, mapping, esFieldData);
-            commitBulk();
+            addToBulk(pkVal, esDeleteRequest, mapping);
         } else {
             ESSearchRequest esSearchRequest = this.esConnection.new ESSearchRequest(mapping.get_index())
                 .setQuery(QueryBuilders.termQuery(mapping.getPk(), pkVal))
@@ -179,21 +152,14 @@ public class ES7xTemplate implements ESTemplate {
             for (SearchHit hit : response.getHits()) {
                 ESUpdateRequest esUpdateRequest = this.esConnection.new ES7xUpdateRequest(mapping.get_index(),
                     hit.getId()).setDoc(esFieldData);
-                addToBulk(esUpdateRequest, mapping, esFieldData);
-                commitBulk();
+                addToBulk(hit.getId(), esUpdateRequest, mapping);
             }
         }
     }
 
     @Override
     public void commit() {
-        if (getBulk().numberOfActions() > 0) {
-            ESBulkResponse response = getBulk().bulk();
-            if (response.hasFailures()) {
-                response.processFailBulkResponse("ES sync commit error ");
-            }
-            resetBulkRequestBuilder();
-        }
+        bulkProcessor.flush();
     }
 
     @Override
@@ -367,15 +333,6 @@ public class ES7xTemplate implements ESTemplate {
         return resultIdVal;
     }
 
-    /**
-     * 如果大于批量数则提交批次
-     */
-    private void commitBulk() {
-        if (getBulk().numberOfActions() >= MAX_BATCH_SIZE) {
-            commit();
-        }
-    }
-
     private void append4Update(ESMapping mapping, Object pkVal, Map<String, Object> esFieldData) {
         if (mapping.get_id() != null) {
             String parentVal = (String) esFieldData.remove("$parent_routing");
@@ -385,14 +342,14 @@ public class ES7xTemplate implements ESTemplate {
                 if (StringUtils.isNotEmpty(parentVal)) {
                     esUpdateRequest.setRouting(parentVal);
                 }
-                addToBulk(esUpdateRequest, mapping, esFieldData);
+                addToBulk(pkVal, esUpdateRequest, mapping);
             } else {
                 ESUpdateRequest esUpdateRequest = this.esConnection.new ES7xUpdateRequest(mapping.get_index(),
                     pkVal.toString()).setDoc(esFieldData);
                 if (StringUtils.isNotEmpty(parentVal)) {
                     esUpdateRequest.setRouting(parentVal);
                 }
-                addToBulk(esUpdateRequest, mapping, esFieldData);
+                addToBulk(pkVal, esUpdateRequest, mapping);
             }
         } else {
             ESSearchRequest esSearchRequest = this.esConnection.new ESSearchRequest(mapping.get_index())
@@ -402,7 +359,7 @@ public class ES7xTemplate implements ESTemplate {
             for (SearchHit hit : response.getHits()) {
                 ESUpdateRequest esUpdateRequest = this.esConnection.new ES7xUpdateRequest(mapping.get_index(),
                     hit.getId()).setDoc(esFieldData);
-                addToBulk(esUpdateRequest, mapping, esFieldData);
+                addToBulk(hit.getId(), esUpdateRequest, mapping);
             }
         }
     }
@@ -10,6 +10,8 @@ import com.alibaba.otter.canal.client.adapter.es.core.config.SchemaItem;
 import com.alibaba.otter.canal.client.adapter.es.core.config.SqlParser;
 import com.alibaba.otter.canal.client.adapter.es.core.monitor.ESConfigMonitor;
 import com.alibaba.otter.canal.client.adapter.es.core.service.ESSyncService;
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkProcessor;
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest;
 import com.alibaba.otter.canal.client.adapter.es.core.support.ESTemplate;
 import com.alibaba.otter.canal.client.adapter.support.DatasourceConfig;
 import com.alibaba.otter.canal.client.adapter.support.Dml;
@@ -20,6 +22,7 @@ import org.springframework.util.CollectionUtils;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -36,6 +39,8 @@ public abstract class ESAdapter implements OuterAdapter {
 
     protected ESTemplate                             esTemplate;
 
+    protected ESBulkProcessor                        bulkProcessor;
+
     protected ESSyncService                          esSyncService;
 
     protected ESConfigMonitor                        esConfigMonitor;
@@ -89,13 +94,86 @@ public abstract class ESAdapter implements OuterAdapter {
         if (dmls == null || dmls.isEmpty()) {
             return;
         }
+        for (Dml dml : mergeDmls(dmls)) {
+            sync(dml);
+        }
+        esSyncService.commit(); // 批次统一提交
+
+    }
+
+    /**
+     * 合并连续的同一张表、同一类型的dml，让反查sql一次处理更多的行
+     */
+    private static List<Dml> mergeDmls(List<Dml> dmls) {
+        List<Dml> result = new ArrayList<>(dmls.size());
+        List<Dml> group = new ArrayList<>();
         for (Dml dml : dmls) {
-            if (!dml.getIsDdl()) {
-                sync(dml);
+            if (dml.getIsDdl()) {
+                continue;
             }
+            if (!group.isEmpty() && !canMerge(group.get(0), dml)) {
+                result.add(merge(group));
+                group.clear();
+            }
+            group.add(dml);
+        }
+        if (!group.isEmpty()) {
+            result.add(merge(group));
+        }
+        return result;
+    }
+
+    private static boolean canMerge(Dml first, Dml dml) {
+        if (first.getData() == null || dml.getData() == null
+            || !StringUtils.equals(first.getDestination(), dml.getDestination())
+            || !StringUtils.equals(first.getGroupId(), dml.getGroupId())
+            || !StringUtils.equals(first.getDatabase(), dml.getDatabase())
+            || !StringUtils.equals(first.getTable(), dml.getTable())
+            || !StringUtils.equalsIgnoreCase(first.getType(), dml.getType())) {
+            return false;
         }
-        esSyncService.commit(); // 批次统一提交
 
+        if ("UPDATE".equalsIgnoreCase(dml.getType())) {
+            // old和data需要一一对应
+            return first.getOld() != null && dml.getOld() != null && first.getOld().size() == first.getData().size()
+                   && dml.getOld().size() == dml.getData().size();
+        }
+        return "INSERT".equalsIgnoreCase(dml.getType()) || "DELETE".equalsIgnoreCase(dml.getType());
+    }
+
+    private static Dml merge(List<Dml> group) {
+        if (group.size() == 1) {
+            return group.get(0);
+        }
+
+        Dml first = group.get(0);
+        Dml last = group.get(group.size() - 1);
+        Dml merged = new Dml();
+        merged.setDestination(first.getDestination());
+        merged.setGroupId(first.getGroupId());
+        merged.setDatabase(first.getDatabase());
+        merged.setTable(first.getTable());
+        merged.setPkNames(first.getPkNames());
+        merged.setIsDdl(false);
+        merged.setType(first.getType());
+        merged.setEs(last.getEs());
+        merged.setTs(last.getTs());
+        merged.setTxId(first.getTxId());
+
+        List<Map<String, Object>> data = new ArrayList<>();
+        List<Map<String, Object>> old = "UPDATE".equalsIgnoreCase(first.getType()) ? new ArrayList<>() : null;
+        for (Dml dml : group) {
+            data.addAll(dml.getData());
+            if (old != null) {
+                old.addAll(dml.getOld());
+            }
+            if (!Objects.equals(merged.getTxId(), dml.getTxId())) {
+                merged.setTxId(null); // 跨事务合并时事务未知
+            }
+        }
+        merged.setData(data);
+        merged.setOld(old);
+        return merged;
     }
 
     private void sync(Dml dml) {
@@ -127,6 +205,28 @@ public abstract class ESAdapter implements OuterAdapter {
         if (esConfigMonitor != null) {
             esConfigMonitor.destroy();
         }
+        if (bulkProcessor != null) {
+            bulkProcessor.close();
+        }
+    }
+
+    /**
+     * 根据adapter配置创建批量提交管道
+     *
+     * <pre>
+     * bulk.concurrent: 同时在途的批次数, 0为同步提交, 默认2
+     * bulk.actions: 每批最大条数, 默认1000, 字节数上限为mapping的commitBatchSize
+     * bulk.backoff.delay: 被es拒绝(429)后第一次重试的等待时间(ms), 默认100, 之后每次翻倍
+     * bulk.backoff.retries: 被es拒绝后的最大重试次数, 默认3
+     * </pre>
+     */
+    protected ESBulkProcessor newBulkProcessor(Supplier<ESBulkRequest> bulkSupplier, Map<String, String> properties) {
+        bulkProcessor = new ESBulkProcessor(bulkSupplier,
+            Integer.parseInt(properties.getOrDefault("bulk.concurrent", "2")));
+        bulkProcessor.setBulkActions(Integer.parseInt(properties.getOrDefault("bulk.actions", "1000")));
+        bulkProcessor.setBackoffDelay(Long.parseLong(properties.getOrDefault("bulk.backoff.delay", "100")));
+        bulkProcessor.setBackoffRetries(Integer.parseInt(properties.getOrDefault("bulk.backoff.retries", "3")));
+        return bulkProcessor;
     }
 
     @Override
@@ -104,7 +104,9 @@ public class ESSyncConfig implements AdapterConfig {
         private List<String>                 skips           = new ArrayList<>();
         private int                          commitBatch     = 1000;
         private int                          commitBatchSize = 1048576;              // 批次提交大小（单位为字节）
+        private int                          lookupBatch     = 500;                  // 反查sql每次合并的行数
         private String                       etlCondition;
+        private String                       etlSplitColumn;                         // etl分片字段, 源sql中的真实字段(如t.id)
         private boolean                      syncByTimestamp = false;                // 是否按时间戳定时同步
         private Long                         syncInterval;                           // 同步时间间隔
 
@@ -198,6 +200,14 @@ public class ESSyncConfig implements AdapterConfig {
             this.etlCondition = etlCondition;
         }
 
+        public String getEtlSplitColumn() {
+            return etlSplitColumn;
+        }
+
+        public void setEtlSplitColumn(String etlSplitColumn) {
+            this.etlSplitColumn = etlSplitColumn;
+        }
+
         public Long getSyncInterval() {
             return syncInterval;
         }
@@ -229,6 +239,14 @@ public class ESSyncConfig implements AdapterConfig {
         public void setCommitBatchSize(int commitBatchSize) {
             this.commitBatchSize = commitBatchSize;
         }
+
+        public int getLookupBatch() {
+            return lookupBatch;
+        }
+
+        public void setLookupBatch(int lookupBatch) {
+            this.lookupBatch = lookupBatch;
+        }
     }
 
     public static class RelationMapping {
@@ -32,6 +32,7 @@ import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -144,6 +145,7 @@ public class ESSyncService {
         //主表名
         String mainTableName = schemaItem.getMainTable().getTableName();
 
+        Lookups lookups = new Lookups();
         for (Map<String, Object> data : dataList) {
             if (data == null || data.isEmpty()) {
                 continue;
@@ -160,7 +162,7 @@ public class ESSyncService {
             } else {
                 // ------是主表 查询sql来插入------
                 if (mainTableName.equalsIgnoreCase(dmlTableName)) {
-                    mainTableInsert(config, dml, data);
+                    lookups.main.add(data, null);
                 } else {
                     // 对象字段涉及的子表数据插入
                     updateObjectFields(config, dml, data, null);
@@ -199,15 +201,20 @@ public class ESSyncService {
                             joinTableSimpleFieldOperation(config, dml, data, tableItem, esFieldData);
                         } else {
                             // ------关联子表简单字段插入------
-                            subTableSimpleFieldOperation(config, dml, data, null, tableItem);
+                            lookups.subTable(tableItem).add(data, null);
                         }
                     } else {
                         // ------关联子表复杂字段插入 执行全sql更新es------
-                        wholeSqlOperation(config, dml, data, null, tableItem);
+                        lookups.wholeSql(tableItem).add(data, null);
                     }
                 }
             }
         }
+
+        // 需要反查sql的行合并查询
+        int lookupBatch = config.getEsMapping().getLookupBatch();
+        lookups.main.forEachBatch(lookupBatch, (datas, old) -> mainTableInsert(config, dml, datas));
+        joinTableLookup(config, dml, lookups);
     }
 
     /**
@@ -229,6 +236,7 @@ public class ESSyncService {
         //主数据表名
         String mainTableName = schemaItem.getMainTable().getTableName();
 
+        Lookups lookups = new Lookups();
         int i = 0;
         for (Map<String, Object> data : dataList) {
             Map<String, Object> old = oldList.get(i);
@@ -299,7 +307,7 @@ public class ESSyncService {
                     if (idFieldSimple && allUpdateFieldSimple && !fkChanged) {
                         singleTableSimpleFiledUpdate(config, dml, data, old);
                     } else {
-                        mainTableUpdate(config, dml, data, old);
+                        lookups.main.add(data, old);
                     }
                 } else {
                     // 对象字段涉及的子表数据更新
@@ -343,17 +351,22 @@ public class ESSyncService {
                             joinTableSimpleFieldOperation(config, dml, data, tableItem, esFieldData);
                         } else {
                             // ------关联子表简单字段更新------
-                            subTableSimpleFieldOperation(config, dml, data, old, tableItem);
+                            lookups.subTable(tableItem).add(data, old);
                         }
                     } else {
                         // ------关联子表复杂字段更新 执行全sql更新es------
-                        wholeSqlOperation(config, dml, data, old, tableItem);
+                        lookups.wholeSql(tableItem).add(data, old);
                     }
                 }
             }
 
             i++;
         }
+
+        // 需要反查sql的行合并查询
+        int lookupBatch = config.getEsMapping().getLookupBatch();
+        lookups.main.forEachBatch(lookupBatch, (datas, old) -> mainTableUpdate(config, dml, datas, old));
+        joinTableLookup(config, dml, lookups);
     }
 
     /**
@@ -369,6 +382,7 @@ public class ESSyncService {
         }
         SchemaItem schemaItem = config.getEsMapping().getSchemaItem();
 
+        Lookups lookups = new Lookups();
         for (Map<String, Object> data : dataList) {
             if (data == null || data.isEmpty()) {
                 continue;
@@ -398,7 +412,7 @@ public class ESSyncService {
                     } else {
                         // ------主键带函数, 查询sql获取主键删除------
                         // FIXME 删除时反查sql为空记录, 无法获获取 id field 值
-                        mainTableDelete(config, dml, data);
+                        lookups.main.add(data, null);
                     }
                 } else {
                     FieldItem pkFieldItem = schemaItem.getIdFieldItem(mapping);
@@ -418,7 +432,7 @@ public class ESSyncService {
                         esTemplate.delete(mapping, pkVal, esFieldData);
                     } else {
                         // ------主键带函数, 查询sql获取主键删除------
-                        mainTableDelete(config, dml, data);
+                        lookups.main.add(data, null);
                     }
                 }
 
@@ -457,14 +471,19 @@ public class ESSyncService {
                         joinTableSimpleFieldOperation(config, dml, data, tableItem, esFieldData);
                     } else {
                         // ------关联子表简单字段更新------
-                        subTableSimpleFieldOperation(config, dml, data, null, tableItem);
+                        lookups.subTable(tableItem).add(data, null);
                     }
                 } else {
                     // ------关联子表复杂字段更新 执行全sql更新es------
-                    wholeSqlOperation(config, dml, data, null, tableItem);
+                    lookups.wholeSql(tableItem).add(data, null);
                 }
             }
         }
+
+        // 需要反查sql的行合并查询
+        int lookupBatch = config.getEsMapping().getLookupBatch();
+        lookups.main.forEachBatch(lookupBatch, (datas, old) -> mainTableDelete(config, dml, datas));
+        joinTableLookup(config, dml, lookups);
     }
 
     /**
@@ -499,12 +518,12 @@ public class ESSyncService {
      *
      * @param config es配置
      * @param dml dml信息
-     * @param data 单行dml数据
+     * @param dataList 一批dml数据
      */
-    private void mainTableInsert(ESSyncConfig config, Dml dml, Map<String, Object> data) {
+    private void mainTableInsert(ESSyncConfig config, Dml dml, List<Map<String, Object>> dataList) {
         ESMapping mapping = config.getEsMapping();
         String sql = mapping.getSql();
-        String condition = ESSyncUtil.pkConditionSql(mapping, data);
+        String condition = ESSyncUtil.pkConditionSql(mapping, dataList);
         sql = ESSyncUtil.appendCondition(sql, condition);
         DataSource ds = DatasourceConfig.DATA_SOURCES.get(config.getDataSourceKey());
         if (logger.isTraceEnabled()) {
@@ -540,10 +559,10 @@ public class ESSyncService {
         });
     }
 
-    private void mainTableDelete(ESSyncConfig config, Dml dml, Map<String, Object> data) {
+    private void mainTableDelete(ESSyncConfig config, Dml dml, List<Map<String, Object>> dataList) {
         ESMapping mapping = config.getEsMapping();
         String sql = mapping.getSql();
-        String condition = ESSyncUtil.pkConditionSql(mapping, data);
+        String condition = ESSyncUtil.pkConditionSql(mapping, dataList);
         sql = ESSyncUtil.appendCondition(sql, condition);
         DataSource ds = DatasourceConfig.DATA_SOURCES.get(config.getDataSourceKey());
         if (logger.isTraceEnabled()) {
@@ -558,7 +577,7 @@ public class ESSyncService {
                 Map<String, Object> esFieldData = null;
                 if (mapping.getPk() != null) {
                     esFieldData = new LinkedHashMap<>();
-                    esTemplate.getESDataFromDmlData(mapping, data, esFieldData);
+                    esTemplate.getESDataFromDmlData(mapping, dataList.get(0), esFieldData);
                     esFieldData.remove(mapping.getPk());
                     for (String key : esFieldData.keySet()) {
                         esFieldData.put(Util.cleanColumn(key), null);
@@ -629,11 +648,11 @@ public class ESSyncService {
      *
      * @param config es配置
      * @param dml dml信息
-     * @param data 单行dml数据
-     * @param old 单行old数据
+     * @param dataList 一批dml数据
+     * @param old 这批数据共同的old字段
      * @param tableItem 当前表配置
      */
-    private void subTableSimpleFieldOperation(ESSyncConfig config, Dml dml, Map<String, Object> data,
+    private void subTableSimpleFieldOperation(ESSyncConfig config, Dml dml, List<Map<String, Object>> dataList,
                                               Map<String, Object> old, TableItem tableItem) {
         ESMapping mapping = config.getEsMapping();
 
@@ -651,14 +670,13 @@ public class ESSyncService {
             sql.append(" WHERE 1=1 ");
         }
 
-        List<Object> values = new ArrayList<>();
-
+        List<String> columns = new ArrayList<>();
         for (FieldItem fkFieldItem : tableItem.getRelationTableFields().keySet()) {
-            String columnName = fkFieldItem.getColumn().getColumnName();
-            Object value = esTemplate.getValFromData(mapping, data, fkFieldItem.getFieldName(), columnName);
-            sql.append(" AND ").append(columnName).append("=? ");
-            values.add(value);
+            columns.add(fkFieldItem.getColumn().getColumnName());
         }
+        List<Object> values = new ArrayList<>();
+        sql.append(" AND ").append(ESSyncUtil.inCondition(columns, fkValues(mapping, tableItem, dataList), values));
+        sql.append(" ");
 
         String groupSql = SqlParser.parse4GroupBy(queryBlock);
         if (groupSql != null) {
@@ -742,11 +760,12 @@ public class ESSyncService {
      *
      * @param config es配置
      * @param dml dml信息
-     * @param data 单行dml数据
+     * @param dataList 一批dml数据
+     * @param old 这批数据共同的old字段
      * @param tableItem 当前表配置
      */
-    private void wholeSqlOperation(ESSyncConfig config, Dml dml, Map<String, Object> data, Map<String, Object> old,
-                                   TableItem tableItem) {
+    private void wholeSqlOperation(ESSyncConfig config, Dml dml, List<Map<String, Object>> dataList,
+                                   Map<String, Object> old, TableItem tableItem) {
         ESMapping mapping = config.getEsMapping();
         // 防止最后出现groupby 导致sql解析异常
         String[] sqlSplit = mapping.getSql().split("GROUP\\ BY(?!(.*)ON)");
@@ -760,13 +779,11 @@ public class ESSyncService {
 
         StringBuilder sql = new StringBuilder(sqlNoWhere + " WHERE ");
 
+        List<String> columns = new ArrayList<>();
         for (FieldItem fkFieldItem : tableItem.getRelationTableFields().keySet()) {
-            String columnName = fkFieldItem.getColumn().getColumnName();
-            Object value = esTemplate.getValFromData(mapping, data, fkFieldItem.getFieldName(), columnName);
-            ESSyncUtil.appendCondition(sql, value, tableItem.getAlias(), columnName);
+            columns.add(tableItem.getAlias() + "." + fkFieldItem.getColumn().getColumnName());
         }
-        int len = sql.length();
-        sql.delete(len - 5, len);
+        sql.append(ESSyncUtil.inCondition(columns, fkValues(mapping, tableItem, dataList), null)).append(" ");
         sql.append(sqlGroupBy);
 
         DataSource ds = DatasourceConfig.DATA_SOURCES.get(config.getDataSourceKey());
@@ -881,12 +898,14 @@ public class ESSyncService {
      *
      * @param config es配置
      * @param dml dml信息
-     * @param data 单行dml数据
+     * @param dataList 一批dml数据
+     * @param old 这批数据共同的old字段
      */
-    private void mainTableUpdate(ESSyncConfig config, Dml dml, Map<String, Object> data, Map<String, Object> old) {
+    private void mainTableUpdate(ESSyncConfig config, Dml dml, List<Map<String, Object>> dataList,
+                                 Map<String, Object> old) {
         ESMapping mapping = config.getEsMapping();
         String sql = mapping.getSql();
-        String condition = ESSyncUtil.pkConditionSql(mapping, data);
+        String condition = ESSyncUtil.pkConditionSql(mapping, dataList);
         sql = ESSyncUtil.appendCondition(sql, condition);
         DataSource ds = DatasourceConfig.DATA_SOURCES.get(config.getDataSourceKey());
         if (logger.isTraceEnabled()) {
@@ -1306,10 +1325,89 @@ public class ESSyncService {
         esTemplate.updateByQuery(config, conditions4Main, esFieldData);
     }
 
+    /**
+     * 关联表需要反查sql的行，按表配置合并查询
+     */
+    private void joinTableLookup(ESSyncConfig config, Dml dml, Lookups lookups) {
+        int lookupBatch = config.getEsMapping().getLookupBatch();
+        lookups.subTables.forEach((tableItem, rows) -> rows.forEachBatch(lookupBatch,
+            (datas, old) -> subTableSimpleFieldOperation(config, dml, datas, old, tableItem)));
+        lookups.wholeSqls.forEach((tableItem, rows) -> rows.forEachBatch(lookupBatch,
+            (datas, old) -> wholeSqlOperation(config, dml, datas, old, tableItem)));
+    }
+
+    /**
+     * 一批dml数据中关联表外键的值，去掉重复的值
+     */
+    private Set<List<Object>> fkValues(ESMapping mapping, TableItem tableItem, List<Map<String, Object>> dataList) {
+        Set<List<Object>> rows = new LinkedHashSet<>();
+        for (Map<String, Object> data : dataList) {
+            List<Object> values = new ArrayList<>();
+            for (FieldItem fkFieldItem : tableItem.getRelationTableFields().keySet()) {
+                String columnName = fkFieldItem.getColumn().getColumnName();
+                values.add(esTemplate.getValFromData(mapping, data, fkFieldItem.getFieldName(), columnName));
+            }
+            rows.add(values);
+        }
+        return rows;
+    }
+
     /**
      * 提交批次
      */
     public void commit() {
         esTemplate.commit();
     }
+
+    /**
+     * 一个dml中需要反查sql的行，按主表及关联表汇总，最后合并查询，避免每行执行一次sql
+     */
+    private static class Lookups {
+
+        private final LookupRows                 main      = new LookupRows();
+        private final Map<TableItem, LookupRows> subTables = new LinkedHashMap<>();
+        private final Map<TableItem, LookupRows> wholeSqls = new LinkedHashMap<>();
+
+        LookupRows subTable(TableItem tableItem) {
+            return subTables.computeIfAbsent(tableItem, k -> new LookupRows());
+        }
+
+        LookupRows wholeSql(TableItem tableItem) {
+            return wholeSqls.computeIfAbsent(tableItem, k -> new LookupRows());
+        }
+    }
+
+    private static class LookupRows {
+
+        private final List<Map<String, Object>> datas = new ArrayList<>();
+        private final List<Map<String, Object>> olds  = new ArrayList<>();
+
+        void add(Map<String, Object> data, Map<String, Object> old) {
+            datas.add(data);
+            olds.add(old);
+        }
+
+        /**
+         * 反查结果只用到了old中的字段名，按old的字段名分组，每组按batchSize分批，同一批共用一个old
+         */
+        void forEachBatch(int batchSize, BiConsumer<List<Map<String, Object>>, Map<String, Object>> consumer) {
+            Map<Set<String>, List<Integer>> groups = new LinkedHashMap<>();
+            for (int i = 0; i < datas.size(); i++) {
+                Map<String, Object> old = olds.get(i);
+                groups.computeIfAbsent(old == null ? null : new HashSet<>(old.keySet()), k -> new ArrayList<>())
+                    .add(i);
+            }
+
+            int size = Math.max(batchSize, 1);
+            for (List<Integer> group : groups.values()) {
+                for (int from = 0; from < group.size(); from += size) {
+                    List<Map<String, Object>> batch = new ArrayList<>();
+                    for (int index : group.subList(from, Math.min(from + size, group.size()))) {
+                        batch.add(datas.get(index));
+                    }
+                    consumer.accept(batch, olds.get(group.get(from)));
+                }
+            }
+        }
+    }
 }
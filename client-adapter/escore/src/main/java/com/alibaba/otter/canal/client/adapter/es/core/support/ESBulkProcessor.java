@@ -0,0 +1,217 @@
+package com.alibaba.otter.canal.client.adapter.es.core.support;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.ESBulkResponse;
+import com.alibaba.otter.canal.client.adapter.es.core.support.ESBulkRequest.IESRequest;
+import com.alibaba.otter.canal.client.adapter.support.Util;
+
+/**
+ * es批量提交管道
+ *
+ * <pre>
+ * 1. 按文档id把请求分到concurrent个通道, 同一文档的请求总是进入同一个通道
+ * 2. 通道内的批次条数达到bulkActions或字节数达到commitBatchSize时封批, 交给线程池异步提交
+ * 3. 每个通道同时只有一个批次在途, 上一批完成后才提交下一批, 保证同一文档的修改顺序; 不同通道的批次并行提交
+ * 4. 被es拒绝(429)的条目按指数退避重试, 超过重试次数或其他失败按ESBulkResponse.processFailBulkResponse处理
+ * 5. flush()提交剩余数据并等待所有在途批次完成, 任一批次失败都会抛出异常, adapter的sync返回后才会ack
+ * 6. concurrent为0时退化为在调用线程同步提交
+ * </pre>
+ *
+ * 非线程安全, 由adapter的同步线程调用
+ *
+ * @since 1.1.5
+ */
+public class ESBulkProcessor {
+
+    private static final Logger           logger         = LoggerFactory.getLogger(ESBulkProcessor.class);
+
+    private final Supplier<ESBulkRequest> bulkSupplier;
+    private final int                     concurrent;
+    private final Lane[]                  lanes;
+    private int                           bulkActions    = 1000;
+    private long                          backoffDelay   = 100;                                        // 第一次重试的等待时间(ms), 之后每次翻倍
+    private int                           backoffRetries = 3;
+    private ExecutorService               executor;
+
+    public ESBulkProcessor(Supplier<ESBulkRequest> bulkSupplier, int concurrent){
+        this.bulkSupplier = bulkSupplier;
+        this.concurrent = Math.max(concurrent, 0);
+        this.lanes = new Lane[Math.max(concurrent, 1)];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane();
+        }
+    }
+
+    /**
+     * 加入批, 通道中的批次满了就提交
+     *
+     * @param id 文档id, 用于选择通道
+     * @param esRequest es请求对象
+     * @param commitBatchSize 批次提交大小（单位为字节）
+     */
+    public void add(Object id, IESRequest esRequest, int commitBatchSize) {
+        Lane lane = lanes[(String.valueOf(id).hashCode() & Integer.MAX_VALUE) % lanes.length];
+        try {
+            if (!esRequest.add(lane.bulk, commitBatchSize, bytesSizeToAdd -> false)) {
+                // 超出字节限制, 先提交已有的, 单条超限的也单独成批
+                if (!lane.requests.isEmpty()) {
+                    submit(lane);
+                }
+                esRequest.add(lane.bulk);
+            }
+            lane.requests.add(esRequest);
+            if (lane.requests.size() >= bulkActions) {
+                submit(lane);
+            }
+        } catch (RuntimeException e) {
+            discard();
+            throw e;
+        }
+    }
+
+    /**
+     * 提交所有通道中剩余的数据, 并等待所有在途批次完成
+     */
+    public void flush() {
+        RuntimeException error = null;
+        for (Lane lane : lanes) {
+            try {
+                if (!lane.requests.isEmpty()) {
+                    submit(lane);
+                }
+                await(lane);
+            } catch (RuntimeException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null) {
+            discard();
+            throw error;
+        }
+    }
+
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void submit(Lane lane) {
+        ESBulkRequest bulk = lane.bulk;
+        List<IESRequest> requests = lane.requests;
+        lane.bulk = bulkSupplier.get();
+        lane.requests = new ArrayList<>();
+
+        if (concurrent == 0) {
+            execute(bulk, requests);
+            return;
+        }
+        await(lane);
+        if (executor == null) {
+            executor = Util.newFixedDaemonThreadPool(concurrent, 5000L);
+        }
+        lane.inFlight = executor.submit(() -> execute(bulk, requests));
+    }
+
+    private void execute(ESBulkRequest bulk, List<IESRequest> requests) {
+        long delay = backoffDelay;
+        for (int retry = 0;; retry++) {
+            ESBulkResponse response = bulk.bulk();
+            if (!response.hasFailures()) {
+                return;
+            }
+
+            List<Integer> rejectedItems = retry < backoffRetries ? response.rejectedItems() : new ArrayList<>();
+            response.processFailBulkResponse("ES sync commit error ", rejectedItems);
+            if (rejectedItems.isEmpty()) {
+                return;
+            }
+
+            logger.warn("ES bulk rejected {} of {} requests, retry after {}ms",
+                rejectedItems.size(),
+                requests.size(),
+                delay);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            delay *= 2;
+
+            // 只重试被拒绝的条目
+            List<IESRequest> retryRequests = new ArrayList<>(rejectedItems.size());
+            bulk = bulkSupplier.get();
+            for (Integer item : rejectedItems) {
+                IESRequest esRequest = requests.get(item);
+                esRequest.add(bulk);
+                retryRequests.add(esRequest);
+            }
+            requests = retryRequests;
+        }
+    }
+
+    private void await(Lane lane) {
+        if (lane.inFlight == null) {
+            return;
+        }
+        try {
+            lane.inFlight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        } finally {
+            lane.inFlight = null;
+        }
+    }
+
+    /**
+     * 出错后丢弃未提交的数据, 整批dml会由adapter重新同步
+     */
+    private void discard() {
+        for (Lane lane : lanes) {
+            try {
+                await(lane);
+            } catch (RuntimeException e) {
+                // ignore
+            }
+            lane.bulk = bulkSupplier.get();
+            lane.requests = new ArrayList<>();
+        }
+    }
+
+    private class Lane {
+
+        private ESBulkRequest    bulk     = bulkSupplier.get();
+        private List<IESRequest> requests = new ArrayList<>();
+        private Future<?>        inFlight;
+    }
+
+    // ========= setter ==========
+
+    public void setBulkActions(int bulkActions) {
+        this.bulkActions = Math.max(bulkActions, 1);
+    }
+
+    public void setBackoffDelay(long backoffDelay) {
+        this.backoffDelay = backoffDelay;
+    }
+
+    public void setBackoffRetries(int backoffRetries) {
+        this.backoffRetries = backoffRetries;
+    }
+}
@@ -1,5 +1,7 @@
 package com.alibaba.otter.canal.client.adapter.es.core.support;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
@@ -67,5 +69,20 @@ public interface ESBulkRequest {
         boolean hasFailures();
 
         void processFailBulkResponse(String errorMsg);
+
+        /**
+         * @param errorMsg 错误信息前缀
+         * @param retryItems 稍后重试的条目下标, 不作为失败处理
+         */
+        default void processFailBulkResponse(String errorMsg, List<Integer> retryItems) {
+            processFailBulkResponse(errorMsg);
+        }
+
+        /**
+         * 被es拒绝(429)的条目下标, 这些条目可以稍后重试
+         */
+        default List<Integer> rejectedItems() {
+            return Collections.emptyList();
+        }
     }
 }
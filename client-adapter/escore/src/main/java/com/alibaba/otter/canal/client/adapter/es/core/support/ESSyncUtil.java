@@ -7,9 +7,11 @@ import java.sql.Blob;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -267,13 +269,82 @@ public class ESSyncUtil {
     }
 
     /**
-     * 拼接主键条件
+     * 拼接多行数据的主键条件，用于把多行的反查sql合并为一次查询
      *
      * @param mapping
-     * @param data
+     * @param dataList
      * @return
      */
-    public static String pkConditionSql(ESMapping mapping, Map<String, Object> data) {
+    public static String pkConditionSql(ESMapping mapping, List<Map<String, Object>> dataList) {
+        Set<ColumnItem> idColumns = mainTableIdColumns(mapping);
+        TableItem mainTable = mapping.getSchemaItem().getMainTable();
+
+        List<String> columns = new ArrayList<>();
+        for (ColumnItem idColumn : idColumns) {
+            columns.add(mainTable.getAlias() != null ? mainTable.getAlias() + "." + idColumn.getColumnName() : idColumn
+                .getColumnName());
+        }
+
+        Set<List<Object>> rows = new LinkedHashSet<>();
+        for (Map<String, Object> data : dataList) {
+            List<Object> values = new ArrayList<>(idColumns.size());
+            for (ColumnItem idColumn : idColumns) {
+                values.add(data.get(idColumn.getColumnName()));
+            }
+            rows.add(values);
+        }
+        return " " + inCondition(columns, rows, null) + " ";
+    }
+
+    /**
+     * 拼接多行的等值条件，单列时为col IN (v1,v2)，多列时为(c1=v1 AND c2=v2) OR (...)
+     *
+     * @param columns 条件字段
+     * @param rows 每行的字段值，和columns一一对应
+     * @param params 不为null时使用?占位符，字段值按顺序放入params
+     * @return
+     */
+    public static String inCondition(List<String> columns, Collection<List<Object>> rows, List<Object> params) {
+        StringBuilder condition = new StringBuilder();
+        if (columns.size() == 1) {
+            condition.append(columns.get(0)).append(" IN (");
+            for (List<Object> row : rows) {
+                appendValue(condition, row.get(0), params);
+                condition.append(",");
+            }
+            condition.setCharAt(condition.length() - 1, ')');
+            return condition.toString();
+        }
+
+        for (List<Object> row : rows) {
+            if (condition.length() > 0) {
+                condition.append(" OR ");
+            }
+            condition.append("(");
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    condition.append(" AND ");
+                }
+                condition.append(columns.get(i)).append("=");
+                appendValue(condition, row.get(i), params);
+            }
+            condition.append(")");
+        }
+        return rows.size() > 1 ? "(" + condition + ")" : condition.toString();
+    }
+
+    private static void appendValue(StringBuilder condition, Object value, List<Object> params) {
+        if (params != null) {
+            condition.append("?");
+            params.add(value);
+        } else if (value instanceof String) {
+            condition.append("'").append(value).append("'");
+        } else {
+            condition.append(value);
+        }
+    }
+
+    private static Set<ColumnItem> mainTableIdColumns(ESMapping mapping) {
         Set<ColumnItem> idColumns = new LinkedHashSet<>();
         SchemaItem schemaItem = mapping.getSchemaItem();
 
@@ -289,36 +360,10 @@ public class ESSyncUtil {
         if (idColumns.isEmpty()) {
             throw new RuntimeException("Not found primary key field in main table");
         }
-
-        // 拼接condition
-        StringBuilder condition = new StringBuilder(" ");
-        for (ColumnItem idColumn : idColumns) {
-            Object idVal = data.get(idColumn.getColumnName());
-            if (mainTable.getAlias() != null) condition.append(mainTable.getAlias()).append(".");
-            condition.append(idColumn.getColumnName()).append("=");
-            if (idVal instanceof String) {
-                condition.append("'").append(idVal).append("' AND ");
-            } else {
-                condition.append(idVal).append(" AND ");
-            }
-        }
-
-        if (condition.toString().endsWith("AND ")) {
-            int len2 = condition.length();
-            condition.delete(len2 - 4, len2);
-        }
-        return condition.toString();
+        return idColumns;
     }
 
     public static String appendCondition(String sql, String condition) {
         return sql + " WHERE " + condition + " ";
     }
-
-    public static void appendCondition(StringBuilder sql, Object value, String owner, String columnName) {
-        if (value instanceof String) {
-            sql.append(owner).append(".").append(columnName).append("='").append(value).append("'  AND ");
-        } else {
-            sql.append(owner).append(".").append(columnName).append("=").append(value).append("  AND ");
-        }
-    }
 }
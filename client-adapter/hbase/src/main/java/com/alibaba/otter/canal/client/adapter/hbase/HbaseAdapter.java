@@ -111,6 +111,7 @@ public class HbaseAdapter implements OuterAdapter {
         for (Dml dml : dmls) {
             sync(dml);
         }
+        hbaseTemplate.flush(); // 批次统一提交
     }
 
     private void sync(Dml dml) {
@@ -199,6 +199,7 @@ public class MappingConfig implements AdapterConfig {
         private List<String>            excludeColumns;                             // 不映射的字段
         private ColumnItem              rowKeyColumn;                               // rowKey字段
         private String                  etlCondition;                               // etl条件sql
+        private String                  etlSplitColumn;                             // etl分片字段
 
         private Map<String, ColumnItem> columnItems        = new LinkedHashMap<>(); // 转换后的字段映射列表
         private Set<String>             families           = new LinkedHashSet<>(); // column family列表
@@ -281,6 +282,14 @@ public class MappingConfig implements AdapterConfig {
             this.etlCondition = etlCondition;
         }
 
+        public String getEtlSplitColumn() {
+            return etlSplitColumn;
+        }
+
+        public void setEtlSplitColumn(String etlSplitColumn) {
+            this.etlSplitColumn = etlSplitColumn;
+        }
+
         public void setColumns(Map<String, String> columns) {
             this.columns = columns;
 
@@ -70,6 +70,7 @@ public class HbaseEtlService extends AbstractEtlService {
         try {
             MappingConfig.HbaseMapping hbaseMapping = config.getHbaseMapping();
 
+            boolean rebuild = false;
             if (params != null && params.size() == 1 && "rebuild".equalsIgnoreCase(params.get(0))) {
                 logger.info(hbaseMapping.getHbaseTable() + " rebuild is starting!");
                 // 如果表存在则删除
@@ -78,6 +79,7 @@ public class HbaseEtlService extends AbstractEtlService {
                     hbaseTemplate.deleteTable(hbaseMapping.getHbaseTable());
                 }
                 params = null;
+                rebuild = true;
             } else {
                 logger.info(hbaseMapping.getHbaseTable() + " etl is starting!");
             }
@@ -87,7 +89,8 @@ public class HbaseEtlService extends AbstractEtlService {
             String sql = "SELECT * FROM `" + config.getHbaseMapping().getDatabase() + "`.`" + hbaseMapping.getTable()
                          + "`";
 
-            return super.importData(sql, params);
+            // 重建表后需要从头导入, 不使用之前的checkpoint
+            return super.importData(sql, params, !rebuild);
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
             errMsg.add("HBase etl error ==>" + e.getMessage());
@@ -96,6 +99,12 @@ public class HbaseEtlService extends AbstractEtlService {
         return etlResult;
     }
 
+    @Override
+    protected String getSplitColumn(DataSource ds) {
+        MappingConfig.HbaseMapping hbaseMapping = config.getHbaseMapping();
+        return getPrimaryKey(ds, hbaseMapping.getDatabase(), hbaseMapping.getTable());
+    }
+
     /**
      * 执行导入
      */
@@ -258,6 +267,7 @@ public class HbaseEtlService extends AbstractEtlService {
         if (!complete && !rows.isEmpty()) {
             hbaseTemplate.puts(hbaseMapping.getHbaseTable(), rows);
         }
+        hbaseTemplate.flush();
 
     } catch (Exception e) {
         logger.error(hbaseMapping.getHbaseTable() + " etl failed! ==>" + e.getMessage(), e);
@@ -2,18 +2,27 @@ package com.alibaba.otter.canal.client.adapter.hbase.support;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HColumnDescriptor;
 import org.apache.hadoop.hbase.HTableDescriptor;
 import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.BufferedMutatorParams;
 import org.apache.hadoop.hbase.client.Connection;
 import org.apache.hadoop.hbase.client.ConnectionFactory;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.HBaseAdmin;
-import org.apache.hadoop.hbase.client.HTable;
+import org.apache.hadoop.hbase.client.Mutation;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.slf4j.Logger;
@@ -22,29 +31,143 @@ import org.slf4j.LoggerFactory;
 /**
  * HBase操作模板
  *
+ * <pre>
+ * 写入通过按表缓存的BufferedMutator异步提交:
+ * 1. 缓冲区大小由hbase.client.write.buffer配置
+ * 2. 每隔hbase.client.write.buffer.periodicflush.timeout.ms(默认1000ms, 0为关闭)后台flush一次
+ * 3. 缓冲区满时触发的flush和后台flush的失败都会记录下来, 在下一次flush()时抛出
+ * 4. adapter在每批dml同步完后调用flush(), 全部写入成功后才会ack
+ * 5. 同一张表在put和delete之间切换时先flush之前缓冲的数据, 保证rowkey变更时先删除旧行再写入, 不会在同一次rpc中乱序
+ * </pre>
+ *
  * @author machengyuan 2018-8-21 下午10:12:34
  * @version 1.0.0
  */
 public class HbaseTemplate {
 
-    private Logger        logger = LoggerFactory.getLogger(this.getClass());
+    private Logger                       logger     = LoggerFactory.getLogger(this.getClass());
 
-    private Configuration hbaseConfig;                                      // hbase配置对象
-    private Connection    conn;                                             // hbase连接
+    private Configuration                hbaseConfig;                                   // hbase配置对象
+    private Connection                   conn;                                          // hbase连接
+    private Map<String, BufferedMutator> mutators   = new ConcurrentHashMap<>();        // 表名对应的BufferedMutator
+    private Map<String, Boolean>         deleting   = new ConcurrentHashMap<>();        // 表名对应的最近一次写入是否为delete
+    private AtomicReference<IOException> asyncError = new AtomicReference<>();          // 后台flush的异常
+    private ScheduledExecutorService     flushExecutor;
 
     public HbaseTemplate(Configuration hbaseConfig){
+        this(hbaseConfig, null);
+    }
+
+    HbaseTemplate(Configuration hbaseConfig, Connection conn){
         this.hbaseConfig = hbaseConfig;
-        initConn();
+        if (conn != null) {
+            this.conn = conn;
+        } else {
+            initConn();
+        }
+
+        long flushInterval = hbaseConfig.getLong("hbase.client.write.buffer.periodicflush.timeout.ms", 1000L);
+        if (flushInterval > 0) {
+            flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "hbase-mutator-flush");
+                t.setDaemon(true);
+                return t;
+            });
+            flushExecutor.scheduleWithFixedDelay(this::periodicFlush,
+                flushInterval,
+                flushInterval,
+                TimeUnit.MILLISECONDS);
+        }
     }
 
     private void initConn() {
         try {
+            closeMutators();
             this.conn = ConnectionFactory.createConnection(hbaseConfig);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private BufferedMutator getMutator(String tableName) {
+        Connection connection = getConnection();
+        return mutators.computeIfAbsent(tableName, k -> {
+            BufferedMutatorParams params = new BufferedMutatorParams(TableName.valueOf(tableName))
+                .listener((e, mutator) -> {
+                    // 不在mutate()中抛出, 失败的数据已经被丢弃, 由flush()抛出让整批dml重新同步
+                    logger.error("Failed to write {} mutations to {}", e.getNumExceptions(), tableName, e);
+                    asyncError.compareAndSet(null, e);
+                });
+            try {
+                return connection.getBufferedMutator(params);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private void mutate(String tableName, List<? extends Mutation> mutations, boolean delete) throws IOException {
+        if (mutations.isEmpty()) {
+            return;
+        }
+
+        BufferedMutator mutator = getMutator(tableName);
+        Boolean lastDelete = deleting.put(tableName, delete);
+        if (lastDelete != null && lastDelete != delete) {
+            // put/delete交替时先提交之前的数据, 同一行的删除和写入分别在两次rpc中按顺序执行
+            mutator.flush();
+        }
+        mutator.mutate(mutations);
+    }
+
+    /**
+     * 提交所有表缓冲中的数据, 之前的写入失败也会在这里抛出
+     */
+    public void flush() {
+        IOException error = null;
+        for (BufferedMutator mutator : mutators.values()) {
+            try {
+                mutator.flush();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        IOException e = asyncError.getAndSet(null);
+        if (error == null) {
+            error = e;
+        }
+        if (error != null) {
+            logger.error(error.getMessage(), error);
+            throw new RuntimeException(error);
+        }
+    }
+
+    private void periodicFlush() {
+        for (BufferedMutator mutator : mutators.values()) {
+            try {
+                mutator.flush();
+            } catch (IOException e) {
+                asyncError.compareAndSet(null, e);
+            } catch (Throwable e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    private void closeMutators() {
+        for (BufferedMutator mutator : mutators.values()) {
+            try {
+                mutator.close();
+            } catch (IOException e) {
+                asyncError.compareAndSet(null, e);
+            }
+        }
+        mutators.clear();
+        deleting.clear();
+    }
+
     public Connection getConnection() {
         if (conn == null || conn.isAborted() || conn.isClosed()) {
             initConn();
@@ -109,12 +232,11 @@ public class HbaseTemplate {
     public Boolean put(String tableName, HRow hRow) {
         boolean flag = false;
         try {
-            HTable table = (HTable) getConnection().getTable(TableName.valueOf(tableName));
             Put put = new Put(hRow.getRowKey());
             for (HRow.HCell hCell : hRow.getCells()) {
                 put.addColumn(Bytes.toBytes(hCell.getFamily()), Bytes.toBytes(hCell.getQualifier()), hCell.getValue());
             }
-            table.put(put);
+            mutate(tableName, Collections.singletonList(put), false);
             flag = true;
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
@@ -134,7 +256,6 @@ public class HbaseTemplate {
     public Boolean puts(String tableName, List<HRow> rows) {
         boolean flag = false;
         try {
-            HTable table = (HTable) getConnection().getTable(TableName.valueOf(tableName));
             List<Put> puts = new ArrayList<>();
             for (HRow hRow : rows) {
                 Put put = new Put(hRow.getRowKey());
@@ -145,9 +266,7 @@ public class HbaseTemplate {
                 }
                 puts.add(put);
             }
-            if (!puts.isEmpty()) {
-                table.put(puts);
-            }
+            mutate(tableName, puts, false);
             flag = true;
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
@@ -166,15 +285,12 @@ public class HbaseTemplate {
     public Boolean deletes(String tableName, Set<byte[]> rowKeys) {
         boolean flag = false;
         try {
-            HTable table = (HTable) getConnection().getTable(TableName.valueOf(tableName));
             List<Delete> deletes = new ArrayList<>();
             for (byte[] rowKey : rowKeys) {
                 Delete delete = new Delete(rowKey);
                 deletes.add(delete);
             }
-            if (!deletes.isEmpty()) {
-                table.delete(deletes);
-            }
+            mutate(tableName, deletes, true);
             flag = true;
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
@@ -184,6 +300,10 @@ public class HbaseTemplate {
     }
 
     public void close() throws IOException {
+        if (flushExecutor != null) {
+            flushExecutor.shutdownNow();
+        }
+        closeMutators();
         if (conn != null) {
             conn.close();
         }
@@ -0,0 +1,148 @@
+package com.alibaba.otter.canal.client.adapter.hbase.support;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.BufferedMutatorParams;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HbaseTemplateTest {
+
+    private boolean      failOnMutate;
+    private List<String> operations = new ArrayList<>();
+
+    @Test
+    public void testMutateFailureThrownOnFlush() {
+        Configuration hbaseConfig = HBaseConfiguration.create();
+        hbaseConfig.setLong("hbase.client.write.buffer.periodicflush.timeout.ms", 0L);
+        HbaseTemplate hbaseTemplate = new HbaseTemplate(hbaseConfig, mockConnection());
+
+        // 缓冲区满时触发的flush失败, mutate本身不抛出
+        failOnMutate = true;
+        Assert.assertTrue(hbaseTemplate.puts("test", Collections.singletonList(row("1"))));
+        try {
+            hbaseTemplate.flush();
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof RetriesExhaustedWithDetailsException);
+        }
+
+        // 失败只抛出一次, 重新同步后正常提交
+        failOnMutate = false;
+        Assert.assertTrue(hbaseTemplate.puts("test", Collections.singletonList(row("1"))));
+        hbaseTemplate.flush();
+    }
+
+    @Test
+    public void testFlushBetweenDeleteAndPut() {
+        Configuration hbaseConfig = HBaseConfiguration.create();
+        hbaseConfig.setLong("hbase.client.write.buffer.periodicflush.timeout.ms", 0L);
+        HbaseTemplate hbaseTemplate = new HbaseTemplate(hbaseConfig, mockConnection());
+
+        // rowkey变更: 先删除旧行再写入新行, 两者不能在同一次提交中
+        hbaseTemplate.puts("test", Collections.singletonList(row("1")));
+        hbaseTemplate.deletes("test", Collections.singleton(Bytes.toBytes("1")));
+        hbaseTemplate.puts("test", Collections.singletonList(row("2")));
+        hbaseTemplate.puts("test", Collections.singletonList(row("3")));
+        hbaseTemplate.puts("other", Collections.singletonList(row("1")));
+        Assert.assertEquals(Arrays.asList("test:Put",
+            "test:flush",
+            "test:Delete",
+            "test:flush",
+            "test:Put",
+            "test:Put",
+            "other:Put"), operations);
+    }
+
+    private static HRow row(String rowKey) {
+        HRow hRow = new HRow(Bytes.toBytes(rowKey));
+        hRow.addCell("f", "c", Bytes.toBytes("v"));
+        return hRow;
+    }
+
+    private Connection mockConnection() {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[] { Connection.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getBufferedMutator":
+                        return new MockMutator((BufferedMutatorParams) args[0]);
+                    case "isAborted":
+                    case "isClosed":
+                        return false;
+                    default:
+                        return null;
+                }
+            });
+    }
+
+    private class MockMutator implements BufferedMutator {
+
+        private final BufferedMutatorParams params;
+
+        MockMutator(BufferedMutatorParams params){
+            this.params = params;
+        }
+
+        @Override
+        public TableName getName() {
+            return params.getTableName();
+        }
+
+        @Override
+        public Configuration getConfiguration() {
+            return null;
+        }
+
+        @Override
+        public void mutate(Mutation mutation) throws RetriesExhaustedWithDetailsException {
+            mutate(Collections.singletonList(mutation));
+        }
+
+        @Override
+        public void mutate(List<? extends Mutation> mutations) throws RetriesExhaustedWithDetailsException {
+            for (Mutation mutation : mutations) {
+                operations.add(getName().getNameAsString() + ":" + mutation.getClass().getSimpleName());
+            }
+            if (failOnMutate) {
+                List<Throwable> exceptions = new ArrayList<>();
+                List<Row> actions = new ArrayList<>();
+                List<String> hostnameAndPort = new ArrayList<>();
+                for (Mutation mutation : mutations) {
+                    exceptions.add(new RuntimeException("region server unavailable"));
+                    actions.add(mutation);
+                    hostnameAndPort.add("127.0.0.1:16020");
+                }
+                params.getListener()
+                    .onException(new RetriesExhaustedWithDetailsException(exceptions, actions, hostnameAndPort), this);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void flush() {
+            operations.add(getName().getNameAsString() + ":flush");
+        }
+
+        @Override
+        public long getWriteBufferSize() {
+            return 0;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.kudu.client.KuduException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -90,6 +91,9 @@ public class KuduAdapter implements OuterAdapter {
 
         String kudu_master = properties.get("kudu.master.address");
         kuduTemplate = new KuduTemplate(kudu_master);
+        if (properties.containsKey("kudu.session.bufferSpace")) {
+            kuduTemplate.setMutationBufferSpace(Integer.parseInt(properties.get("kudu.session.bufferSpace")));
+        }
         kuduSyncService = new KuduSyncService(kuduTemplate);
 
         kuduConfigMonitor = new KuduConfigMonitor();
@@ -103,7 +107,7 @@ public class KuduAdapter implements OuterAdapter {
         }
         for (Dml dml : dmls) {
             if (dml == null) {
-                return;
+                continue;
             }
             String destination = StringUtils.trimToEmpty(dml.getDestination());
             String groupId = StringUtils.trimToEmpty(dml.getGroupId());
@@ -136,6 +140,12 @@ public class KuduAdapter implements OuterAdapter {
                                                                                 + table);
             }
         }
+        // 批次统一提交
+        try {
+            kuduTemplate.flush();
+        } catch (KuduException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     @Override
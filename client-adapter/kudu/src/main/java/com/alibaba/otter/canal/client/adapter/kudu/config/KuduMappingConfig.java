@@ -96,6 +96,7 @@ public class KuduMappingConfig implements AdapterConfig {
         private Map<String, String> targetColumns;                      // 目标表字段映射
 
         private String              etlCondition;                       // etl条件sql
+        private String              etlSplitColumn;                     // etl分片字段
 
         private int                 readBatch   = 5000;
         private int                 commitBatch = 5000;                 // etl等批量提交大小
@@ -173,6 +174,14 @@ public class KuduMappingConfig implements AdapterConfig {
             this.etlCondition = etlCondition;
         }
 
+        public String getEtlSplitColumn() {
+            return etlSplitColumn;
+        }
+
+        public void setEtlSplitColumn(String etlSplitColumn) {
+            this.etlSplitColumn = etlSplitColumn;
+        }
+
         public int getReadBatch() {
             return readBatch;
         }
@@ -55,6 +55,12 @@ public class KuduEtlService extends AbstractEtlService {
         return importData(sql, params);
     }
 
+    @Override
+    protected String getSplitColumn(DataSource ds) {
+        KuduMappingConfig.KuduMapping kuduMapping = config.getKuduMapping();
+        return getPrimaryKey(ds, kuduMapping.getDatabase(), kuduMapping.getTable());
+    }
+
     @Override
     protected boolean executeSqlImport(DataSource ds, String sql, List<Object> values,
                                        AdapterConfig.AdapterMapping mapping, AtomicLong impCount, List<String> errMsg) {
@@ -113,9 +119,10 @@ public class KuduEtlService extends AbstractEtlService {
                     if (!dataList.isEmpty()) {
                         kuduTemplate.upsert(kuduMapping.getTargetTable(), dataList);
                     }
+                    kuduTemplate.flush();
                     return true;
 
-                } catch (SQLException | KuduException e) {
+                } catch (SQLException | KuduException | RuntimeException e) {
                     e.printStackTrace();
                     logger.error(kuduMapping.getTargetTable() + " etl failed! ==>" + e.getMessage(), e);
                     errMsg.add(kuduMapping.getTargetTable() + " etl failed! ==>" + e.getMessage());
@@ -3,26 +3,29 @@ package com.alibaba.otter.canal.client.adapter.kudu.support;
 import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 import org.apache.kudu.ColumnSchema;
-import org.apache.kudu.Schema;
 import org.apache.kudu.Type;
-import org.apache.kudu.client.Delete;
-import org.apache.kudu.client.Insert;
 import org.apache.kudu.client.KuduClient;
 import org.apache.kudu.client.KuduException;
 import org.apache.kudu.client.KuduScanner;
 import org.apache.kudu.client.KuduSession;
 import org.apache.kudu.client.KuduTable;
+import org.apache.kudu.client.Operation;
 import org.apache.kudu.client.OperationResponse;
 import org.apache.kudu.client.PartialRow;
+import org.apache.kudu.client.RowError;
+import org.apache.kudu.client.RowErrorsAndOverflowStatus;
 import org.apache.kudu.client.SessionConfiguration;
-import org.apache.kudu.client.Upsert;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,20 +35,27 @@ import org.slf4j.LoggerFactory;
  */
 public class KuduTemplate {
 
-    private Logger           logger          = LoggerFactory.getLogger(this.getClass());
+    private Logger                    logger              = LoggerFactory.getLogger(this.getClass());
 
-    private KuduClient       kuduClient;
-    private String           masters;
+    private KuduClient                kuduClient;
+    private String                    masters;
 
-    private final static int OPERATION_BATCH = 500;
+    private final static int          MAX_LOG_ERRORS      = 10;
 
-    private SimpleDateFormat sdf             = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private int                       mutationBufferSpace = 1000;                                // session缓冲的操作数, 缓冲满时同步flush
+    private Map<String, TableSession> sessions            = new ConcurrentHashMap<>();           // 表名对应的session
+
+    private SimpleDateFormat          sdf                 = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
     public KuduTemplate(String master_str){
         this.masters = master_str;
         checkClient();
     }
 
+    public void setMutationBufferSpace(int mutationBufferSpace) {
+        this.mutationBufferSpace = mutationBufferSpace;
+    }
+
     /**
      * 检车连接
      */
@@ -84,62 +94,7 @@ public class KuduTemplate {
      * @throws KuduException
      */
     public void delete(String tableName, List<Map<String, Object>> dataList) throws KuduException {
-        this.checkClient();
-        KuduTable kuduTable = kuduClient.openTable(tableName);
-        KuduSession session = kuduClient.newSession();
-        try {
-            session.setFlushMode(SessionConfiguration.FlushMode.MANUAL_FLUSH);
-            session.setMutationBufferSpace(OPERATION_BATCH);
-            // 获取元数据结构
-            Map<String, Type> metaMap = new HashMap<>();
-            Schema schema = kuduTable.getSchema();
-            for (ColumnSchema columnSchema : schema.getColumns()) {
-                String colName = columnSchema.getName().toLowerCase();
-                Type type = columnSchema.getType();
-                metaMap.put(colName, type);
-            }
-            int uncommit = 0;
-            for (Map<String, Object> data : dataList) {
-                Delete delete = kuduTable.newDelete();
-                PartialRow row = delete.getRow();
-                for (Map.Entry<String, Object> entry : data.entrySet()) {
-                    String name = entry.getKey().toLowerCase();
-                    Type type = metaMap.get(name);
-                    Object value = entry.getValue();
-                    fillRow(row, name, value, type); // 填充行数据
-                }
-                session.apply(delete);
-                // 对于手工提交, 需要buffer在未满的时候flush,这里采用了buffer一半时即提交
-                uncommit = uncommit + 1;
-                if (uncommit > OPERATION_BATCH / 3 * 2) {
-                    List<OperationResponse> delete_option = session.flush();
-                    if (delete_option.size() > 0) {
-                        OperationResponse response = delete_option.get(0);
-                        if (response.hasRowError()) {
-                            logger.error("delete row fail table name is :{} ", tableName);
-                            logger.error("error list is :{}", response.getRowError().getMessage());
-                        }
-                    }
-                    uncommit = 0;
-                }
-            }
-            List<OperationResponse> delete_option = session.flush();
-            if (delete_option.size() > 0) {
-                OperationResponse response = delete_option.get(0);
-                if (response.hasRowError()) {
-                    logger.error("delete row fail table name is :{} ", tableName);
-                    logger.error("error list is :{}", response.getRowError().getMessage());
-                }
-            }
-
-        } catch (KuduException e) {
-            logger.error("error message is :{}", dataList.toString());
-            throw e;
-        } finally {
-            if (!session.isClosed()) {
-                session.close();
-            }
-        }
+        apply(tableName, dataList, KuduTable::newDelete);
     }
 
     /**
@@ -150,62 +105,7 @@ public class KuduTemplate {
      * @throws KuduException
      */
     public void upsert(String tableName, List<Map<String, Object>> dataList) throws KuduException {
-        this.checkClient();
-        KuduTable kuduTable = kuduClient.openTable(tableName);
-        KuduSession session = kuduClient.newSession();
-        try {
-            session.setFlushMode(SessionConfiguration.FlushMode.MANUAL_FLUSH);
-            session.setMutationBufferSpace(OPERATION_BATCH);
-            // 获取元数据结构
-            Map<String, Type> metaMap = new HashMap<>();
-            Schema schema = kuduTable.getSchema();
-            for (ColumnSchema columnSchema : schema.getColumns()) {
-                String colName = columnSchema.getName().toLowerCase();
-                Type type = columnSchema.getType();
-                metaMap.put(colName, type);
-            }
-            int uncommit = 0;
-            for (Map<String, Object> data : dataList) {
-                Upsert upsert = kuduTable.newUpsert();
-                PartialRow row = upsert.getRow();
-                for (Map.Entry<String, Object> entry : data.entrySet()) {
-                    String name = entry.getKey().toLowerCase();
-                    Type type = metaMap.get(name);
-                    Object value = entry.getValue();
-                    fillRow(row, name, value, type); // 填充行数据
-                }
-                session.apply(upsert);
-                // 对于手工提交, 需要buffer在未满的时候flush,这里采用了buffer一半时即提交
-                uncommit = uncommit + 1;
-                if (uncommit > OPERATION_BATCH / 3 * 2) {
-                    List<OperationResponse> update_option = session.flush();
-                    if (update_option.size() > 0) {
-                        OperationResponse response = update_option.get(0);
-                        if (response.hasRowError()) {
-                            logger.error("update row fail table name is :{} ", tableName);
-                            logger.error("update list is :{}", response.getRowError().getMessage());
-                        }
-                    }
-                    uncommit = 0;
-                }
-            }
-            List<OperationResponse> update_option = session.flush();
-            if (update_option.size() > 0) {
-                OperationResponse response = update_option.get(0);
-                if (response.hasRowError()) {
-                    logger.error("update row fail table name is :{} ", tableName);
-                    logger.error("update list is :{}", response.getRowError().getMessage());
-                }
-            }
-        } catch (KuduException e) {
-            logger.error("error message is :{}", dataList.toString());
-            throw e;
-        } finally {
-            if (!session.isClosed()) {
-                session.close();
-            }
-        }
-
+        apply(tableName, dataList, KuduTable::newUpsert);
     }
 
     /**
@@ -216,63 +116,153 @@ public class KuduTemplate {
      * @throws KuduException
      */
     public void insert(String tableName, List<Map<String, Object>> dataList) throws KuduException {
-        this.checkClient();
-        KuduTable kuduTable = kuduClient.openTable(tableName);// 打开表
-        KuduSession session = kuduClient.newSession(); // 创建写session,kudu必须通过session写入
-        try {
-            session.setFlushMode(SessionConfiguration.FlushMode.MANUAL_FLUSH); // 采取Flush方式
-                                                                               // 手动刷新
-            session.setMutationBufferSpace(OPERATION_BATCH);
-            // 获取元数据结构
-            Map<String, Type> metaMap = new HashMap<>();
-            Schema schema = kuduTable.getSchema();
-            for (ColumnSchema columnSchema : schema.getColumns()) {
-                String colName = columnSchema.getName().toLowerCase();
-                Type type = columnSchema.getType();
-                metaMap.put(colName, type);
+        apply(tableName, dataList, KuduTable::newInsert);
+    }
+
+    /**
+     * 提交所有表session中缓冲的数据, 有行错误时抛出异常, 整批重新同步
+     *
+     * @throws KuduException
+     */
+    public void flush() throws KuduException {
+        for (Map.Entry<String, TableSession> entry : sessions.entrySet()) {
+            TableSession tableSession = entry.getValue();
+            synchronized (tableSession) {
+                flush(entry.getKey(), tableSession);
             }
-            int uncommit = 0;
-            for (Map<String, Object> data : dataList) {
-                Insert insert = kuduTable.newInsert();
-                PartialRow row = insert.getRow();
-                for (Map.Entry<String, Object> entry : data.entrySet()) {
-                    String name = entry.getKey().toLowerCase();
-                    Type type = metaMap.get(name);
-                    Object value = entry.getValue();
-                    fillRow(row, name, value, type); // 填充行数据
-                }
-                session.apply(insert);
-                // 对于手工提交, 需要buffer在未满的时候flush,这里采用了buffer一半时即提交
-                uncommit = uncommit + 1;
-                if (uncommit > OPERATION_BATCH / 3 * 2) {
-                    List<OperationResponse> insert_option = session.flush();
-                    if (insert_option.size() > 0) {
-                        OperationResponse response = insert_option.get(0);
-                        if (response.hasRowError()) {
-                            logger.error("insert row fail table name is :{} ", tableName);
-                            logger.error("insert list is :{}", response.getRowError().getMessage());
-                        }
+        }
+    }
+
+    /**
+     * 写入session, 缓冲满时同步flush, 同一个session的操作按写入顺序提交
+     */
+    private void apply(String tableName, List<Map<String, Object>> dataList,
+                       Function<KuduTable, Operation> newOperation) throws KuduException {
+        TableSession tableSession = getSession(tableName);
+        try {
+            synchronized (tableSession) {
+                for (Map<String, Object> data : dataList) {
+                    Operation operation = newOperation.apply(tableSession.table);
+                    PartialRow row = operation.getRow();
+                    for (Map.Entry<String, Object> entry : data.entrySet()) {
+                        String name = entry.getKey().toLowerCase();
+                        Type type = tableSession.metaMap.get(name);
+                        Object value = entry.getValue();
+                        fillRow(row, name, value, type); // 填充行数据
                     }
-                    uncommit = 0;
+                    if (tableSession.buffered >= mutationBufferSpace) {
+                        flush(tableName, tableSession);
+                    }
+                    tableSession.session.apply(operation);
+                    tableSession.buffered++;
                 }
             }
-            List<OperationResponse> insert_option = session.flush();
-            if (insert_option.size() > 0) {
-                OperationResponse response = insert_option.get(0);
-                if (response.hasRowError()) {
-                    logger.error("insert row fail table name is :{} ", tableName);
-                    logger.error("insert list is :{}", response.getRowError().getMessage());
+        } catch (KuduException e) {
+            logger.error("error message is :{}", dataList.toString());
+            // session可能已不可用, 下次重新创建
+            closeSession(tableName);
+            throw e;
+        }
+    }
+
+    private TableSession getSession(String tableName) throws KuduException {
+        TableSession tableSession = sessions.get(tableName);
+        if (tableSession == null) {
+            this.checkClient();
+            synchronized (sessions) {
+                tableSession = sessions.get(tableName);
+                if (tableSession == null) {
+                    tableSession = new TableSession(kuduClient.openTable(tableName));
+                    sessions.put(tableName, tableSession);
                 }
             }
+        }
+        return tableSession;
+    }
+
+    private void closeSession(String tableName) {
+        TableSession tableSession = sessions.remove(tableName);
+        if (tableSession != null) {
+            try {
+                tableSession.session.close();
+            } catch (Exception e) {
+                logger.error("close kudu session of table {} error: {}", tableName, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 同步提交session中缓冲的操作, 有行错误时抛出异常
+     */
+    private void flush(String tableName, TableSession tableSession) throws KuduException {
+        if (tableSession.buffered == 0) {
+            return;
+        }
+
+        List<OperationResponse> responses;
+        try {
+            responses = tableSession.session.flush();
         } catch (KuduException e) {
-            logger.error("error message is :{}", dataList.toString());
+            closeSession(tableName);
             throw e;
-        } finally {
-            if (!session.isClosed()) {
-                session.close();
+        }
+        tableSession.buffered = 0;
+
+        List<RowError> rowErrors = new ArrayList<>();
+        for (OperationResponse response : responses) {
+            if (response.hasRowError()) {
+                rowErrors.add(response.getRowError());
+            }
+        }
+        RowErrorsAndOverflowStatus pendingErrors = tableSession.session.getPendingErrors();
+        rowErrors.addAll(Arrays.asList(pendingErrors.getRowErrors()));
+        // 整批重新同步时重复插入/删除的行, 和目标数据一致, 不作为失败
+        int ignored = 0;
+        for (Iterator<RowError> it = rowErrors.iterator(); it.hasNext();) {
+            RowError rowError = it.next();
+            if (rowError.getErrorStatus().isAlreadyPresent() || rowError.getErrorStatus().isNotFound()) {
+                it.remove();
+                ignored++;
             }
         }
+        if (ignored > 0) {
+            logger.warn("ignore {} already present/not found rows of table {}", ignored, tableName);
+        }
+        if (rowErrors.isEmpty()) {
+            return;
+        }
 
+        logger.error("write row fail table name is :{}, error count is :{}{}",
+            tableName,
+            rowErrors.size(),
+            pendingErrors.isOverflowed() ? "(overflowed)" : "");
+        for (int i = 0; i < rowErrors.size() && i < MAX_LOG_ERRORS; i++) {
+            logger.error("error list is :{}", rowErrors.get(i).toString());
+        }
+        throw new RuntimeException("write " + rowErrors.size() + " rows to kudu table " + tableName + " failed, first error: "
+                                   + rowErrors.get(0));
+    }
+
+    /**
+     * 表对应的长连接session, 手动flush保证同一张表的操作按顺序提交
+     */
+    private class TableSession {
+
+        private final KuduTable         table;
+        private final Map<String, Type> metaMap = new HashMap<>(); // 元数据结构
+        private final KuduSession       session;
+        private int                     buffered;                  // session中未提交的操作数
+
+        TableSession(KuduTable table){
+            this.table = table;
+            for (ColumnSchema columnSchema : table.getSchema().getColumns()) {
+                metaMap.put(columnSchema.getName().toLowerCase(), columnSchema.getType());
+            }
+            session = kuduClient.newSession();
+            // AUTO_FLUSH_BACKGROUND在1.6.0中同一个tablet的操作可能被并发的批次乱序提交(KUDU-1767)
+            session.setFlushMode(SessionConfiguration.FlushMode.MANUAL_FLUSH);
+            session.setMutationBufferSpace(mutationBufferSpace);
+        }
     }
 
     /**
@@ -306,6 +296,9 @@ public class KuduTemplate {
      * @throws IOException
      */
     public void closeKuduClient() {
+        for (String tableName : sessions.keySet()) {
+            closeSession(tableName);
+        }
         if (kuduClient != null) {
             try {
                 kuduClient.close();
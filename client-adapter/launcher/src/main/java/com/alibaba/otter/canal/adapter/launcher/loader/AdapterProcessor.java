@@ -2,6 +2,7 @@ package com.alibaba.otter.canal.adapter.launcher.loader;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -16,6 +17,7 @@ import com.alibaba.otter.canal.adapter.launcher.config.SpringContext;
 import com.alibaba.otter.canal.client.adapter.OuterAdapter;
 import com.alibaba.otter.canal.client.adapter.support.CanalClientConfig;
 import com.alibaba.otter.canal.client.adapter.support.Dml;
+import com.alibaba.otter.canal.client.adapter.support.DmlCoalescer;
 import com.alibaba.otter.canal.client.adapter.support.MessageUtil;
 import com.alibaba.otter.canal.client.adapter.support.Util;
 import com.alibaba.otter.canal.connector.core.config.CanalConstants;
@@ -41,6 +43,7 @@ public class AdapterProcessor {
     private String                          canalDestination;                                                           // canal实例
     private String                          groupId                   = null;                                           // groupId
     private List<List<OuterAdapter>>        canalOuterAdapters;                                                         // 外部适配器
+    private Map<OuterAdapter, DmlCoalescer> coalescers;                                                                 // 适配器对应的变更合并
     private CanalClientConfig               canalClientConfig;                                                          // 配置
     private ExecutorService                 groupInnerExecutorService;                                                  // 组内工作线程池
     private volatile boolean                running                   = false;                                          // 是否运行中
@@ -51,11 +54,12 @@ public class AdapterProcessor {
     private SyncSwitch                      syncSwitch;
 
     public AdapterProcessor(CanalClientConfig canalClientConfig, String destination, String groupId,
-                            List<List<OuterAdapter>> canalOuterAdapters){
+                            List<List<OuterAdapter>> canalOuterAdapters, Map<OuterAdapter, DmlCoalescer> coalescers){
         this.canalClientConfig = canalClientConfig;
         this.canalDestination = destination;
         this.groupId = groupId;
         this.canalOuterAdapters = canalOuterAdapters;
+        this.coalescers = coalescers;
 
         this.groupInnerExecutorService = Util.newFixedThreadPool(canalOuterAdapters.size(), 5000L);
         syncSwitch = (SyncSwitch) SpringContext.getBean(SyncSwitch.class);
@@ -94,6 +98,11 @@ public class AdapterProcessor {
                     outerAdapters.forEach(adapter -> {
                         long begin = System.currentTimeMillis();
                         List<Dml> dmls = MessageUtil.flatMessage2Dml(canalDestination, groupId, commonMessages);
+                        // 同步前按主键合并同一批次内的变更
+                        DmlCoalescer coalescer = coalescers.get(adapter);
+                        if (coalescer != null) {
+                            dmls = coalescer.coalesce(dmls);
+                        }
                         batchSync(dmls, adapter);
 
                         if (logger.isDebugEnabled()) {
@@ -128,7 +137,9 @@ public class AdapterProcessor {
     }
 
     /**
-     * 分批同步
+     * 分批同步, 只在事务边界处切分批次, 避免同一个源库事务被拆分到两次同步中
+     * <br/>
+     * 事务未知(txId为空)的dml之间都可以切分, 单个事务超过syncMaxTxSize时在事务内部强制切分
      *
      * @param dmls
      * @param adapter
@@ -139,19 +150,25 @@ public class AdapterProcessor {
             adapter.sync(dmls);
         } else {
             int len = 0;
+            Long lastTxId = null;
+            int maxTxSize = canalClientConfig.getSyncMaxTxSize() == null ? Integer.MAX_VALUE : Math
+                .max(canalClientConfig.getSyncMaxTxSize(), canalClientConfig.getSyncBatchSize());
             List<Dml> dmlsBatch = new ArrayList<>();
             for (Dml dml : dmls) {
+                if ((len >= canalClientConfig.getSyncBatchSize()
+                     && (dml.getTxId() == null || !dml.getTxId().equals(lastTxId)))
+                    || len >= maxTxSize) {
+                    adapter.sync(dmlsBatch);
+                    dmlsBatch.clear();
+                    len = 0;
+                }
                 dmlsBatch.add(dml);
+                lastTxId = dml.getTxId();
                 if (dml.getData() == null || dml.getData().isEmpty()) {
                     len += 1;
                 } else {
                     len += dml.getData().size();
                 }
-                if (len >= canalClientConfig.getSyncBatchSize()) {
-                    adapter.sync(dmlsBatch);
-                    dmlsBatch.clear();
-                    len = 0;
-                }
             }
             if (!dmlsBatch.isEmpty()) {
                 adapter.sync(dmlsBatch);
@@ -4,6 +4,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -20,6 +21,7 @@ import org.springframework.core.env.StandardEnvironment;
 import com.alibaba.otter.canal.adapter.launcher.config.SpringContext;
 import com.alibaba.otter.canal.client.adapter.OuterAdapter;
 import com.alibaba.otter.canal.client.adapter.support.CanalClientConfig;
+import com.alibaba.otter.canal.client.adapter.support.DmlCoalescer;
 import com.alibaba.otter.canal.client.adapter.support.ExtensionLoader;
 import com.alibaba.otter.canal.client.adapter.support.OuterAdapterConfig;
 
@@ -52,8 +54,9 @@ public class CanalAdapterLoader {
             for (CanalClientConfig.Group group : canalAdapter.getGroups()) {
                 List<List<OuterAdapter>> canalOuterAdapterGroups = new CopyOnWriteArrayList<>();
                 List<OuterAdapter> canalOuterAdapters = new CopyOnWriteArrayList<>();
+                Map<OuterAdapter, DmlCoalescer> coalescers = new ConcurrentHashMap<>();
                 for (OuterAdapterConfig config : group.getOuterAdapters()) {
-                    loadAdapter(config, canalOuterAdapters);
+                    loadAdapter(config, canalOuterAdapters, coalescers);
                 }
                 canalOuterAdapterGroups.add(canalOuterAdapters);
 
@@ -63,7 +66,8 @@ public class CanalAdapterLoader {
                     f -> new AdapterProcessor(canalClientConfig,
                         canalAdapter.getInstance(),
                         group.getGroupId(),
-                        canalOuterAdapterGroups));
+                        canalOuterAdapterGroups,
+                        coalescers));
                 adapterProcessor.start();
 
                 logger.info("Start adapter for canal-client mq topic: {} succeed", canalAdapter.getInstance() + "-"
@@ -198,7 +202,8 @@ public class CanalAdapterLoader {
         // }
     }
 
-    private void loadAdapter(OuterAdapterConfig config, List<OuterAdapter> canalOutConnectors) {
+    private void loadAdapter(OuterAdapterConfig config, List<OuterAdapter> canalOutConnectors,
+                             Map<OuterAdapter, DmlCoalescer> coalescers) {
         try {
             OuterAdapter adapter;
             adapter = loader.getExtension(config.getName(), StringUtils.trimToEmpty(config.getKey()));
@@ -225,6 +230,10 @@ public class CanalAdapterLoader {
             adapter.init(config, evnProperties);
             Thread.currentThread().setContextClassLoader(cl);
             canalOutConnectors.add(adapter);
+            DmlCoalescer coalescer = new DmlCoalescer(config.getCoalesce());
+            if (!coalescer.isEmpty()) {
+                coalescers.put(adapter, coalescer);
+            }
             logger.info("Load canal adapter: {} succeed", config.getName());
         } catch (Exception e) {
             logger.error("Load canal adapter: {} failed", config.getName(), e);
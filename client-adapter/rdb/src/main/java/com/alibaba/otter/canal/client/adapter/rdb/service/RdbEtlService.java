@@ -47,6 +47,12 @@ public class RdbEtlService extends AbstractEtlService {
         return importData(sql, params);
     }
 
+    @Override
+    protected String getSplitColumn(DataSource srcDS) {
+        DbMapping dbMapping = config.getDbMapping();
+        return getPrimaryKey(srcDS, dbMapping.getDatabase(), dbMapping.getTable());
+    }
+
     /**
      * 执行导入
      */
@@ -1,13 +1,20 @@
 package com.alibaba.otter.canal.client.adapter.rdb.service;
 
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -39,31 +46,37 @@ import com.alibaba.otter.canal.client.adapter.support.Util;
  */
 public class RdbSyncService {
 
-    private static final Logger               logger  = LoggerFactory.getLogger(RdbSyncService.class);
+    private static final Logger               logger          = LoggerFactory.getLogger(RdbSyncService.class);
+    private static final int                  MAX_INSERT_ROWS = 500;                                   // 单条多值insert的最大行数
+    private static final int                  MAX_PARAMS      = 2000;                                  // 单条sql的最大参数个数
+    static final int                          MAX_UNIT_ITEMS  = 10000;                                 // 单个事务单元的最大行数, 超大事务按此拆分
 
     // 源库表字段类型缓存: instance.schema.table -> <columnName, jdbcType>
     private Map<String, Map<String, Integer>> columnsTypeCache;
 
-    private int                               threads = 3;
+    // 目标表唯一键缓存: instance.schema.table -> 唯一键字段列表
+    private Map<String, List<List<String>>>   uniqueKeysCache = new ConcurrentHashMap<>();
+
+    private int                               threads         = 3;
     private boolean                           skipDupException;
 
-    private List<SyncItem>[]                  dmlsPartition;
+    private List<SyncUnit>                    syncUnits       = new ArrayList<>(); // 当前批次按源库顺序排列的事务单元
+    private volatile Boolean                  multiValues;                         // 目标库是否支持多值insert
     private BatchExecutor[]                   batchExecutors;
     private ExecutorService[]                 executorThreads;
 
-    public List<SyncItem>[] getDmlsPartition() {
-        return dmlsPartition;
-    }
-
     public Map<String, Map<String, Integer>> getColumnsTypeCache() {
         return columnsTypeCache;
     }
 
+    public Map<String, List<List<String>>> getUniqueKeysCache() {
+        return uniqueKeysCache;
+    }
+
     public RdbSyncService(DataSource dataSource, Integer threads, boolean skipDupException){
         this(dataSource, threads, new ConcurrentHashMap<>(), skipDupException);
     }
 
-    @SuppressWarnings("unchecked")
     public RdbSyncService(DataSource dataSource, Integer threads, Map<String, Map<String, Integer>> columnsTypeCache,
                           boolean skipDupException){
         this.columnsTypeCache = columnsTypeCache;
@@ -72,11 +85,9 @@ public class RdbSyncService {
             if (threads != null) {
                 this.threads = threads;
             }
-            this.dmlsPartition = new List[this.threads];
             this.batchExecutors = new BatchExecutor[this.threads];
             this.executorThreads = new ExecutorService[this.threads];
             for (int i = 0; i < this.threads; i++) {
-                dmlsPartition[i] = new ArrayList<>();
                 batchExecutors[i] = new BatchExecutor(dataSource);
                 executorThreads[i] = Executors.newSingleThreadExecutor();
             }
@@ -88,6 +99,12 @@ public class RdbSyncService {
     /**
      * 批量同步回调
      *
+     * <pre>
+     * 1. 回调方法通过{@link #addSyncItems(MappingConfig, Dml)}收集当前批次的dml, 同一个源库事务的dml归为一个事务单元
+     * 2. 按目标表+主键+唯一键构建事务单元之间的依赖, 有冲突的事务单元合并到同一个分组并保持源库顺序
+     * 3. 分组分配给各个执行线程并行执行, 每个线程执行完所有分组后统一提交, 源库事务不会被拆分到多个连接
+     * </pre>
+     *
      * @param dmls 批量 DML
      * @param function 回调方法
      */
@@ -101,40 +118,49 @@ public class RdbSyncService {
                     function.apply(dml);
                 }
             }
-            if (toExecute) {
+            if (toExecute && !syncUnits.isEmpty()) {
+                List<List<SyncUnit>> unitsPartition = schedule();
                 List<Future<Boolean>> futures = new ArrayList<>();
-                for (int i = 0; i < threads; i++) {
+                for (int i = 0; i < unitsPartition.size(); i++) {
                     int j = i;
-                    if (dmlsPartition[j].isEmpty()) {
+                    if (unitsPartition.get(j).isEmpty()) {
                         // bypass
                         continue;
                     }
 
-                    futures.add(executorThreads[i].submit(() -> {
+                    futures.add(executorThreads[j].submit(() -> {
                         try {
-                            dmlsPartition[j].forEach(syncItem -> sync(batchExecutors[j],
-                                syncItem.config,
-                                syncItem.singleDml));
-                            dmlsPartition[j].clear();
+                            List<SyncItem> syncItems = new ArrayList<>();
+                            for (SyncUnit syncUnit : unitsPartition.get(j)) {
+                                syncItems.addAll(syncUnit.items);
+                            }
+                            sync(batchExecutors[j], syncItems);
                             batchExecutors[j].commit();
                             return true;
                         } catch (Throwable e) {
-                            dmlsPartition[j].clear();
                             batchExecutors[j].rollback();
                             throw new RuntimeException(e);
                         }
                     }));
                 }
 
-                futures.forEach(future -> {
+                // 等待所有线程结束后再关闭连接
+                RuntimeException exception = null;
+                for (Future<Boolean> future : futures) {
                     try {
                         future.get();
                     } catch (ExecutionException | InterruptedException e) {
-                        throw new RuntimeException(e);
+                        if (exception == null) {
+                            exception = new RuntimeException(e);
+                        }
                     }
-                });
+                }
+                if (exception != null) {
+                    throw exception;
+                }
             }
         } finally {
+            syncUnits.clear();
             for (BatchExecutor batchExecutor : batchExecutors) {
                 if (batchExecutor != null) {
                     batchExecutor.close();
@@ -154,6 +180,7 @@ public class RdbSyncService {
             if (dml.getIsDdl() != null && dml.getIsDdl() && StringUtils.isNotEmpty(dml.getSql())) {
                 // DDL
             columnsTypeCache.remove(dml.getDestination() + "." + dml.getDatabase() + "." + dml.getTable());
+            uniqueKeysCache.remove(dml.getDestination() + "." + dml.getDatabase() + "." + dml.getTable());
             return false;
         } else {
             // DML
@@ -177,28 +204,263 @@ public class RdbSyncService {
             }
 
             for (MappingConfig config : configMap.values()) {
-                boolean caseInsensitive = config.getDbMapping().isCaseInsensitive();
-                if (config.getConcurrent()) {
-                    List<SingleDml> singleDmls = SingleDml.dml2SingleDmls(dml, caseInsensitive);
-                    singleDmls.forEach(singleDml -> {
-                        int hash = pkHash(config.getDbMapping(), singleDml.getData());
-                        SyncItem syncItem = new SyncItem(config, singleDml);
-                        dmlsPartition[hash].add(syncItem);
-                    });
-                } else {
-                    int hash = 0;
-                    List<SingleDml> singleDmls = SingleDml.dml2SingleDmls(dml, caseInsensitive);
-                    singleDmls.forEach(singleDml -> {
-                        SyncItem syncItem = new SyncItem(config, singleDml);
-                        dmlsPartition[hash].add(syncItem);
-                    });
-                }
+                addSyncItems(config, dml);
             }
             return true;
         }
     }   );
     }
 
+    /**
+     * 将dml拆分为单行并加入当前批次, 与上一个dml属于同一个源库事务时加入同一个事务单元
+     * <br/>
+     * 事务未知(txId为空)时每个dml作为一个独立的单元, 事务单元超过{@link #MAX_UNIT_ITEMS}行时拆分, 避免整批串行执行
+     *
+     * @param config 对应配置对象
+     * @param dml DML
+     */
+    public void addSyncItems(MappingConfig config, Dml dml) {
+        List<SingleDml> singleDmls = SingleDml.dml2SingleDmls(dml, config.getDbMapping().isCaseInsensitive());
+        if (singleDmls.isEmpty()) {
+            return;
+        }
+
+        SyncUnit syncUnit = syncUnits.isEmpty() ? null : syncUnits.get(syncUnits.size() - 1);
+        // 没有事务边界信息时每个dml作为一个独立的单元
+        if (syncUnit == null
+            || (syncUnit.dml != dml && (dml.getTxId() == null || !dml.getTxId().equals(syncUnit.dml.getTxId())))) {
+            syncUnit = new SyncUnit();
+            syncUnits.add(syncUnit);
+        }
+        syncUnit.dml = dml;
+        for (SingleDml singleDml : singleDmls) {
+            if (syncUnit.items.size() >= MAX_UNIT_ITEMS) {
+                syncUnit = new SyncUnit();
+                syncUnit.dml = dml;
+                syncUnits.add(syncUnit);
+            }
+            syncUnit.items.add(new SyncItem(config, singleDml));
+        }
+    }
+
+    /**
+     * 按冲突关系将当前批次的事务单元分配给各个执行线程
+     *
+     * @return 每个线程需要顺序执行的事务单元
+     */
+    List<List<SyncUnit>> schedule() {
+        List<SyncUnit> units = syncUnits;
+        List<List<SyncUnit>> unitsPartition = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            unitsPartition.add(new ArrayList<>());
+        }
+        if (threads == 1 || units.size() == 1) {
+            unitsPartition.get(0).addAll(units);
+            return unitsPartition;
+        }
+
+        // 非并行配置、truncate以及没有主键的目标表, 整表作为一个冲突键
+        Set<String> tableLocks = new HashSet<>();
+        for (SyncUnit unit : units) {
+            for (SyncItem item : unit.items) {
+                DbMapping dbMapping = item.config.getDbMapping();
+                if (!item.config.getConcurrent() || "TRUNCATE".equalsIgnoreCase(item.singleDml.getType())
+                    || dbMapping.getTargetPk() == null || dbMapping.getTargetPk().isEmpty()) {
+                    tableLocks.add(SyncUtil.getDbTableName(dbMapping));
+                }
+            }
+        }
+
+        // 通过并查集合并存在相同冲突键的事务单元
+        int[] parent = new int[units.size()];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        Map<String, Integer> keyOwners = new HashMap<>();
+        Connection conn = batchExecutors[0].getConn();
+        for (int i = 0; i < units.size(); i++) {
+            for (SyncItem item : units.get(i).items) {
+                for (String key : conflictKeys(conn, item, tableLocks)) {
+                    Integer owner = keyOwners.putIfAbsent(key, i);
+                    if (owner != null) {
+                        parent[find(parent, i)] = find(parent, owner);
+                    }
+                }
+            }
+        }
+
+        Map<Integer, List<SyncUnit>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < units.size(); i++) {
+            groups.computeIfAbsent(find(parent, i), k -> new ArrayList<>()).add(units.get(i));
+        }
+
+        // 大的分组优先分配给当前负载最小的线程
+        List<List<SyncUnit>> sortedGroups = new ArrayList<>(groups.values());
+        sortedGroups.sort((g1, g2) -> Integer.compare(itemCount(g2), itemCount(g1)));
+        int[] loads = new int[threads];
+        for (List<SyncUnit> group : sortedGroups) {
+            int idx = 0;
+            for (int i = 1; i < threads; i++) {
+                if (loads[i] < loads[idx]) {
+                    idx = i;
+                }
+            }
+            unitsPartition.get(idx).addAll(group);
+            loads[idx] += itemCount(group);
+        }
+        return unitsPartition;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static int itemCount(List<SyncUnit> units) {
+        int count = 0;
+        for (SyncUnit unit : units) {
+            count += unit.items.size();
+        }
+        return count;
+    }
+
+    /**
+     * 获取单行变更的冲突键: 目标表+主键, 以及目标表+唯一键, 更新前后的值都参与冲突判断
+     */
+    private List<String> conflictKeys(Connection conn, SyncItem item, Set<String> tableLocks) {
+        DbMapping dbMapping = item.config.getDbMapping();
+        String tableName = SyncUtil.getDbTableName(dbMapping);
+        List<String> keys = new ArrayList<>();
+        if (tableLocks.contains(tableName)) {
+            keys.add(tableName);
+            return keys;
+        }
+
+        Map<String, Object> data = item.singleDml.getData();
+        Map<String, Object> old = item.singleDml.getOld();
+
+        List<String> pkColumns = new ArrayList<>();
+        for (Map.Entry<String, String> entry : dbMapping.getTargetPk().entrySet()) {
+            String srcColumnName = entry.getValue();
+            if (srcColumnName == null) {
+                srcColumnName = Util.cleanColumn(entry.getKey());
+            }
+            pkColumns.add(srcColumnName);
+        }
+        appendKeys(keys, tableName + "#pk", pkColumns, data, old);
+
+        List<List<String>> uniqueKeys = getTargetUniqueKeys(conn, item.config);
+        if (!uniqueKeys.isEmpty() && data != null) {
+            Map<String, String> srcColumns = new HashMap<>();
+            SyncUtil.getColumnsMap(dbMapping, data).forEach((targetColumnName, srcColumnName) -> {
+                if (srcColumnName == null) {
+                    srcColumnName = Util.cleanColumn(targetColumnName);
+                }
+                srcColumns.put(Util.cleanColumn(targetColumnName).toLowerCase(), srcColumnName);
+            });
+            for (List<String> uniqueKey : uniqueKeys) {
+                List<String> ukColumns = new ArrayList<>();
+                for (String targetColumnName : uniqueKey) {
+                    String srcColumnName = srcColumns.get(targetColumnName);
+                    if (srcColumnName == null) {
+                        // 唯一键字段没有映射, 无法判断冲突
+                        ukColumns = null;
+                        break;
+                    }
+                    ukColumns.add(srcColumnName);
+                }
+                if (ukColumns != null) {
+                    appendKeys(keys, tableName + "#" + String.join(",", uniqueKey), ukColumns, data, old);
+                }
+            }
+        }
+
+        if (keys.isEmpty()) {
+            // 取不到键值时退化为整表冲突
+            keys.add(tableName);
+        }
+        return keys;
+    }
+
+    private static void appendKeys(List<String> keys, String prefix, List<String> columns, Map<String, Object> data,
+                                   Map<String, Object> old) {
+        if (data == null) {
+            return;
+        }
+        StringBuilder key = new StringBuilder(prefix);
+        StringBuilder oldKey = new StringBuilder(prefix);
+        boolean hasNull = false;
+        boolean oldHasNull = false;
+        boolean changed = false;
+        for (String column : columns) {
+            Object value = data.get(column);
+            Object oldValue = value;
+            if (old != null && old.containsKey(column)) {
+                oldValue = old.get(column);
+                changed = true;
+            }
+            // 含有null的唯一键不会产生冲突, 只跳过为null的一侧
+            hasNull |= value == null;
+            oldHasNull |= oldValue == null;
+            key.append('|').append(value);
+            oldKey.append('|').append(oldValue);
+        }
+        if (!hasNull) {
+            keys.add(key.toString());
+        }
+        if (changed && !oldHasNull) {
+            keys.add(oldKey.toString());
+        }
+    }
+
+    /**
+     * 按顺序批量同步一组行变更
+     *
+     * <pre>
+     * 1. 连续的同一映射的insert合并为多值insert, 减少与目标库的交互
+     * 2. 连续的同一映射的update按主键合并为最终镜像, 目标表有唯一键时只合并相邻的同一主键, 避免调整执行顺序引起唯一键冲突
+     * 3. 其它操作以及修改了主键的update逐条执行
+     * </pre>
+     *
+     * @param batchExecutor 批量事务执行器
+     * @param syncItems 行变更
+     */
+    public void sync(BatchExecutor batchExecutor, List<SyncItem> syncItems) {
+        int i = 0;
+        while (i < syncItems.size()) {
+            SyncItem syncItem = syncItems.get(i);
+            String type = syncItem.singleDml.getType();
+            int j = i + 1;
+            if ("INSERT".equalsIgnoreCase(type) || "UPDATE".equalsIgnoreCase(type)) {
+                while (j < syncItems.size() && syncItems.get(j).config == syncItem.config
+                       && type.equalsIgnoreCase(syncItems.get(j).singleDml.getType())) {
+                    j++;
+                }
+            }
+            if (j - i == 1) {
+                sync(batchExecutor, syncItem.config, syncItem.singleDml);
+            } else {
+                List<SingleDml> dmls = new ArrayList<>(j - i);
+                for (int k = i; k < j; k++) {
+                    dmls.add(syncItems.get(k).singleDml);
+                }
+                try {
+                    if ("INSERT".equalsIgnoreCase(type)) {
+                        insert(batchExecutor, syncItem.config, dmls);
+                    } else {
+                        update(batchExecutor, syncItem.config, dmls);
+                    }
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            i = j;
+        }
+    }
+
     /**
      * 单条 dml 同步
      *
@@ -235,15 +497,47 @@ public class RdbSyncService {
      * @param dml DML数据
      */
     private void insert(BatchExecutor batchExecutor, MappingConfig config, SingleDml dml) throws SQLException {
-        Map<String, Object> data = dml.getData();
-        if (data == null || data.isEmpty()) {
+        insert(batchExecutor, config, Collections.singletonList(dml));
+    }
+
+    /**
+     * 批量插入操作, 目标库支持时按多值insert分批执行
+     *
+     * @param config 配置项
+     * @param dmls DML数据
+     */
+    private void insert(BatchExecutor batchExecutor, MappingConfig config, List<SingleDml> dmls) throws SQLException {
+        List<Map<String, Object>> rows = new ArrayList<>(dmls.size());
+        for (SingleDml dml : dmls) {
+            if (dml.getData() != null && !dml.getData().isEmpty()) {
+                rows.add(dml.getData());
+            }
+        }
+        if (rows.isEmpty()) {
             return;
         }
 
         DbMapping dbMapping = config.getDbMapping();
 
-        Map<String, String> columnsMap = SyncUtil.getColumnsMap(dbMapping, data);
+        Map<String, String> columnsMap = SyncUtil.getColumnsMap(dbMapping, rows.get(0));
+
+        Map<String, Integer> ctype = getTargetColumnType(batchExecutor.getConn(), config);
+
+        int batchRows = 1;
+        if (rows.size() > 1 && isMultiValues(batchExecutor.getConn())) {
+            batchRows = Math.max(1, Math.min(MAX_INSERT_ROWS, MAX_PARAMS / Math.max(1, columnsMap.size())));
+        }
+        for (int from = 0; from < rows.size(); from += batchRows) {
+            insertRows(batchExecutor,
+                dbMapping,
+                columnsMap,
+                ctype,
+                rows.subList(from, Math.min(from + batchRows, rows.size())));
+        }
+    }
 
+    private void insertRows(BatchExecutor batchExecutor, DbMapping dbMapping, Map<String, String> columnsMap,
+                            Map<String, Integer> ctype, List<Map<String, Object>> rows) throws SQLException {
         StringBuilder insertSql = new StringBuilder();
         insertSql.append("INSERT INTO ").append(SyncUtil.getDbTableName(dbMapping)).append(" (");
 
@@ -252,30 +546,35 @@ public class RdbSyncService {
             .append("`")
             .append(","));
         int len = insertSql.length();
-        insertSql.delete(len - 1, len).append(") VALUES (");
+        insertSql.delete(len - 1, len).append(") VALUES ");
         int mapLen = columnsMap.size();
-        for (int i = 0; i < mapLen; i++) {
-            insertSql.append("?,");
+        for (int r = 0; r < rows.size(); r++) {
+            insertSql.append("(");
+            for (int i = 0; i < mapLen; i++) {
+                insertSql.append("?,");
+            }
+            len = insertSql.length();
+            insertSql.delete(len - 1, len).append("),");
         }
         len = insertSql.length();
-        insertSql.delete(len - 1, len).append(")");
-
-        Map<String, Integer> ctype = getTargetColumnType(batchExecutor.getConn(), config);
+        insertSql.delete(len - 1, len);
 
         List<Map<String, ?>> values = new ArrayList<>();
-        for (Map.Entry<String, String> entry : columnsMap.entrySet()) {
-            String targetColumnName = entry.getKey();
-            String srcColumnName = entry.getValue();
-            if (srcColumnName == null) {
-                srcColumnName = Util.cleanColumn(targetColumnName);
-            }
+        for (Map<String, Object> data : rows) {
+            for (Map.Entry<String, String> entry : columnsMap.entrySet()) {
+                String targetColumnName = entry.getKey();
+                String srcColumnName = entry.getValue();
+                if (srcColumnName == null) {
+                    srcColumnName = Util.cleanColumn(targetColumnName);
+                }
 
-            Integer type = ctype.get(Util.cleanColumn(targetColumnName).toLowerCase());
-            if (type == null) {
-                throw new RuntimeException("Target column: " + targetColumnName + " not matched");
+                Integer type = ctype.get(Util.cleanColumn(targetColumnName).toLowerCase());
+                if (type == null) {
+                    throw new RuntimeException("Target column: " + targetColumnName + " not matched");
+                }
+                Object value = data.get(srcColumnName);
+                BatchExecutor.setValue(values, type, value);
             }
-            Object value = data.get(srcColumnName);
-            BatchExecutor.setValue(values, type, value);
         }
 
         try {
@@ -285,14 +584,95 @@ public class RdbSyncService {
                 && (e.getMessage().contains("Duplicate entry") || e.getMessage().startsWith("ORA-00001:"))) {
                 // ignore
                 // TODO 增加更多关系数据库的主键冲突的错误码
+                if (rows.size() > 1) {
+                    // 多值insert整条失败, 逐行重试以跳过冲突的行
+                    for (Map<String, Object> row : rows) {
+                        insertRows(batchExecutor, dbMapping, columnsMap, ctype, Collections.singletonList(row));
+                    }
+                }
             } else {
                 throw e;
             }
         }
         if (logger.isTraceEnabled()) {
-            logger.trace("Insert into target table, sql: {}", insertSql);
+            logger.trace("Insert into target table, rows: {}, sql: {}", rows.size(), insertSql);
+        }
+
+    }
+
+    /**
+     * 目标库是否支持 INSERT ... VALUES (...),(...) 语法
+     */
+    private boolean isMultiValues(Connection conn) {
+        if (multiValues == null) {
+            try {
+                String productName = conn.getMetaData().getDatabaseProductName();
+                // oracle不支持多值insert
+                multiValues = productName == null || !productName.toLowerCase().contains("oracle");
+            } catch (SQLException e) {
+                logger.warn("Get database product name failed, disable multi-values insert", e);
+                multiValues = false;
+            }
+        }
+        return multiValues;
+    }
+
+    /**
+     * 批量更新操作, 同一主键的多次更新合并为最终镜像后执行
+     *
+     * @param config 配置项
+     * @param dmls DML数据
+     */
+    private void update(BatchExecutor batchExecutor, MappingConfig config, List<SingleDml> dmls) throws SQLException {
+        DbMapping dbMapping = config.getDbMapping();
+        // 目标表没有主键以外的唯一键时, 不同主键的更新可以任意调整顺序
+        boolean reorder = getTargetUniqueKeys(batchExecutor.getConn(), config).isEmpty();
+        Map<List<Object>, SingleDml> merged = new LinkedHashMap<>();
+        for (SingleDml dml : dmls) {
+            List<Object> pk = updatePk(dbMapping, dml);
+            if (pk == null) {
+                // 修改了主键或者主键为空, 之前合并的更新需要先执行
+                flushUpdates(batchExecutor, config, merged);
+                update(batchExecutor, config, dml);
+                continue;
+            }
+            SingleDml former = merged.get(pk);
+            if (former == null && !reorder) {
+                flushUpdates(batchExecutor, config, merged);
+            }
+            merged.put(pk, former == null ? dml : SingleDml.mergeUpdate(former, dml));
         }
+        flushUpdates(batchExecutor, config, merged);
+    }
 
+    private void flushUpdates(BatchExecutor batchExecutor, MappingConfig config,
+                              Map<List<Object>, SingleDml> merged) throws SQLException {
+        for (SingleDml dml : merged.values()) {
+            update(batchExecutor, config, dml);
+        }
+        merged.clear();
+    }
+
+    /**
+     * 取update的主键值, 修改了主键或者主键值为空时返回null
+     */
+    private static List<Object> updatePk(DbMapping dbMapping, SingleDml dml) {
+        if (dml.getData() == null || dbMapping.getTargetPk().isEmpty()) {
+            return null;
+        }
+        List<Object> pk = new ArrayList<>(dbMapping.getTargetPk().size());
+        for (Map.Entry<String, String> entry : dbMapping.getTargetPk().entrySet()) {
+            String srcColumnName = entry.getValue();
+            if (srcColumnName == null) {
+                srcColumnName = Util.cleanColumn(entry.getKey());
+            }
+            Object value = dml.getData().get(srcColumnName);
+            if (value == null || (dml.getOld() != null && dml.getOld().containsKey(srcColumnName))) {
+                return null;
+            }
+            pk.add(value);
+        }
+        return pk;
     }
 
     /**
@@ -468,45 +848,82 @@ public class RdbSyncService {
         sql.delete(len - 4, len);
     }
 
-    public static class SyncItem {
+    /**
+     * 获取目标表的唯一键, 不包含主键
+     *
+     * @param conn sql connection
+     * @param config 映射配置
+     * @return 唯一键字段(小写)列表
+     */
+    private List<List<String>> getTargetUniqueKeys(Connection conn, MappingConfig config) {
+        DbMapping dbMapping = config.getDbMapping();
+        String cacheKey = config.getDestination() + "." + dbMapping.getDatabase() + "." + dbMapping.getTable();
+        List<List<String>> uniqueKeys = uniqueKeysCache.get(cacheKey);
+        if (uniqueKeys == null) {
+            Map<String, Map<Short, String>> indexes = new LinkedHashMap<>();
+            try {
+                DatabaseMetaData metaData = conn.getMetaData();
+                String targetDb = dbMapping.getTargetDb();
+                String targetTable = Util.cleanColumn(dbMapping.getTargetTable());
+                // mysql中库名对应catalog, 其它数据库对应schema
+                try (ResultSet rs = metaData.getIndexInfo(targetDb, null, targetTable, true, true)) {
+                    readUniqueIndexes(rs, indexes);
+                }
+                if (indexes.isEmpty() && StringUtils.isNotEmpty(targetDb)) {
+                    try (ResultSet rs = metaData.getIndexInfo(null, targetDb, targetTable, true, true)) {
+                        readUniqueIndexes(rs, indexes);
+                    }
+                }
+            } catch (SQLException e) {
+                logger.warn("Get unique keys of target table: {} failed, use primary key only",
+                    SyncUtil.getDbTableName(dbMapping),
+                    e);
+            }
 
-        private MappingConfig config;
-        private SingleDml     singleDml;
+            Set<String> pkColumns = new HashSet<>();
+            dbMapping.getTargetPk().keySet().forEach(pk -> pkColumns.add(Util.cleanColumn(pk).toLowerCase()));
+            uniqueKeys = new ArrayList<>();
+            for (Map<Short, String> index : indexes.values()) {
+                List<String> columns = new ArrayList<>(index.values());
+                if (!pkColumns.equals(new HashSet<>(columns))) {
+                    uniqueKeys.add(columns);
+                }
+            }
+            uniqueKeysCache.put(cacheKey, uniqueKeys);
+        }
+        return uniqueKeys;
+    }
 
-        public SyncItem(MappingConfig config, SingleDml singleDml){
-            this.config = config;
-            this.singleDml = singleDml;
+    private static void readUniqueIndexes(ResultSet rs, Map<String, Map<Short, String>> indexes) throws SQLException {
+        while (rs.next()) {
+            String indexName = rs.getString("INDEX_NAME");
+            String columnName = rs.getString("COLUMN_NAME");
+            if (indexName == null || columnName == null || rs.getBoolean("NON_UNIQUE")) {
+                continue;
+            }
+            indexes.computeIfAbsent(indexName, k -> new TreeMap<>())
+                .put(rs.getShort("ORDINAL_POSITION"), columnName.toLowerCase());
         }
     }
 
     /**
-     * 取主键hash
+     * 同一个源库事务内的所有行变更, 作为一个整体在同一个连接中执行和提交
      */
-    public int pkHash(DbMapping dbMapping, Map<String, Object> d) {
-        return pkHash(dbMapping, d, null);
+    static class SyncUnit {
+
+        Dml            dml;                         // 最近加入的dml, 用于判断是否属于同一个事务
+        List<SyncItem> items = new ArrayList<>();
     }
 
-    public int pkHash(DbMapping dbMapping, Map<String, Object> d, Map<String, Object> o) {
-        int hash = 0;
-        // 取主键
-        for (Map.Entry<String, String> entry : dbMapping.getTargetPk().entrySet()) {
-            String targetColumnName = entry.getKey();
-            String srcColumnName = entry.getValue();
-            if (srcColumnName == null) {
-                srcColumnName = Util.cleanColumn(targetColumnName);
-            }
-            Object value = null;
-            if (o != null && o.containsKey(srcColumnName)) {
-                value = o.get(srcColumnName);
-            } else if (d != null) {
-                value = d.get(srcColumnName);
-            }
-            if (value != null) {
-                hash += value.hashCode();
-            }
+    public static class SyncItem {
+
+        private MappingConfig config;
+        private SingleDml     singleDml;
+
+        public SyncItem(MappingConfig config, SingleDml singleDml){
+            this.config = config;
+            this.singleDml = singleDml;
         }
-        hash = Math.abs(hash) % threads;
-        return Math.abs(hash);
     }
 
     public void close() {
@@ -1,6 +1,7 @@
 package com.alibaba.otter.canal.client.adapter.rdb.support;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -104,6 +105,38 @@ public class SingleDml {
         return dml2SingleDmls(dml, false);
     }
 
+    /**
+     * 合并同一主键的两次update: 取后一次的数据镜像, 变更字段取两次的并集并保留最早的旧值
+     *
+     * @param former 先执行的update
+     * @param latter 后执行的update
+     * @return 合并后的update, 不修改原有对象
+     */
+    public static SingleDml mergeUpdate(SingleDml former, SingleDml latter) {
+        SingleDml singleDml = new SingleDml();
+        singleDml.setDestination(latter.getDestination());
+        singleDml.setDatabase(latter.getDatabase());
+        singleDml.setTable(latter.getTable());
+        singleDml.setType(latter.getType());
+        singleDml.setData(latter.getData());
+        if (former.getOld() == null) {
+            singleDml.setOld(latter.getOld());
+        } else if (latter.getOld() == null) {
+            singleDml.setOld(former.getOld());
+        } else {
+            Map<String, Object> old;
+            if (former.getOld() instanceof LinkedCaseInsensitiveMap) {
+                old = new LinkedCaseInsensitiveMap<>();
+            } else {
+                old = new LinkedHashMap<>();
+            }
+            old.putAll(former.getOld());
+            latter.getOld().forEach(old::putIfAbsent);
+            singleDml.setOld(old);
+        }
+        return singleDml;
+    }
+
     private static <V> LinkedCaseInsensitiveMap<V> toCaseInsensitiveMap(Map<String, V> data) {
         LinkedCaseInsensitiveMap map = new LinkedCaseInsensitiveMap();
         map.putAll(data);
@@ -0,0 +1,258 @@
+package com.alibaba.otter.canal.client.adapter.rdb.service;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.client.adapter.rdb.config.MappingConfig;
+import com.alibaba.otter.canal.client.adapter.rdb.service.RdbSyncService.SyncUnit;
+import com.alibaba.otter.canal.client.adapter.support.Dml;
+import com.alibaba.otter.canal.client.adapter.support.MessageUtil;
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.Message;
+
+/**
+ * 按主键/唯一键冲突合并事务单元的调度测试
+ */
+public class RdbSyncServiceScheduleTest {
+
+    private RdbSyncService syncService;
+    private MappingConfig  config;
+
+    @Before
+    public void setUp() {
+        Connection conn = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[] { Connection.class },
+            (proxy, method, args) -> null);
+        DataSource dataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class[] { DataSource.class },
+            (proxy, method, args) -> "getConnection".equals(method.getName()) ? conn : null);
+        syncService = new RdbSyncService(dataSource, 3, false);
+
+        MappingConfig.DbMapping dbMapping = new MappingConfig.DbMapping();
+        dbMapping.setDatabase("test");
+        dbMapping.setTable("user");
+        dbMapping.setTargetTable("user");
+        dbMapping.getTargetPk().put("id", "id");
+        dbMapping.setMapAll(true);
+        config = new MappingConfig();
+        config.setDestination("example");
+        config.setConcurrent(true);
+        config.setDbMapping(dbMapping);
+        // 目标表在email上有唯一键
+        syncService.getUniqueKeysCache()
+            .put("example.test.user", Collections.singletonList(Collections.singletonList("email")));
+    }
+
+    @After
+    public void tearDown() {
+        syncService.close();
+    }
+
+    @Test
+    public void testPkChanged() {
+        Dml update = dml("UPDATE", row(2, "a", "x"), old(1, null));
+        Dml updateOld = dml("UPDATE", row(1, "b", "y"), old(null, "c"));
+        Dml insert = dml("INSERT", row(3, "d", "z"), null);
+
+        List<List<SyncUnit>> partitions = schedule(update, updateOld, insert);
+        // 主键从1改为2之后, 再修改主键为1的行需要在同一个线程中按顺序执行
+        Assert.assertEquals(partitionOf(partitions, update), partitionOf(partitions, updateOld));
+        Assert.assertNotEquals(partitionOf(partitions, update), partitionOf(partitions, insert));
+        Assert.assertTrue(indexOf(partitions, update) < indexOf(partitions, updateOld));
+    }
+
+    @Test
+    public void testUkChanged() {
+        Dml update = dml("UPDATE", row(1, "b", "x"), old(null, "a"));
+        Dml insert = dml("INSERT", row(2, "a", "y"), null);
+        Dml other = dml("INSERT", row(3, "c", "z"), null);
+
+        List<List<SyncUnit>> partitions = schedule(update, insert, other);
+        // 唯一键旧值被释放后才能插入
+        Assert.assertEquals(partitionOf(partitions, update), partitionOf(partitions, insert));
+        Assert.assertNotEquals(partitionOf(partitions, update), partitionOf(partitions, other));
+    }
+
+    @Test
+    public void testUkSetNull() {
+        Dml update = dml("UPDATE", row(1, null, "x"), old(null, "a"));
+        Dml insert = dml("INSERT", row(2, "a", "y"), null);
+        Dml nullUk1 = dml("INSERT", row(3, null, "z"), null);
+        Dml nullUk2 = dml("INSERT", row(4, null, "w"), null);
+
+        List<List<SyncUnit>> partitions = schedule(update, insert, nullUk1, nullUk2);
+        // 唯一键改为null时旧值仍然参与冲突判断
+        Assert.assertEquals(partitionOf(partitions, update), partitionOf(partitions, insert));
+        // 唯一键都为null的行之间没有冲突
+        Assert.assertNotEquals(partitionOf(partitions, nullUk1), partitionOf(partitions, nullUk2));
+        Assert.assertNotEquals(partitionOf(partitions, update), partitionOf(partitions, nullUk1));
+        Assert.assertNotEquals(partitionOf(partitions, update), partitionOf(partitions, nullUk2));
+    }
+
+    @Test
+    public void testBeginFiltered() {
+        List<CanalEntry.Entry> entries = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            entries.add(insertEntry(i));
+        }
+        // 过滤了事务头尾时事务未知, 按行调度
+        List<Dml> dmls = MessageUtil.parse4Dml("example", "", new Message(1L, entries));
+        for (Dml dml : dmls) {
+            Assert.assertNull(dml.getTxId());
+        }
+        List<List<SyncUnit>> partitions = schedule(dmls.toArray(new Dml[0]));
+        for (List<SyncUnit> partition : partitions) {
+            Assert.assertFalse(partition.isEmpty());
+        }
+    }
+
+    @Test
+    public void testBeginNotFiltered() {
+        List<CanalEntry.Entry> entries = new ArrayList<>();
+        entries.add(transactionEntry(CanalEntry.EntryType.TRANSACTIONBEGIN));
+        for (int i = 1; i <= 4; i++) {
+            entries.add(insertEntry(i));
+        }
+        entries.add(transactionEntry(CanalEntry.EntryType.TRANSACTIONEND));
+        // END之后不在事务中的数据事务未知
+        entries.add(insertEntry(5));
+        List<Dml> dmls = MessageUtil.parse4Dml("example", "", new Message(1L, entries));
+        Assert.assertEquals(Long.valueOf(1L), dmls.get(0).getTxId());
+        Assert.assertNull(dmls.get(4).getTxId());
+
+        // 完整的事务作为一个单元
+        List<List<SyncUnit>> partitions = schedule(dmls.toArray(new Dml[0]));
+        Assert.assertEquals(2, unitCount(partitions));
+        Assert.assertEquals(4, partitions.get(partitionOf(partitions, dmls.get(3))).get(0).items.size());
+    }
+
+    @Test
+    public void testSplitOversizedTransaction() {
+        List<Map<String, Object>> datas = new ArrayList<>();
+        for (int i = 0; i <= RdbSyncService.MAX_UNIT_ITEMS; i++) {
+            datas.add(row(i, "e" + i, "n"));
+        }
+        Dml insert = dml("INSERT", row(0, "e0", "n"), null);
+        insert.setData(datas);
+        insert.setTxId(1L);
+
+        // 唯一键各不相同, 拆分之后的两个单元可以并行
+        List<List<SyncUnit>> partitions = schedule(insert);
+        Assert.assertEquals(2, unitCount(partitions));
+        Assert.assertEquals(RdbSyncService.MAX_UNIT_ITEMS, partitions.get(0).get(0).items.size());
+        Assert.assertEquals(1, partitions.get(1).get(0).items.size());
+    }
+
+    private List<List<SyncUnit>> schedule(Dml... dmls) {
+        for (Dml dml : dmls) {
+            syncService.addSyncItems(config, dml);
+        }
+        return syncService.schedule();
+    }
+
+    private static int partitionOf(List<List<SyncUnit>> partitions, Dml dml) {
+        for (int i = 0; i < partitions.size(); i++) {
+            for (SyncUnit unit : partitions.get(i)) {
+                if (unit.dml == dml) {
+                    return i;
+                }
+            }
+        }
+        throw new IllegalArgumentException("dml not scheduled");
+    }
+
+    private static int unitCount(List<List<SyncUnit>> partitions) {
+        int count = 0;
+        for (List<SyncUnit> partition : partitions) {
+            count += partition.size();
+        }
+        return count;
+    }
+
+    private static int indexOf(List<List<SyncUnit>> partitions, Dml dml) {
+        List<SyncUnit> units = partitions.get(partitionOf(partitions, dml));
+        for (int i = 0; i < units.size(); i++) {
+            if (units.get(i).dml == dml) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Dml dml(String type, Map<String, Object> data, Map<String, Object> old) {
+        Dml dml = new Dml();
+        dml.setDestination("example");
+        dml.setDatabase("test");
+        dml.setTable("user");
+        dml.setType(type);
+        dml.setIsDdl(false);
+        dml.setPkNames(Collections.singletonList("id"));
+        List<Map<String, Object>> datas = new ArrayList<>();
+        datas.add(data);
+        dml.setData(datas);
+        if (old != null) {
+            List<Map<String, Object>> olds = new ArrayList<>();
+            olds.add(old);
+            dml.setOld(olds);
+        }
+        return dml;
+    }
+
+    private static CanalEntry.Entry insertEntry(int id) {
+        CanalEntry.RowData rowData = CanalEntry.RowData.newBuilder()
+            .addAfterColumns(CanalEntry.Column.newBuilder()
+                .setName("id")
+                .setIsKey(true)
+                .setSqlType(4)
+                .setValue(String.valueOf(id)))
+            .addAfterColumns(CanalEntry.Column.newBuilder().setName("email").setSqlType(12).setValue("e" + id))
+            .build();
+        return CanalEntry.Entry.newBuilder()
+            .setEntryType(CanalEntry.EntryType.ROWDATA)
+            .setHeader(CanalEntry.Header.newBuilder().setSchemaName("test").setTableName("user"))
+            .setStoreValue(CanalEntry.RowChange.newBuilder()
+                .setEventType(CanalEntry.EventType.INSERT)
+                .addRowDatas(rowData)
+                .build()
+                .toByteString())
+            .build();
+    }
+
+    private static CanalEntry.Entry transactionEntry(CanalEntry.EntryType entryType) {
+        return CanalEntry.Entry.newBuilder()
+            .setEntryType(entryType)
+            .setHeader(CanalEntry.Header.newBuilder())
+            .build();
+    }
+
+    private static Map<String, Object> row(Object id, Object email, Object name) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("email", email);
+        row.put("name", name);
+        return row;
+    }
+
+    private static Map<String, Object> old(Object id, Object email) {
+        Map<String, Object> old = new LinkedHashMap<>();
+        if (id != null) {
+            old.put("id", id);
+        }
+        if (email != null) {
+            old.put("email", email);
+        }
+        return old;
+    }
+}
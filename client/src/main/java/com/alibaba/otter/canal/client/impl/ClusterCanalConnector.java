@@ -26,6 +26,7 @@ public class ClusterCanalConnector implements CanalConnector {
     private int                     idleTimeout   = 60 * 60 * 1000;
     private int                     retryTimes    = 3;                                       // 设置-1时可以subscribe阻塞等待时优雅停机
     private int                     retryInterval = 5000;                                    // 重试的时间间隔，默认5秒
+    private int                     pipelineDepth = 1;                                       // 允许同时发出的get请求数
     private CanalNodeAccessStrategy accessStrategy;
     private SimpleCanalConnector    currentConnector;
     private String                  destination;
@@ -54,6 +55,7 @@ public class ClusterCanalConnector implements CanalConnector {
                     };
                     currentConnector.setSoTimeout(soTimeout);
                     currentConnector.setIdleTimeout(idleTimeout);
+                    currentConnector.setPipelineDepth(pipelineDepth);
                     if (filter != null) {
                         currentConnector.setFilter(filter);
                     }
@@ -308,6 +310,14 @@ public class ClusterCanalConnector implements CanalConnector {
         this.idleTimeout = idleTimeout;
     }
 
+    public int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
+    public void setPipelineDepth(int pipelineDepth) {
+        this.pipelineDepth = pipelineDepth;
+    }
+
     public int getRetryTimes() {
         return retryTimes;
     }
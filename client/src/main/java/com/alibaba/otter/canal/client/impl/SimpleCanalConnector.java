@@ -12,6 +12,7 @@ import java.nio.channels.SocketChannel;
 import java.nio.channels.WritableByteChannel;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -33,8 +34,10 @@ import com.alibaba.otter.canal.protocol.CanalPacket.ClientRollback;
 import com.alibaba.otter.canal.protocol.CanalPacket.Compression;
 import com.alibaba.otter.canal.protocol.CanalPacket.Get;
 import com.alibaba.otter.canal.protocol.CanalPacket.Handshake;
+import com.alibaba.otter.canal.protocol.CanalPacket.Messages;
 import com.alibaba.otter.canal.protocol.CanalPacket.Packet;
 import com.alibaba.otter.canal.protocol.CanalPacket.PacketType;
+import com.alibaba.otter.canal.protocol.CanalPacket.Stream;
 import com.alibaba.otter.canal.protocol.CanalPacket.Sub;
 import com.alibaba.otter.canal.protocol.CanalPacket.Unsub;
 import com.alibaba.otter.canal.protocol.ClientIdentity;
@@ -78,6 +81,10 @@ public class SimpleCanalConnector implements CanalConnector {
     private Object               writeDataLock         = new Object();
 
     private volatile boolean     running               = false;
+    private volatile boolean     streaming             = false;                                              // 是否处于服务端流式推送模式
+    private LinkedList<byte[]>   streamBuffer          = new LinkedList<>();                                 // 停止推送时收到的剩余数据
+    private int                  pipelineDepth         = 1;                                                  // 允许同时发出的get请求数，大于1时开启pipeline
+    private int                  outstandingGets       = 0;                                                  // 已发出未收到响应的get请求数
 
     public SimpleCanalConnector(SocketAddress address, String username, String password, String destination){
         this(address, username, password, destination, 60000, 60 * 60 * 1000);
@@ -200,6 +207,9 @@ public class SimpleCanalConnector implements CanalConnector {
     }
 
     private void doDisconnect() throws CanalClientException {
+        streaming = false;
+        streamBuffer.clear();
+        outstandingGets = 0;
         if (readableChannel != null) {
             quietlyClose(readableChannel);
             readableChannel = null;
@@ -231,6 +241,9 @@ public class SimpleCanalConnector implements CanalConnector {
         if (!running) {
             return;
         }
+        if (outstandingGets > 0) {
+            rollback(); // 丢弃pipeline中未读取的数据，避免跳过这部分batch
+        }
         try {
             writeWithHeader(Packet.newBuilder()
                 .setType(PacketType.SUBSCRIPTION)
@@ -260,6 +273,12 @@ public class SimpleCanalConnector implements CanalConnector {
         if (!running) {
             return;
         }
+        if (streaming) {
+            stopStream();
+        }
+        if (outstandingGets > 0) {
+            rollback();
+        }
         try {
             writeWithHeader(Packet.newBuilder()
                 .setType(PacketType.UNSUBSCRIPTION)
@@ -301,31 +320,49 @@ public class SimpleCanalConnector implements CanalConnector {
             return null;
         }
         try {
+            if (!streamBuffer.isEmpty()) {
+                return CanalMessageDeserializer.deserializer(streamBuffer.removeFirst(), lazyParseEntry);
+            } else if (streaming) {
+                // 服务端按照startStream时的参数推送，直接读取下一个数据包即可
+                return receiveMessages();
+            }
+
             int size = (batchSize <= 0) ? 1000 : batchSize;
             long time = (timeout == null || timeout < 0) ? -1 : timeout; // -1代表不做timeout控制
             if (unit == null) {
                 unit = TimeUnit.MILLISECONDS;
             }
 
-            writeWithHeader(Packet.newBuilder()
-                .setType(PacketType.GET)
-                .setBody(Get.newBuilder()
-                    .setAutoAck(false)
-                    .setDestination(clientIdentity.getDestination())
-                    .setClientId(String.valueOf(clientIdentity.getClientId()))
-                    .setFetchSize(size)
-                    .setTimeout(time)
-                    .setUnit(unit.ordinal())
-                    .build()
-                    .toByteString())
-                .build()
-                .toByteArray());
-            return receiveMessages();
+            // pipeline模式下补齐未响应的get请求，服务端按照请求顺序返回，batchId也是递增的
+            while (outstandingGets < Math.max(pipelineDepth, 1)) {
+                writeGet(size, time, unit);
+                outstandingGets++;
+            }
+
+            byte[] data = readNextPacket();
+            outstandingGets--;
+            return CanalMessageDeserializer.deserializer(data, lazyParseEntry);
         } catch (IOException e) {
             throw new CanalClientException(e);
         }
     }
 
+    private void writeGet(int size, long time, TimeUnit unit) throws IOException {
+        writeWithHeader(Packet.newBuilder()
+            .setType(PacketType.GET)
+            .setBody(Get.newBuilder()
+                .setAutoAck(false)
+                .setDestination(clientIdentity.getDestination())
+                .setClientId(String.valueOf(clientIdentity.getClientId()))
+                .setFetchSize(size)
+                .setTimeout(time)
+                .setUnit(unit.ordinal())
+                .build()
+                .toByteString())
+            .build()
+            .toByteArray());
+    }
+
     private Message receiveMessages() throws IOException {
         byte[] data = readNextPacket();
         return CanalMessageDeserializer.deserializer(data, lazyParseEntry);
@@ -352,19 +389,36 @@ public class SimpleCanalConnector implements CanalConnector {
         }
     }
 
+    /**
+     * 回滚指定batchId，流式推送模式或pipeline中还有未读取的响应时会回滚所有未ack的batch，并丢弃已收到未处理的数据
+     */
     public void rollback(long batchId) throws CanalClientException {
         waitClientRunning();
+        // pipeline中未读取的响应会被丢弃，其中的batch也需要一起回滚，否则服务端的batch不连续，后续ack都会失败
         ClientRollback ca = ClientRollback.newBuilder()
             .setDestination(clientIdentity.getDestination())
             .setClientId(String.valueOf(clientIdentity.getClientId()))
-            .setBatchId(batchId)
+            .setBatchId(streaming || outstandingGets > 0 ? 0 : batchId)
             .build();
         try {
+            // 回滚之后会重新获取，缓存的数据可以直接丢弃
+            streamBuffer.clear();
             writeWithHeader(Packet.newBuilder()
                 .setType(PacketType.CLIENTROLLBACK)
                 .setBody(ca.toByteString())
                 .build()
                 .toByteArray());
+            if (streaming) {
+                Ack ack = readStreamAck(false);
+                if (ack.getErrorCode() > 0) {
+                    throw new CanalClientException("failed to rollback with reason: " + ack.getErrorMessage());
+                }
+            }
+            // rollback在pipeline中的get之后执行，这些响应中的batch都已经被回滚，直接丢弃
+            while (outstandingGets > 0) {
+                readNextPacket();
+                outstandingGets--;
+            }
         } catch (IOException e) {
             throw new CanalClientException(e);
         }
@@ -375,8 +429,129 @@ public class SimpleCanalConnector implements CanalConnector {
         rollback(0);// 0代笔未设置
     }
 
+    public void startStream(int batchSize, int window) throws CanalClientException {
+        startStream(batchSize, window, null, null);
+    }
+
+    /**
+     * 开启服务端流式推送，之后通过{@linkplain #getWithoutAck(int)}读取推送的数据，不再发起GET请求
+     *
+     * <pre>
+     * 1. window代表允许未ack的最大batch数，每ack一个batch归还一个window
+     * 2. timeout代表无数据时服务端推送空包的间隔，默认1秒
+     * 3. 推送期间batchSize/timeout以startStream时为准，getWithoutAck的参数会被忽略
+     * </pre>
+     */
+    public void startStream(int batchSize, int window, Long timeout, TimeUnit unit) throws CanalClientException {
+        waitClientRunning();
+        if (!running || streaming) {
+            return;
+        }
+        if (window <= 0) {
+            throw new CanalClientException("window should be positive");
+        }
+        if (outstandingGets > 0) {
+            rollback();
+        }
+        try {
+            int size = (batchSize <= 0) ? 1000 : batchSize;
+            long time = (timeout == null || timeout < 0) ? -1 : timeout;
+            if (unit == null) {
+                unit = TimeUnit.MILLISECONDS;
+            }
+
+            writeWithHeader(Packet.newBuilder()
+                .setType(PacketType.STREAM)
+                .setBody(Stream.newBuilder()
+                    .setDestination(clientIdentity.getDestination())
+                    .setClientId(String.valueOf(clientIdentity.getClientId()))
+                    .setFetchSize(size)
+                    .setWindow(window)
+                    .setTimeout(time)
+                    .setUnit(unit.ordinal())
+                    .build()
+                    .toByteString())
+                .build()
+                .toByteArray());
+            Packet p = Packet.parseFrom(readNextPacket());
+            Ack ack = Ack.parseFrom(p.getBody());
+            if (ack.getErrorCode() > 0) {
+                throw new CanalClientException("failed to start stream with reason: " + ack.getErrorMessage());
+            }
+            streaming = true;
+        } catch (IOException e) {
+            throw new CanalClientException(e);
+        }
+    }
+
+    /**
+     * 停止服务端流式推送，停止前已推送的数据会被缓存，后续的getWithoutAck优先返回
+     */
+    public void stopStream() throws CanalClientException {
+        waitClientRunning();
+        if (!running || !streaming) {
+            return;
+        }
+        try {
+            writeWithHeader(Packet.newBuilder()
+                .setType(PacketType.STREAM)
+                .setBody(Stream.newBuilder()
+                    .setDestination(clientIdentity.getDestination())
+                    .setClientId(String.valueOf(clientIdentity.getClientId()))
+                    .setWindow(0)
+                    .build()
+                    .toByteString())
+                .build()
+                .toByteArray());
+            Ack ack = readStreamAck(true);
+            streaming = false;
+            if (ack.getErrorCode() > 0) {
+                throw new CanalClientException("failed to stop stream with reason: " + ack.getErrorMessage());
+            }
+        } catch (IOException e) {
+            throw new CanalClientException(e);
+        }
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
+    /**
+     * 设置允许同时发出的get请求数，大于1时getWithoutAck会预先发出后续的get请求，隐藏网络往返的延迟
+     *
+     * <pre>
+     * 1. ack本身不等待响应，pipeline中的batch需要按照batchId顺序ack
+     * 2. rollback/subscribe/unsubscribe会丢弃pipeline中未读取的数据，并回滚所有未ack的batch，由服务端回滚后重新获取
+     * 3. pipeline中的请求使用发出时的batchSize/timeout参数
+     * </pre>
+     */
+    public void setPipelineDepth(int pipelineDepth) {
+        this.pipelineDepth = pipelineDepth;
+    }
+
     // ==================== helper method ====================
 
+    /**
+     * 流式推送模式下读取ACK，之前收到的推送数据根据keep决定是否缓存
+     */
+    private Ack readStreamAck(boolean keep) throws IOException {
+        while (true) {
+            byte[] data = readNextPacket();
+            Packet p = Packet.parseFrom(data);
+            if (p.getType() == PacketType.ACK) {
+                return Ack.parseFrom(p.getBody());
+            } else if (keep && p.getType() == PacketType.MESSAGES
+                       && Messages.parseFrom(p.getBody()).getBatchId() != -1) {
+                streamBuffer.add(data);
+            }
+        }
+    }
+
     private void writeWithHeader(byte[] body) throws IOException {
         writeWithHeader(writableChannel, body);
     }
@@ -0,0 +1,146 @@
+package com.alibaba.otter.canal.client.impl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.CanalPacket.Ack;
+import com.alibaba.otter.canal.protocol.CanalPacket.ClientAck;
+import com.alibaba.otter.canal.protocol.CanalPacket.ClientRollback;
+import com.alibaba.otter.canal.protocol.CanalPacket.Compression;
+import com.alibaba.otter.canal.protocol.CanalPacket.Handshake;
+import com.alibaba.otter.canal.protocol.CanalPacket.Messages;
+import com.alibaba.otter.canal.protocol.CanalPacket.Packet;
+import com.alibaba.otter.canal.protocol.CanalPacket.PacketType;
+import com.alibaba.otter.canal.protocol.Message;
+import com.google.protobuf.ByteString;
+
+public class SimpleCanalConnectorPipelineTest {
+
+    private ServerSocket       serverSocket;
+    private Thread             serverThread;
+    private final List<String> errors = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0);
+        serverThread = new Thread(this::serve);
+        serverThread.setDaemon(true);
+        serverThread.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        serverSocket.close();
+    }
+
+    @Test
+    public void testRollbackThenAck() {
+        SimpleCanalConnector connector = new SimpleCanalConnector(new InetSocketAddress("127.0.0.1",
+            serverSocket.getLocalPort()), "", "", "example", 10000);
+        connector.setRollbackOnConnect(false);
+        connector.setPipelineDepth(3);
+        connector.connect();
+        try {
+            connector.subscribe();
+            Message message = connector.getWithoutAck(100);
+            Assert.assertEquals(1L, message.getId());
+
+            // pipeline中还有batch 2,3未读取, rollback需要一起回滚
+            connector.rollback(message.getId());
+
+            message = connector.getWithoutAck(100);
+            Assert.assertEquals(4L, message.getId());
+            connector.ack(message.getId());
+            message = connector.getWithoutAck(100);
+            Assert.assertEquals(5L, message.getId());
+            connector.ack(message.getId());
+            // 等待服务端处理完ack
+            connector.getWithoutAck(100);
+        } finally {
+            connector.disconnect();
+        }
+        Assert.assertTrue(errors.toString(), errors.isEmpty());
+    }
+
+    /**
+     * 模拟服务端的batch管理: batch按get的顺序分配, ack必须是第一个未ack的batch, rollback(0)回滚所有batch
+     */
+    private void serve() {
+        try (Socket socket = serverSocket.accept()) {
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            LinkedList<Long> batches = new LinkedList<>();
+            long nextBatchId = 1;
+
+            write(output, Packet.newBuilder()
+                .setVersion(1)
+                .setType(PacketType.HANDSHAKE)
+                .setBody(Handshake.newBuilder()
+                    .setSeeds(ByteString.copyFromUtf8("seeds"))
+                    .setSupportedCompressions(Compression.NONE)
+                    .build()
+                    .toByteString())
+                .build());
+            while (true) {
+                byte[] body = new byte[input.readInt()];
+                input.readFully(body);
+                Packet packet = Packet.parseFrom(body);
+                switch (packet.getType()) {
+                    case CLIENTAUTHENTICATION:
+                    case SUBSCRIPTION:
+                        write(output, Packet.newBuilder()
+                            .setType(PacketType.ACK)
+                            .setBody(Ack.getDefaultInstance().toByteString())
+                            .build());
+                        break;
+                    case GET:
+                        batches.add(nextBatchId);
+                        write(output, Packet.newBuilder()
+                            .setType(PacketType.MESSAGES)
+                            .setBody(Messages.newBuilder().setBatchId(nextBatchId++).build().toByteString())
+                            .build());
+                        break;
+                    case CLIENTACK:
+                        long ackId = ClientAck.parseFrom(packet.getBody()).getBatchId();
+                        if (batches.isEmpty() || batches.getFirst() != ackId) {
+                            errors.add("batchId:" + ackId + " is not the firstly:" + batches);
+                        } else {
+                            batches.removeFirst();
+                        }
+                        break;
+                    case CLIENTROLLBACK:
+                        long rollbackId = ClientRollback.parseFrom(packet.getBody()).getBatchId();
+                        if (rollbackId == 0) {
+                            batches.clear();
+                        } else {
+                            batches.remove(rollbackId);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            // 客户端断开
+        }
+    }
+
+    private static void write(DataOutputStream output, Packet packet) throws IOException {
+        byte[] body = packet.toByteArray();
+        output.writeInt(body.length);
+        output.write(body);
+        output.flush();
+    }
+}
@@ -0,0 +1,81 @@
+package com.alibaba.otter.canal.common.utils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 主动释放mmap映射的内存，避免映射区域一直等到GC才回收，导致虚拟内存/文件句柄堆积
+ *
+ * <pre>
+ * 1. java 9及以上: sun.misc.Unsafe.invokeCleaner(ByteBuffer)
+ * 2. java 8: ((sun.nio.ch.DirectBuffer) buffer).cleaner().clean()
+ * </pre>
+ *
+ * 均通过反射调用，不可用时退化为依赖GC回收。释放之后不能再访问该buffer，调用方需要保证没有其他引用
+ *
+ * @since 1.1.5
+ */
+public class MappedBufferUtils {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedBufferUtils.class);
+
+    private static final Cleaner CLEANER = createCleaner();
+
+    /**
+     * 释放direct/mapped buffer，buffer为null或者非direct时忽略
+     */
+    public static void unmap(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || CLEANER == null) {
+            return;
+        }
+
+        try {
+            CLEANER.clean(buffer);
+        } catch (Throwable e) {
+            logger.warn("unmap buffer failed, fallback to gc", e);
+        }
+    }
+
+    private static Cleaner createCleaner() {
+        try {
+            if (javaVersion() >= 9) {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                final Object unsafe = field.get(null);
+                final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                return buffer -> invokeCleaner.invoke(unsafe, buffer);
+            } else {
+                final Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                final Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+                return buffer -> {
+                    Object c = cleaner.invoke(buffer);
+                    if (c != null) {
+                        clean.invoke(c);
+                    }
+                };
+            }
+        } catch (Throwable e) {
+            logger.warn("mapped buffer cleaner is unavailable, mapped buffers will be released by gc", e);
+            return null;
+        }
+    }
+
+    private static int javaVersion() {
+        String version = System.getProperty("java.specification.version", "1.8");
+        if (version.startsWith("1.")) {
+            version = version.substring(2);
+        }
+        int end = version.indexOf('.');
+        return Integer.parseInt(end > 0 ? version.substring(0, end) : version);
+    }
+
+    private interface Cleaner {
+
+        void clean(ByteBuffer buffer) throws Exception;
+    }
+}
@@ -20,6 +20,7 @@ public class CanalConstants {
     public static final String CANAL_MQ_DATABASE_HASH         = ROOT + "." + "mq.database.hash";
     public static final String CANAL_MQ_BUILD_THREAD_SIZE     = ROOT + "." + "mq.build.thread.size";
     public static final String CANAL_MQ_SEND_THREAD_SIZE      = ROOT + "." + "mq.send.thread.size";
+    public static final String CANAL_MQ_INFLIGHT_BATCH_SIZE   = ROOT + "." + "mq.inflight.batch.size";
 
     public static final String CANAL_ALIYUN_ACCESS_KEY        = ROOT + "." + "aliyun.accessKey";
     public static final String CANAL_ALIYUN_SECRET_KEY        = ROOT + "." + "aliyun.secretKey";
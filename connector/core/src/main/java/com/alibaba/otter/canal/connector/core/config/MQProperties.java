@@ -15,6 +15,7 @@ public class MQProperties {
     private Integer parallelSendThreadSize  = 30;
     private Integer fetchTimeout            = 100;
     private Integer batchSize               = 50;
+    private Integer inflightBatchSize       = 1;
     private String  accessChannel           = "local";
 
     private String  aliyunAccessKey         = "";
@@ -77,6 +78,14 @@ public class MQProperties {
         this.batchSize = batchSize;
     }
 
+    public Integer getInflightBatchSize() {
+        return inflightBatchSize;
+    }
+
+    public void setInflightBatchSize(Integer inflightBatchSize) {
+        this.inflightBatchSize = inflightBatchSize;
+    }
+
     public String getAccessChannel() {
         return accessChannel;
     }
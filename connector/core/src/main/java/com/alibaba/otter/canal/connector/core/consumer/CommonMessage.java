@@ -24,6 +24,8 @@ public class CommonMessage implements Serializable {
     private List<Map<String, Object>> data;
     // 旧数据列表,用于update,size和data的size一一对应
     private List<Map<String, Object>> old;
+    // 所属源库事务的序号,同一个事务内的消息相同,为空代表无事务边界信息
+    private Long                      txId;
 
     public String getDatabase() {
         return database;
@@ -105,6 +107,14 @@ public class CommonMessage implements Serializable {
         this.es = es;
     }
 
+    public Long getTxId() {
+        return txId;
+    }
+
+    public void setTxId(Long txId) {
+        this.txId = txId;
+    }
+
     public void clear() {
         database = null;
         table = null;
@@ -114,6 +124,7 @@ public class CommonMessage implements Serializable {
         data = null;
         old = null;
         sql = null;
+        txId = null;
     }
 
     @Override
@@ -3,35 +3,50 @@ package com.alibaba.otter.canal.connector.core.filter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.oro.text.regex.Pattern;
+import org.apache.oro.text.regex.Perl5Matcher;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.googlecode.aviator.AviatorEvaluator;
-import com.googlecode.aviator.Expression;
 
 /**
  * 基于aviater进行tableName正则匹配的过滤算法
  *
+ * <pre>
+ * 1. 不含正则元字符的表名(允许\\.)放入hash set直接比较
+ * 2. 其余的表达式在构造时合并编译为一个正则, 不再每次通过aviator表达式求值
+ * 3. 每个表名的匹配结果缓存在有界的cache中, filter变更时会重新构造实例, cache随之失效
+ * </pre>
+ *
  * @author jianghang 2012-7-20 下午06:01:34
  */
 public class AviaterRegexFilter {
 
-    private static final String             SPLIT             = ",";
-    private static final String             PATTERN_SPLIT     = "|";
-    private static final String             FILTER_EXPRESSION = "regex(pattern,target)";
-    private static final RegexFunction      regexFunction     = new RegexFunction();
-    private final Expression                exp               = AviatorEvaluator.compile(FILTER_EXPRESSION, true);
+    private static final String             SPLIT          = ",";
+    private static final String             PATTERN_SPLIT  = "|";
+    private static final String             META_CHARS     = "\\^$.|?*+()[]{}";
+    private static final int                MAX_CACHE_SIZE = 10000;
+    private static final RegexFunction      regexFunction  = new RegexFunction();
     static {
+        // 匹配不再通过aviator求值, regex函数仍然需要注册给el表达式(AviaterELFilter)使用
         AviatorEvaluator.addFunction(regexFunction);
     }
 
-    private static final Comparator<String> COMPARATOR        = new StringComparator();
+    private static final Comparator<String> COMPARATOR     = new StringComparator();
 
     final private String                    pattern;
     final private boolean                   defaultEmptyValue;
+    final private Set<String>               names          = new HashSet<>();   // 精确匹配的表名
+    final private Pattern                   regex;                                  // 合并后的正则, 没有时为null
+    final private Cache<String, Boolean>    results        = CacheBuilder.newBuilder()
+                                                                .maximumSize(MAX_CACHE_SIZE)
+                                                                .build();
 
     public AviaterRegexFilter(String pattern){
         this(pattern, true);
@@ -54,6 +69,17 @@ public class AviaterRegexFilter {
         // 对pattern进行头尾完全匹配
         list = completionPattern(list);
         this.pattern = StringUtils.join(list, PATTERN_SPLIT);
+
+        List<String> regexList = new ArrayList<>();
+        for (String item : list) {
+            String name = toName(item.substring(1, item.length() - 1));
+            if (name != null) {
+                names.add(name.toLowerCase());
+            } else {
+                regexList.add(item);
+            }
+        }
+        this.regex = regexList.isEmpty() ? null : PatternUtils.getPattern(StringUtils.join(regexList, PATTERN_SPLIT));
     }
 
     public boolean filter(String filtered) {
@@ -65,10 +91,38 @@ public class AviaterRegexFilter {
             return defaultEmptyValue;
         }
 
-        Map<String, Object> env = new HashMap<>();
-        env.put("pattern", pattern);
-        env.put("target", filtered.toLowerCase());
-        return (Boolean) exp.execute(env);
+        Boolean result = results.getIfPresent(filtered);
+        if (result == null) {
+            result = match(filtered.toLowerCase());
+            results.put(filtered, result);
+        }
+        return result;
+    }
+
+    private boolean match(String target) {
+        if (names.contains(target)) {
+            return true;
+        }
+        return regex != null && new Perl5Matcher().matches(target, regex);
+    }
+
+    /**
+     * 不含正则元字符的表达式转换为表名, 其中的\\.视为普通的点号, 否则返回null
+     */
+    private static String toName(String item) {
+        StringBuilder name = new StringBuilder(item.length());
+        for (int i = 0; i < item.length(); i++) {
+            char c = item.charAt(i);
+            if (c == '\\' && i + 1 < item.length() && item.charAt(i + 1) == '.') {
+                name.append('.');
+                i++;
+            } else if (META_CHARS.indexOf(c) >= 0) {
+                return null;
+            } else {
+                name.append(c);
+            }
+        }
+        return name.toString();
     }
 
     /**
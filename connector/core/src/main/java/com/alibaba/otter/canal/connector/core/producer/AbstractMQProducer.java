@@ -74,6 +74,7 @@ public abstract class AbstractMQProducer implements CanalMQProducer {
      * canal.mq.parallel.build.thread.size = 8 <br/>
      * canal.mq.parallel.send.thread.size = 8 <br/>
      * canal.mq.batch.size = 50 <br/>
+     * canal.mq.inflight.batch.size = 1 <br/>
      * canal.mq.timeout = 100 <br/>
      * canal.mq.access.channel = local <br/>
      * </p>
@@ -106,6 +107,10 @@ public abstract class AbstractMQProducer implements CanalMQProducer {
         if (!StringUtils.isEmpty(batchSize)) {
             mqProperties.setBatchSize(Integer.parseInt(batchSize));
         }
+        String inflightBatchSize = properties.getProperty(CanalConstants.CANAL_MQ_INFLIGHT_BATCH_SIZE);
+        if (!StringUtils.isEmpty(inflightBatchSize)) {
+            mqProperties.setInflightBatchSize(Integer.parseInt(inflightBatchSize));
+        }
         String timeOut = properties.getProperty(CanalConstants.CANAL_MQ_CANAL_GET_TIMEOUT);
         if (!StringUtils.isEmpty(timeOut)) {
             mqProperties.setFetchTimeout(Integer.parseInt(timeOut));
@@ -0,0 +1,453 @@
+package com.alibaba.otter.canal.connector.core.producer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializeWriter;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.alibaba.otter.canal.common.utils.ExecutorTemplate;
+import com.alibaba.otter.canal.connector.core.producer.MQMessageUtils.HashMode;
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowChange;
+import com.alibaba.otter.canal.protocol.Message;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * 单次遍历将message转换为按topic路由、分区后的flatMessage json
+ *
+ * <pre>
+ * 1. 每个entry只解析一次, topic路由、解析和序列化在同一个并发任务中完成
+ * 2. 直接从protobuf的column写出json, 不构造中间的FlatMessage/Map对象
+ * 3. 输出与 messageTopics + messageConverter + messagePartition + JSON.toJSONBytes(WriteMapNullValue) 一致,
+ *    每个entry在每个topic的每个分区最多一条消息, 按entry顺序、分区下标顺序排列
+ * </pre>
+ *
+ * @since 1.1.5
+ */
+public class FlatMessageEncoder {
+
+    private static final int ENCODE_FEATURES = SerializerFeature.config(JSON.DEFAULT_GENERATE_FEATURE,
+                                                 SerializerFeature.WriteMapNullValue,
+                                                 true);
+
+    /**
+     * 并发解析并序列化message中的所有entry
+     *
+     * @param message 原message
+     * @param executor 构造线程池
+     * @param destination 目标topic, 配置了dynamicTopic时按库表路由, topic名中的'.'替换为'_'
+     * @param partitionHash 是否按destination的partitionHash拆分分区, 否则所有数据都在第0个分区
+     * @param databaseHash 是否根据database进行hash
+     * @return topic -> 按顺序排列的分区flatMessage
+     */
+    public static Map<String, List<FlatMessagePart>> encode(Message message, ThreadPoolExecutor executor,
+                                                            MQDestination destination, boolean partitionHash,
+                                                            boolean databaseHash) {
+        final long id = message.getId();
+        final String pkHashConfigs = partitionHash ? destination.getPartitionHash() : null;
+        final Map<String, Integer> partitionsNums = new ConcurrentHashMap<>();
+        ExecutorTemplate template = new ExecutorTemplate(executor);
+        try {
+            List<?> entries = message.isRaw() ? message.getRawEntries() : message.getEntries();
+            @SuppressWarnings("unchecked")
+            final Map<String, List<FlatMessagePart>>[] results = new Map[entries.size()];
+            for (int i = 0; i < entries.size(); i++) {
+                final int index = i;
+                final Object entry = entries.get(i);
+                template.submit(() -> {
+                    try {
+                        Entry parsed = entry instanceof ByteString ? Entry.parseFrom((ByteString) entry) : (Entry) entry;
+                        if (parsed.getEntryType() == CanalEntry.EntryType.TRANSACTIONBEGIN
+                            || parsed.getEntryType() == CanalEntry.EntryType.TRANSACTIONEND) {
+                            results[index] = Collections.emptyMap();
+                            return;
+                        }
+
+                        EntryRows rows = new EntryRows(parsed, RowChange.parseFrom(parsed.getStoreValue()));
+                        Map<String, List<FlatMessagePart>> result = new LinkedHashMap<>();
+                        for (String topic : topics(parsed, destination)) {
+                            int partitionsNum = 1;
+                            if (!StringUtils.isEmpty(pkHashConfigs)) {
+                                // 获取当前topic的分区数
+                                partitionsNum = partitionsNums.computeIfAbsent(topic, name -> {
+                                    Integer num = MQMessageUtils.parseDynamicTopicPartition(name,
+                                        destination.getDynamicTopicPartitionNum());
+                                    if (num == null) {
+                                        num = destination.getPartitionsNum();
+                                    }
+                                    return num == null ? 1 : num;
+                                });
+                            }
+                            result.put(topic, encode(rows, id, partitionsNum, pkHashConfigs, databaseHash));
+                        }
+                        results[index] = result;
+                    } catch (InvalidProtocolBufferException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            }
+            template.waitForResult();
+
+            Map<String, List<FlatMessagePart>> topicParts = new LinkedHashMap<>();
+            for (Map<String, List<FlatMessagePart>> result : results) {
+                for (Map.Entry<String, List<FlatMessagePart>> entry : result.entrySet()) {
+                    topicParts.computeIfAbsent(entry.getKey(), topic -> new ArrayList<>()).addAll(entry.getValue());
+                }
+            }
+            return topicParts;
+        } finally {
+            template.clear();
+        }
+    }
+
+    /**
+     * 计算entry的目标topic, 与messageTopics的路由规则一致
+     */
+    private static Set<String> topics(Entry entry, MQDestination destination) {
+        if (StringUtils.isEmpty(destination.getDynamicTopic())) {
+            return Collections.singleton(destination.getTopic());
+        }
+        Set<String> topics = new LinkedHashSet<>();
+        for (String topic : MQMessageUtils.entryTopics(entry, destination.getTopic(), destination.getDynamicTopic())) {
+            topics.add(topic.replace('.', '_'));
+        }
+        return topics;
+    }
+
+    /**
+     * 序列化单个entry
+     *
+     * @param pkHashConfigs 分区库表主键正则表达式, 为空时整个entry都在第0个分区
+     */
+    private static List<FlatMessagePart> encode(EntryRows rows, long id, int partitionsNum, String pkHashConfigs,
+                                                boolean databaseHash) {
+        Entry entry = rows.entry;
+        long ts = System.currentTimeMillis();
+
+        int partition = 0;
+        HashMode hashMode = null;
+        if (!StringUtils.isEmpty(pkHashConfigs) && !rows.rowChange.getIsDdl() && rows.dataCount > 0) {
+            String database = entry.getHeader().getSchemaName();
+            String table = entry.getHeader().getTableName();
+            hashMode = MQMessageUtils.getPartitionHashColumns(database + "." + table, pkHashConfigs);
+            if (hashMode != null && hashMode.tableHash) {
+                partition = Math.abs(Math.abs(table.hashCode()) % partitionsNum);
+                hashMode = null;
+            }
+        }
+
+        if (hashMode == null) {
+            // 整个entry写到同一个分区
+            return Collections.singletonList(new FlatMessagePart(partition, write(rows, id, ts, -1, null)));
+        }
+
+        int[] rowPartitions = rows.partitions(hashMode, partitionsNum, databaseHash);
+        List<FlatMessagePart> parts = new ArrayList<>();
+        for (int i = 0; i < partitionsNum; i++) {
+            for (int rowPartition : rowPartitions) {
+                if (rowPartition == i) {
+                    parts.add(new FlatMessagePart(i, write(rows, id, ts, i, rowPartitions)));
+                    break;
+                }
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * 写出一个分区的flatMessage, 字段顺序与fastjson序列化FlatMessage时一致
+     *
+     * @param partition 需要写出的分区, -1代表写出所有行
+     * @param rowPartitions 每一行对应的分区
+     */
+    private static byte[] write(EntryRows rows, long id, long ts, int partition, int[] rowPartitions) {
+        Entry entry = rows.entry;
+        RowChange rowChange = rows.rowChange;
+        SerializeWriter out = new SerializeWriter(null, ENCODE_FEATURES, new SerializerFeature[0]);
+        try {
+            out.write('{');
+            out.writeFieldName("data");
+            if (rows.dataCount == 0) {
+                out.writeNull();
+            } else {
+                out.write('[');
+                boolean first = true;
+                for (int i = 0; i < rows.columns.length; i++) {
+                    if (rows.columns[i] == null || (partition >= 0 && rowPartitions[i] != partition)) {
+                        continue;
+                    }
+                    if (!first) {
+                        out.write(',');
+                    }
+                    first = false;
+                    writeRow(out, rows.columns[i], -1, null);
+                }
+                out.write(']');
+            }
+            out.write(',');
+            out.writeFieldName("database");
+            writeString(out, entry.getHeader().getSchemaName());
+            out.writeFieldValue(',', "es", entry.getHeader().getExecuteTime());
+            out.writeFieldValue(',', "id", id);
+            out.writeFieldValue(',', "isDdl", rowChange.getIsDdl());
+            out.write(',');
+            out.writeFieldName("mysqlType");
+            if (rows.types.isEmpty()) {
+                out.writeNull();
+            } else {
+                out.write('{');
+                boolean first = true;
+                for (CanalEntry.Column column : rows.types.values()) {
+                    if (!first) {
+                        out.write(',');
+                    }
+                    first = false;
+                    out.writeFieldName(column.getName());
+                    writeString(out, column.getMysqlType());
+                }
+                out.write('}');
+            }
+            out.write(',');
+            out.writeFieldName("old");
+            if (!rows.hasOld) {
+                out.writeNull();
+            } else {
+                out.write('[');
+                boolean first = true;
+                int dataIndex = 0;
+                for (int i = 0; i < rows.columns.length; i++) {
+                    int oldIndex = i;
+                    if (partition >= 0) {
+                        // 拆分时按data的下标取old, 与messagePartition中old.get(idx)一致
+                        if (rows.columns[i] == null) {
+                            continue;
+                        }
+                        oldIndex = dataIndex < rows.oldIndexes.size() ? rows.oldIndexes.get(dataIndex) : -1;
+                        dataIndex++;
+                        if (rowPartitions[i] != partition) {
+                            continue;
+                        }
+                    } else if (!rows.oldRows[i]) {
+                        // 未拆分时只输出有变更字段的行
+                        continue;
+                    }
+                    if (!first) {
+                        out.write(',');
+                    }
+                    first = false;
+                    if (oldIndex < 0) {
+                        // old比data少(存在没有变更字段的行), 原实现在此处越界
+                        out.writeNull();
+                    } else {
+                        writeRow(out, rowChange.getRowDatas(oldIndex).getBeforeColumnsList(), oldIndex, rows.updated);
+                    }
+                }
+                out.write(']');
+            }
+            out.write(',');
+            out.writeFieldName("pkNames");
+            if (rows.pkNames == null) {
+                out.writeNull();
+            } else {
+                out.write('[');
+                for (int i = 0; i < rows.pkNames.size(); i++) {
+                    if (i > 0) {
+                        out.write(',');
+                    }
+                    writeString(out, rows.pkNames.get(i));
+                }
+                out.write(']');
+            }
+            out.write(',');
+            out.writeFieldName("sql");
+            writeString(out, rowChange.getSql());
+            out.write(',');
+            out.writeFieldName("sqlType");
+            if (rows.types.isEmpty()) {
+                out.writeNull();
+            } else {
+                out.write('{');
+                boolean first = true;
+                for (CanalEntry.Column column : rows.types.values()) {
+                    if (!first) {
+                        out.write(',');
+                    }
+                    first = false;
+                    out.writeFieldName(column.getName());
+                    out.writeInt(column.getSqlType());
+                }
+                out.write('}');
+            }
+            out.write(',');
+            out.writeFieldName("table");
+            writeString(out, entry.getHeader().getTableName());
+            out.writeFieldValue(',', "ts", ts);
+            out.write(',');
+            out.writeFieldName("type");
+            writeString(out, rowChange.getEventType().toString());
+            out.write('}');
+            return out.toBytes(StandardCharsets.UTF_8);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 写出一行数据, updated不为空时只写出在rowIndex行之前(含)发生过变更的字段
+     */
+    private static void writeRow(SerializeWriter out, List<CanalEntry.Column> columns, int rowIndex,
+                                 Map<String, Integer> updated) {
+        out.write('{');
+        boolean first = true;
+        for (CanalEntry.Column column : columns) {
+            if (updated != null) {
+                Integer updatedRow = updated.get(column.getName());
+                if (updatedRow == null || updatedRow > rowIndex) {
+                    continue;
+                }
+            }
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            out.writeFieldName(column.getName());
+            if (column.getIsNull()) {
+                out.writeNull();
+            } else {
+                out.writeString(column.getValue());
+            }
+        }
+        out.write('}');
+    }
+
+    private static void writeString(SerializeWriter out, String value) {
+        if (value == null) {
+            out.writeNull();
+        } else {
+            out.writeString(value);
+        }
+    }
+
+    /**
+     * entry中各行的列信息, 与messageConverter的统计口径一致
+     */
+    private static class EntryRows {
+
+        private final Entry                               entry;
+        private final RowChange                           rowChange;
+        private final List<CanalEntry.Column>[]           columns;                             // 每行输出的列, 空行为null
+        private final boolean[]                           oldRows;                             // 每行是否有变更字段
+        private final List<Integer>                       oldIndexes = new ArrayList<>();      // 有变更字段的行号
+        private final Map<String, CanalEntry.Column>      types      = new LinkedHashMap<>();  // sqlType/mysqlType
+        private final Map<String, Integer>                updated    = new HashMap<>();        // 字段首次变更的行号
+        private List<String>                              pkNames;
+        private int                                       dataCount;
+        private boolean                                   hasOld;
+
+        @SuppressWarnings("unchecked")
+        EntryRows(Entry entry, RowChange rowChange){
+            this.entry = entry;
+            this.rowChange = rowChange;
+            CanalEntry.EventType eventType = rowChange.getEventType();
+            boolean dml = !rowChange.getIsDdl()
+                          && (eventType == CanalEntry.EventType.INSERT || eventType == CanalEntry.EventType.UPDATE
+                              || eventType == CanalEntry.EventType.DELETE);
+            int rowCount = dml ? rowChange.getRowDatasCount() : 0;
+            this.columns = new List[rowCount];
+            this.oldRows = new boolean[rowCount];
+            for (int i = 0; i < rowCount; i++) {
+                CanalEntry.RowData rowData = rowChange.getRowDatas(i);
+                List<CanalEntry.Column> rowColumns = eventType == CanalEntry.EventType.DELETE ? rowData.getBeforeColumnsList() : rowData.getAfterColumnsList();
+                for (CanalEntry.Column column : rowColumns) {
+                    if (i == 0 && column.getIsKey()) {
+                        if (pkNames == null) {
+                            pkNames = new ArrayList<>();
+                        }
+                        pkNames.add(column.getName());
+                    }
+                    types.put(column.getName(), column);
+                    if (column.getUpdated()) {
+                        updated.putIfAbsent(column.getName(), i);
+                    }
+                }
+                if (!rowColumns.isEmpty()) {
+                    columns[i] = rowColumns;
+                    dataCount++;
+                }
+
+                if (eventType == CanalEntry.EventType.UPDATE) {
+                    for (CanalEntry.Column column : rowData.getBeforeColumnsList()) {
+                        Integer updatedRow = updated.get(column.getName());
+                        if (updatedRow != null && updatedRow <= i) {
+                            oldRows[i] = true;
+                            oldIndexes.add(i);
+                            hasOld = true;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * 按主键hash计算每一行的分区, 与messagePartition(FlatMessage)的算法一致
+         */
+        int[] partitions(HashMode hashMode, int partitionsNum, boolean databaseHash) {
+            String database = entry.getHeader().getSchemaName();
+            List<String> hashNames = hashMode.autoPkHash ? pkNames : hashMode.pkNames;
+            int[] rowPartitions = new int[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i] == null) {
+                    // 没有data的行不属于任何分区
+                    rowPartitions[i] = -1;
+                    continue;
+                }
+                int hashCode = 0;
+                if (databaseHash) {
+                    hashCode = database.hashCode();
+                }
+                if (hashNames != null) {
+                    for (String hashName : hashNames) {
+                        String value = "";
+                        for (CanalEntry.Column column : columns[i]) {
+                            if (column.getName().equals(hashName)) {
+                                value = column.getIsNull() ? "" : column.getValue();
+                            }
+                        }
+                        hashCode = hashCode ^ value.hashCode();
+                    }
+                }
+                rowPartitions[i] = Math.abs(Math.abs(hashCode) % partitionsNum);
+            }
+            return rowPartitions;
+        }
+    }
+
+    /**
+     * 序列化后的分区flatMessage
+     */
+    public static class FlatMessagePart {
+
+        public final int    partition;
+        public final byte[] data;
+
+        public FlatMessagePart(int partition, byte[] data){
+            this.partition = partition;
+            this.data = data;
+        }
+    }
+}
@@ -128,6 +128,14 @@ public class MQMessageUtils {
                                                                                     return datas;
                                                                                 });
 
+    // 按动态topic规则缓存每个schema/schema.table匹配到的topic
+    private static Map<String, Map<String, Set<String>>> topicMatches = MigrateMap.makeComputingMap(CacheBuilder.newBuilder()
+                                                                          .softValues(),
+                                                                          dynamicTopicConfigs -> MigrateMap.makeComputingMap(CacheBuilder.newBuilder()
+                                                                              .maximumSize(10000),
+                                                                              name -> computeTopics(name,
+                                                                                  dynamicTopicConfigs)));
+
     /**
      * 按 schema 或者 schema+table 将 message 分配到对应topic
      *
@@ -161,32 +169,35 @@ public class MQMessageUtils {
                 continue;
             }
 
-            String schemaName = entry.getHeader().getSchemaName();
-            String tableName = entry.getHeader().getTableName();
-
-            if (StringUtils.isEmpty(schemaName) || StringUtils.isEmpty(tableName)) {
-                put2MapMessage(messages, message.getId(), defaultTopic, entry);
-            } else {
-                Set<String> topics = matchTopics(schemaName + "." + tableName, dynamicTopicConfigs);
-                if (topics != null) {
-                    for (String topic : topics) {
-                        put2MapMessage(messages, message.getId(), topic, entry);
-                    }
-                } else {
-                    topics = matchTopics(schemaName, dynamicTopicConfigs);
-                    if (topics != null) {
-                        for (String topic : topics) {
-                            put2MapMessage(messages, message.getId(), topic, entry);
-                        }
-                    } else {
-                        put2MapMessage(messages, message.getId(), defaultTopic, entry);
-                    }
-                }
+            for (String topic : entryTopics(entry, defaultTopic, dynamicTopicConfigs)) {
+                put2MapMessage(messages, message.getId(), topic, entry);
             }
         }
         return messages;
     }
 
+    /**
+     * 按 schema 或者 schema+table 计算单个entry对应的topic
+     *
+     * @param entry 非事务头尾的entry
+     * @param defaultTopic 默认topic
+     * @param dynamicTopicConfigs 动态topic规则
+     * @return 匹配的topic, 未匹配时为默认topic
+     */
+    public static Set<String> entryTopics(CanalEntry.Entry entry, String defaultTopic, String dynamicTopicConfigs) {
+        String schemaName = entry.getHeader().getSchemaName();
+        String tableName = entry.getHeader().getTableName();
+
+        if (StringUtils.isEmpty(schemaName) || StringUtils.isEmpty(tableName)) {
+            return Collections.singleton(defaultTopic);
+        }
+        Set<String> topics = matchTopics(schemaName + "." + tableName, dynamicTopicConfigs);
+        if (topics == null) {
+            topics = matchTopics(schemaName, dynamicTopicConfigs);
+        }
+        return topics != null ? topics : Collections.singleton(defaultTopic);
+    }
+
     /**
      * 多线程构造message的rowChanged对象，比如为partition/flastMessage转化等处理 </br>
      * 因为protobuf对象的序列化和反序列化是cpu密集型，串行执行会有代价
@@ -577,6 +588,11 @@ public class MQMessageUtils {
     }
 
     private static Set<String> matchTopics(String name, String dynamicTopicConfigs) {
+        Set<String> topics = topicMatches.get(dynamicTopicConfigs).get(name);
+        return topics.isEmpty() ? null : topics;
+    }
+
+    private static Set<String> computeTopics(String name, String dynamicTopicConfigs) {
         String[] router = StringUtils.split(StringUtils.replace(dynamicTopicConfigs, ",", ";"), ";");
         Set<String> topics = new HashSet<>();
         for (String item : router) {
@@ -595,7 +611,7 @@ public class MQMessageUtils {
                 break;
             }
         }
-        return topics.isEmpty() ? null : topics;
+        return Collections.unmodifiableSet(topics);
     }
 
     public static boolean matchDynamicTopic(String name, String dynamicTopicConfigs) {
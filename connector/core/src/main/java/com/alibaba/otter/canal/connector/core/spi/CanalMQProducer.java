@@ -36,6 +36,18 @@ public interface CanalMQProducer {
      */
     void send(MQDestination canalDestination, Message message, Callback callback);
 
+    /**
+     * Send canal message asynchronously. Messages must be handed to the MQ
+     * client in call order before returning, the result is reported through
+     * the callback (possibly from another thread). Defaults to {@link #send}.
+     *
+     * @param canalDestination canal mq destination
+     * @param message canal message
+     */
+    default void sendAsync(MQDestination canalDestination, Message message, Callback callback) {
+        send(canalDestination, message, callback);
+    }
+
     /**
      * Stop MQ producer service
      */
@@ -25,9 +25,16 @@ public class MessageUtil {
         }
         List<CanalEntry.Entry> entries = message.getEntries();
         List<CommonMessage> msgs = new ArrayList<>(entries.size());
+        // 按TRANSACTIONBEGIN递增事务序号, 不在BEGIN/END之间的数据(过滤了事务头尾或者跨批次的事务)事务未知, 序号为空
+        long txSeq = 0L;
+        Long txId = null;
         for (CanalEntry.Entry entry : entries) {
-            if (entry.getEntryType() == CanalEntry.EntryType.TRANSACTIONBEGIN
-                || entry.getEntryType() == CanalEntry.EntryType.TRANSACTIONEND) {
+            if (entry.getEntryType() == CanalEntry.EntryType.TRANSACTIONBEGIN) {
+                txId = ++txSeq;
+                continue;
+            }
+            if (entry.getEntryType() == CanalEntry.EntryType.TRANSACTIONEND) {
+                txId = null;
                 continue;
             }
 
@@ -50,6 +57,7 @@ public class MessageUtil {
             msg.setIsDdl(rowChange.getIsDdl());
             msg.setTs(System.currentTimeMillis());
             msg.setSql(rowChange.getSql());
+            msg.setTxId(txId);
             msgs.add(msg);
             List<Map<String, Object>> data = new ArrayList<>();
             List<Map<String, Object>> old = new ArrayList<>();
@@ -0,0 +1,284 @@
+package com.alibaba.otter.canal.connector.core.producer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.alibaba.otter.canal.connector.core.producer.FlatMessageEncoder.FlatMessagePart;
+import com.alibaba.otter.canal.connector.core.producer.MQMessageUtils.EntryRowData;
+import com.alibaba.otter.canal.protocol.CanalEntry.Column;
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowChange;
+import com.alibaba.otter.canal.protocol.CanalEntry.RowData;
+import com.alibaba.otter.canal.protocol.FlatMessage;
+import com.alibaba.otter.canal.protocol.Message;
+import com.google.protobuf.ByteString;
+
+/**
+ * 对比FlatMessageEncoder与原有 messageTopics + messageConverter + messagePartition + JSON 的输出
+ */
+public class FlatMessageEncoderTest {
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(2,
+                                                  2,
+                                                  0L,
+                                                  TimeUnit.MILLISECONDS,
+                                                  new LinkedBlockingQueue<>());
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testDynamicTopicPartition() {
+        MQDestination destination = destination("test.user;orders:test.order", "test.user:id,test.order");
+        Message message = rawMessage(entries());
+
+        Map<String, List<String>> expected = baseline(message, destination, true);
+        Assert.assertEquals(Arrays.asList("example", "orders", "test_user"), sorted(expected.keySet()));
+        Assert.assertEquals(expected, encode(message, destination, true));
+    }
+
+    @Test
+    public void testSplitOld() {
+        // 第二行没有old, 第三行没有data, 拆分时old按data的下标对应
+        MQDestination destination = destination(null, "test.user:id");
+        Message message = rawMessage(Collections.singletonList(entry("test",
+            "user",
+            EventType.UPDATE,
+            rowData(columns(column("id", "1", true, false), column("name", "b", false, true)),
+                columns(column("id", "1", true, false), column("name", "a", false, false))),
+            rowData(columns(column("id", "2", true, false), column("name", "c", false, false)),
+                Collections.emptyList()),
+            rowData(Collections.emptyList(),
+                columns(column("id", "3", true, false), column("name", "x", false, false))))));
+
+        Map<String, List<String>> expected = baseline(message, destination, false);
+        Map<String, List<String>> actual = encode(message, destination, false);
+        Assert.assertEquals(expected, actual);
+        List<String> parts = actual.get("example");
+        Assert.assertEquals(2, parts.size());
+        Assert.assertTrue(parts.get(1), parts.get(1).contains("\"old\":[{\"name\":\"x\"}]"));
+    }
+
+    @Test
+    public void testNoPartition() {
+        MQDestination destination = destination("test.user;orders:test.order", null);
+        Message message = rawMessage(entries());
+
+        Map<String, List<String>> expected = baseline(message, destination, false);
+        Map<String, List<String>> actual = new HashMap<>();
+        for (Map.Entry<String, List<FlatMessagePart>> entry : FlatMessageEncoder.encode(message,
+            executor,
+            destination,
+            false,
+            false).entrySet()) {
+            actual.put(entry.getKey(), toStrings(entry.getValue()));
+        }
+        Assert.assertEquals(expected, actual);
+    }
+
+    private Map<String, List<String>> encode(Message message, MQDestination destination, boolean databaseHash) {
+        Map<String, List<String>> result = new HashMap<>();
+        for (Map.Entry<String, List<FlatMessagePart>> entry : FlatMessageEncoder.encode(message,
+            executor,
+            destination,
+            true,
+            databaseHash).entrySet()) {
+            result.put(entry.getKey(), toStrings(entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * 原有实现: 先按topic拆分message, 再对每个topic转换为FlatMessage并按分区拆分
+     */
+    private Map<String, List<String>> baseline(Message message, MQDestination destination, boolean databaseHash) {
+        Map<String, Message> messageMap;
+        if (StringUtils.isEmpty(destination.getDynamicTopic())) {
+            messageMap = Collections.singletonMap(destination.getTopic(), message);
+        } else {
+            messageMap = new HashMap<>();
+            for (Map.Entry<String, Message> entry : MQMessageUtils.messageTopics(message,
+                destination.getTopic(),
+                destination.getDynamicTopic()).entrySet()) {
+                messageMap.put(entry.getKey().replace('.', '_'), entry.getValue());
+            }
+        }
+
+        Map<String, List<String>> result = new HashMap<>();
+        for (Map.Entry<String, Message> entry : messageMap.entrySet()) {
+            String topicName = entry.getKey();
+            Integer partitionNum = MQMessageUtils.parseDynamicTopicPartition(topicName,
+                destination.getDynamicTopicPartitionNum());
+            if (partitionNum == null) {
+                partitionNum = destination.getPartitionsNum();
+            }
+            EntryRowData[] datas = MQMessageUtils.buildMessageData(entry.getValue(), executor);
+            List<String> parts = new ArrayList<>();
+            for (FlatMessage flatMessage : MQMessageUtils.messageConverter(datas, message.getId())) {
+                if (StringUtils.isEmpty(destination.getPartitionHash())) {
+                    parts.add(normalize(0,
+                        JSON.toJSONBytes(flatMessage, SerializerFeature.WriteMapNullValue)));
+                    continue;
+                }
+                FlatMessage[] partitionFlatMessage = MQMessageUtils.messagePartition(flatMessage,
+                    partitionNum,
+                    destination.getPartitionHash(),
+                    databaseHash);
+                for (int i = 0; i < partitionFlatMessage.length; i++) {
+                    if (partitionFlatMessage[i] != null) {
+                        parts.add(normalize(i,
+                            JSON.toJSONBytes(partitionFlatMessage[i], SerializerFeature.WriteMapNullValue)));
+                    }
+                }
+            }
+            if (!parts.isEmpty()) {
+                result.put(topicName, parts);
+            }
+        }
+        return result;
+    }
+
+    private static List<String> toStrings(List<FlatMessagePart> parts) {
+        List<String> result = new ArrayList<>();
+        for (FlatMessagePart part : parts) {
+            result.add(normalize(part.partition, part.data));
+        }
+        return result;
+    }
+
+    /**
+     * ts为序列化时的系统时间, 比较前统一替换
+     */
+    private static String normalize(int partition, byte[] data) {
+        return partition + ":" + new String(data, StandardCharsets.UTF_8).replaceAll("\"ts\":\\d+", "\"ts\":0");
+    }
+
+    private static List<String> sorted(java.util.Collection<String> values) {
+        List<String> result = new ArrayList<>(values);
+        Collections.sort(result);
+        return result;
+    }
+
+    private static MQDestination destination(String dynamicTopic, String partitionHash) {
+        MQDestination destination = new MQDestination();
+        destination.setTopic("example");
+        destination.setPartitionsNum(4);
+        destination.setDynamicTopic(dynamicTopic);
+        destination.setDynamicTopicPartitionNum("test_user:3");
+        destination.setPartitionHash(partitionHash);
+        return destination;
+    }
+
+    private static List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>();
+        entries.add(Entry.newBuilder()
+            .setEntryType(EntryType.TRANSACTIONBEGIN)
+            .setHeader(Header.newBuilder().setExecuteTime(1000L))
+            .build());
+        entries.add(entry("test",
+            "user",
+            EventType.INSERT,
+            rowData(columns(column("id", "1", true, false), column("name", "a", false, false)),
+                Collections.emptyList()),
+            rowData(columns(column("id", "2", true, false), column("name", null, false, false)),
+                Collections.emptyList()),
+            rowData(columns(column("id", "3", true, false), column("name", "c\"中", false, false)),
+                Collections.emptyList())));
+        entries.add(entry("test",
+            "user",
+            EventType.UPDATE,
+            rowData(columns(column("id", "1", true, false), column("name", "b", false, true)),
+                columns(column("id", "1", true, false), column("name", "a", false, false))),
+            rowData(columns(column("id", "2", true, false), column("name", "d", false, false)),
+                columns(column("id", "2", true, false), column("name", "d", false, false))),
+            rowData(columns(column("id", "4", true, true), column("name", "e", false, true)),
+                columns(column("id", "3", true, false), column("name", "c", false, false)))));
+        entries.add(entry("test",
+            "order",
+            EventType.DELETE,
+            rowData(Collections.emptyList(),
+                columns(column("id", "7", true, false), column("amount", "1.5", false, false)))));
+        entries.add(Entry.newBuilder()
+            .setEntryType(EntryType.ROWDATA)
+            .setHeader(Header.newBuilder().setSchemaName("test").setTableName("user").setExecuteTime(1000L))
+            .setStoreValue(RowChange.newBuilder()
+                .setIsDdl(true)
+                .setEventType(EventType.ALTER)
+                .setSql("ALTER TABLE user ADD COLUMN age INT")
+                .build()
+                .toByteString())
+            .build());
+        entries.add(entry("other",
+            "log",
+            EventType.INSERT,
+            rowData(columns(column("id", "9", true, false)), Collections.emptyList())));
+        entries.add(Entry.newBuilder()
+            .setEntryType(EntryType.TRANSACTIONEND)
+            .setHeader(Header.newBuilder().setExecuteTime(1000L))
+            .build());
+        return entries;
+    }
+
+    private static Message rawMessage(List<Entry> entries) {
+        List<ByteString> rawEntries = new ArrayList<>();
+        for (Entry entry : entries) {
+            rawEntries.add(entry.toByteString());
+        }
+        return new Message(100L, true, rawEntries);
+    }
+
+    private static Entry entry(String schema, String table, EventType eventType, RowData... rowDatas) {
+        return Entry.newBuilder()
+            .setEntryType(EntryType.ROWDATA)
+            .setHeader(Header.newBuilder().setSchemaName(schema).setTableName(table).setExecuteTime(1000L))
+            .setStoreValue(RowChange.newBuilder()
+                .setEventType(eventType)
+                .addAllRowDatas(Arrays.asList(rowDatas))
+                .build()
+                .toByteString())
+            .build();
+    }
+
+    private static RowData rowData(List<Column> after, List<Column> before) {
+        return RowData.newBuilder().addAllAfterColumns(after).addAllBeforeColumns(before).build();
+    }
+
+    private static List<Column> columns(Column... columns) {
+        return Arrays.asList(columns);
+    }
+
+    private static Column column(String name, String value, boolean key, boolean updated) {
+        Column.Builder builder = Column.newBuilder()
+            .setName(name)
+            .setIsKey(key)
+            .setUpdated(updated)
+            .setSqlType(key ? 4 : 12)
+            .setMysqlType(key ? "int(11)" : "varchar(32)");
+        if (value == null) {
+            builder.setIsNull(true);
+        } else {
+            builder.setValue(value);
+        }
+        return builder.build();
+    }
+}
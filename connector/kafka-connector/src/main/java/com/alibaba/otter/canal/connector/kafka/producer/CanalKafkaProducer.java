@@ -8,6 +8,8 @@ import java.util.Properties;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.kafka.clients.producer.KafkaProducer;
@@ -17,10 +19,10 @@ import org.apache.kafka.common.serialization.StringSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.serializer.SerializerFeature;
 import com.alibaba.otter.canal.common.utils.ExecutorTemplate;
 import com.alibaba.otter.canal.connector.core.producer.AbstractMQProducer;
+import com.alibaba.otter.canal.connector.core.producer.FlatMessageEncoder;
+import com.alibaba.otter.canal.connector.core.producer.FlatMessageEncoder.FlatMessagePart;
 import com.alibaba.otter.canal.connector.core.producer.MQDestination;
 import com.alibaba.otter.canal.connector.core.producer.MQMessageUtils;
 import com.alibaba.otter.canal.connector.core.producer.MQMessageUtils.EntryRowData;
@@ -30,7 +32,6 @@ import com.alibaba.otter.canal.connector.core.util.Callback;
 import com.alibaba.otter.canal.connector.core.util.CanalMessageSerializerUtil;
 import com.alibaba.otter.canal.connector.kafka.config.KafkaConstants;
 import com.alibaba.otter.canal.connector.kafka.config.KafkaProducerConfig;
-import com.alibaba.otter.canal.protocol.FlatMessage;
 import com.alibaba.otter.canal.protocol.Message;
 
 /**
@@ -140,7 +141,11 @@ public class CanalKafkaProducer extends AbstractMQProducer implements CanalMQPro
 
         try {
             List result;
-            if (!StringUtils.isEmpty(mqDestination.getDynamicTopic())) {
+            if (mqProperties.isFlatMessage()) {
+                // 扁平数据json在解析entry时同时完成topic路由
+                result = new ArrayList();
+                result.add(produce(buildFlatRecords(mqDestination, message)));
+            } else if (!StringUtils.isEmpty(mqDestination.getDynamicTopic())) {
                 // 动态topic路由计算,只是基于schema/table,不涉及proto数据反序列化
                 Map<String, Message> messageMap = MQMessageUtils.messageTopics(message,
                     mqDestination.getTopic(),
@@ -152,7 +157,7 @@ public class CanalKafkaProducer extends AbstractMQProducer implements CanalMQPro
                     final Message messageSub = entry.getValue();
                     template.submit((Callable) () -> {
                         try {
-                            return send(mqDestination, topicName, messageSub, mqProperties.isFlatMessage());
+                            return send(mqDestination, topicName, messageSub);
                         } catch (Exception e) {
                             throw new RuntimeException(e);
                         }
@@ -162,10 +167,7 @@ public class CanalKafkaProducer extends AbstractMQProducer implements CanalMQPro
                 result = template.waitForResult();
             } else {
                 result = new ArrayList();
-                List<Future> futures = send(mqDestination,
-                    mqDestination.getTopic(),
-                    message,
-                    mqProperties.isFlatMessage());
+                List<Future> futures = send(mqDestination, mqDestination.getTopic(), message);
                 result.add(futures);
             }
 
@@ -194,70 +196,130 @@ public class CanalKafkaProducer extends AbstractMQProducer implements CanalMQPro
         }
     }
 
-    private List<Future> send(MQDestination mqDestination, String topicName, Message message, boolean flat) {
+    /**
+     * 异步发送, 在当前线程按顺序把消息交给kafka producer后立即返回, 由producer的回调汇总一个批次的发送结果
+     * <p>
+     * kafka producer设置了max.in.flight.requests.per.connection=1, 前后批次在同一分区内的顺序不变
+     * </p>
+     */
+    @Override
+    public void sendAsync(MQDestination mqDestination, Message message, Callback callback) {
+        ExecutorTemplate template = new ExecutorTemplate(sendExecutor);
+
+        try {
+            List<ProducerRecord<String, byte[]>> records = new ArrayList<>();
+            if (mqProperties.isFlatMessage()) {
+                records.addAll(buildFlatRecords(mqDestination, message));
+            } else if (!StringUtils.isEmpty(mqDestination.getDynamicTopic())) {
+                Map<String, Message> messageMap = MQMessageUtils.messageTopics(message,
+                    mqDestination.getTopic(),
+                    mqDestination.getDynamicTopic());
+
+                // 针对不同的topic,并发构造消息
+                for (Map.Entry<String, Message> entry : messageMap.entrySet()) {
+                    final String topicName = entry.getKey().replace('.', '_');
+                    final Message messageSub = entry.getValue();
+                    template.submit((Callable) () -> buildRecords(mqDestination, topicName, messageSub));
+                }
+
+                for (Object result : template.waitForResult()) {
+                    records.addAll((List<ProducerRecord<String, byte[]>>) result);
+                }
+            } else {
+                records.addAll(buildRecords(mqDestination, mqDestination.getTopic(), message));
+            }
+
+            if (records.isEmpty()) {
+                callback.commit();
+                return;
+            }
+
+            AtomicInteger remaining = new AtomicInteger(records.size());
+            AtomicBoolean failed = new AtomicBoolean(false);
+            for (ProducerRecord<String, byte[]> record : records) {
+                producer.send(record, (metadata, exception) -> {
+                    if (exception != null && failed.compareAndSet(false, true)) {
+                        logger.error(exception.getMessage(), exception);
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        if (failed.get()) {
+                            callback.rollback();
+                        } else {
+                            callback.commit();
+                        }
+                    }
+                });
+            }
+        } catch (Throwable e) {
+            logger.error(e.getMessage(), e);
+            callback.rollback();
+        } finally {
+            template.clear();
+        }
+    }
+
+    private List<Future> send(MQDestination mqDestination, String topicName, Message message) {
+        return produce(buildRecords(mqDestination, topicName, message));
+    }
+
+    private List<ProducerRecord<String, byte[]>> buildRecords(MQDestination mqDestination, String topicName,
+                                                              Message message) {
         List<ProducerRecord<String, byte[]>> records = new ArrayList<>();
         // 获取当前topic的分区数
         Integer partitionNum = MQMessageUtils.parseDynamicTopicPartition(topicName, mqDestination.getDynamicTopicPartitionNum());
         if (partitionNum == null) {
             partitionNum = mqDestination.getPartitionsNum();
         }
-        if (!flat) {
-            if (mqDestination.getPartitionHash() != null && !mqDestination.getPartitionHash().isEmpty()) {
-                // 并发构造
-                EntryRowData[] datas = MQMessageUtils.buildMessageData(message, buildExecutor);
-                // 串行分区
-                Message[] messages = MQMessageUtils.messagePartition(datas,
-                    message.getId(),
-                    partitionNum,
-                    mqDestination.getPartitionHash(),
-                    this.mqProperties.isDatabaseHash());
-                int length = messages.length;
-                for (int i = 0; i < length; i++) {
-                    Message messagePartition = messages[i];
-                    if (messagePartition != null) {
-                        records.add(new ProducerRecord<>(topicName,
-                            i,
-                            null,
-                            CanalMessageSerializerUtil.serializer(messagePartition,
-                                mqProperties.isFilterTransactionEntry())));
-                    }
-                }
-            } else {
-                final int partition = mqDestination.getPartition() != null ? mqDestination.getPartition() : 0;
-                records.add(new ProducerRecord<>(topicName,
-                    partition,
-                    null,
-                    CanalMessageSerializerUtil.serializer(message, mqProperties.isFilterTransactionEntry())));
-            }
-        } else {
-            // 发送扁平数据json
+        if (mqDestination.getPartitionHash() != null && !mqDestination.getPartitionHash().isEmpty()) {
             // 并发构造
             EntryRowData[] datas = MQMessageUtils.buildMessageData(message, buildExecutor);
             // 串行分区
-            List<FlatMessage> flatMessages = MQMessageUtils.messageConverter(datas, message.getId());
-            for (FlatMessage flatMessage : flatMessages) {
-                if (mqDestination.getPartitionHash() != null && !mqDestination.getPartitionHash().isEmpty()) {
-                    FlatMessage[] partitionFlatMessage = MQMessageUtils.messagePartition(flatMessage,
-                        partitionNum,
-                        mqDestination.getPartitionHash(),
-                        this.mqProperties.isDatabaseHash());
-                    int length = partitionFlatMessage.length;
-                    for (int i = 0; i < length; i++) {
-                        FlatMessage flatMessagePart = partitionFlatMessage[i];
-                        if (flatMessagePart != null) {
-                            records.add(new ProducerRecord<>(topicName, i, null, JSON.toJSONBytes(flatMessagePart,
-                                SerializerFeature.WriteMapNullValue)));
-                        }
-                    }
-                } else {
-                    final int partition = mqDestination.getPartition() != null ? mqDestination.getPartition() : 0;
-                    records.add(new ProducerRecord<>(topicName, partition, null, JSON.toJSONBytes(flatMessage,
-                        SerializerFeature.WriteMapNullValue)));
+            Message[] messages = MQMessageUtils.messagePartition(datas,
+                message.getId(),
+                partitionNum,
+                mqDestination.getPartitionHash(),
+                this.mqProperties.isDatabaseHash());
+            int length = messages.length;
+            for (int i = 0; i < length; i++) {
+                Message messagePartition = messages[i];
+                if (messagePartition != null) {
+                    records.add(new ProducerRecord<>(topicName,
+                        i,
+                        null,
+                        CanalMessageSerializerUtil.serializer(messagePartition,
+                            mqProperties.isFilterTransactionEntry())));
                 }
             }
+        } else {
+            final int partition = mqDestination.getPartition() != null ? mqDestination.getPartition() : 0;
+            records.add(new ProducerRecord<>(topicName,
+                partition,
+                null,
+                CanalMessageSerializerUtil.serializer(message, mqProperties.isFilterTransactionEntry())));
         }
 
-        return produce(records);
+        return records;
+    }
+
+    private List<ProducerRecord<String, byte[]>> buildFlatRecords(MQDestination mqDestination, Message message) {
+        List<ProducerRecord<String, byte[]>> records = new ArrayList<>();
+        boolean partitionHash = mqDestination.getPartitionHash() != null && !mqDestination.getPartitionHash().isEmpty();
+        // 发送扁平数据json, 并发完成topic路由、解析、分区和序列化
+        Map<String, List<FlatMessagePart>> topicParts = FlatMessageEncoder.encode(message,
+            buildExecutor,
+            mqDestination,
+            partitionHash,
+            this.mqProperties.isDatabaseHash());
+        final int fixedPartition = mqDestination.getPartition() != null ? mqDestination.getPartition() : 0;
+        for (Map.Entry<String, List<FlatMessagePart>> entry : topicParts.entrySet()) {
+            for (FlatMessagePart part : entry.getValue()) {
+                records.add(new ProducerRecord<>(entry.getKey(),
+                    partitionHash ? part.partition : fixedPartition,
+                    null,
+                    part.data));
+            }
+        }
+        return records;
     }
 
     private List<Future> produce(List<ProducerRecord<String, byte[]>> records) {
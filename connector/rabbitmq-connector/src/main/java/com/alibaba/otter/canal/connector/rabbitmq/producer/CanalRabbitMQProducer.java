@@ -10,11 +10,11 @@ import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.serializer.SerializerFeature;
 import com.alibaba.otter.canal.common.CanalException;
 import com.alibaba.otter.canal.common.utils.ExecutorTemplate;
 import com.alibaba.otter.canal.connector.core.producer.AbstractMQProducer;
+import com.alibaba.otter.canal.connector.core.producer.FlatMessageEncoder;
+import com.alibaba.otter.canal.connector.core.producer.FlatMessageEncoder.FlatMessagePart;
 import com.alibaba.otter.canal.connector.core.producer.MQDestination;
 import com.alibaba.otter.canal.connector.core.producer.MQMessageUtils;
 import com.alibaba.otter.canal.connector.core.spi.CanalMQProducer;
@@ -23,7 +23,6 @@ import com.alibaba.otter.canal.connector.core.util.Callback;
 import com.alibaba.otter.canal.connector.core.util.CanalMessageSerializerUtil;
 import com.alibaba.otter.canal.connector.rabbitmq.config.RabbitMQConstants;
 import com.alibaba.otter.canal.connector.rabbitmq.config.RabbitMQProducerConfig;
-import com.alibaba.otter.canal.protocol.FlatMessage;
 import com.alibaba.otter.canal.protocol.Message;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
@@ -110,7 +109,22 @@ public class CanalRabbitMQProducer extends AbstractMQProducer implements CanalMQ
     public void send(final MQDestination destination, Message message, Callback callback) {
         ExecutorTemplate template = new ExecutorTemplate(sendExecutor);
         try {
-            if (!StringUtils.isEmpty(destination.getDynamicTopic())) {
+            if (mqProperties.isFlatMessage()) {
+                // 扁平数据json在解析entry时同时完成topic路由
+                Map<String, List<FlatMessagePart>> topicParts = FlatMessageEncoder.encode(message,
+                    buildExecutor,
+                    destination,
+                    false,
+                    false);
+                for (Map.Entry<String, List<FlatMessagePart>> entry : topicParts.entrySet()) {
+                    final String topicName = entry.getKey();
+                    final List<FlatMessagePart> parts = entry.getValue();
+
+                    template.submit(() -> sendFlat(destination, topicName, parts));
+                }
+
+                template.waitForResult();
+            } else if (!StringUtils.isEmpty(destination.getDynamicTopic())) {
                 // 动态topic
                 Map<String, Message> messageMap = MQMessageUtils.messageTopics(message,
                     destination.getTopic(),
@@ -137,26 +151,21 @@ public class CanalRabbitMQProducer extends AbstractMQProducer implements CanalMQ
     }
 
     private void send(MQDestination canalDestination, String topicName, Message messageSub) {
-        if (!mqProperties.isFlatMessage()) {
-            byte[] message = CanalMessageSerializerUtil.serializer(messageSub, mqProperties.isFilterTransactionEntry());
+        byte[] message = CanalMessageSerializerUtil.serializer(messageSub, mqProperties.isFilterTransactionEntry());
+        if (logger.isDebugEnabled()) {
+            logger.debug("send message:{} to destination:{}", message, canalDestination.getCanalDestination());
+        }
+        sendMessage(topicName, message);
+    }
+
+    private void sendFlat(MQDestination canalDestination, String topicName, List<FlatMessagePart> parts) {
+        for (FlatMessagePart part : parts) {
+            byte[] message = part.data;
             if (logger.isDebugEnabled()) {
                 logger.debug("send message:{} to destination:{}", message, canalDestination.getCanalDestination());
             }
             sendMessage(topicName, message);
-        } else {
-            // 并发构造
-            MQMessageUtils.EntryRowData[] datas = MQMessageUtils.buildMessageData(messageSub, buildExecutor);
-            // 串行分区
-            List<FlatMessage> flatMessages = MQMessageUtils.messageConverter(datas, messageSub.getId());
-            for (FlatMessage flatMessage : flatMessages) {
-                byte[] message = JSON.toJSONBytes(flatMessage, SerializerFeature.WriteMapNullValue);
-                if (logger.isDebugEnabled()) {
-                    logger.debug("send message:{} to destination:{}", message, canalDestination.getCanalDestination());
-                }
-                sendMessage(topicName, message);
-            }
         }
-
     }
 
     private void sendMessage(String queueName, byte[] message) {
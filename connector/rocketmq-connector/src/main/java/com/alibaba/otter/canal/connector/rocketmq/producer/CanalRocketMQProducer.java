@@ -1,9 +1,9 @@
 package com.alibaba.otter.canal.connector.rocketmq.producer;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang.StringUtils;
@@ -21,11 +21,11 @@ import org.apache.rocketmq.remoting.RPCHook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.serializer.SerializerFeature;
 import com.alibaba.otter.canal.common.CanalException;
 import com.alibaba.otter.canal.common.utils.ExecutorTemplate;
 import com.alibaba.otter.canal.connector.core.producer.AbstractMQProducer;
+import com.alibaba.otter.canal.connector.core.producer.FlatMessageEncoder;
+import com.alibaba.otter.canal.connector.core.producer.FlatMessageEncoder.FlatMessagePart;
 import com.alibaba.otter.canal.connector.core.producer.MQDestination;
 import com.alibaba.otter.canal.connector.core.producer.MQMessageUtils;
 import com.alibaba.otter.canal.connector.core.spi.CanalMQProducer;
@@ -34,7 +34,6 @@ import com.alibaba.otter.canal.connector.core.util.Callback;
 import com.alibaba.otter.canal.connector.core.util.CanalMessageSerializerUtil;
 import com.alibaba.otter.canal.connector.rocketmq.config.RocketMQConstants;
 import com.alibaba.otter.canal.connector.rocketmq.config.RocketMQProducerConfig;
-import com.alibaba.otter.canal.protocol.FlatMessage;
 
 /**
  * RocketMQ Producer SPI 实现
@@ -128,7 +127,23 @@ public class CanalRocketMQProducer extends AbstractMQProducer implements CanalMQ
     public void send(MQDestination destination, com.alibaba.otter.canal.protocol.Message message, Callback callback) {
         ExecutorTemplate template = new ExecutorTemplate(sendExecutor);
         try {
-            if (!StringUtils.isEmpty(destination.getDynamicTopic())) {
+            if (mqProperties.isFlatMessage()) {
+                // 扁平数据json在解析entry时同时完成topic路由
+                boolean partitionHash = destination.getPartitionHash() != null
+                                        && !destination.getPartitionHash().isEmpty();
+                Map<String, List<FlatMessagePart>> topicParts = FlatMessageEncoder.encode(message,
+                    buildExecutor,
+                    destination,
+                    partitionHash,
+                    mqProperties.isDatabaseHash());
+                for (Map.Entry<String, List<FlatMessagePart>> entry : topicParts.entrySet()) {
+                    String topicName = entry.getKey();
+                    List<FlatMessagePart> parts = entry.getValue();
+                    template.submit(() -> sendFlat(destination, topicName, parts, partitionHash));
+                }
+
+                template.waitForResult();
+            } else if (!StringUtils.isEmpty(destination.getDynamicTopic())) {
                 // 动态topic
                 Map<String, com.alibaba.otter.canal.protocol.Message> messageMap = MQMessageUtils.messageTopics(message,
                     destination.getTopic(),
@@ -160,94 +175,74 @@ public class CanalRocketMQProducer extends AbstractMQProducer implements CanalMQ
         }
     }
 
+    /**
+     * 发送非扁平的protobuf消息, 扁平消息在解析entry时完成topic路由, 见sendFlat
+     */
     public void send(final MQDestination destination, String topicName, com.alibaba.otter.canal.protocol.Message message) {
         // 获取当前topic的分区数
         Integer partitionNum = MQMessageUtils.parseDynamicTopicPartition(topicName, destination.getDynamicTopicPartitionNum());
         if (partitionNum == null) {
             partitionNum = destination.getPartitionsNum();
         }
-        if (!mqProperties.isFlatMessage()) {
-            if (destination.getPartitionHash() != null && !destination.getPartitionHash().isEmpty()) {
-                // 并发构造
-                MQMessageUtils.EntryRowData[] datas = MQMessageUtils.buildMessageData(message, buildExecutor);
-                // 串行分区
-                com.alibaba.otter.canal.protocol.Message[] messages = MQMessageUtils.messagePartition(datas,
-                    message.getId(),
-                    partitionNum,
-                    destination.getPartitionHash(),
-                    mqProperties.isDatabaseHash());
-                int length = messages.length;
-
-                ExecutorTemplate template = new ExecutorTemplate(sendExecutor);
-                for (int i = 0; i < length; i++) {
-                    com.alibaba.otter.canal.protocol.Message dataPartition = messages[i];
-                    if (dataPartition != null) {
-                        final int index = i;
-                        template.submit(() -> {
-                            Message data = new Message(topicName, CanalMessageSerializerUtil.serializer(dataPartition,
-                                mqProperties.isFilterTransactionEntry()));
-                            sendMessage(data, index);
-                        });
-                    }
-                }
-                // 等所有分片发送完毕
-                template.waitForResult();
-            } else {
-                final int partition = destination.getPartition() != null ? destination.getPartition() : 0;
-                Message data = new Message(topicName, CanalMessageSerializerUtil.serializer(message,
-                    mqProperties.isFilterTransactionEntry()));
-                sendMessage(data, partition);
-            }
-        } else {
+        if (destination.getPartitionHash() != null && !destination.getPartitionHash().isEmpty()) {
             // 并发构造
             MQMessageUtils.EntryRowData[] datas = MQMessageUtils.buildMessageData(message, buildExecutor);
             // 串行分区
-            List<FlatMessage> flatMessages = MQMessageUtils.messageConverter(datas, message.getId());
-            // 初始化分区合并队列
-            if (destination.getPartitionHash() != null && !destination.getPartitionHash().isEmpty()) {
-                List<List<FlatMessage>> partitionFlatMessages = new ArrayList<>();
-                for (int i = 0; i < destination.getPartitionsNum(); i++) {
-                    partitionFlatMessages.add(new ArrayList<>());
-                }
+            com.alibaba.otter.canal.protocol.Message[] messages = MQMessageUtils.messagePartition(datas,
+                message.getId(),
+                partitionNum,
+                destination.getPartitionHash(),
+                mqProperties.isDatabaseHash());
+            int length = messages.length;
 
-                for (FlatMessage flatMessage : flatMessages) {
-                    FlatMessage[] partitionFlatMessage = MQMessageUtils.messagePartition(flatMessage,
-                        partitionNum,
-                        destination.getPartitionHash(),
-                        mqProperties.isDatabaseHash());
-                    int length = partitionFlatMessage.length;
-                    for (int i = 0; i < length; i++) {
-                        partitionFlatMessages.get(i).add(partitionFlatMessage[i]);
-                    }
+            ExecutorTemplate template = new ExecutorTemplate(sendExecutor);
+            for (int i = 0; i < length; i++) {
+                com.alibaba.otter.canal.protocol.Message dataPartition = messages[i];
+                if (dataPartition != null) {
+                    final int index = i;
+                    template.submit(() -> {
+                        Message data = new Message(topicName, CanalMessageSerializerUtil.serializer(dataPartition,
+                            mqProperties.isFilterTransactionEntry()));
+                        sendMessage(data, index);
+                    });
                 }
+            }
+            // 等所有分片发送完毕
+            template.waitForResult();
+        } else {
+            final int partition = destination.getPartition() != null ? destination.getPartition() : 0;
+            Message data = new Message(topicName, CanalMessageSerializerUtil.serializer(message,
+                mqProperties.isFilterTransactionEntry()));
+            sendMessage(data, partition);
+        }
+    }
 
-                ExecutorTemplate template = new ExecutorTemplate(sendExecutor);
-                for (int i = 0; i < partitionFlatMessages.size(); i++) {
-                    final List<FlatMessage> flatMessagePart = partitionFlatMessages.get(i);
-                    if (flatMessagePart != null) {
-                        final int index = i;
-                        template.submit(() -> {
-                            List<Message> messages = flatMessagePart.stream()
-                                .map(flatMessage -> new Message(topicName, JSON.toJSONBytes(flatMessage,
-                                    SerializerFeature.WriteMapNullValue)))
-                                .collect(Collectors.toList());
-                            // 批量发送
-                            sendMessage(messages, index);
-                        });
-                    }
-                }
+    private void sendFlat(MQDestination destination, String topicName, List<FlatMessagePart> parts,
+                          boolean partitionHash) {
+        if (partitionHash) {
+            // 按分区合并
+            Map<Integer, List<Message>> partitionMessages = parts.stream()
+                .collect(Collectors.groupingBy(part -> part.partition,
+                    TreeMap::new,
+                    Collectors.mapping(part -> new Message(topicName, part.data), Collectors.toList())));
 
-                // 批量等所有分区的结果
-                template.waitForResult();
-            } else {
-                final int partition = destination.getPartition() != null ? destination.getPartition() : 0;
-                List<Message> messages = flatMessages.stream()
-                    .map(flatMessage -> new Message(topicName, JSON.toJSONBytes(flatMessage,
-                        SerializerFeature.WriteMapNullValue)))
-                    .collect(Collectors.toList());
+            ExecutorTemplate template = new ExecutorTemplate(sendExecutor);
+            for (Map.Entry<Integer, List<Message>> entry : partitionMessages.entrySet()) {
+                final List<Message> messages = entry.getValue();
+                final int index = entry.getKey();
                 // 批量发送
-                sendMessage(messages, partition);
+                template.submit(() -> sendMessage(messages, index));
             }
+
+            // 批量等所有分区的结果
+            template.waitForResult();
+        } else {
+            final int partition = destination.getPartition() != null ? destination.getPartition() : 0;
+            List<Message> messages = parts.stream()
+                .map(part -> new Message(topicName, part.data))
+                .collect(Collectors.toList());
+            // 批量发送
+            sendMessage(messages, partition);
         }
     }
 
@@ -0,0 +1,282 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.alibaba.otter.canal.common.utils.MappedBufferUtils;
+import com.taobao.tddl.dbsync.binlog.event.FormatDescriptionLogEvent;
+
+/**
+ * 基于mmap读取本地binlog文件的fetcher，用法和{@linkplain FileLogFetcher}一致
+ *
+ * <pre>
+ * 1. 按windowSize把文件分段映射到内存，event直接从映射区域拷贝到解析buffer，省掉FileInputStream每次read的系统调用及jni中转拷贝
+ * 2. 映射下一个window时，由后台线程提前把后一个window的页面加载到page cache，解析线程基本不会阻塞在磁盘io上
+ * 3. 通过{@linkplain #setNextFile(File)}指定下一个binlog文件后，读到当前文件最后一个window时会同时预读下一个文件的开头，跨文件切换时同样不需要等待io
+ * 4. window移动、预读完成以及close时主动unmap，不依赖GC回收映射区域
+ *
+ * MappedFileLogFetcher fetcher = new MappedFileLogFetcher();
+ * fetcher.open(file, 4);
+ * fetcher.setNextFile(nextFile);
+ *
+ * while (fetcher.fetch()) {
+ *     LogEvent event = decoder.decode(fetcher, context);
+ *     // process log event.
+ * }
+ * fetcher.close();
+ * </pre>
+ *
+ * @since 1.1.5
+ */
+public final class MappedFileLogFetcher extends LogFetcher {
+
+    private static final Log                logger              = LogFactory.getLog(MappedFileLogFetcher.class);
+
+    /** 默认每次映射64MB */
+    public static final int                 DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private static final ThreadPoolExecutor readAheadExecutor   = new ThreadPoolExecutor(1,
+                                                                    1,
+                                                                    0,
+                                                                    TimeUnit.SECONDS,
+                                                                    new ArrayBlockingQueue<>(2),
+                                                                    r -> {
+                                                                        Thread thread = new Thread(r,
+                                                                            "binlog-read-ahead");
+                                                                        thread.setDaemon(true);
+                                                                        return thread;
+                                                                    },
+                                                                    new ThreadPoolExecutor.DiscardPolicy());
+
+    private final int                       windowSize;
+    private File                            current;
+    private RandomAccessFile                fin;
+    private FileChannel                     channel;
+    private MappedByteBuffer                window;
+    private long                            readOffset;                                                   // 下一个window在文件中的起始位置
+    private File                            nextFile;
+
+    public MappedFileLogFetcher(){
+        this(DEFAULT_INITIAL_CAPACITY, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedFileLogFetcher(final int initialCapacity){
+        this(initialCapacity, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedFileLogFetcher(final int initialCapacity, final int windowSize){
+        super(initialCapacity, DEFAULT_GROWTH_FACTOR);
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Illegal window size: " + windowSize);
+        }
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Open binlog file in local disk to fetch.
+     */
+    public void open(File file) throws FileNotFoundException, IOException {
+        open(file, 0L);
+    }
+
+    /**
+     * Open binlog file in local disk to fetch.
+     */
+    public void open(String filePath) throws FileNotFoundException, IOException {
+        open(new File(filePath), 0L);
+    }
+
+    /**
+     * Open binlog file in local disk to fetch.
+     */
+    public void open(String filePath, final long filePosition) throws FileNotFoundException, IOException {
+        open(new File(filePath), filePosition);
+    }
+
+    /**
+     * Open binlog file in local disk to fetch.
+     */
+    public void open(File file, final long filePosition) throws FileNotFoundException, IOException {
+        close();
+        this.current = file;
+        this.fin = new RandomAccessFile(file, "r");
+        this.channel = fin.getChannel();
+        this.nextFile = null;
+
+        limit = 0;
+        origin = 0;
+        position = 0;
+        readOffset = 0;
+        window = null;
+
+        ensureCapacity(BIN_LOG_HEADER_SIZE);
+        if (BIN_LOG_HEADER_SIZE != read(buffer, 0, BIN_LOG_HEADER_SIZE)) {
+            throw new IOException("No binlog file header");
+        }
+
+        if (buffer[0] != FileLogFetcher.BINLOG_MAGIC[0] || buffer[1] != FileLogFetcher.BINLOG_MAGIC[1]
+            || buffer[2] != FileLogFetcher.BINLOG_MAGIC[2] || buffer[3] != FileLogFetcher.BINLOG_MAGIC[3]) {
+            throw new IOException("Error binlog file header: "
+                                  + Arrays.toString(Arrays.copyOf(buffer, BIN_LOG_HEADER_SIZE)));
+        }
+
+        if (filePosition > BIN_LOG_HEADER_SIZE) {
+            // 和FileLogFetcher一致，先读出format description event，再跳到指定位置
+            final int maxFormatDescriptionEventLen = FormatDescriptionLogEvent.LOG_EVENT_MINIMAL_HEADER_LEN
+                                                     + FormatDescriptionLogEvent.ST_COMMON_HEADER_LEN_OFFSET
+                                                     + LogEvent.ENUM_END_EVENT + LogEvent.BINLOG_CHECKSUM_ALG_DESC_LEN
+                                                     + LogEvent.CHECKSUM_CRC32_SIGNATURE_LEN;
+
+            ensureCapacity(maxFormatDescriptionEventLen);
+            limit = read(buffer, 0, maxFormatDescriptionEventLen);
+            limit = (int) getUint32(LogEvent.EVENT_LEN_OFFSET);
+            seek(filePosition);
+        }
+    }
+
+    /**
+     * 指定下一个binlog文件，读到当前文件末尾时提前预读，为null时不预读
+     */
+    public void setNextFile(File nextFile) {
+        this.nextFile = nextFile;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.taobao.tddl.dbsync.binlog.LogFetcher#fetch()
+     */
+    public boolean fetch() throws IOException {
+        if (limit >= FormatDescriptionLogEvent.LOG_EVENT_HEADER_LEN) {
+            final long eventLen = getUint32(LogEvent.EVENT_LEN_OFFSET);
+            if (limit >= eventLen) {
+                /* buffer中已经有完整的event */
+                return true;
+            }
+
+            compact();
+            ensureCapacity((int) eventLen);
+        } else {
+            compact();
+        }
+
+        final int len = read(buffer, limit, buffer.length - limit);
+        if (len > 0) {
+            limit += len;
+
+            /* More binlog to fetch */
+            return true;
+        }
+
+        /* Reach binlog file end */
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.taobao.tddl.dbsync.binlog.LogFetcher#close()
+     */
+    public void close() throws IOException {
+        releaseWindow();
+        channel = null;
+        if (fin != null) {
+            fin.close();
+        }
+
+        fin = null;
+    }
+
+    /**
+     * 把未解析完的数据移动到buffer头部，腾出后面的空间
+     */
+    private void compact() {
+        if (origin > 0) {
+            System.arraycopy(buffer, origin, buffer, 0, limit);
+            origin = 0;
+        }
+        position = 0;
+    }
+
+    private void seek(long filePosition) {
+        readOffset = filePosition;
+        releaseWindow();
+    }
+
+    private void releaseWindow() {
+        MappedByteBuffer old = window;
+        window = null;
+        MappedBufferUtils.unmap(old);
+    }
+
+    /**
+     * 从映射区域中最多读取len个字节，返回实际读取的字节数，文件结束时返回0
+     */
+    private int read(byte[] dst, int off, int len) throws IOException {
+        int count = 0;
+        while (len > 0) {
+            if ((window == null || !window.hasRemaining()) && !nextWindow()) {
+                break;
+            }
+
+            final int n = Math.min(len, window.remaining());
+            window.get(dst, off, n);
+            off += n;
+            len -= n;
+            count += n;
+        }
+        return count;
+    }
+
+    private boolean nextWindow() throws IOException {
+        final long fileSize = channel.size();
+        if (readOffset >= fileSize) {
+            return false;
+        }
+
+        final long size = Math.min(windowSize, fileSize - readOffset);
+        releaseWindow();
+        window = channel.map(MapMode.READ_ONLY, readOffset, size);
+        readOffset += size;
+
+        if (readOffset < fileSize) {
+            readAhead(current, readOffset, Math.min(windowSize, fileSize - readOffset));
+        } else if (nextFile != null) {
+            readAhead(nextFile, 0, Math.min(windowSize, nextFile.length()));
+        }
+        return true;
+    }
+
+    /**
+     * 后台把文件的指定区域加载到page cache，只是优化手段，失败或者来不及时直接忽略
+     */
+    private static void readAhead(final File file, final long offset, final long size) {
+        if (size <= 0) {
+            return;
+        }
+
+        readAheadExecutor.execute(() -> {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                // 只为了把页面加载到page cache，加载完成后立即unmap
+                MappedBufferUtils.unmap(channel.map(MapMode.READ_ONLY, offset, size).load());
+            } catch (Throwable e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("read ahead failed : " + file, e);
+                }
+            }
+        });
+    }
+}
@@ -1,6 +1,7 @@
 package com.taobao.tddl.dbsync.binlog.event;
 
 import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.BitSet;
@@ -42,10 +43,22 @@ public final class RowsLogBuffer {
     private final boolean      partial;
     private final BitSet       partialBits;
 
+    // 当前字段值的存放形式, 非VALUE_OBJECT时getValue()才会生成对象
+    static final int           VALUE_OBJECT      = 0;
+    static final int           VALUE_INT         = 1;
+    static final int           VALUE_LONG        = 2;
+    static final int           VALUE_TEXT        = 3;
+    static final int           VALUE_BYTES       = 4;
+
     private boolean            fNull;
     private int                javaType;
     private int                length;
     private Serializable       value;
+    private int                valueKind;
+    private long               longValue;                                                   // VALUE_INT/VALUE_LONG
+    private final StringBuilder text             = new StringBuilder(32);                    // VALUE_TEXT
+    private int                bytesPosition;                                               // VALUE_BYTES
+    private int                bytesLength;
 
     public RowsLogBuffer(LogBuffer buffer, final int columnLen, String charsetName, int jsonColumnCount, boolean partial){
         this.buffer = buffer;
@@ -113,17 +126,37 @@ public final class RowsLogBuffer {
      */
     public final Serializable nextValue(final String columName, final int columnIndex, final int type, final int meta,
                                         boolean isBinary) {
+        nextColumn(columName, columnIndex, type, meta, isBinary);
+        return getValue();
+    }
+
+    /**
+     * 解析下一个字段但不生成值对象, 返回是否为null
+     * 
+     * <pre>
+     * 1. 整数类型保留为long, 通过{@link #isLongValue()}/{@link #getLongValue()}读取, 不会装箱
+     * 2. 时间类型直接格式化到内部复用的StringBuilder, 避免中间字符串及拼接
+     * 3. blob/binary类型只记录在buffer中的位置, 通过{@link #getBytesAsString(String)}直接解码, 不额外复制byte[]
+     * 4. 需要对象时调用{@link #getValue()}, 按需生成并缓存, 与{@link #nextValue}的结果一致
+     * </pre>
+     * 
+     * 注意: 以上视图只在下一次调用nextColumn/nextValue之前有效
+     */
+    public final boolean nextColumn(final String columName, final int columnIndex, final int type, final int meta,
+                                    boolean isBinary) {
         fNull = nullBits.get(nullBitIndex++);
+        valueKind = VALUE_OBJECT;
 
         if (fNull) {
             value = null;
             javaType = mysqlToJavaType(type, meta, isBinary);
             length = 0;
-            return null;
         } else {
+            value = null;
             // Extracting field value from packed buffer.
-            return fetchValue(columName, columnIndex, type, meta, isBinary);
+            fetchValue(columName, columnIndex, type, meta, isBinary);
         }
+        return fNull;
     }
 
     /**
@@ -273,7 +306,7 @@ public final class RowsLogBuffer {
      * 
      * @see mysql-5.1.60/sql/log_event.cc - log_event_print_value
      */
-    final Serializable fetchValue(String columnName, int columnIndex, int type, final int meta, boolean isBinary) {
+    final void fetchValue(String columnName, int columnIndex, int type, final int meta, boolean isBinary) {
         int len = 0;
 
         if (type == LogEvent.MYSQL_TYPE_STRING) {
@@ -309,7 +342,8 @@ public final class RowsLogBuffer {
                 // XXX: How to check signed / unsigned?
                 // value = unsigned ? Long.valueOf(buffer.getUint32()) :
                 // Integer.valueOf(buffer.getInt32());
-                value = Integer.valueOf(buffer.getInt32());
+                longValue = buffer.getInt32();
+                valueKind = VALUE_INT;
                 javaType = Types.INTEGER;
                 length = 4;
                 break;
@@ -318,7 +352,8 @@ public final class RowsLogBuffer {
                 // XXX: How to check signed / unsigned?
                 // value = Integer.valueOf(unsigned ? buffer.getUint8() :
                 // buffer.getInt8());
-                value = Integer.valueOf(buffer.getInt8());
+                longValue = buffer.getInt8();
+                valueKind = VALUE_INT;
                 javaType = Types.TINYINT; // java.sql.Types.INTEGER;
                 length = 1;
                 break;
@@ -327,7 +362,8 @@ public final class RowsLogBuffer {
                 // XXX: How to check signed / unsigned?
                 // value = Integer.valueOf(unsigned ? buffer.getUint16() :
                 // buffer.getInt16());
-                value = Integer.valueOf((short) buffer.getInt16());
+                longValue = (short) buffer.getInt16();
+                valueKind = VALUE_INT;
                 javaType = Types.SMALLINT; // java.sql.Types.INTEGER;
                 length = 2;
                 break;
@@ -336,7 +372,8 @@ public final class RowsLogBuffer {
                 // XXX: How to check signed / unsigned?
                 // value = Integer.valueOf(unsigned ? buffer.getUint24() :
                 // buffer.getInt24());
-                value = Integer.valueOf(buffer.getInt24());
+                longValue = buffer.getInt24();
+                valueKind = VALUE_INT;
                 javaType = Types.INTEGER;
                 length = 3;
                 break;
@@ -345,7 +382,8 @@ public final class RowsLogBuffer {
                 // XXX: How to check signed / unsigned?
                 // value = unsigned ? buffer.getUlong64()) :
                 // Long.valueOf(buffer.getLong64());
-                value = Long.valueOf(buffer.getLong64());
+                longValue = buffer.getLong64();
+                valueKind = VALUE_LONG;
                 javaType = Types.BIGINT; // Types.INTEGER;
                 length = 8;
                 break;
@@ -480,9 +518,10 @@ public final class RowsLogBuffer {
                 }
 
                 if (meta >= 1) {
-                    String microSecond = usecondsToStr(tv_usec, meta);
-                    microSecond = microSecond.substring(0, meta);
-                    value = second + '.' + microSecond;
+                    text.setLength(0);
+                    text.append(second).append('.');
+                    appendFraction(text, tv_usec, meta);
+                    valueKind = VALUE_TEXT;
                 } else {
                     value = second;
                 }
@@ -514,7 +553,8 @@ public final class RowsLogBuffer {
                     // (t % 10000) / 100,
                     // t % 100);
 
-                    StringBuilder builder = new StringBuilder();
+                    StringBuilder builder = text;
+                    builder.setLength(0);
                     appendNumber4(builder, d / 10000);
                     builder.append('-');
                     appendNumber2(builder, (d % 10000) / 100);
@@ -526,7 +566,7 @@ public final class RowsLogBuffer {
                     appendNumber2(builder, (t % 10000) / 100);
                     builder.append(':');
                     appendNumber2(builder, t % 100);
-                    value = builder.toString();
+                    valueKind = VALUE_TEXT;
                 }
                 javaType = Types.TIMESTAMP;
                 length = 8;
@@ -565,9 +605,10 @@ public final class RowsLogBuffer {
                         break;
                 }
 
-                String second = null;
+                StringBuilder builder = text;
+                builder.setLength(0);
                 if (intpart == 0) {
-                    second = "0000-00-00 00:00:00";
+                    builder.append("0000-00-00 00:00:00");
                 } else {
                     // 构造TimeStamp只处理到秒
                     long ymd = intpart >> 17;
@@ -588,7 +629,6 @@ public final class RowsLogBuffer {
                     // (int) ((hms >> 6) % (1 << 6)),
                     // (int) (hms % (1 << 6)));
 
-                    StringBuilder builder = new StringBuilder(26);
                     appendNumber4(builder, (int) (ym / 13));
                     builder.append('-');
                     appendNumber2(builder, (int) (ym % 13));
@@ -600,16 +640,13 @@ public final class RowsLogBuffer {
                     appendNumber2(builder, (int) ((hms >> 6) % (1 << 6)));
                     builder.append(':');
                     appendNumber2(builder, (int) (hms % (1 << 6)));
-                    second = builder.toString();
                 }
 
                 if (meta >= 1) {
-                    String microSecond = usecondsToStr(frac, meta);
-                    microSecond = microSecond.substring(0, meta);
-                    value = second + '.' + microSecond;
-                } else {
-                    value = second;
+                    builder.append('.');
+                    appendFraction(builder, frac, meta);
                 }
+                valueKind = VALUE_TEXT;
 
                 javaType = Types.TIMESTAMP;
                 length = 5 + (meta + 1) / 2;
@@ -635,7 +672,8 @@ public final class RowsLogBuffer {
                     // (u32 % 10000) / 100,
                     // u32 % 100);
 
-                    StringBuilder builder = new StringBuilder(17);
+                    StringBuilder builder = text;
+                    builder.setLength(0);
                     if (i32 < 0) {
                         builder.append('-');
                     }
@@ -650,7 +688,7 @@ public final class RowsLogBuffer {
                     appendNumber2(builder, (u32 % 10000) / 100);
                     builder.append(':');
                     appendNumber2(builder, u32 % 100);
-                    value = builder.toString();
+                    valueKind = VALUE_TEXT;
                 }
                 javaType = Types.TIME;
                 length = 3;
@@ -731,9 +769,10 @@ public final class RowsLogBuffer {
                         break;
                 }
 
-                String second = null;
+                StringBuilder builder = text;
+                builder.setLength(0);
                 if (intpart == 0) {
-                    second = "00:00:00";
+                    builder.append("00:00:00");
                 } else {
                     // 目前只记录秒，不处理us frac
                     // if (cal == null) cal = Calendar.getInstance();
@@ -750,7 +789,6 @@ public final class RowsLogBuffer {
                     // (int) ((intpart >> 6) % (1 << 6)),
                     // (int) (intpart % (1 << 6)));
 
-                    StringBuilder builder = new StringBuilder(12);
                     if (ltime < 0) {
                         builder.append('-');
                     }
@@ -765,16 +803,13 @@ public final class RowsLogBuffer {
                     appendNumber2(builder, (int) ((intpart >> 6) % (1 << 6)));
                     builder.append(':');
                     appendNumber2(builder, (int) (intpart % (1 << 6)));
-                    second = builder.toString();
                 }
 
                 if (meta >= 1) {
-                    String microSecond = usecondsToStr(Math.abs(frac), meta);
-                    microSecond = microSecond.substring(0, meta);
-                    value = second + '.' + microSecond;
-                } else {
-                    value = second;
+                    builder.append('.');
+                    appendFraction(builder, Math.abs(frac), meta);
                 }
+                valueKind = VALUE_TEXT;
 
                 javaType = Types.TIME;
                 length = 3 + (meta + 1) / 2;
@@ -808,13 +843,14 @@ public final class RowsLogBuffer {
                     // value = String.format("%04d-%02d-%02d", i32 / (16 * 32),
                     // i32 / 32 % 16, i32 % 32);
 
-                    StringBuilder builder = new StringBuilder(12);
+                    StringBuilder builder = text;
+                    builder.setLength(0);
                     appendNumber4(builder, i32 / (16 * 32));
                     builder.append('-');
                     appendNumber2(builder, i32 / 32 % 16);
                     builder.append('-');
                     appendNumber2(builder, i32 % 32);
-                    value = builder.toString();
+                    valueKind = VALUE_TEXT;
                 }
                 javaType = Types.DATE;
                 length = 3;
@@ -952,9 +988,7 @@ public final class RowsLogBuffer {
                     case 1: {
                         /* TINYBLOB/TINYTEXT */
                         final int len8 = buffer.getUint8();
-                        byte[] binary = new byte[len8];
-                        buffer.fillBytes(binary, 0, len8);
-                        value = binary;
+                        bytesView(len8);
                         javaType = Types.VARBINARY;
                         length = len8;
                         break;
@@ -962,9 +996,7 @@ public final class RowsLogBuffer {
                     case 2: {
                         /* BLOB/TEXT */
                         final int len16 = buffer.getUint16();
-                        byte[] binary = new byte[len16];
-                        buffer.fillBytes(binary, 0, len16);
-                        value = binary;
+                        bytesView(len16);
                         javaType = Types.LONGVARBINARY;
                         length = len16;
                         break;
@@ -972,9 +1004,7 @@ public final class RowsLogBuffer {
                     case 3: {
                         /* MEDIUMBLOB/MEDIUMTEXT */
                         final int len24 = buffer.getUint24();
-                        byte[] binary = new byte[len24];
-                        buffer.fillBytes(binary, 0, len24);
-                        value = binary;
+                        bytesView(len24);
                         javaType = Types.LONGVARBINARY;
                         length = len24;
                         break;
@@ -982,9 +1012,7 @@ public final class RowsLogBuffer {
                     case 4: {
                         /* LONGBLOB/LONGTEXT */
                         final int len32 = (int) buffer.getUint32();
-                        byte[] binary = new byte[len32];
-                        buffer.fillBytes(binary, 0, len32);
-                        value = binary;
+                        bytesView(len32);
                         javaType = Types.LONGVARBINARY;
                         length = len32;
                         break;
@@ -1010,12 +1038,8 @@ public final class RowsLogBuffer {
 
                 if (isBinary) {
                     // fixed issue #66 ,binary类型在binlog中为var_string
-                    /* fill binary */
-                    byte[] binary = new byte[len];
-                    buffer.fillBytes(binary, 0, len);
-
+                    bytesView(len);
                     javaType = Types.VARBINARY;
-                    value = binary;
                 } else {
                     value = buffer.getFullString(len, charsetName);
                     javaType = Types.VARCHAR;
@@ -1032,12 +1056,8 @@ public final class RowsLogBuffer {
                 }
 
                 if (isBinary) {
-                    /* fill binary */
-                    byte[] binary = new byte[len];
-                    buffer.fillBytes(binary, 0, len);
-
+                    bytesView(len);
                     javaType = Types.BINARY;
-                    value = binary;
                 } else {
                     value = buffer.getFullString(len, charsetName);
                     javaType = Types.CHAR; // Types.VARCHAR;
@@ -1142,8 +1162,6 @@ public final class RowsLogBuffer {
                 value = null;
                 length = 0;
         }
-
-        return value;
     }
 
     public final boolean isNull() {
@@ -1154,14 +1172,100 @@ public final class RowsLogBuffer {
         return javaType;
     }
 
+    /**
+     * 获取当前字段的值, 对于延迟生成的值在第一次调用时生成并缓存
+     */
     public final Serializable getValue() {
+        switch (valueKind) {
+            case VALUE_INT:
+                value = Integer.valueOf((int) longValue);
+                break;
+            case VALUE_LONG:
+                value = Long.valueOf(longValue);
+                break;
+            case VALUE_TEXT:
+                value = text.toString();
+                break;
+            case VALUE_BYTES:
+                value = buffer.getData(bytesPosition, bytesLength);
+                break;
+            default:
+                return value;
+        }
+        valueKind = VALUE_OBJECT;
         return value;
     }
 
+    /**
+     * 当前字段是否为未装箱的整数(TINY/SHORT/INT24/LONG/LONGLONG)
+     */
+    public final boolean isLongValue() {
+        return valueKind == VALUE_INT || valueKind == VALUE_LONG;
+    }
+
+    /**
+     * 以long获取当前整数字段的值, 有符号, 与getValue()返回的Integer/Long一致
+     */
+    public final long getLongValue() {
+        if (isLongValue()) {
+            return longValue;
+        }
+        return ((Number) getValue()).longValue();
+    }
+
+    /**
+     * 当前字段是否为buffer中的byte片段(blob/binary类型)
+     */
+    public final boolean isBytesValue() {
+        return valueKind == VALUE_BYTES;
+    }
+
+    /**
+     * 按指定字符集把当前byte[]类型的字段解码为字符串, 直接从buffer解码, 不生成中间的byte[]
+     */
+    public final String getBytesAsString(String charsetName) {
+        if (valueKind == VALUE_BYTES) {
+            return buffer.getFullString(bytesPosition, bytesLength, charsetName);
+        }
+
+        try {
+            return new String((byte[]) getValue(), charsetName);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalArgumentException("Unsupported encoding: " + charsetName, e);
+        }
+    }
+
+    private void bytesView(int len) {
+        bytesPosition = buffer.position();
+        bytesLength = len;
+        buffer.forward(len);
+        valueKind = VALUE_BYTES;
+    }
+
     public final int getLength() {
         return length;
     }
 
+    /**
+     * 追加微秒的前meta位, 等价于usecondsToStr(frac, meta).substring(0, meta)
+     */
+    private static void appendFraction(StringBuilder builder, int frac, int meta) {
+        if (frac < 0 || frac > 999999) {
+            builder.append(usecondsToStr(frac, meta));
+            return;
+        }
+
+        if (meta > 6) {
+            throw new IllegalArgumentException("unknow useconds meta : " + meta);
+        }
+
+        int divisor = 100000;
+        for (int i = 0; i < meta; i++) {
+            builder.append(digits[(frac / divisor) % 10]);
+            divisor /= 10;
+        }
+    }
+
     public static String usecondsToStr(int frac, int meta) {
         String sec = String.valueOf(frac);
         if (meta > 6) {
@@ -0,0 +1,83 @@
+package com.taobao.tddl.dbsync.binlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 测试MappedFileLogFetcher与FileLogFetcher解析出的event一致
+ */
+public class MappedFileLogFetcherTest {
+
+    private File binlog;
+
+    @Before
+    public void setUp() {
+        URL url = Thread.currentThread().getContextClassLoader().getResource("dummy.txt");
+        File dummyFile = new File(url.getFile());
+        binlog = new File(dummyFile.getParent() + "/binlog", "mysql-bin.000001");
+    }
+
+    @Test
+    public void testFetch() throws IOException {
+        List<String> expected = decode(new FileLogFetcher(1024 * 16), 4L);
+        Assert.assertTrue(expected.size() > 1);
+
+        Assert.assertEquals(expected, decode(new MappedFileLogFetcher(1024 * 16), 4L));
+        // 小window及小buffer，覆盖event跨window以及buffer扩容
+        Assert.assertEquals(expected, decode(new MappedFileLogFetcher(128, 1000), 4L));
+        Assert.assertEquals(expected, decode(new MappedFileLogFetcher(128, 1), 4L));
+    }
+
+    @Test
+    public void testFetchFromPosition() throws IOException {
+        List<String> events = decode(new FileLogFetcher(1024 * 16), 4L);
+        String middle = events.get(events.size() / 2);
+        long position = Long.parseLong(middle.substring(middle.indexOf(':') + 1));
+
+        List<String> expected = decode(new FileLogFetcher(1024 * 16), position);
+        Assert.assertEquals(expected, decode(new MappedFileLogFetcher(1024 * 16), position));
+        Assert.assertEquals(expected, decode(new MappedFileLogFetcher(128, 1000), position));
+    }
+
+    @Test(expected = IOException.class)
+    public void testErrorHeader() throws IOException {
+        File file = File.createTempFile("mysql-bin", ".000001");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[] { 1, 2, 3, 4, 5 });
+        try (MappedFileLogFetcher fetcher = new MappedFileLogFetcher()) {
+            fetcher.open(file);
+        }
+    }
+
+    private List<String> decode(LogFetcher fetcher, long position) throws IOException {
+        List<String> events = new ArrayList<>();
+        try {
+            if (fetcher instanceof MappedFileLogFetcher) {
+                ((MappedFileLogFetcher) fetcher).open(binlog, position);
+            } else {
+                ((FileLogFetcher) fetcher).open(binlog, position);
+            }
+
+            LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
+            LogContext context = new LogContext();
+            context.setLogPosition(new LogPosition(binlog.getName()));
+            while (fetcher.fetch()) {
+                LogEvent event = decoder.decode(fetcher, context);
+                if (event != null) {
+                    events.add(event.getHeader().getType() + ":" + event.getLogPos());
+                }
+            }
+        } finally {
+            fetcher.close();
+        }
+        return events;
+    }
+}
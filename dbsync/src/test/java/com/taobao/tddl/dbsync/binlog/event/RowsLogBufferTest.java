@@ -0,0 +1,91 @@
+package com.taobao.tddl.dbsync.binlog.event;
+
+import java.io.ByteArrayOutputStream;
+import java.sql.Types;
+import java.util.BitSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.taobao.tddl.dbsync.binlog.LogBuffer;
+import com.taobao.tddl.dbsync.binlog.LogEvent;
+
+/**
+ * 测试nextColumn的延迟取值与nextValue结果一致
+ */
+public class RowsLogBufferTest {
+
+    @Test
+    public void testNextColumn() {
+        RowsLogBuffer buffer = buildRow();
+        Assert.assertFalse(buffer.nextColumn("id", 0, LogEvent.MYSQL_TYPE_LONG, 0, false));
+        Assert.assertTrue(buffer.isLongValue());
+        Assert.assertEquals(-2, buffer.getLongValue());
+        Assert.assertEquals(Integer.valueOf(-2), buffer.getValue());
+
+        Assert.assertFalse(buffer.nextColumn("gmt", 1, LogEvent.MYSQL_TYPE_DATETIME2, 3, false));
+        Assert.assertFalse(buffer.isLongValue());
+        Assert.assertEquals(Types.TIMESTAMP, buffer.getJavaType());
+        Assert.assertEquals("2020-05-17 12:34:56.789", buffer.getValue());
+
+        Assert.assertFalse(buffer.nextColumn("content", 2, LogEvent.MYSQL_TYPE_BLOB, 1, false));
+        Assert.assertTrue(buffer.isBytesValue());
+        Assert.assertEquals("canal", buffer.getBytesAsString("UTF-8"));
+        Assert.assertArrayEquals("canal".getBytes(), (byte[]) buffer.getValue());
+        Assert.assertEquals("canal", buffer.getBytesAsString("UTF-8"));
+
+        Assert.assertTrue(buffer.nextColumn("remark", 3, LogEvent.MYSQL_TYPE_VARCHAR, 32, false));
+        Assert.assertNull(buffer.getValue());
+    }
+
+    @Test
+    public void testNextValue() {
+        RowsLogBuffer buffer = buildRow();
+        Assert.assertEquals(Integer.valueOf(-2), buffer.nextValue("id", 0, LogEvent.MYSQL_TYPE_LONG, 0));
+        Assert.assertEquals("2020-05-17 12:34:56.789",
+            buffer.nextValue("gmt", 1, LogEvent.MYSQL_TYPE_DATETIME2, 3));
+        Assert.assertArrayEquals("canal".getBytes(),
+            (byte[]) buffer.nextValue("content", 2, LogEvent.MYSQL_TYPE_BLOB, 1));
+        Assert.assertNull(buffer.nextValue("remark", 3, LogEvent.MYSQL_TYPE_VARCHAR, 32));
+        Assert.assertTrue(buffer.isNull());
+    }
+
+    private RowsLogBuffer buildRow() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // null bitmap, 最后一列为null
+        out.write(0x08);
+        // LONG -2, little-endian
+        writeLittleEndian(out, -2, 4);
+        // DATETIME2(3) 2020-05-17 12:34:56.789
+        long ymd = ((2020L * 13 + 5) << 5) | 17;
+        long hms = (12 << 12) | (34 << 6) | 56;
+        writeBigEndian(out, ((ymd << 17) | hms) + RowsLogBuffer.DATETIMEF_INT_OFS, 5);
+        writeBigEndian(out, 7890, 2);
+        // TINYBLOB
+        out.write(5);
+        out.write('c');
+        out.write('a');
+        out.write('n');
+        out.write('a');
+        out.write('l');
+
+        byte[] data = out.toByteArray();
+        RowsLogBuffer buffer = new RowsLogBuffer(new LogBuffer(data, 0, data.length), 4, "UTF-8", 0, false);
+        BitSet columns = new BitSet(4);
+        columns.set(0, 4);
+        Assert.assertTrue(buffer.nextOneRow(columns));
+        return buffer;
+    }
+
+    private static void writeLittleEndian(ByteArrayOutputStream out, long value, int len) {
+        for (int i = 0; i < len; i++) {
+            out.write((int) (value >> (8 * i)) & 0xff);
+        }
+    }
+
+    private static void writeBigEndian(ByteArrayOutputStream out, long value, int len) {
+        for (int i = len - 1; i >= 0; i--) {
+            out.write((int) (value >> (8 * i)) & 0xff);
+        }
+    }
+}
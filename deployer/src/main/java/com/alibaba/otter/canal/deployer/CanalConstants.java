@@ -27,6 +27,12 @@ public class CanalConstants {
     public static final String CANAL_ADMIN_AUTO_CLUSTER             = ROOT + "." + "admin.register.cluster";
     public static final String CANAL_ZKSERVERS                      = ROOT + "." + "zkServers";
     public static final String CANAL_WITHOUT_NETTY                  = ROOT + "." + "withoutNetty";
+    public static final String CANAL_NETTY_LOW_WATER_MARK           = ROOT + "." + "netty.lowWaterMark";
+    public static final String CANAL_NETTY_HIGH_WATER_MARK          = ROOT + "." + "netty.highWaterMark";
+    public static final String CANAL_ADAPTIVE_BATCH                 = ROOT + "." + "adaptiveBatch";
+    public static final String CANAL_ADAPTIVE_BATCH_LINGER_MS       = ROOT + "." + "adaptiveBatch.lingerMs";
+    public static final String CANAL_ADAPTIVE_BATCH_MIN_SIZE        = ROOT + "." + "adaptiveBatch.minBatchSize";
+    public static final String CANAL_ADAPTIVE_BATCH_MAX_ACK_LATENCY = ROOT + "." + "adaptiveBatch.maxAckLatencyMs";
 
     public static final String CANAL_DESTINATIONS                   = ROOT + "." + "destinations";
     public static final String CANAL_AUTO_SCAN                      = ROOT + "." + "auto.scan";
@@ -30,6 +30,7 @@ import com.alibaba.otter.canal.instance.manager.PlainCanalInstanceGenerator;
 import com.alibaba.otter.canal.instance.manager.plain.PlainCanalConfigClient;
 import com.alibaba.otter.canal.instance.spring.SpringCanalInstanceGenerator;
 import com.alibaba.otter.canal.server.CanalMQStarter;
+import com.alibaba.otter.canal.server.embedded.AdaptiveBatchSizer;
 import com.alibaba.otter.canal.server.embedded.CanalServerWithEmbedded;
 import com.alibaba.otter.canal.server.exception.CanalServerException;
 import com.alibaba.otter.canal.server.netty.CanalServerWithNetty;
@@ -111,12 +112,31 @@ public class CanalController {
         this.adminPasswd = getProperty(properties, CanalConstants.CANAL_ADMIN_PASSWD);
         embededCanalServer.setUser(getProperty(properties, CanalConstants.CANAL_USER));
         embededCanalServer.setPasswd(getProperty(properties, CanalConstants.CANAL_PASSWD));
+        if (Boolean.valueOf(getProperty(properties, CanalConstants.CANAL_ADAPTIVE_BATCH, "false"))) {
+            AdaptiveBatchSizer adaptiveBatchSizer = new AdaptiveBatchSizer();
+            adaptiveBatchSizer.setLingerMs(Long.valueOf(getProperty(properties,
+                CanalConstants.CANAL_ADAPTIVE_BATCH_LINGER_MS,
+                "50")));
+            adaptiveBatchSizer.setMinBatchSize(Integer.valueOf(getProperty(properties,
+                CanalConstants.CANAL_ADAPTIVE_BATCH_MIN_SIZE,
+                "1")));
+            adaptiveBatchSizer.setMaxAckLatencyMs(Long.valueOf(getProperty(properties,
+                CanalConstants.CANAL_ADAPTIVE_BATCH_MAX_ACK_LATENCY,
+                "1000")));
+            embededCanalServer.setAdaptiveBatchSizer(adaptiveBatchSizer);
+        }
 
         String canalWithoutNetty = getProperty(properties, CanalConstants.CANAL_WITHOUT_NETTY);
         if (canalWithoutNetty == null || "false".equals(canalWithoutNetty)) {
             canalServer = CanalServerWithNetty.instance();
             canalServer.setIp(ip);
             canalServer.setPort(port);
+            canalServer.setLowWaterMark(Integer.valueOf(getProperty(properties,
+                CanalConstants.CANAL_NETTY_LOW_WATER_MARK,
+                "32768")));
+            canalServer.setHighWaterMark(Integer.valueOf(getProperty(properties,
+                CanalConstants.CANAL_NETTY_HIGH_WATER_MARK,
+                "65536")));
         }
 
         // 处理下ip为空，默认使用hostIp暴露到zk中
@@ -29,6 +29,19 @@ public class AviaterFilterTest {
         Assert.assertEquals(true, result);
     }
 
+    @Test
+    public void test_el_regex() {
+        new AviaterRegexFilter("s1.t1"); // 加载时注册regex函数
+        AviaterELFilter filter = new AviaterELFilter("regex('s1.*', entry.header.schemaName + '.' + entry.header.tableName)");
+        CanalEntry.Header.Builder header = CanalEntry.Header.newBuilder().setSchemaName("s1").setTableName("t1");
+        CanalEntry.Entry entry = CanalEntry.Entry.newBuilder().setHeader(header).build();
+        Assert.assertEquals(true, filter.filter(entry));
+
+        header.setSchemaName("s2");
+        entry = CanalEntry.Entry.newBuilder().setHeader(header).build();
+        Assert.assertEquals(false, filter.filter(entry));
+    }
+
     @Test
     public void test_regex() {
         AviaterRegexFilter filter = new AviaterRegexFilter("s1\\..*,s2\\..*");
@@ -98,6 +111,38 @@ public class AviaterFilterTest {
 
     }
 
+    @Test
+    public void testMixedNameAndRegex() {
+        AviaterRegexFilter filter = new AviaterRegexFilter("db1\\.Order,db1\\.order_item,db2\\..*,db3.t1");
+
+        boolean result = filter.filter("db1.order");
+        Assert.assertEquals(true, result);
+
+        // 重复调用命中缓存
+        result = filter.filter("db1.order");
+        Assert.assertEquals(true, result);
+
+        result = filter.filter("DB1.ORDER_ITEM");
+        Assert.assertEquals(true, result);
+
+        result = filter.filter("db1xorder");
+        Assert.assertEquals(false, result);
+
+        result = filter.filter("db1.order_items");
+        Assert.assertEquals(false, result);
+
+        result = filter.filter("db2.any");
+        Assert.assertEquals(true, result);
+
+        // 未转义的点号仍然按正则匹配
+        result = filter.filter("db3xt1");
+        Assert.assertEquals(true, result);
+
+        AviaterRegexFilter empty = new AviaterRegexFilter("", false);
+        result = empty.filter("db1.order");
+        Assert.assertEquals(false, result);
+    }
+
     @Test
     public void test_el() {
         AviaterELFilter filter = new AviaterELFilter("str(entry.entryType) == 'ROWDATA'");
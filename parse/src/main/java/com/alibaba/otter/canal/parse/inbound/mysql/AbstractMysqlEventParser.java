@@ -11,6 +11,7 @@ import com.alibaba.otter.canal.parse.inbound.AbstractEventParser;
 import com.alibaba.otter.canal.parse.inbound.BinlogParser;
 import com.alibaba.otter.canal.parse.inbound.MultiStageCoprocessor;
 import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.LogEventConvert;
+import com.alibaba.otter.canal.parse.inbound.mysql.dbsync.TableMetaCache;
 import com.alibaba.otter.canal.parse.inbound.mysql.tsdb.DatabaseTableMeta;
 import com.alibaba.otter.canal.parse.inbound.mysql.tsdb.DefaultTableMetaTSDBFactory;
 import com.alibaba.otter.canal.parse.inbound.mysql.tsdb.TableMetaTSDB;
@@ -27,6 +28,7 @@ public abstract class AbstractMysqlEventParser extends AbstractEventParser {
     protected int                  tsdbSnapshotExpire        = 360;
     protected String               tsdbSpringXml;
     protected TableMetaTSDB        tableMetaTSDB;
+    protected TableMetaCache       tableMetaCache;
 
     // 编码信息
     protected byte                 connectionCharsetNumber   = (byte) 33;
@@ -134,7 +136,14 @@ public abstract class AbstractMysqlEventParser extends AbstractEventParser {
                 throw new CanalParseException("use gtid and TableMeta TSDB should be config timestamp > 0");
             }
 
-            return tableMetaTSDB.rollback(position);
+            try {
+                return tableMetaTSDB.rollback(position);
+            } finally {
+                if (tableMetaCache != null) {
+                    // tsdb回滚之后，清理掉查找位点过程中缓存的表结构快照
+                    tableMetaCache.clearTableMeta();
+                }
+            }
         }
 
         return true;
@@ -20,7 +20,9 @@ import com.taobao.tddl.dbsync.binlog.FileLogFetcher;
 import com.taobao.tddl.dbsync.binlog.LogContext;
 import com.taobao.tddl.dbsync.binlog.LogDecoder;
 import com.taobao.tddl.dbsync.binlog.LogEvent;
+import com.taobao.tddl.dbsync.binlog.LogFetcher;
 import com.taobao.tddl.dbsync.binlog.LogPosition;
+import com.taobao.tddl.dbsync.binlog.MappedFileLogFetcher;
 import com.taobao.tddl.dbsync.binlog.event.QueryLogEvent;
 
 /**
@@ -35,6 +37,7 @@ public class LocalBinLogConnection implements ErosaConnection {
     private boolean             needWait;
     private String              directory;
     private int                 bufferSize = 16 * 1024;
+    private boolean             mmap       = true;
     private boolean             running    = false;
     private long                serverId;
     private FileParserListener  parserListener;
@@ -81,10 +84,10 @@ public class LocalBinLogConnection implements ErosaConnection {
     public void dump(String binlogfilename, Long binlogPosition, SinkFunction func) throws IOException {
         File current = new File(directory, binlogfilename);
 
-        try (FileLogFetcher fetcher = new FileLogFetcher(bufferSize)) {
+        try (LogFetcher fetcher = buildFetcher()) {
             LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
             LogContext context = new LogContext();
-            fetcher.open(current, binlogPosition);
+            open(fetcher, current, binlogPosition, binlogs.getNextFile(current));
             context.setLogPosition(new LogPosition(binlogfilename, binlogPosition));
             while (running) {
                 boolean needContinue = true;
@@ -120,7 +123,7 @@ public class LocalBinLogConnection implements ErosaConnection {
                     }
 
                     current = nextFile;
-                    fetcher.open(current);
+                    open(fetcher, current, 0L, binlogs.getNextFile(current));
                     context.setLogPosition(new LogPosition(nextFile.getName()));
                 } else {
                     break;// 跳出
@@ -139,14 +142,14 @@ public class LocalBinLogConnection implements ErosaConnection {
         String binlogFilename = null;
         long binlogFileOffset = 0;
 
-        FileLogFetcher fetcher = new FileLogFetcher(bufferSize);
+        LogFetcher fetcher = buildFetcher();
         LogDecoder decoder = new LogDecoder();
         decoder.handle(LogEvent.FORMAT_DESCRIPTION_EVENT);
         decoder.handle(LogEvent.QUERY_EVENT);
         decoder.handle(LogEvent.XID_EVENT);
         LogContext context = new LogContext();
         try {
-            fetcher.open(current);
+            open(fetcher, current, 0L, binlogs.getBefore(current));
             context.setLogPosition(new LogPosition(current.getName()));
             while (running) {
                 boolean needContinue = true;
@@ -194,7 +197,7 @@ public class LocalBinLogConnection implements ErosaConnection {
                     }
 
                     current = nextFile;
-                    fetcher.open(current);
+                    open(fetcher, current, 0L, binlogs.getBefore(current));
                     context.setLogPosition(new LogPosition(current.getName()));
                 } else {
                     break;// 跳出
@@ -221,10 +224,10 @@ public class LocalBinLogConnection implements ErosaConnection {
             throw new CanalParseException("binlog:" + binlogfilename + " is not found");
         }
 
-        try (FileLogFetcher fetcher = new FileLogFetcher(bufferSize)) {
+        try (LogFetcher fetcher = buildFetcher()) {
             LogDecoder decoder = new LogDecoder(LogEvent.UNKNOWN_EVENT, LogEvent.ENUM_END_EVENT);
             LogContext context = new LogContext();
-            fetcher.open(current, binlogPosition);
+            open(fetcher, current, binlogPosition, binlogs.getNextFile(current));
             context.setLogPosition(new LogPosition(binlogfilename, binlogPosition));
             while (running) {
                 boolean needContinue = true;
@@ -259,8 +262,9 @@ public class LocalBinLogConnection implements ErosaConnection {
                     }
 
                     current = nextFile;
-                    fetcher.open(current);
+                    open(fetcher, current, 0L, binlogs.getNextFile(current));
                     binlogfilename = nextFile.getName();
+                    context.setLogPosition(new LogPosition(binlogfilename));
                 } else {
                     break;// 跳出
                 }
@@ -270,6 +274,22 @@ public class LocalBinLogConnection implements ErosaConnection {
         }
     }
 
+    private LogFetcher buildFetcher() {
+        return mmap ? new MappedFileLogFetcher(bufferSize) : new FileLogFetcher(bufferSize);
+    }
+
+    /**
+     * 打开binlog文件，mmap模式下会在当前文件读完之前预读接下来要读的文件
+     */
+    private void open(LogFetcher fetcher, File file, long position, File nextFile) throws IOException {
+        if (fetcher instanceof MappedFileLogFetcher) {
+            ((MappedFileLogFetcher) fetcher).open(file, position);
+            ((MappedFileLogFetcher) fetcher).setNextFile(nextFile);
+        } else {
+            ((FileLogFetcher) fetcher).open(file, position);
+        }
+    }
+
     private void parserFinish(String fileName) {
         if (parserListener != null) {
             parserListener.onFinish(fileName);
@@ -285,14 +305,14 @@ public class LocalBinLogConnection implements ErosaConnection {
         String binlogFilename = null;
         long binlogFileOffset = 0;
 
-        FileLogFetcher fetcher = new FileLogFetcher(bufferSize);
+        LogFetcher fetcher = buildFetcher();
         LogDecoder decoder = new LogDecoder();
         decoder.handle(LogEvent.FORMAT_DESCRIPTION_EVENT);
         decoder.handle(LogEvent.QUERY_EVENT);
         decoder.handle(LogEvent.XID_EVENT);
         LogContext context = new LogContext();
         try {
-            fetcher.open(current);
+            open(fetcher, current, 0L, binlogs.getBefore(current));
             context.setLogPosition(new LogPosition(current.getName()));
             while (running) {
                 boolean needContinue = true;
@@ -340,7 +360,7 @@ public class LocalBinLogConnection implements ErosaConnection {
                     }
 
                     current = nextFile;
-                    fetcher.open(current);
+                    open(fetcher, current, 0L, binlogs.getBefore(current));
                     context.setLogPosition(new LogPosition(current.getName()));
                 } else {
                     break;// 跳出
@@ -364,6 +384,7 @@ public class LocalBinLogConnection implements ErosaConnection {
         LocalBinLogConnection connection = new LocalBinLogConnection();
 
         connection.setBufferSize(this.bufferSize);
+        connection.setMmap(this.mmap);
         connection.setDirectory(this.directory);
         connection.setNeedWait(this.needWait);
         return connection;
@@ -398,6 +419,14 @@ public class LocalBinLogConnection implements ErosaConnection {
         this.bufferSize = bufferSize;
     }
 
+    public boolean isMmap() {
+        return mmap;
+    }
+
+    public void setMmap(boolean mmap) {
+        this.mmap = mmap;
+    }
+
     public long getServerId() {
         return serverId;
     }
@@ -27,11 +27,11 @@ public class LocalBinlogEventParser extends AbstractMysqlEventParser implements
     protected AuthenticationInfo masterInfo;
     protected EntryPosition      masterPosition;        // binlog信息
     protected MysqlConnection    metaConnection;        // 查询meta信息的链接
-    protected TableMetaCache     tableMetaCache;        // 对应meta
 
     protected String             directory;
     protected boolean            needWait   = false;
     protected int                bufferSize = 16 * 1024;
+    protected boolean            mmap       = true;
 
     public LocalBinlogEventParser(){
         // this.runningInfo = new AuthenticationInfo();
@@ -106,6 +106,7 @@ public class LocalBinlogEventParser extends AbstractMysqlEventParser implements
         LocalBinLogConnection connection = new LocalBinLogConnection();
 
         connection.setBufferSize(this.bufferSize);
+        connection.setMmap(this.mmap);
         connection.setDirectory(this.directory);
         connection.setNeedWait(this.needWait);
 
@@ -172,6 +173,10 @@ public class LocalBinlogEventParser extends AbstractMysqlEventParser implements
         this.bufferSize = bufferSize;
     }
 
+    public void setMmap(boolean mmap) {
+        this.mmap = mmap;
+    }
+
     public void setMasterPosition(EntryPosition masterPosition) {
         this.masterPosition = masterPosition;
     }
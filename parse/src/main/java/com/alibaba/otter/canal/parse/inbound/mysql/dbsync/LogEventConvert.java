@@ -1,6 +1,5 @@
 package com.alibaba.otter.canal.parse.inbound.mysql.dbsync;
 
-import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
@@ -681,15 +680,14 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
             if (existRDSNoPrimaryKey && i == columnCnt - 1 && info.type == LogEvent.MYSQL_TYPE_LONGLONG) {
                 // 不解析最后一列
                 String rdsRowIdColumnName = "__#alibaba_rds_row_id#__";
-                buffer.nextValue(rdsRowIdColumnName, i, info.type, info.meta, false);
+                buffer.nextColumn(rdsRowIdColumnName, i, info.type, info.meta, false);
                 Column.Builder columnBuilder = Column.newBuilder();
                 columnBuilder.setName(rdsRowIdColumnName);
                 columnBuilder.setIsKey(true);
                 columnBuilder.setMysqlType("bigint");
                 columnBuilder.setIndex(i);
                 columnBuilder.setIsNull(false);
-                Serializable value = buffer.getValue();
-                columnBuilder.setValue(value.toString());
+                columnBuilder.setValue(Long.toString(buffer.getLongValue()));
                 columnBuilder.setSqlType(Types.BIGINT);
                 columnBuilder.setUpdated(false);
 
@@ -750,12 +748,12 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
                 }
             }
 
-            buffer.nextValue(columnBuilder.getName(), i, info.type, info.meta, isBinary);
+            // 整数/时间/blob类型不生成中间对象，直接从buffer格式化为字符串
+            boolean isNull = buffer.nextColumn(columnBuilder.getName(), i, info.type, info.meta, isBinary);
             int javaType = buffer.getJavaType();
-            if (buffer.isNull()) {
+            if (isNull) {
                 columnBuilder.setIsNull(true);
             } else {
-                final Serializable value = buffer.getValue();
                 // 处理各种类型
                 switch (javaType) {
                     case Types.INTEGER:
@@ -763,56 +761,51 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
                     case Types.SMALLINT:
                     case Types.BIGINT:
                         // 处理unsigned类型
-                        Number number = (Number) value;
+                        long number = buffer.getLongValue();
                         boolean isUnsigned = (fieldMeta != null ? fieldMeta.isUnsigned() : (existOptionalMetaData ? info.unsigned : false));
-                        if (isUnsigned && number.longValue() < 0) {
+                        if (isUnsigned && number < 0) {
                             switch (buffer.getLength()) {
                                 case 1: /* MYSQL_TYPE_TINY */
-                                    columnBuilder.setValue(String.valueOf(Integer.valueOf(TINYINT_MAX_VALUE
-                                                                                          + number.intValue())));
+                                    columnBuilder.setValue(Integer.toString(TINYINT_MAX_VALUE + (int) number));
                                     javaType = Types.SMALLINT; // 往上加一个量级
                                     break;
 
                                 case 2: /* MYSQL_TYPE_SHORT */
-                                    columnBuilder.setValue(String.valueOf(Integer.valueOf(SMALLINT_MAX_VALUE
-                                                                                          + number.intValue())));
+                                    columnBuilder.setValue(Integer.toString(SMALLINT_MAX_VALUE + (int) number));
                                     javaType = Types.INTEGER; // 往上加一个量级
                                     break;
 
                                 case 3: /* MYSQL_TYPE_INT24 */
-                                    columnBuilder.setValue(String.valueOf(Integer.valueOf(MEDIUMINT_MAX_VALUE
-                                                                                          + number.intValue())));
+                                    columnBuilder.setValue(Integer.toString(MEDIUMINT_MAX_VALUE + (int) number));
                                     javaType = Types.INTEGER; // 往上加一个量级
                                     break;
 
                                 case 4: /* MYSQL_TYPE_LONG */
-                                    columnBuilder.setValue(String.valueOf(Long.valueOf(INTEGER_MAX_VALUE
-                                                                                       + number.longValue())));
+                                    columnBuilder.setValue(Long.toString(INTEGER_MAX_VALUE + number));
                                     javaType = Types.BIGINT; // 往上加一个量级
                                     break;
 
                                 case 8: /* MYSQL_TYPE_LONGLONG */
-                                    columnBuilder.setValue(BIGINT_MAX_VALUE.add(BigInteger.valueOf(number.longValue()))
+                                    columnBuilder.setValue(BIGINT_MAX_VALUE.add(BigInteger.valueOf(number))
                                         .toString());
                                     javaType = Types.DECIMAL; // 往上加一个量级，避免执行出错
                                     break;
                             }
                         } else {
-                            // 对象为number类型，直接valueof即可
-                            columnBuilder.setValue(String.valueOf(value));
+                            columnBuilder.setValue(Long.toString(number));
                         }
                         break;
                     case Types.REAL: // float
                     case Types.DOUBLE: // double
                         // 对象为number类型，直接valueof即可
-                        columnBuilder.setValue(String.valueOf(value));
+                        columnBuilder.setValue(String.valueOf(buffer.getValue()));
                         break;
                     case Types.BIT:// bit
                         // 对象为number类型
-                        columnBuilder.setValue(String.valueOf(value));
+                        columnBuilder.setValue(String.valueOf(buffer.getValue()));
                         break;
                     case Types.DECIMAL:
-                        columnBuilder.setValue(((BigDecimal) value).toPlainString());
+                        columnBuilder.setValue(((BigDecimal) buffer.getValue()).toPlainString());
                         break;
                     case Types.TIMESTAMP:
                         // 修复时间边界值
@@ -823,7 +816,7 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
                     case Types.TIME:
                     case Types.DATE:
                         // 需要处理year
-                        columnBuilder.setValue(value.toString());
+                        columnBuilder.setValue(buffer.getValue().toString());
                         break;
                     case Types.BINARY:
                     case Types.VARBINARY:
@@ -833,11 +826,11 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
                         // mysql binlog中blob/text都处理为blob类型，需要反查table
                         // meta，按编码解析text
                         if (fieldMeta != null && isText(fieldMeta.getColumnType())) {
-                            columnBuilder.setValue(new String((byte[]) value, charset));
+                            columnBuilder.setValue(buffer.getBytesAsString(charset.name()));
                             javaType = Types.CLOB;
                         } else {
                             // byte数组，直接使用iso-8859-1保留对应编码，浪费内存
-                            columnBuilder.setValue(new String((byte[]) value, ISO_8859_1));
+                            columnBuilder.setValue(buffer.getBytesAsString(ISO_8859_1));
                             // columnBuilder.setValueBytes(ByteString.copyFrom((byte[])
                             // value));
                             javaType = Types.BLOB;
@@ -845,10 +838,10 @@ public class LogEventConvert extends AbstractCanalLifeCycle implements BinlogPar
                         break;
                     case Types.CHAR:
                     case Types.VARCHAR:
-                        columnBuilder.setValue(value.toString());
+                        columnBuilder.setValue(buffer.getValue().toString());
                         break;
                     default:
-                        columnBuilder.setValue(value.toString());
+                        columnBuilder.setValue(buffer.getValue().toString());
                 }
             }
 
@@ -5,6 +5,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -22,10 +24,18 @@ import com.alibaba.otter.canal.protocol.position.EntryPosition;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.Striped;
 
 /**
  * 处理table meta解析和缓存
  *
+ * <pre>
+ * tsdb模式下的并发读取：
+ * 1. 解析线程优先读取并发的快照map，命中时不需要任何锁，多个DmlParserStage线程之间不会串行
+ * 2. 快照未命中时按表做分段锁加载，同一张表只会加载一次，加载完成后直接写入快照
+ * 3. ddl变更(apply/clearTableMeta)时原地清理快照，并递增版本号，避免并发加载把旧的表结构写回快照
+ * </pre>
+ *
  * @author jianghang 2013-1-17 下午10:15:16
  * @version 1.0.0
  */
@@ -45,6 +55,12 @@ public class TableMetaCache {
     // 第一层tableId,第二层schema.table,解决tableId重复，对应多张表
     private LoadingCache<String, TableMeta> tableMetaDB;
 
+    // tsdb模式下的表结构快照，key为schema.table全名
+    private final Map<String, TableMeta>    tableMetaSnapshot = new ConcurrentHashMap<>();
+    private volatile long                   snapshotVersion   = 0;
+    private final Object                    snapshotLock      = new Object();
+    private final Striped<Lock>             loadLocks         = Striped.lock(64);
+
     public TableMetaCache(MysqlConnection con, TableMetaTSDB tableMetaTSDB){
         this.connection = con;
         this.tableMetaTSDB = tableMetaTSDB;
@@ -159,13 +175,56 @@ public class TableMetaCache {
         return getTableMeta(schema, table, true, position);
     }
 
-    public synchronized TableMeta getTableMeta(String schema, String table, boolean useCache, EntryPosition position) {
-        TableMeta tableMeta = null;
+    public TableMeta getTableMeta(String schema, String table, boolean useCache, EntryPosition position) {
         if (tableMetaTSDB != null) {
-            tableMeta = tableMetaTSDB.find(schema, table);
-            if (tableMeta == null) {
-                // 因为条件变化，可能第一次的tableMeta没取到，需要从db获取一次，并记录到snapshot中
-                String fullName = getFullName(schema, table);
+            String fullName = getFullName(schema, table);
+            TableMeta tableMeta = null;
+            if (useCache) {
+                tableMeta = tableMetaSnapshot.get(fullName);
+                if (tableMeta != null) {
+                    return tableMeta;
+                }
+            }
+
+            Lock lock = loadLocks.get(fullName);
+            lock.lock();
+            try {
+                if (useCache) {
+                    tableMeta = tableMetaSnapshot.get(fullName);
+                    if (tableMeta != null) {
+                        return tableMeta;
+                    }
+                }
+
+                long version = snapshotVersion;
+                tableMeta = getTableMetaByTSDB(schema, table, fullName, position);
+                if (tableMeta != null) {
+                    putSnapshot(fullName, tableMeta, version);
+                }
+                return tableMeta;
+            } finally {
+                lock.unlock();
+            }
+        } else {
+            if (!useCache) {
+                tableMetaDB.invalidate(getFullName(schema, table));
+            }
+
+            return tableMetaDB.getUnchecked(getFullName(schema, table));
+        }
+    }
+
+    private TableMeta getTableMetaByTSDB(String schema, String table, String fullName, EntryPosition position) {
+        TableMeta tableMeta = tableMetaTSDB.find(schema, table);
+        if (tableMeta == null) {
+            // 因为条件变化，可能第一次的tableMeta没取到，需要从db获取一次，并记录到snapshot中
+            synchronized (this) {
+                // connection不是线程安全的，从db获取时需要串行
+                tableMeta = tableMetaTSDB.find(schema, table);
+                if (tableMeta != null) {
+                    return tableMeta;
+                }
+
                 ResultSetPacket packet = null;
                 String createDDL = null;
                 try {
@@ -186,19 +245,44 @@ public class TableMetaCache {
                     throw new CanalParseException("fetch failed by table meta:" + fullName, e);
                 }
             }
-            return tableMeta;
-        } else {
-            if (!useCache) {
-                tableMetaDB.invalidate(getFullName(schema, table));
+        }
+        return tableMeta;
+    }
+
+    /**
+     * 加载期间快照没有被清理过，才允许写入快照
+     */
+    private void putSnapshot(String fullName, TableMeta tableMeta, long version) {
+        synchronized (snapshotLock) {
+            if (version == snapshotVersion) {
+                tableMetaSnapshot.put(fullName, tableMeta);
             }
+        }
+    }
 
-            return tableMetaDB.getUnchecked(getFullName(schema, table));
+    private void removeSnapshot(String schema, String table) {
+        synchronized (snapshotLock) {
+            snapshotVersion++;
+            if (table != null) {
+                tableMetaSnapshot.remove(getFullName(schema, table));
+            } else {
+                tableMetaSnapshot.keySet()
+                    .removeIf(name -> StringUtils.startsWithIgnoreCase(name, "`" + schema + "`."));
+            }
+        }
+    }
+
+    private void clearSnapshot() {
+        synchronized (snapshotLock) {
+            snapshotVersion++;
+            tableMetaSnapshot.clear();
         }
     }
 
     public void clearTableMeta(String schema, String table) {
         if (tableMetaTSDB != null) {
-            // tsdb不需要做,会基于ddl sql自动清理
+            // tsdb会基于ddl sql自动清理,这里只清理快照
+            removeSnapshot(schema, table);
         } else {
             tableMetaDB.invalidate(getFullName(schema, table));
         }
@@ -206,7 +290,8 @@ public class TableMetaCache {
 
     public void clearTableMetaWithSchemaName(String schema) {
         if (tableMetaTSDB != null) {
-            // tsdb不需要做,会基于ddl sql自动清理
+            // tsdb会基于ddl sql自动清理,这里只清理快照
+            removeSnapshot(schema, null);
         } else {
             for (String name : tableMetaDB.asMap().keySet()) {
                 if (StringUtils.startsWithIgnoreCase(name, schema + ".")) {
@@ -219,7 +304,8 @@ public class TableMetaCache {
 
     public void clearTableMeta() {
         if (tableMetaTSDB != null) {
-            // tsdb不需要做,会基于ddl sql自动清理
+            // tsdb会基于ddl sql自动清理,这里只清理快照
+            clearSnapshot();
         } else {
             tableMetaDB.invalidateAll();
         }
@@ -235,7 +321,12 @@ public class TableMetaCache {
      */
     public boolean apply(EntryPosition position, String schema, String ddl, String extra) {
         if (tableMetaTSDB != null) {
-            return tableMetaTSDB.apply(position, schema, ddl, extra);
+            try {
+                return tableMetaTSDB.apply(position, schema, ddl, extra);
+            } finally {
+                // 一个ddl可能影响多张表(比如rename/drop database)，直接清空快照
+                clearSnapshot();
+            }
         } else {
             // ignore
             return true;
@@ -7,12 +7,19 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.LockSupport;
 
 import javax.net.ssl.SSLContext;
@@ -24,6 +31,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
@@ -41,25 +49,49 @@ import com.alibaba.otter.canal.parse.exception.CanalParseException;
 import com.alibaba.otter.canal.parse.inbound.mysql.rds.data.BinlogFile;
 
 /**
+ * rds binlog备份文件的下载队列
+ *
+ * <pre>
+ * 1. 最多同时准备batchFileSize个文件，由downloadThreads个线程并发下载，共用一个http连接池
+ * 2. 下载中及已下载未解析完的文件总大小不超过diskBudget(字节，小于等于0表示不限制)，按文件顺序占用额度，至少允许一个文件
+ * 3. 下载时直接从http流中解压tar写入临时文件，不落地压缩包
+ * 4. 临时文件按binlog顺序重命名为正式文件，保证LocalBinLogConnection按顺序看到文件，不会因为后面的文件先下载完成而跳过前面的文件
+ * </pre>
+ *
  * @author chengjin.lyf on 2018/8/7 下午3:10
  * @since 1.0.25
  */
 public class BinlogDownloadQueue {
 
-    private static final Logger             logger        = LoggerFactory.getLogger(BinlogDownloadQueue.class);
-    private static final int                TIMEOUT       = 10000;
+    private static final Logger             logger          = LoggerFactory.getLogger(BinlogDownloadQueue.class);
+    private static final int                TIMEOUT         = 10000;
+    private static final int                BUFFER_SIZE     = 64 * 1024;
+    private static final String             TMP_SUFFIX      = ".tmp";
 
-    private LinkedBlockingQueue<BinlogFile> downloadQueue = new LinkedBlockingQueue<>();
-    private LinkedBlockingQueue<Runnable>   taskQueue     = new LinkedBlockingQueue<>();
+    private LinkedBlockingQueue<Runnable>   taskQueue       = new LinkedBlockingQueue<>();
     private LinkedList<BinlogFile>          binlogList;
     private final int                       batchFileSize;
+    private int                             downloadThreads = 1;
+    private long                            diskBudget      = 0;
     private Thread                          downloadThread;
-    public boolean                          running       = true;
+    private ExecutorService                 downloadExecutor;
+    private CloseableHttpClient             httpClient;
+    public volatile boolean                 running         = true;
     private final String                    destDir;
     private String                          hostId;
     private int                             currentSize;
     private String                          lastDownload;
 
+    // 按顺序占用磁盘额度及发布文件，generation在清理目录时递增，用于丢弃之前发起的下载
+    private final Object                    lock            = new Object();
+    private final AtomicInteger             generation      = new AtomicInteger();
+    private long                            nextSequence;
+    private long                            nextReserve;
+    private long                            nextPublish;
+    private long                            reserved;
+    private final LinkedList<Long>          reservedSizes   = new LinkedList<>();
+    private final TreeMap<Long, List<File>> downloaded      = new TreeMap<>();
+
     public BinlogDownloadQueue(List<BinlogFile> downloadQueue, int batchFileSize, String destDir) throws IOException{
         this.binlogList = new LinkedList(downloadQueue);
         this.batchFileSize = batchFileSize;
@@ -78,6 +110,17 @@ public class BinlogDownloadQueue {
     }
 
     public void cleanDir() throws IOException {
+        synchronized (lock) {
+            // 之前发起的下载全部作废
+            generation.incrementAndGet();
+            nextReserve = nextSequence;
+            nextPublish = nextSequence;
+            reserved = 0;
+            reservedSizes.clear();
+            downloaded.clear();
+            lock.notifyAll();
+        }
+
         File destDirFile = new File(destDir);
         FileUtils.forceMkdir(destDirFile);
         FileUtils.cleanDirectory(destDirFile);
@@ -87,7 +130,8 @@ public class BinlogDownloadQueue {
         if (downloadThread != null) {
             return;
         }
-        downloadThread = new Thread(new DownloadThread(), "download-" + destDir);
+        downloadExecutor = Executors.newFixedThreadPool(Math.max(downloadThreads, 1), new ThreadFactoryImpl());
+        downloadThread = new Thread(new TaskThread(), "download-" + destDir);
         downloadThread.setDaemon(true);
         downloadThread.start();
     }
@@ -97,7 +141,11 @@ public class BinlogDownloadQueue {
         if (binlogFile == null) {
             throw new CanalParseException("download binlog is null");
         }
-        download(binlogFile);
+
+        // 同步下载，此时没有其他下载中的文件，直接发布
+        long sequence = nextSequence();
+        reserve(sequence, binlogFile);
+        publish(sequence, download(binlogFile), generation.get());
         hostId = binlogFile.getHostInstanceID();
         this.currentSize++;
         return binlogFile;
@@ -141,7 +189,7 @@ public class BinlogDownloadQueue {
             if (binlogFile == null) {
                 break;
             }
-            this.downloadQueue.put(binlogFile);
+            downloadExecutor.execute(new DownloadTask(nextSequence(), binlogFile, generation.get()));
             this.lastDownload = "mysql-bin." + binlogFile.getFileName();
             this.currentSize++;
         }
@@ -149,49 +197,104 @@ public class BinlogDownloadQueue {
 
     public void downOne() {
         this.currentSize--;
+        synchronized (lock) {
+            // 最早的文件已经解析完并删除，释放其占用的额度
+            Long size = reservedSizes.poll();
+            if (size != null) {
+                reserved -= size;
+                lock.notifyAll();
+            }
+        }
     }
 
     public void release() {
         running = false;
         this.currentSize = 0;
         binlogList.clear();
-        downloadQueue.clear();
+        synchronized (lock) {
+            generation.incrementAndGet();
+            lock.notifyAll();
+        }
         try {
-            downloadThread.interrupt();
-            downloadThread.join();// 等待其结束
+            if (downloadExecutor != null) {
+                downloadExecutor.shutdownNow();
+            }
+            if (downloadThread != null) {
+                downloadThread.interrupt();
+                downloadThread.join();// 等待其结束
+            }
         } catch (InterruptedException e) {
             // ignore
         } finally {
             downloadThread = null;
+            downloadExecutor = null;
+            IOUtils.closeQuietly(httpClient);
+            httpClient = null;
+        }
+    }
+
+    private long nextSequence() {
+        synchronized (lock) {
+            return nextSequence++;
+        }
+    }
+
+    /**
+     * 按文件顺序占用磁盘额度，额度不足时等待前面的文件解析完成
+     */
+    private void reserve(long sequence, BinlogFile binlogFile) throws InterruptedException {
+        long size = binlogFile.getFileSize() == null ? 0 : binlogFile.getFileSize();
+        synchronized (lock) {
+            while (running && (sequence > nextReserve
+                               || (diskBudget > 0 && reserved > 0 && reserved + size > diskBudget))) {
+                if (sequence < nextReserve) {
+                    // 目录已经被清理，不需要再占用额度
+                    return;
+                }
+                lock.wait(1000);
+            }
+
+            if (sequence == nextReserve) {
+                reserved += size;
+                reservedSizes.offer(size);
+                nextReserve++;
+            }
         }
     }
 
-    private void download(BinlogFile binlogFile) throws Throwable {
+    /**
+     * 按顺序把临时文件重命名为正式的binlog文件
+     */
+    private void publish(long sequence, List<File> files, int expectGeneration) {
+        synchronized (lock) {
+            if (expectGeneration != generation.get()) {
+                for (File file : files) {
+                    FileUtils.deleteQuietly(file);
+                }
+                return;
+            }
+
+            downloaded.put(sequence, files);
+            while (!downloaded.isEmpty() && downloaded.firstKey() == nextPublish) {
+                for (File file : downloaded.pollFirstEntry().getValue()) {
+                    String name = StringUtils.removeEnd(file.getName(), TMP_SUFFIX);
+                    if (!file.renameTo(new File(file.getParentFile(), name))) {
+                        logger.warn("rename " + file.getName() + " to " + name + " failed");
+                    }
+                }
+                nextPublish++;
+            }
+        }
+    }
+
+    /**
+     * 下载并解压到临时文件，返回下载的临时文件
+     */
+    private List<File> download(BinlogFile binlogFile) throws Throwable {
         String downloadLink = binlogFile.getDownloadLink();
         String fileName = binlogFile.getFileName();
 
         downloadLink = downloadLink.trim();
-        CloseableHttpClient httpClient = null;
-        if (downloadLink.startsWith("https")) {
-            HttpClientBuilder builder = HttpClientBuilder.create();
-            builder.setMaxConnPerRoute(50);
-            builder.setMaxConnTotal(100);
-            // 创建支持忽略证书的https
-            final SSLContext sslContext = new SSLContextBuilder()
-                    .loadTrustMaterial(null, (x509Certificates, s) -> true)
-                    .build();
-
-            httpClient = HttpClientBuilder.create()
-                .setSSLContext(sslContext)
-                .setConnectionManager(new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory> create()
-                    .register("http", PlainConnectionSocketFactory.INSTANCE)
-                    .register("https", new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE))
-                    .build()))
-                .build();
-        } else {
-            httpClient = HttpClientBuilder.create().setMaxConnPerRoute(50).setMaxConnTotal(100).build();
-        }
-
         HttpGet httpGet = new HttpGet(downloadLink);
         RequestConfig requestConfig = RequestConfig.custom()
             .setConnectTimeout(TIMEOUT)
@@ -199,15 +302,32 @@ public class BinlogDownloadQueue {
             .setSocketTimeout(TIMEOUT)
             .build();
         httpGet.setConfig(requestConfig);
-        HttpResponse response = httpClient.execute(httpGet);
-        int statusCode = response.getStatusLine().getStatusCode();
-        if (statusCode != HttpResponseStatus.OK.code()) {
-            throw new RuntimeException("download failed , url:" + downloadLink + " , statusCode:" + statusCode);
+        try (CloseableHttpResponse response = getHttpClient().execute(httpGet)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode != HttpResponseStatus.OK.code()) {
+                throw new RuntimeException("download failed , url:" + downloadLink + " , statusCode:" + statusCode);
+            }
+            return saveFile(new File(destDir), "mysql-bin." + fileName, response);
         }
-        saveFile(new File(destDir), "mysql-bin." + fileName, response);
     }
 
-    private static void saveFile(File parentFile, String fileName, HttpResponse response) throws IOException {
+    private synchronized CloseableHttpClient getHttpClient() throws Exception {
+        if (httpClient == null) {
+            // 创建支持忽略证书的https，http和https共用一个连接池
+            final SSLContext sslContext = new SSLContextBuilder().loadTrustMaterial(null,
+                (x509Certificates, s) -> true).build();
+            PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory> create()
+                .register("http", PlainConnectionSocketFactory.INSTANCE)
+                .register("https", new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE))
+                .build());
+            connectionManager.setDefaultMaxPerRoute(Math.max(downloadThreads, 1) + 1);
+            connectionManager.setMaxTotal(Math.max(downloadThreads, 1) * 2 + 2);
+            httpClient = HttpClientBuilder.create().setConnectionManager(connectionManager).build();
+        }
+        return httpClient;
+    }
+
+    private static List<File> saveFile(File parentFile, String fileName, HttpResponse response) throws IOException {
         InputStream is = response.getEntity().getContent();
         long totalSize = Long.parseLong(response.getFirstHeader("Content-Length").getValue());
         if (response.getFirstHeader("Content-Disposition") != null) {
@@ -216,68 +336,50 @@ public class BinlogDownloadQueue {
         }
         boolean isTar = StringUtils.endsWith(fileName, ".tar");
         FileUtils.forceMkdir(parentFile);
-        FileOutputStream fos = null;
-        try {
-            if (isTar) {
-                TarArchiveInputStream tais = new TarArchiveInputStream(is);
+        List<File> files = new ArrayList<>();
+        if (isTar) {
+            try (TarArchiveInputStream tais = new TarArchiveInputStream(is, BUFFER_SIZE)) {
                 TarArchiveEntry tarArchiveEntry = null;
                 while ((tarArchiveEntry = tais.getNextTarEntry()) != null) {
-                    String name = tarArchiveEntry.getName();
-                    File tarFile = new File(parentFile, name + ".tmp");
+                    File tarFile = new File(parentFile, tarArchiveEntry.getName() + TMP_SUFFIX);
                     logger.info("start to download file " + tarFile.getName());
-                    if (tarFile.exists()) {
-                        tarFile.delete();
-                    }
-                    BufferedOutputStream bos = null;
-                    try {
-                        bos = new BufferedOutputStream(new FileOutputStream(tarFile));
-                        int read = -1;
-                        byte[] buffer = new byte[1024];
-                        while ((read = tais.read(buffer)) != -1) {
-                            bos.write(buffer, 0, read);
-                        }
-                        logger.info("download file " + tarFile.getName() + " end!");
-                        tarFile.renameTo(new File(parentFile, name));
-                    } finally {
-                        IOUtils.closeQuietly(bos);
-                    }
-                }
-                tais.close();
-            } else {
-                File file = new File(parentFile, fileName + ".tmp");
-                if (file.exists()) {
-                    file.delete();
+                    copy(tais, tarFile, tarArchiveEntry.getSize());
+                    logger.info("download file " + tarFile.getName() + " end!");
+                    files.add(tarFile);
                 }
+            }
+        } else {
+            File file = new File(parentFile, fileName + TMP_SUFFIX);
+            logger.info("start to download file " + file.getName());
+            copy(is, file, totalSize);
+            logger.info("download file " + file.getName() + " end!");
+            files.add(file);
+        }
+        return files;
+    }
 
-                if (!file.isFile()) {
-                    file.createNewFile();
-                }
-                try {
-                    fos = new FileOutputStream(file);
-                    byte[] buffer = new byte[1024];
-                    int len;
-                    long copySize = 0;
-                    long nextPrintProgress = 0;
-                    logger.info("start to download file " + file.getName());
-                    while ((len = is.read(buffer)) != -1) {
-                        fos.write(buffer, 0, len);
-                        copySize += len;
-                        long progress = copySize * 100 / totalSize;
-                        if (progress >= nextPrintProgress) {
-                            logger.info("download " + file.getName() + " progress : " + progress
-                                        + "% , download size : " + copySize + ", total size : " + totalSize);
-                            nextPrintProgress += 10;
-                        }
+    private static void copy(InputStream is, File file, long totalSize) throws IOException {
+        if (file.exists()) {
+            file.delete();
+        }
+
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int len;
+            long copySize = 0;
+            long nextPrintProgress = 0;
+            while ((len = is.read(buffer)) != -1) {
+                os.write(buffer, 0, len);
+                copySize += len;
+                if (totalSize > 0) {
+                    long progress = copySize * 100 / totalSize;
+                    if (progress >= nextPrintProgress) {
+                        logger.info("download " + file.getName() + " progress : " + progress + "% , download size : "
+                                    + copySize + ", total size : " + totalSize);
+                        nextPrintProgress += 10;
                     }
-                    logger.info("download file " + file.getName() + " end!");
-                    fos.flush();
-                } finally {
-                    IOUtils.closeQuietly(fos);
                 }
-                file.renameTo(new File(parentFile, fileName));
             }
-        } finally {
-            IOUtils.closeQuietly(fos);
         }
     }
 
@@ -285,44 +387,56 @@ public class BinlogDownloadQueue {
         taskQueue.put(runnable);
     }
 
-    private class DownloadThread implements Runnable {
+    public void setDownloadThreads(int downloadThreads) {
+        this.downloadThreads = downloadThreads;
+    }
+
+    public void setDiskBudget(long diskBudget) {
+        this.diskBudget = diskBudget;
+    }
+
+    private class DownloadTask implements Runnable {
+
+        private final long       sequence;
+        private final BinlogFile binlogFile;
+        private final int        expectGeneration;
+
+        public DownloadTask(long sequence, BinlogFile binlogFile, int expectGeneration){
+            this.sequence = sequence;
+            this.binlogFile = binlogFile;
+            this.expectGeneration = expectGeneration;
+        }
 
         @Override
         public void run() {
-            while (running) {
-                BinlogFile binlogFile = null;
+            try {
+                reserve(sequence, binlogFile);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            int retry = 1;
+            while (running && expectGeneration == generation.get()) {
                 try {
-                    binlogFile = downloadQueue.poll(5000, TimeUnit.MILLISECONDS);
-                    if (binlogFile != null) {
-                        int retry = 1;
-                        while (true) {
-                            try {
-                                download(binlogFile);
-                                break;
-                            } catch (Throwable e) {
-                                if (retry % 10 == 0) {
-                                    retry = retry + 1;
-                                    try {
-                                        logger.warn("download failed + " + binlogFile.toString() + "], retry : "
-                                                    + retry, e);
-                                        // File errorFile = new File(destDir,
-                                        // "error.txt");
-                                        // FileWriter writer = new
-                                        // FileWriter(errorFile);
-                                        // writer.write(ExceptionUtils.getFullStackTrace(e));
-                                        // writer.flush();
-                                        // IOUtils.closeQuietly(writer);
-                                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100 * retry));
-                                    } catch (Throwable e1) {
-                                        logger.error("write error failed", e1);
-                                    }
-                                } else {
-                                    retry = retry + 1;
-                                }
-                            }
-                        }
+                    publish(sequence, download(binlogFile), expectGeneration);
+                    break;
+                } catch (Throwable e) {
+                    if (retry % 10 == 0) {
+                        logger.warn("download failed + " + binlogFile.toString() + "], retry : " + retry, e);
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100 * retry));
                     }
+                    retry = retry + 1;
+                }
+            }
+        }
+    }
+
+    private class TaskThread implements Runnable {
 
+        @Override
+        public void run() {
+            while (running) {
+                try {
                     Runnable runnable = taskQueue.poll(5000, TimeUnit.MILLISECONDS);
                     if (runnable != null) {
                         runnable.run();
@@ -331,7 +445,18 @@ public class BinlogDownloadQueue {
                     logger.error("task process failed", e);
                 }
             }
+        }
+    }
+
+    private class ThreadFactoryImpl implements ThreadFactory {
 
+        private final AtomicInteger index = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "download-" + destDir + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
     }
 }
@@ -27,6 +27,8 @@ public class RdsBinlogEventParserProxy extends MysqlEventParser {
     private String                    instanceId;                                             // rds实例id
     private String                    directory;                                              // binlog目录
     private int                       batchFileSize             = 4;                          // 最多下载的binlog文件数量
+    private int                       downloadThreads           = 2;                          // 并发下载的线程数
+    private long                      downloadDiskBudget        = 0;                          // 下载占用的磁盘上限(字节)，0为不限制
 
     private RdsLocalBinlogEventParser rdsLocalBinlogEventParser = null;
     private ExecutorService           executorService           = Executors.newSingleThreadExecutor(r -> {
@@ -71,6 +73,8 @@ public class RdsBinlogEventParserProxy extends MysqlEventParser {
             rdsLocalBinlogEventParser.setEventSink(eventSink);
             rdsLocalBinlogEventParser.setDirectory(directory);
             rdsLocalBinlogEventParser.setBatchFileSize(batchFileSize);
+            rdsLocalBinlogEventParser.setDownloadThreads(downloadThreads);
+            rdsLocalBinlogEventParser.setDownloadDiskBudget(downloadDiskBudget);
             rdsLocalBinlogEventParser.setParallel(this.parallel);
             rdsLocalBinlogEventParser.setParallelBufferSize(this.parallelBufferSize);
             rdsLocalBinlogEventParser.setParallelThreadSize(this.parallelThreadSize);
@@ -153,4 +157,12 @@ public class RdsBinlogEventParserProxy extends MysqlEventParser {
         this.batchFileSize = batchFileSize;
     }
 
+    public void setDownloadThreads(int downloadThreads) {
+        this.downloadThreads = downloadThreads;
+    }
+
+    public void setDownloadDiskBudget(long downloadDiskBudget) {
+        this.downloadDiskBudget = downloadDiskBudget;
+    }
+
 }
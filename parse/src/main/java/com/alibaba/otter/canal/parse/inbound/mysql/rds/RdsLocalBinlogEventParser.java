@@ -36,6 +36,8 @@ public class RdsLocalBinlogEventParser extends LocalBinlogEventParser implements
     private BinlogDownloadQueue binlogDownloadQueue;
     private ParseFinishListener finishListener;
     private int                 batchFileSize;
+    private int                 downloadThreads;
+    private long                downloadDiskBudget;
 
     public RdsLocalBinlogEventParser(){
     }
@@ -73,6 +75,8 @@ public class RdsLocalBinlogEventParser extends LocalBinlogEventParser implements
             }
 
             binlogDownloadQueue = new BinlogDownloadQueue(binlogFiles, batchFileSize, directory);
+            binlogDownloadQueue.setDownloadThreads(downloadThreads);
+            binlogDownloadQueue.setDiskBudget(downloadDiskBudget);
             binlogDownloadQueue.silenceDownload();
             needWait = true;
             // try to download one file,use to test server id
@@ -214,4 +218,12 @@ public class RdsLocalBinlogEventParser extends LocalBinlogEventParser implements
     public void setBatchFileSize(int batchFileSize) {
         this.batchFileSize = batchFileSize;
     }
+
+    public void setDownloadThreads(int downloadThreads) {
+        this.downloadThreads = downloadThreads;
+    }
+
+    public void setDownloadDiskBudget(long downloadDiskBudget) {
+        this.downloadDiskBudget = downloadDiskBudget;
+    }
 }
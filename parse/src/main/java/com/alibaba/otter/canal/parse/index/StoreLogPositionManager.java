@@ -0,0 +1,41 @@
+package com.alibaba.otter.canal.parse.index;
+
+import com.alibaba.otter.canal.parse.exception.CanalParseException;
+import com.alibaba.otter.canal.protocol.position.LogPosition;
+import com.alibaba.otter.canal.store.CanalEventStore;
+
+/**
+ * 基于持久化store的最后一条数据获取解析位点
+ *
+ * <pre>
+ * 应用场景：配合FileEventStoreWithSegment使用，重启之后parser从store中最后一个事务边界继续解析，而不是从客户端的消费位点重新dump
+ * </pre>
+ *
+ * @since 1.1.5
+ */
+public class StoreLogPositionManager extends AbstractLogPositionManager {
+
+    private final CanalEventStore eventStore;
+
+    public StoreLogPositionManager(CanalEventStore eventStore){
+        if (eventStore == null) {
+            throw new NullPointerException("null eventStore");
+        }
+
+        this.eventStore = eventStore;
+    }
+
+    @Override
+    public LogPosition getLatestIndexBy(String destination) {
+        if (!eventStore.isStart()) {
+            return null;
+        }
+
+        return (LogPosition) eventStore.getLatestPosition();
+    }
+
+    @Override
+    public void persistLogPosition(String destination, LogPosition logPosition) throws CanalParseException {
+        // do nothing, store中的数据即为解析位点
+    }
+}
@@ -0,0 +1,137 @@
+package com.alibaba.otter.canal.parse.inbound.mysql;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.parse.inbound.mysql.rds.BinlogDownloadQueue;
+import com.alibaba.otter.canal.parse.inbound.mysql.rds.data.BinlogFile;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 使用本地http服务测试rds binlog的并发下载、按顺序发布以及磁盘额度
+ *
+ * @since 1.1.5
+ */
+public class BinlogDownloadQueueTest {
+
+    private static final int FILE_SIZE = 128 * 1024;
+
+    private HttpServer       server;
+    private File             dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("rds-binlog").toFile();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            try {
+                // 000002下载最慢，后面的文件会先下载完成
+                if (path.endsWith("000002")) {
+                    Thread.sleep(500);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] data = new byte[FILE_SIZE];
+            exchange.sendResponseHeaders(200, data.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(data);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Test
+    public void testPublishInOrder() throws Throwable {
+        BinlogDownloadQueue queue = new BinlogDownloadQueue(binlogFiles(4), 4, dir.getPath());
+        queue.setDownloadThreads(3);
+        try {
+            queue.silenceDownload();
+            queue.tryOne();
+            Assert.assertTrue(binlog(1).exists());
+
+            queue.prepare();
+            Thread.sleep(250);
+            // 000003和000004已经下载完，但000002还没完成，都不能发布
+            Assert.assertFalse(binlog(2).exists());
+            Assert.assertFalse(binlog(3).exists());
+            Assert.assertFalse(binlog(4).exists());
+
+            waitFor(binlog(4));
+            Assert.assertTrue(binlog(2).exists());
+            Assert.assertTrue(binlog(3).exists());
+            Assert.assertEquals(FILE_SIZE, binlog(4).length());
+        } finally {
+            queue.release();
+        }
+    }
+
+    @Test
+    public void testDiskBudget() throws Throwable {
+        BinlogDownloadQueue queue = new BinlogDownloadQueue(binlogFiles(3), 3, dir.getPath());
+        queue.setDownloadThreads(2);
+        queue.setDiskBudget(FILE_SIZE * 2);
+        try {
+            queue.silenceDownload();
+            queue.tryOne();
+            queue.prepare();
+            waitFor(binlog(2));
+
+            Thread.sleep(200);
+            // 额度只够两个文件，000001解析完之前不能下载000003
+            Assert.assertFalse(binlog(3).exists());
+            Assert.assertFalse(new File(dir, "mysql-bin.000003.tmp").exists());
+
+            queue.downOne();
+            waitFor(binlog(3));
+        } finally {
+            queue.release();
+        }
+    }
+
+    private List<BinlogFile> binlogFiles(int count) {
+        List<BinlogFile> files = new ArrayList<>();
+        for (int i = count; i > 0; i--) {
+            BinlogFile binlogFile = new BinlogFile();
+            binlogFile.setDownloadLink("http://127.0.0.1:" + server.getAddress().getPort() + "/mysql-bin.00000" + i
+                                       + "?expire=0");
+            binlogFile.setHostInstanceID("host");
+            binlogFile.setFileSize((long) FILE_SIZE);
+            files.add(binlogFile);
+        }
+        return files;
+    }
+
+    private File binlog(int index) {
+        return new File(dir, "mysql-bin.00000" + index);
+    }
+
+    private void waitFor(File file) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!file.exists() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(file.getName(), file.exists());
+    }
+}
@@ -79,6 +79,7 @@ public class PrometheusClientInstanceProfiler implements ClientInstanceProfiler
         responseLatency.labels(destination).observe(((double) latency) / NANO_PER_MILLI);
         switch (type) {
             case GET:
+            case STREAM:
                 boolean empty = result.getEmpty();
                 // 区分一下空包
                 if (empty) {
@@ -3,6 +3,7 @@ package com.alibaba.otter.canal.prometheus.impl;
 import com.alibaba.otter.canal.instance.core.CanalInstance;
 import com.alibaba.otter.canal.prometheus.InstanceRegistry;
 import com.alibaba.otter.canal.store.CanalEventStore;
+import com.alibaba.otter.canal.store.file.FileEventStoreWithSegment;
 import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer;
 import com.alibaba.otter.canal.store.model.BatchMode;
 import com.google.common.base.Preconditions;
@@ -137,28 +138,43 @@ public class StoreCollector extends Collector implements InstanceRegistry {
         final String destination = instance.getDestination();
         StoreMetricsHolder holder = new StoreMetricsHolder();
         CanalEventStore store = instance.getEventStore();
-        if (!(store instanceof MemoryEventStoreWithBuffer)) {
-            throw new IllegalArgumentException("EventStore must be MemoryEventStoreWithBuffer");
-        }
-        MemoryEventStoreWithBuffer memStore = (MemoryEventStoreWithBuffer) store;
-        holder.batchMode = memStore.getBatchMode();
-        holder.putSeq = memStore.getPutSequence();
-        holder.ackSeq = memStore.getAckSequence();
         holder.destLabelValues = Collections.singletonList(destination);
-        holder.size = memStore.getBufferSize();
+        if (store instanceof MemoryEventStoreWithBuffer) {
+            MemoryEventStoreWithBuffer memStore = (MemoryEventStoreWithBuffer) store;
+            holder.batchMode = memStore.getBatchMode();
+            holder.putSeq = memStore.getPutSequence();
+            holder.ackSeq = memStore.getAckSequence();
+            holder.size = memStore.getBufferSize();
+            holder.putExecTime = memStore.getPutExecTime();
+            holder.getExecTime = memStore.getGetExecTime();
+            holder.ackExecTime = memStore.getAckExecTime();
+            holder.putTableRows = memStore.getPutTableRows();
+            holder.getTableRows = memStore.getGetTableRows();
+            holder.ackTableRows = memStore.getAckTableRows();
+            holder.putMemSize = memStore.getPutMemSize();
+            holder.ackMemSize = memStore.getAckMemSize();
+        } else if (store instanceof FileEventStoreWithSegment) {
+            FileEventStoreWithSegment fileStore = (FileEventStoreWithSegment) store;
+            holder.batchMode = fileStore.getBatchMode();
+            holder.putSeq = fileStore.getPutSequence();
+            holder.ackSeq = fileStore.getAckSequence();
+            holder.size = fileStore.getMaxSegmentCount();
+            holder.putExecTime = fileStore.getPutExecTime();
+            holder.getExecTime = fileStore.getGetExecTime();
+            holder.ackExecTime = fileStore.getAckExecTime();
+            holder.putTableRows = fileStore.getPutTableRows();
+            holder.getTableRows = fileStore.getGetTableRows();
+            holder.ackTableRows = fileStore.getAckTableRows();
+            holder.putMemSize = fileStore.getPutMemSize();
+            holder.ackMemSize = fileStore.getAckMemSize();
+        } else {
+            throw new IllegalArgumentException("EventStore must be MemoryEventStoreWithBuffer or FileEventStoreWithSegment");
+        }
         holder.storeLabelValues = Arrays.asList(destination, holder.batchMode.name(), Integer.toString(holder.size));
-        holder.putExecTime = memStore.getPutExecTime();
-        holder.getExecTime = memStore.getGetExecTime();
-        holder.ackExecTime = memStore.getAckExecTime();
-        holder.putTableRows = memStore.getPutTableRows();
-        holder.getTableRows = memStore.getGetTableRows();
-        holder.ackTableRows = memStore.getAckTableRows();
         Preconditions.checkNotNull(holder.batchMode);
         Preconditions.checkNotNull(holder.putSeq);
         Preconditions.checkNotNull(holder.ackSeq);
         if (holder.batchMode.isMemSize()) {
-            holder.putMemSize = memStore.getPutMemSize();
-            holder.ackMemSize = memStore.getAckMemSize();
             Preconditions.checkNotNull(holder.putMemSize);
             Preconditions.checkNotNull(holder.ackMemSize);
         }
@@ -208,6 +208,14 @@ public final class CanalPacket {
      * <code>CLIENTROLLBACK = 12;</code>
      */
     CLIENTROLLBACK(12),
+    /**
+     * <pre>
+     * push part
+     * </pre>
+     *
+     * <code>STREAM = 13;</code>
+     */
+    STREAM(13),
     UNRECOGNIZED(-1),
     ;
 
@@ -275,6 +283,14 @@ public final class CanalPacket {
      * <code>CLIENTROLLBACK = 12;</code>
      */
     public static final int CLIENTROLLBACK_VALUE = 12;
+    /**
+     * <pre>
+     * push part
+     * </pre>
+     *
+     * <code>STREAM = 13;</code>
+     */
+    public static final int STREAM_VALUE = 13;
 
 
     public final int getNumber() {
@@ -308,6 +324,7 @@ public final class CanalPacket {
         case 10: return DUMP;
         case 11: return HEARTBEAT;
         case 12: return CLIENTROLLBACK;
+        case 13: return STREAM;
         default: return null;
       }
     }
@@ -8623,46 +8640,83 @@ public final class CanalPacket {
 
   }
 
-  public interface MessagesOrBuilder extends
-      // @@protoc_insertion_point(interface_extends:com.alibaba.otter.canal.protocol.Messages)
+  public interface StreamOrBuilder extends
+      // @@protoc_insertion_point(interface_extends:com.alibaba.otter.canal.protocol.Stream)
       com.google.protobuf.MessageOrBuilder {
 
     /**
-     * <code>int64 batch_id = 1;</code>
+     * <code>string destination = 1;</code>
      */
-    long getBatchId();
+    java.lang.String getDestination();
+    /**
+     * <code>string destination = 1;</code>
+     */
+    com.google.protobuf.ByteString
+        getDestinationBytes();
 
     /**
-     * <code>repeated bytes messages = 2;</code>
+     * <code>string client_id = 2;</code>
      */
-    java.util.List<com.google.protobuf.ByteString> getMessagesList();
+    java.lang.String getClientId();
     /**
-     * <code>repeated bytes messages = 2;</code>
+     * <code>string client_id = 2;</code>
      */
-    int getMessagesCount();
+    com.google.protobuf.ByteString
+        getClientIdBytes();
+
     /**
-     * <code>repeated bytes messages = 2;</code>
+     * <code>int32 fetch_size = 3;</code>
      */
-    com.google.protobuf.ByteString getMessages(int index);
+    int getFetchSize();
+
+    /**
+     * <pre>
+     * 允许未ack的最大batch数，0代表停止推送
+     * </pre>
+     *
+     * <code>int32 window = 4;</code>
+     */
+    int getWindow();
+
+    /**
+     * <pre>
+     * 无数据时推送空包的间隔，默认-1时使用服务端的默认值
+     * </pre>
+     *
+     * <code>int64 timeout = 5;</code>
+     */
+    long getTimeout();
+
+    /**
+     * <code>int32 unit = 6;</code>
+     */
+    int getUnit();
+
+    public com.alibaba.otter.canal.protocol.CanalPacket.Stream.TimeoutPresentCase getTimeoutPresentCase();
+
+    public com.alibaba.otter.canal.protocol.CanalPacket.Stream.UnitPresentCase getUnitPresentCase();
   }
   /**
    * <pre>
+   *  StreamRequest，服务端按照window持续推送Messages，客户端通过ClientAck归还window
    * </pre>
    *
-   * Protobuf type {@code com.alibaba.otter.canal.protocol.Messages}
+   * Protobuf type {@code com.alibaba.otter.canal.protocol.Stream}
    */
-  public  static final class Messages extends
+  public  static final class Stream extends
       com.google.protobuf.GeneratedMessageV3 implements
-      // @@protoc_insertion_point(message_implements:com.alibaba.otter.canal.protocol.Messages)
-      MessagesOrBuilder {
+      // @@protoc_insertion_point(message_implements:com.alibaba.otter.canal.protocol.Stream)
+      StreamOrBuilder {
   private static final long serialVersionUID = 0L;
-    // Use Messages.newBuilder() to construct.
-    private Messages(com.google.protobuf.GeneratedMessageV3.Builder<?> builder) {
+    // Use Stream.newBuilder() to construct.
+    private Stream(com.google.protobuf.GeneratedMessageV3.Builder<?> builder) {
       super(builder);
     }
-    private Messages() {
-      batchId_ = 0L;
-      messages_ = java.util.Collections.emptyList();
+    private Stream() {
+      destination_ = "";
+      clientId_ = "";
+      fetchSize_ = 0;
+      window_ = 0;
     }
 
     @java.lang.Override
@@ -8670,7 +8724,7 @@ public final class CanalPacket {
     getUnknownFields() {
       return this.unknownFields;
     }
-    private Messages(
+    private Stream(
         com.google.protobuf.CodedInputStream input,
         com.google.protobuf.ExtensionRegistryLite extensionRegistry)
         throws com.google.protobuf.InvalidProtocolBufferException {
@@ -8689,17 +8743,36 @@ public final class CanalPacket {
             case 0:
               done = true;
               break;
-            case 8: {
+            case 10: {
+              java.lang.String s = input.readStringRequireUtf8();
 
-              batchId_ = input.readInt64();
+              destination_ = s;
               break;
             }
             case 18: {
-              if (!((mutable_bitField0_ & 0x00000002) == 0x00000002)) {
-                messages_ = new java.util.ArrayList<com.google.protobuf.ByteString>();
-                mutable_bitField0_ |= 0x00000002;
-              }
-              messages_.add(input.readBytes());
+              java.lang.String s = input.readStringRequireUtf8();
+
+              clientId_ = s;
+              break;
+            }
+            case 24: {
+
+              fetchSize_ = input.readInt32();
+              break;
+            }
+            case 32: {
+
+              window_ = input.readInt32();
+              break;
+            }
+            case 40: {
+              timeoutPresentCase_ = 5;
+              timeoutPresent_ = input.readInt64();
+              break;
+            }
+            case 48: {
+              unitPresentCase_ = 6;
+              unitPresent_ = input.readInt32();
               break;
             }
             default: {
@@ -8717,62 +8790,1162 @@ public final class CanalPacket {
         throw new com.google.protobuf.InvalidProtocolBufferException(
             e).setUnfinishedMessage(this);
       } finally {
-        if (((mutable_bitField0_ & 0x00000002) == 0x00000002)) {
-          messages_ = java.util.Collections.unmodifiableList(messages_);
-        }
         this.unknownFields = unknownFields.build();
         makeExtensionsImmutable();
       }
     }
     public static final com.google.protobuf.Descriptors.Descriptor
         getDescriptor() {
-      return com.alibaba.otter.canal.protocol.CanalPacket.internal_static_com_alibaba_otter_canal_protocol_Messages_descriptor;
+      return com.alibaba.otter.canal.protocol.CanalPacket.internal_static_com_alibaba_otter_canal_protocol_Stream_descriptor;
     }
 
     @java.lang.Override
     protected com.google.protobuf.GeneratedMessageV3.FieldAccessorTable
         internalGetFieldAccessorTable() {
-      return com.alibaba.otter.canal.protocol.CanalPacket.internal_static_com_alibaba_otter_canal_protocol_Messages_fieldAccessorTable
+      return com.alibaba.otter.canal.protocol.CanalPacket.internal_static_com_alibaba_otter_canal_protocol_Stream_fieldAccessorTable
           .ensureFieldAccessorsInitialized(
-              com.alibaba.otter.canal.protocol.CanalPacket.Messages.class, com.alibaba.otter.canal.protocol.CanalPacket.Messages.Builder.class);
+              com.alibaba.otter.canal.protocol.CanalPacket.Stream.class, com.alibaba.otter.canal.protocol.CanalPacket.Stream.Builder.class);
     }
 
-    private int bitField0_;
-    public static final int BATCH_ID_FIELD_NUMBER = 1;
-    private long batchId_;
+    private int timeoutPresentCase_ = 0;
+    private java.lang.Object timeoutPresent_;
+    public enum TimeoutPresentCase
+        implements com.google.protobuf.Internal.EnumLite {
+      TIMEOUT(5),
+      TIMEOUTPRESENT_NOT_SET(0);
+      private final int value;
+      private TimeoutPresentCase(int value) {
+        this.value = value;
+      }
+      /**
+       * @deprecated Use {@link #forNumber(int)} instead.
+       */
+      @java.lang.Deprecated
+      public static TimeoutPresentCase valueOf(int value) {
+        return forNumber(value);
+      }
+
+      public static TimeoutPresentCase forNumber(int value) {
+        switch (value) {
+          case 5: return TIMEOUT;
+          case 0: return TIMEOUTPRESENT_NOT_SET;
+          default: return null;
+        }
+      }
+      public int getNumber() {
+        return this.value;
+      }
+    };
+
+    public TimeoutPresentCase
+    getTimeoutPresentCase() {
+      return TimeoutPresentCase.forNumber(
+          timeoutPresentCase_);
+    }
+
+    private int unitPresentCase_ = 0;
+    private java.lang.Object unitPresent_;
+    public enum UnitPresentCase
+        implements com.google.protobuf.Internal.EnumLite {
+      UNIT(6),
+      UNITPRESENT_NOT_SET(0);
+      private final int value;
+      private UnitPresentCase(int value) {
+        this.value = value;
+      }
+      /**
+       * @deprecated Use {@link #forNumber(int)} instead.
+       */
+      @java.lang.Deprecated
+      public static UnitPresentCase valueOf(int value) {
+        return forNumber(value);
+      }
+
+      public static UnitPresentCase forNumber(int value) {
+        switch (value) {
+          case 6: return UNIT;
+          case 0: return UNITPRESENT_NOT_SET;
+          default: return null;
+        }
+      }
+      public int getNumber() {
+        return this.value;
+      }
+    };
+
+    public UnitPresentCase
+    getUnitPresentCase() {
+      return UnitPresentCase.forNumber(
+          unitPresentCase_);
+    }
+
+    public static final int DESTINATION_FIELD_NUMBER = 1;
+    private volatile java.lang.Object destination_;
     /**
-     * <code>int64 batch_id = 1;</code>
+     * <code>string destination = 1;</code>
      */
-    public long getBatchId() {
-      return batchId_;
+    public java.lang.String getDestination() {
+      java.lang.Object ref = destination_;
+      if (ref instanceof java.lang.String) {
+        return (java.lang.String) ref;
+      } else {
+        com.google.protobuf.ByteString bs = 
+            (com.google.protobuf.ByteString) ref;
+        java.lang.String s = bs.toStringUtf8();
+        destination_ = s;
+        return s;
+      }
+    }
+    /**
+     * <code>string destination = 1;</code>
+     */
+    public com.google.protobuf.ByteString
+        getDestinationBytes() {
+      java.lang.Object ref = destination_;
+      if (ref instanceof java.lang.String) {
+        com.google.protobuf.ByteString b = 
+            com.google.protobuf.ByteString.copyFromUtf8(
+                (java.lang.String) ref);
+        destination_ = b;
+        return b;
+      } else {
+        return (com.google.protobuf.ByteString) ref;
+      }
     }
 
-    public static final int MESSAGES_FIELD_NUMBER = 2;
-    private java.util.List<com.google.protobuf.ByteString> messages_;
+    public static final int CLIENT_ID_FIELD_NUMBER = 2;
+    private volatile java.lang.Object clientId_;
     /**
-     * <code>repeated bytes messages = 2;</code>
+     * <code>string client_id = 2;</code>
      */
-    public java.util.List<com.google.protobuf.ByteString>
-        getMessagesList() {
-      return messages_;
+    public java.lang.String getClientId() {
+      java.lang.Object ref = clientId_;
+      if (ref instanceof java.lang.String) {
+        return (java.lang.String) ref;
+      } else {
+        com.google.protobuf.ByteString bs = 
+            (com.google.protobuf.ByteString) ref;
+        java.lang.String s = bs.toStringUtf8();
+        clientId_ = s;
+        return s;
+      }
     }
     /**
-     * <code>repeated bytes messages = 2;</code>
+     * <code>string client_id = 2;</code>
      */
-    public int getMessagesCount() {
-      return messages_.size();
+    public com.google.protobuf.ByteString
+        getClientIdBytes() {
+      java.lang.Object ref = clientId_;
+      if (ref instanceof java.lang.String) {
+        com.google.protobuf.ByteString b = 
+            com.google.protobuf.ByteString.copyFromUtf8(
+                (java.lang.String) ref);
+        clientId_ = b;
+        return b;
+      } else {
+        return (com.google.protobuf.ByteString) ref;
+      }
     }
+
+    public static final int FETCH_SIZE_FIELD_NUMBER = 3;
+    private int fetchSize_;
     /**
-     * <code>repeated bytes messages = 2;</code>
+     * <code>int32 fetch_size = 3;</code>
      */
-    public com.google.protobuf.ByteString getMessages(int index) {
-      return messages_.get(index);
+    public int getFetchSize() {
+      return fetchSize_;
     }
 
-    private byte memoizedIsInitialized = -1;
-    @java.lang.Override
-    public final boolean isInitialized() {
-      byte isInitialized = memoizedIsInitialized;
+    public static final int WINDOW_FIELD_NUMBER = 4;
+    private int window_;
+    /**
+     * <pre>
+     * 允许未ack的最大batch数，0代表停止推送
+     * </pre>
+     *
+     * <code>int32 window = 4;</code>
+     */
+    public int getWindow() {
+      return window_;
+    }
+
+    public static final int TIMEOUT_FIELD_NUMBER = 5;
+    /**
+     * <pre>
+     * 无数据时推送空包的间隔，默认-1时使用服务端的默认值
+     * </pre>
+     *
+     * <code>int64 timeout = 5;</code>
+     */
+    public long getTimeout() {
+      if (timeoutPresentCase_ == 5) {
+        return (java.lang.Long) timeoutPresent_;
+      }
+      return 0L;
+    }
+
+    public static final int UNIT_FIELD_NUMBER = 6;
+    /**
+     * <code>int32 unit = 6;</code>
+     */
+    public int getUnit() {
+      if (unitPresentCase_ == 6) {
+        return (java.lang.Integer) unitPresent_;
+      }
+      return 0;
+    }
+
+    private byte memoizedIsInitialized = -1;
+    @java.lang.Override
+    public final boolean isInitialized() {
+      byte isInitialized = memoizedIsInitialized;
+      if (isInitialized == 1) return true;
+      if (isInitialized == 0) return false;
+
+      memoizedIsInitialized = 1;
+      return true;
+    }
+
+    @java.lang.Override
+    public void writeTo(com.google.protobuf.CodedOutputStream output)
+                        throws java.io.IOException {
+      if (!getDestinationBytes().isEmpty()) {
+        com.google.protobuf.GeneratedMessageV3.writeString(output, 1, destination_);
+      }
+      if (!getClientIdBytes().isEmpty()) {
+        com.google.protobuf.GeneratedMessageV3.writeString(output, 2, clientId_);
+      }
+      if (fetchSize_ != 0) {
+        output.writeInt32(3, fetchSize_);
+      }
+      if (window_ != 0) {
+        output.writeInt32(4, window_);
+      }
+      if (timeoutPresentCase_ == 5) {
+        output.writeInt64(
+            5, (long)((java.lang.Long) timeoutPresent_));
+      }
+      if (unitPresentCase_ == 6) {
+        output.writeInt32(
+            6, (int)((java.lang.Integer) unitPresent_));
+      }
+      unknownFields.writeTo(output);
+    }
+
+    @java.lang.Override
+    public int getSerializedSize() {
+      int size = memoizedSize;
+      if (size != -1) return size;
+
+      size = 0;
+      if (!getDestinationBytes().isEmpty()) {
+        size += com.google.protobuf.GeneratedMessageV3.computeStringSize(1, destination_);
+      }
+      if (!getClientIdBytes().isEmpty()) {
+        size += com.google.protobuf.GeneratedMessageV3.computeStringSize(2, clientId_);
+      }
+      if (fetchSize_ != 0) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeInt32Size(3, fetchSize_);
+      }
+      if (window_ != 0) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeInt32Size(4, window_);
+      }
+      if (timeoutPresentCase_ == 5) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeInt64Size(
+              5, (long)((java.lang.Long) timeoutPresent_));
+      }
+      if (unitPresentCase_ == 6) {
+        size += com.google.protobuf.CodedOutputStream
+          .computeInt32Size(
+              6, (int)((java.lang.Integer) unitPresent_));
+      }
+      size += unknownFields.getSerializedSize();
+      memoizedSize = size;
+      return size;
+    }
+
+    @java.lang.Override
+    public boolean equals(final java.lang.Object obj) {
+      if (obj == this) {
+       return true;
+      }
+      if (!(obj instanceof com.alibaba.otter.canal.protocol.CanalPacket.Stream)) {
+        return super.equals(obj);
+      }
+      com.alibaba.otter.canal.protocol.CanalPacket.Stream other = (com.alibaba.otter.canal.protocol.CanalPacket.Stream) obj;
+
+      boolean result = true;
+      result = result && getDestination()
+          .equals(other.getDestination());
+      result = result && getClientId()
+          .equals(other.getClientId());
+      result = result && (getFetchSize()
+          == other.getFetchSize());
+      result = result && (getWindow()
+          == other.getWindow());
+      result = result && getTimeoutPresentCase().equals(
+          other.getTimeoutPresentCase());
+      if (!result) return false;
+      switch (timeoutPresentCase_) {
+        case 5:
+          result = result && (getTimeout()
+              == other.getTimeout());
+          break;
+        case 0:
+        default:
+      }
+      result = result && getUnitPresentCase().equals(
+          other.getUnitPresentCase());
+      if (!result) return false;
+      switch (unitPresentCase_) {
+        case 6:
+          result = result && (getUnit()
+              == other.getUnit());
+          break;
+        case 0:
+        default:
+      }
+      result = result && unknownFields.equals(other.unknownFields);
+      return result;
+    }
+
+    @java.lang.Override
+    public int hashCode() {
+      if (memoizedHashCode != 0) {
+        return memoizedHashCode;
+      }
+      int hash = 41;
+      hash = (19 * hash) + getDescriptor().hashCode();
+      hash = (37 * hash) + DESTINATION_FIELD_NUMBER;
+      hash = (53 * hash) + getDestination().hashCode();
+      hash = (37 * hash) + CLIENT_ID_FIELD_NUMBER;
+      hash = (53 * hash) + getClientId().hashCode();
+      hash = (37 * hash) + FETCH_SIZE_FIELD_NUMBER;
+      hash = (53 * hash) + getFetchSize();
+      hash = (37 * hash) + WINDOW_FIELD_NUMBER;
+      hash = (53 * hash) + getWindow();
+      switch (timeoutPresentCase_) {
+        case 5:
+          hash = (37 * hash) + TIMEOUT_FIELD_NUMBER;
+          hash = (53 * hash) + com.google.protobuf.Internal.hashLong(
+              getTimeout());
+          break;
+        case 0:
+        default:
+      }
+      switch (unitPresentCase_) {
+        case 6:
+          hash = (37 * hash) + UNIT_FIELD_NUMBER;
+          hash = (53 * hash) + getUnit();
+          break;
+        case 0:
+        default:
+      }
+      hash = (29 * hash) + unknownFields.hashCode();
+      memoizedHashCode = hash;
+      return hash;
+    }
+
+    public static com.alibaba.otter.canal.protocol.CanalPacket.Stream parseFrom(
+        java.nio.ByteBuffer data)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data);
+    }
+    public static com.alibaba.otter.canal.protocol.CanalPacket.Stream parseFrom(
+        java.nio.ByteBuffer data,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data, extensionRegistry);
+    }
+    public static com.alibaba.otter.canal.protocol.CanalPacket.Stream parseFrom(
+        com.google.protobuf.ByteString data)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data);
+    }
+    public static com.alibaba.otter.canal.protocol.CanalPacket.Stream parseFrom(
+        com.google.protobuf.ByteString data,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data, extensionRegistry);
+    }
+    public static com.alibaba.otter.canal.protocol.CanalPacket.Stream parseFrom(byte[] data)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data);
+    }
+    public static com.alibaba.otter.canal.protocol.CanalPacket.Stream parseFrom(
+        byte[] data,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      return PARSER.parseFrom(data, extensionRegistry);
+    }
+    public static com.alibaba.otter.canal.protocol.CanalPacket.Stream parseFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      return com.google.protobuf.GeneratedMessageV3
+          .parseWithIOException(PARSER, input);
+    }
+    public static com.alibaba.otter.canal.protocol.CanalPacket.Stream parseFrom(
+        java.io.InputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return com.google.protobuf.GeneratedMessageV3
+          .parseWithIOException(PARSER, input, extensionRegistry);
+    }
+    public static com.alibaba.otter.canal.protocol.CanalPacket.Stream parseDelimitedFrom(java.io.InputStream input)
+        throws java.io.IOException {
+      return com.google.protobuf.GeneratedMessageV3
+          .parseDelimitedWithIOException(PARSER, input);
+    }
+    public static com.alibaba.otter.canal.protocol.CanalPacket.Stream parseDelimitedFrom(
+        java.io.InputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return com.google.protobuf.GeneratedMessageV3
+          .parseDelimitedWithIOException(PARSER, input, extensionRegistry);
+    }
+    public static com.alibaba.otter.canal.protocol.CanalPacket.Stream parseFrom(
+        com.google.protobuf.CodedInputStream input)
+        throws java.io.IOException {
+      return com.google.protobuf.GeneratedMessageV3
+          .parseWithIOException(PARSER, input);
+    }
+    public static com.alibaba.otter.canal.protocol.CanalPacket.Stream parseFrom(
+        com.google.protobuf.CodedInputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      return com.google.protobuf.GeneratedMessageV3
+          .parseWithIOException(PARSER, input, extensionRegistry);
+    }
+
+    @java.lang.Override
+    public Builder newBuilderForType() { return newBuilder(); }
+    public static Builder newBuilder() {
+      return DEFAULT_INSTANCE.toBuilder();
+    }
+    public static Builder newBuilder(com.alibaba.otter.canal.protocol.CanalPacket.Stream prototype) {
+      return DEFAULT_INSTANCE.toBuilder().mergeFrom(prototype);
+    }
+    @java.lang.Override
+    public Builder toBuilder() {
+      return this == DEFAULT_INSTANCE
+          ? new Builder() : new Builder().mergeFrom(this);
+    }
+
+    @java.lang.Override
+    protected Builder newBuilderForType(
+        com.google.protobuf.GeneratedMessageV3.BuilderParent parent) {
+      Builder builder = new Builder(parent);
+      return builder;
+    }
+    /**
+     * <pre>
+     *  StreamRequest，服务端按照window持续推送Messages，客户端通过ClientAck归还window
+     * </pre>
+     *
+     * Protobuf type {@code com.alibaba.otter.canal.protocol.Stream}
+     */
+    public static final class Builder extends
+        com.google.protobuf.GeneratedMessageV3.Builder<Builder> implements
+        // @@protoc_insertion_point(builder_implements:com.alibaba.otter.canal.protocol.Stream)
+        com.alibaba.otter.canal.protocol.CanalPacket.StreamOrBuilder {
+      public static final com.google.protobuf.Descriptors.Descriptor
+          getDescriptor() {
+        return com.alibaba.otter.canal.protocol.CanalPacket.internal_static_com_alibaba_otter_canal_protocol_Stream_descriptor;
+      }
+
+      @java.lang.Override
+      protected com.google.protobuf.GeneratedMessageV3.FieldAccessorTable
+          internalGetFieldAccessorTable() {
+        return com.alibaba.otter.canal.protocol.CanalPacket.internal_static_com_alibaba_otter_canal_protocol_Stream_fieldAccessorTable
+            .ensureFieldAccessorsInitialized(
+                com.alibaba.otter.canal.protocol.CanalPacket.Stream.class, com.alibaba.otter.canal.protocol.CanalPacket.Stream.Builder.class);
+      }
+
+      // Construct using com.alibaba.otter.canal.protocol.CanalPacket.Stream.newBuilder()
+      private Builder() {
+        maybeForceBuilderInitialization();
+      }
+
+      private Builder(
+          com.google.protobuf.GeneratedMessageV3.BuilderParent parent) {
+        super(parent);
+        maybeForceBuilderInitialization();
+      }
+      private void maybeForceBuilderInitialization() {
+        if (com.google.protobuf.GeneratedMessageV3
+                .alwaysUseFieldBuilders) {
+        }
+      }
+      @java.lang.Override
+      public Builder clear() {
+        super.clear();
+        destination_ = "";
+
+        clientId_ = "";
+
+        fetchSize_ = 0;
+
+        window_ = 0;
+
+        timeoutPresentCase_ = 0;
+        timeoutPresent_ = null;
+        unitPresentCase_ = 0;
+        unitPresent_ = null;
+        return this;
+      }
+
+      @java.lang.Override
+      public com.google.protobuf.Descriptors.Descriptor
+          getDescriptorForType() {
+        return com.alibaba.otter.canal.protocol.CanalPacket.internal_static_com_alibaba_otter_canal_protocol_Stream_descriptor;
+      }
+
+      @java.lang.Override
+      public com.alibaba.otter.canal.protocol.CanalPacket.Stream getDefaultInstanceForType() {
+        return com.alibaba.otter.canal.protocol.CanalPacket.Stream.getDefaultInstance();
+      }
+
+      @java.lang.Override
+      public com.alibaba.otter.canal.protocol.CanalPacket.Stream build() {
+        com.alibaba.otter.canal.protocol.CanalPacket.Stream result = buildPartial();
+        if (!result.isInitialized()) {
+          throw newUninitializedMessageException(result);
+        }
+        return result;
+      }
+
+      @java.lang.Override
+      public com.alibaba.otter.canal.protocol.CanalPacket.Stream buildPartial() {
+        com.alibaba.otter.canal.protocol.CanalPacket.Stream result = new com.alibaba.otter.canal.protocol.CanalPacket.Stream(this);
+        result.destination_ = destination_;
+        result.clientId_ = clientId_;
+        result.fetchSize_ = fetchSize_;
+        result.window_ = window_;
+        if (timeoutPresentCase_ == 5) {
+          result.timeoutPresent_ = timeoutPresent_;
+        }
+        if (unitPresentCase_ == 6) {
+          result.unitPresent_ = unitPresent_;
+        }
+        result.timeoutPresentCase_ = timeoutPresentCase_;
+        result.unitPresentCase_ = unitPresentCase_;
+        onBuilt();
+        return result;
+      }
+
+      @java.lang.Override
+      public Builder clone() {
+        return (Builder) super.clone();
+      }
+      @java.lang.Override
+      public Builder setField(
+          com.google.protobuf.Descriptors.FieldDescriptor field,
+          java.lang.Object value) {
+        return (Builder) super.setField(field, value);
+      }
+      @java.lang.Override
+      public Builder clearField(
+          com.google.protobuf.Descriptors.FieldDescriptor field) {
+        return (Builder) super.clearField(field);
+      }
+      @java.lang.Override
+      public Builder clearOneof(
+          com.google.protobuf.Descriptors.OneofDescriptor oneof) {
+        return (Builder) super.clearOneof(oneof);
+      }
+      @java.lang.Override
+      public Builder setRepeatedField(
+          com.google.protobuf.Descriptors.FieldDescriptor field,
+          int index, java.lang.Object value) {
+        return (Builder) super.setRepeatedField(field, index, value);
+      }
+      @java.lang.Override
+      public Builder addRepeatedField(
+          com.google.protobuf.Descriptors.FieldDescriptor field,
+          java.lang.Object value) {
+        return (Builder) super.addRepeatedField(field, value);
+      }
+      @java.lang.Override
+      public Builder mergeFrom(com.google.protobuf.Message other) {
+        if (other instanceof com.alibaba.otter.canal.protocol.CanalPacket.Stream) {
+          return mergeFrom((com.alibaba.otter.canal.protocol.CanalPacket.Stream)other);
+        } else {
+          super.mergeFrom(other);
+          return this;
+        }
+      }
+
+      public Builder mergeFrom(com.alibaba.otter.canal.protocol.CanalPacket.Stream other) {
+        if (other == com.alibaba.otter.canal.protocol.CanalPacket.Stream.getDefaultInstance()) return this;
+        if (!other.getDestination().isEmpty()) {
+          destination_ = other.destination_;
+          onChanged();
+        }
+        if (!other.getClientId().isEmpty()) {
+          clientId_ = other.clientId_;
+          onChanged();
+        }
+        if (other.getFetchSize() != 0) {
+          setFetchSize(other.getFetchSize());
+        }
+        if (other.getWindow() != 0) {
+          setWindow(other.getWindow());
+        }
+        switch (other.getTimeoutPresentCase()) {
+          case TIMEOUT: {
+            setTimeout(other.getTimeout());
+            break;
+          }
+          case TIMEOUTPRESENT_NOT_SET: {
+            break;
+          }
+        }
+        switch (other.getUnitPresentCase()) {
+          case UNIT: {
+            setUnit(other.getUnit());
+            break;
+          }
+          case UNITPRESENT_NOT_SET: {
+            break;
+          }
+        }
+        this.mergeUnknownFields(other.unknownFields);
+        onChanged();
+        return this;
+      }
+
+      @java.lang.Override
+      public final boolean isInitialized() {
+        return true;
+      }
+
+      @java.lang.Override
+      public Builder mergeFrom(
+          com.google.protobuf.CodedInputStream input,
+          com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+          throws java.io.IOException {
+        com.alibaba.otter.canal.protocol.CanalPacket.Stream parsedMessage = null;
+        try {
+          parsedMessage = PARSER.parsePartialFrom(input, extensionRegistry);
+        } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+          parsedMessage = (com.alibaba.otter.canal.protocol.CanalPacket.Stream) e.getUnfinishedMessage();
+          throw e.unwrapIOException();
+        } finally {
+          if (parsedMessage != null) {
+            mergeFrom(parsedMessage);
+          }
+        }
+        return this;
+      }
+      private int timeoutPresentCase_ = 0;
+      private java.lang.Object timeoutPresent_;
+      public TimeoutPresentCase
+          getTimeoutPresentCase() {
+        return TimeoutPresentCase.forNumber(
+            timeoutPresentCase_);
+      }
+
+      public Builder clearTimeoutPresent() {
+        timeoutPresentCase_ = 0;
+        timeoutPresent_ = null;
+        onChanged();
+        return this;
+      }
+
+      private int unitPresentCase_ = 0;
+      private java.lang.Object unitPresent_;
+      public UnitPresentCase
+          getUnitPresentCase() {
+        return UnitPresentCase.forNumber(
+            unitPresentCase_);
+      }
+
+      public Builder clearUnitPresent() {
+        unitPresentCase_ = 0;
+        unitPresent_ = null;
+        onChanged();
+        return this;
+      }
+
+
+      private java.lang.Object destination_ = "";
+      /**
+       * <code>string destination = 1;</code>
+       */
+      public java.lang.String getDestination() {
+        java.lang.Object ref = destination_;
+        if (!(ref instanceof java.lang.String)) {
+          com.google.protobuf.ByteString bs =
+              (com.google.protobuf.ByteString) ref;
+          java.lang.String s = bs.toStringUtf8();
+          destination_ = s;
+          return s;
+        } else {
+          return (java.lang.String) ref;
+        }
+      }
+      /**
+       * <code>string destination = 1;</code>
+       */
+      public com.google.protobuf.ByteString
+          getDestinationBytes() {
+        java.lang.Object ref = destination_;
+        if (ref instanceof String) {
+          com.google.protobuf.ByteString b = 
+              com.google.protobuf.ByteString.copyFromUtf8(
+                  (java.lang.String) ref);
+          destination_ = b;
+          return b;
+        } else {
+          return (com.google.protobuf.ByteString) ref;
+        }
+      }
+      /**
+       * <code>string destination = 1;</code>
+       */
+      public Builder setDestination(
+          java.lang.String value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  
+        destination_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>string destination = 1;</code>
+       */
+      public Builder clearDestination() {
+        
+        destination_ = getDefaultInstance().getDestination();
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>string destination = 1;</code>
+       */
+      public Builder setDestinationBytes(
+          com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  checkByteStringIsUtf8(value);
+        
+        destination_ = value;
+        onChanged();
+        return this;
+      }
+
+      private java.lang.Object clientId_ = "";
+      /**
+       * <code>string client_id = 2;</code>
+       */
+      public java.lang.String getClientId() {
+        java.lang.Object ref = clientId_;
+        if (!(ref instanceof java.lang.String)) {
+          com.google.protobuf.ByteString bs =
+              (com.google.protobuf.ByteString) ref;
+          java.lang.String s = bs.toStringUtf8();
+          clientId_ = s;
+          return s;
+        } else {
+          return (java.lang.String) ref;
+        }
+      }
+      /**
+       * <code>string client_id = 2;</code>
+       */
+      public com.google.protobuf.ByteString
+          getClientIdBytes() {
+        java.lang.Object ref = clientId_;
+        if (ref instanceof String) {
+          com.google.protobuf.ByteString b = 
+              com.google.protobuf.ByteString.copyFromUtf8(
+                  (java.lang.String) ref);
+          clientId_ = b;
+          return b;
+        } else {
+          return (com.google.protobuf.ByteString) ref;
+        }
+      }
+      /**
+       * <code>string client_id = 2;</code>
+       */
+      public Builder setClientId(
+          java.lang.String value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  
+        clientId_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>string client_id = 2;</code>
+       */
+      public Builder clearClientId() {
+        
+        clientId_ = getDefaultInstance().getClientId();
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>string client_id = 2;</code>
+       */
+      public Builder setClientIdBytes(
+          com.google.protobuf.ByteString value) {
+        if (value == null) {
+    throw new NullPointerException();
+  }
+  checkByteStringIsUtf8(value);
+        
+        clientId_ = value;
+        onChanged();
+        return this;
+      }
+
+      private int fetchSize_ ;
+      /**
+       * <code>int32 fetch_size = 3;</code>
+       */
+      public int getFetchSize() {
+        return fetchSize_;
+      }
+      /**
+       * <code>int32 fetch_size = 3;</code>
+       */
+      public Builder setFetchSize(int value) {
+        
+        fetchSize_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>int32 fetch_size = 3;</code>
+       */
+      public Builder clearFetchSize() {
+        
+        fetchSize_ = 0;
+        onChanged();
+        return this;
+      }
+
+      private int window_ ;
+      /**
+       * <pre>
+       * 允许未ack的最大batch数，0代表停止推送
+       * </pre>
+       *
+       * <code>int32 window = 4;</code>
+       */
+      public int getWindow() {
+        return window_;
+      }
+      /**
+       * <pre>
+       * 允许未ack的最大batch数，0代表停止推送
+       * </pre>
+       *
+       * <code>int32 window = 4;</code>
+       */
+      public Builder setWindow(int value) {
+        
+        window_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <pre>
+       * 允许未ack的最大batch数，0代表停止推送
+       * </pre>
+       *
+       * <code>int32 window = 4;</code>
+       */
+      public Builder clearWindow() {
+        
+        window_ = 0;
+        onChanged();
+        return this;
+      }
+
+      /**
+       * <pre>
+       * 无数据时推送空包的间隔，默认-1时使用服务端的默认值
+       * </pre>
+       *
+       * <code>int64 timeout = 5;</code>
+       */
+      public long getTimeout() {
+        if (timeoutPresentCase_ == 5) {
+          return (java.lang.Long) timeoutPresent_;
+        }
+        return 0L;
+      }
+      /**
+       * <pre>
+       * 无数据时推送空包的间隔，默认-1时使用服务端的默认值
+       * </pre>
+       *
+       * <code>int64 timeout = 5;</code>
+       */
+      public Builder setTimeout(long value) {
+        timeoutPresentCase_ = 5;
+        timeoutPresent_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <pre>
+       * 无数据时推送空包的间隔，默认-1时使用服务端的默认值
+       * </pre>
+       *
+       * <code>int64 timeout = 5;</code>
+       */
+      public Builder clearTimeout() {
+        if (timeoutPresentCase_ == 5) {
+          timeoutPresentCase_ = 0;
+          timeoutPresent_ = null;
+          onChanged();
+        }
+        return this;
+      }
+
+      /**
+       * <code>int32 unit = 6;</code>
+       */
+      public int getUnit() {
+        if (unitPresentCase_ == 6) {
+          return (java.lang.Integer) unitPresent_;
+        }
+        return 0;
+      }
+      /**
+       * <code>int32 unit = 6;</code>
+       */
+      public Builder setUnit(int value) {
+        unitPresentCase_ = 6;
+        unitPresent_ = value;
+        onChanged();
+        return this;
+      }
+      /**
+       * <code>int32 unit = 6;</code>
+       */
+      public Builder clearUnit() {
+        if (unitPresentCase_ == 6) {
+          unitPresentCase_ = 0;
+          unitPresent_ = null;
+          onChanged();
+        }
+        return this;
+      }
+      @java.lang.Override
+      public final Builder setUnknownFields(
+          final com.google.protobuf.UnknownFieldSet unknownFields) {
+        return super.setUnknownFieldsProto3(unknownFields);
+      }
+
+      @java.lang.Override
+      public final Builder mergeUnknownFields(
+          final com.google.protobuf.UnknownFieldSet unknownFields) {
+        return super.mergeUnknownFields(unknownFields);
+      }
+
+
+      // @@protoc_insertion_point(builder_scope:com.alibaba.otter.canal.protocol.Stream)
+    }
+
+    // @@protoc_insertion_point(class_scope:com.alibaba.otter.canal.protocol.Stream)
+    private static final com.alibaba.otter.canal.protocol.CanalPacket.Stream DEFAULT_INSTANCE;
+    static {
+      DEFAULT_INSTANCE = new com.alibaba.otter.canal.protocol.CanalPacket.Stream();
+    }
+
+    public static com.alibaba.otter.canal.protocol.CanalPacket.Stream getDefaultInstance() {
+      return DEFAULT_INSTANCE;
+    }
+
+    private static final com.google.protobuf.Parser<Stream>
+        PARSER = new com.google.protobuf.AbstractParser<Stream>() {
+      @java.lang.Override
+      public Stream parsePartialFrom(
+          com.google.protobuf.CodedInputStream input,
+          com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+          throws com.google.protobuf.InvalidProtocolBufferException {
+        return new Stream(input, extensionRegistry);
+      }
+    };
+
+    public static com.google.protobuf.Parser<Stream> parser() {
+      return PARSER;
+    }
+
+    @java.lang.Override
+    public com.google.protobuf.Parser<Stream> getParserForType() {
+      return PARSER;
+    }
+
+    @java.lang.Override
+    public com.alibaba.otter.canal.protocol.CanalPacket.Stream getDefaultInstanceForType() {
+      return DEFAULT_INSTANCE;
+    }
+
+  }
+
+  public interface MessagesOrBuilder extends
+      // @@protoc_insertion_point(interface_extends:com.alibaba.otter.canal.protocol.Messages)
+      com.google.protobuf.MessageOrBuilder {
+
+    /**
+     * <code>int64 batch_id = 1;</code>
+     */
+    long getBatchId();
+
+    /**
+     * <code>repeated bytes messages = 2;</code>
+     */
+    java.util.List<com.google.protobuf.ByteString> getMessagesList();
+    /**
+     * <code>repeated bytes messages = 2;</code>
+     */
+    int getMessagesCount();
+    /**
+     * <code>repeated bytes messages = 2;</code>
+     */
+    com.google.protobuf.ByteString getMessages(int index);
+  }
+  /**
+   * <pre>
+   * </pre>
+   *
+   * Protobuf type {@code com.alibaba.otter.canal.protocol.Messages}
+   */
+  public  static final class Messages extends
+      com.google.protobuf.GeneratedMessageV3 implements
+      // @@protoc_insertion_point(message_implements:com.alibaba.otter.canal.protocol.Messages)
+      MessagesOrBuilder {
+  private static final long serialVersionUID = 0L;
+    // Use Messages.newBuilder() to construct.
+    private Messages(com.google.protobuf.GeneratedMessageV3.Builder<?> builder) {
+      super(builder);
+    }
+    private Messages() {
+      batchId_ = 0L;
+      messages_ = java.util.Collections.emptyList();
+    }
+
+    @java.lang.Override
+    public final com.google.protobuf.UnknownFieldSet
+    getUnknownFields() {
+      return this.unknownFields;
+    }
+    private Messages(
+        com.google.protobuf.CodedInputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      this();
+      if (extensionRegistry == null) {
+        throw new java.lang.NullPointerException();
+      }
+      int mutable_bitField0_ = 0;
+      com.google.protobuf.UnknownFieldSet.Builder unknownFields =
+          com.google.protobuf.UnknownFieldSet.newBuilder();
+      try {
+        boolean done = false;
+        while (!done) {
+          int tag = input.readTag();
+          switch (tag) {
+            case 0:
+              done = true;
+              break;
+            case 8: {
+
+              batchId_ = input.readInt64();
+              break;
+            }
+            case 18: {
+              if (!((mutable_bitField0_ & 0x00000002) == 0x00000002)) {
+                messages_ = new java.util.ArrayList<com.google.protobuf.ByteString>();
+                mutable_bitField0_ |= 0x00000002;
+              }
+              messages_.add(input.readBytes());
+              break;
+            }
+            default: {
+              if (!parseUnknownFieldProto3(
+                  input, unknownFields, extensionRegistry, tag)) {
+                done = true;
+              }
+              break;
+            }
+          }
+        }
+      } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+        throw e.setUnfinishedMessage(this);
+      } catch (java.io.IOException e) {
+        throw new com.google.protobuf.InvalidProtocolBufferException(
+            e).setUnfinishedMessage(this);
+      } finally {
+        if (((mutable_bitField0_ & 0x00000002) == 0x00000002)) {
+          messages_ = java.util.Collections.unmodifiableList(messages_);
+        }
+        this.unknownFields = unknownFields.build();
+        makeExtensionsImmutable();
+      }
+    }
+    public static final com.google.protobuf.Descriptors.Descriptor
+        getDescriptor() {
+      return com.alibaba.otter.canal.protocol.CanalPacket.internal_static_com_alibaba_otter_canal_protocol_Messages_descriptor;
+    }
+
+    @java.lang.Override
+    protected com.google.protobuf.GeneratedMessageV3.FieldAccessorTable
+        internalGetFieldAccessorTable() {
+      return com.alibaba.otter.canal.protocol.CanalPacket.internal_static_com_alibaba_otter_canal_protocol_Messages_fieldAccessorTable
+          .ensureFieldAccessorsInitialized(
+              com.alibaba.otter.canal.protocol.CanalPacket.Messages.class, com.alibaba.otter.canal.protocol.CanalPacket.Messages.Builder.class);
+    }
+
+    private int bitField0_;
+    public static final int BATCH_ID_FIELD_NUMBER = 1;
+    private long batchId_;
+    /**
+     * <code>int64 batch_id = 1;</code>
+     */
+    public long getBatchId() {
+      return batchId_;
+    }
+
+    public static final int MESSAGES_FIELD_NUMBER = 2;
+    private java.util.List<com.google.protobuf.ByteString> messages_;
+    /**
+     * <code>repeated bytes messages = 2;</code>
+     */
+    public java.util.List<com.google.protobuf.ByteString>
+        getMessagesList() {
+      return messages_;
+    }
+    /**
+     * <code>repeated bytes messages = 2;</code>
+     */
+    public int getMessagesCount() {
+      return messages_.size();
+    }
+    /**
+     * <code>repeated bytes messages = 2;</code>
+     */
+    public com.google.protobuf.ByteString getMessages(int index) {
+      return messages_.get(index);
+    }
+
+    private byte memoizedIsInitialized = -1;
+    @java.lang.Override
+    public final boolean isInitialized() {
+      byte isInitialized = memoizedIsInitialized;
       if (isInitialized == 1) return true;
       if (isInitialized == 0) return false;
 
@@ -10831,6 +12004,11 @@ public final class CanalPacket {
   private static final 
     com.google.protobuf.GeneratedMessageV3.FieldAccessorTable
       internal_static_com_alibaba_otter_canal_protocol_Get_fieldAccessorTable;
+  private static final com.google.protobuf.Descriptors.Descriptor
+    internal_static_com_alibaba_otter_canal_protocol_Stream_descriptor;
+  private static final 
+    com.google.protobuf.GeneratedMessageV3.FieldAccessorTable
+      internal_static_com_alibaba_otter_canal_protocol_Stream_fieldAccessorTable;
   private static final com.google.protobuf.Descriptors.Descriptor
     internal_static_com_alibaba_otter_canal_protocol_Messages_descriptor;
   private static final 
@@ -10886,22 +12064,26 @@ public final class CanalPacket {
       " \001(\t\022\022\n\nfetch_size\030\003 \001(\005\022\021\n\007timeout\030\004 \001(" +
       "\003H\000\022\016\n\004unit\030\005 \001(\005H\001\022\022\n\010auto_ack\030\006 \001(\010H\002B" +
       "\021\n\017timeout_presentB\016\n\014unit_presentB\022\n\020au" +
-      "to_ack_present\".\n\010Messages\022\020\n\010batch_id\030\001" +
-      " \001(\003\022\020\n\010messages\030\002 \003(\014\"S\n\004Dump\022\017\n\007journa" +
-      "l\030\001 \001(\t\022\020\n\010position\030\002 \001(\003\022\023\n\ttimestamp\030\003" +
-      " \001(\003H\000B\023\n\021timestamp_present\"J\n\016ClientRol" +
-      "lback\022\023\n\013destination\030\001 \001(\t\022\021\n\tclient_id\030" +
-      "\002 \001(\t\022\020\n\010batch_id\030\003 \001(\003*U\n\013Compression\022\037" +
-      "\n\033COMPRESSIONCOMPATIBLEPROTO2\020\000\022\010\n\004NONE\020" +
-      "\001\022\010\n\004ZLIB\020\002\022\010\n\004GZIP\020\003\022\007\n\003LZF\020\004*\346\001\n\nPacke" +
-      "tType\022\037\n\033PACKAGETYPECOMPATIBLEPROTO2\020\000\022\r" +
-      "\n\tHANDSHAKE\020\001\022\030\n\024CLIENTAUTHENTICATION\020\002\022" +
-      "\007\n\003ACK\020\003\022\020\n\014SUBSCRIPTION\020\004\022\022\n\016UNSUBSCRIP" +
-      "TION\020\005\022\007\n\003GET\020\006\022\014\n\010MESSAGES\020\007\022\r\n\tCLIENTA" +
-      "CK\020\010\022\014\n\010SHUTDOWN\020\t\022\010\n\004DUMP\020\n\022\r\n\tHEARTBEA" +
-      "T\020\013\022\022\n\016CLIENTROLLBACK\020\014B1\n com.alibaba.o" +
-      "tter.canal.protocolB\013CanalPacketH\001b\006prot" +
-      "o3"
+      "to_ack_present\"\232\001\n\006Stream\022\023\n\013destination" +
+      "\030\001 \001(\t\022\021\n\tclient_id\030\002 \001(\t\022\022\n\nfetch_size\030" +
+      "\003 \001(\005\022\016\n\006window\030\004 \001(\005\022\021\n\007timeout\030\005 \001(\003H\000" +
+      "\022\016\n\004unit\030\006 \001(\005H\001B\021\n\017timeout_presentB\016\n\014u" +
+      "nit_present\".\n\010Messages\022\020\n\010batch_id\030\001 \001(" +
+      "\003\022\020\n\010messages\030\002 \003(\014\"S\n\004Dump\022\017\n\007journal\030\001" +
+      " \001(\t\022\020\n\010position\030\002 \001(\003\022\023\n\ttimestamp\030\003 \001(" +
+      "\003H\000B\023\n\021timestamp_present\"J\n\016ClientRollba" +
+      "ck\022\023\n\013destination\030\001 \001(\t\022\021\n\tclient_id\030\002 \001" +
+      "(\t\022\020\n\010batch_id\030\003 \001(\003*U\n\013Compression\022\037\n\033C" +
+      "OMPRESSIONCOMPATIBLEPROTO2\020\000\022\010\n\004NONE\020\001\022\010" +
+      "\n\004ZLIB\020\002\022\010\n\004GZIP\020\003\022\007\n\003LZF\020\004*\362\001\n\nPacketTy" +
+      "pe\022\037\n\033PACKAGETYPECOMPATIBLEPROTO2\020\000\022\r\n\tH" +
+      "ANDSHAKE\020\001\022\030\n\024CLIENTAUTHENTICATION\020\002\022\007\n\003" +
+      "ACK\020\003\022\020\n\014SUBSCRIPTION\020\004\022\022\n\016UNSUBSCRIPTIO" +
+      "N\020\005\022\007\n\003GET\020\006\022\014\n\010MESSAGES\020\007\022\r\n\tCLIENTACK\020" +
+      "\010\022\014\n\010SHUTDOWN\020\t\022\010\n\004DUMP\020\n\022\r\n\tHEARTBEAT\020\013" +
+      "\022\022\n\016CLIENTROLLBACK\020\014\022\n\n\006STREAM\020\rB1\n com." +
+      "alibaba.otter.canal.protocolB\013CanalPacke" +
+      "tH\001b\006proto3"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
         new com.google.protobuf.Descriptors.FileDescriptor.    InternalDescriptorAssigner() {
@@ -10969,20 +12151,26 @@ public final class CanalPacket {
       com.google.protobuf.GeneratedMessageV3.FieldAccessorTable(
         internal_static_com_alibaba_otter_canal_protocol_Get_descriptor,
         new java.lang.String[] { "Destination", "ClientId", "FetchSize", "Timeout", "Unit", "AutoAck", "TimeoutPresent", "UnitPresent", "AutoAckPresent", });
-    internal_static_com_alibaba_otter_canal_protocol_Messages_descriptor =
+    internal_static_com_alibaba_otter_canal_protocol_Stream_descriptor =
       getDescriptor().getMessageTypes().get(9);
+    internal_static_com_alibaba_otter_canal_protocol_Stream_fieldAccessorTable = new
+      com.google.protobuf.GeneratedMessageV3.FieldAccessorTable(
+        internal_static_com_alibaba_otter_canal_protocol_Stream_descriptor,
+        new java.lang.String[] { "Destination", "ClientId", "FetchSize", "Window", "Timeout", "Unit", "TimeoutPresent", "UnitPresent", });
+    internal_static_com_alibaba_otter_canal_protocol_Messages_descriptor =
+      getDescriptor().getMessageTypes().get(10);
     internal_static_com_alibaba_otter_canal_protocol_Messages_fieldAccessorTable = new
       com.google.protobuf.GeneratedMessageV3.FieldAccessorTable(
         internal_static_com_alibaba_otter_canal_protocol_Messages_descriptor,
         new java.lang.String[] { "BatchId", "Messages", });
     internal_static_com_alibaba_otter_canal_protocol_Dump_descriptor =
-      getDescriptor().getMessageTypes().get(10);
+      getDescriptor().getMessageTypes().get(11);
     internal_static_com_alibaba_otter_canal_protocol_Dump_fieldAccessorTable = new
       com.google.protobuf.GeneratedMessageV3.FieldAccessorTable(
         internal_static_com_alibaba_otter_canal_protocol_Dump_descriptor,
         new java.lang.String[] { "Journal", "Position", "Timestamp", "TimestampPresent", });
     internal_static_com_alibaba_otter_canal_protocol_ClientRollback_descriptor =
-      getDescriptor().getMessageTypes().get(11);
+      getDescriptor().getMessageTypes().get(12);
     internal_static_com_alibaba_otter_canal_protocol_ClientRollback_fieldAccessorTable = new
       com.google.protobuf.GeneratedMessageV3.FieldAccessorTable(
         internal_static_com_alibaba_otter_canal_protocol_ClientRollback_descriptor,
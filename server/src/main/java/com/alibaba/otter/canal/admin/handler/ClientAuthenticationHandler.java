@@ -17,7 +17,6 @@ import com.alibaba.otter.canal.admin.CanalAdmin;
 import com.alibaba.otter.canal.admin.netty.AdminNettyUtils;
 import com.alibaba.otter.canal.protocol.AdminPacket.ClientAuth;
 import com.alibaba.otter.canal.protocol.AdminPacket.Packet;
-import com.alibaba.otter.canal.server.netty.NettyUtils;
 
 /**
  * 客户端身份认证处理
@@ -76,7 +75,7 @@ public class ClientAuthenticationHandler extends SimpleChannelHandler {
                     }
                     // fix bug: soTimeout parameter's unit from connector is
                     // millseconds.
-                    IdleStateHandler idleStateHandler = new IdleStateHandler(NettyUtils.hashedWheelTimer,
+                    IdleStateHandler idleStateHandler = new IdleStateHandler(AdminNettyUtils.hashedWheelTimer,
                         readTimeout,
                         writeTimeout,
                         0,
@@ -0,0 +1,20 @@
+package com.alibaba.otter.canal.admin.handler;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.replay.ReplayingDecoder;
+import org.jboss.netty.handler.codec.replay.VoidEnum;
+
+/**
+ * 解析admin协议对应的header信息
+ * 
+ * @since 1.1.5
+ */
+public class FixedHeaderFrameDecoder extends ReplayingDecoder<VoidEnum> {
+
+    protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer, VoidEnum state)
+                                                                                                             throws Exception {
+        return buffer.readBytes(buffer.readInt());
+    }
+}
@@ -11,6 +11,8 @@ import org.jboss.netty.buffer.CompositeChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.Channels;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
 
 import com.alibaba.otter.canal.protocol.AdminPacket;
 import com.alibaba.otter.canal.protocol.AdminPacket.Ack;
@@ -18,8 +20,9 @@ import com.alibaba.otter.canal.protocol.AdminPacket.Packet;
 
 public class AdminNettyUtils {
 
-    public static int HEADER_LENGTH = 4;
-    public static int VERSION       = 1;
+    public static int   HEADER_LENGTH    = 4;
+    public static Timer hashedWheelTimer = new HashedWheelTimer();
+    public static int   VERSION          = 1;
 
     public static void write(Channel channel, ByteBuffer body) {
         byte[] header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.BIG_ENDIAN).putInt(body.limit()).array();
@@ -14,10 +14,10 @@ import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 
 import com.alibaba.otter.canal.admin.CanalAdmin;
 import com.alibaba.otter.canal.admin.handler.ClientAuthenticationHandler;
+import com.alibaba.otter.canal.admin.handler.FixedHeaderFrameDecoder;
 import com.alibaba.otter.canal.admin.handler.HandshakeInitializationHandler;
 import com.alibaba.otter.canal.admin.handler.SessionHandler;
 import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
-import com.alibaba.otter.canal.server.netty.handler.FixedHeaderFrameDecoder;
 
 /**
  * 基于netty网络服务的server实现
@@ -1,7 +1,9 @@
 package com.alibaba.otter.canal.server;
 
+import java.util.LinkedList;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -163,6 +165,11 @@ public class CanalMQStarter {
 
                 Integer getTimeout = mqProperties.getFetchTimeout();
                 Integer getBatchSize = mqProperties.getBatchSize();
+                Integer inflightBatchSize = mqProperties.getInflightBatchSize();
+                if (inflightBatchSize != null && inflightBatchSize > 1) {
+                    pipeline(clientIdentity, canalDestination, inflightBatchSize, destinationRunning);
+                    continue;
+                }
                 while (running && destinationRunning.get()) {
                     Message message;
                     if (getTimeout != null && getTimeout > 0) {
@@ -208,6 +215,151 @@ public class CanalMQStarter {
         }
     }
 
+    /**
+     * 流水线方式投递
+     *
+     * <pre>
+     * 1. 最多保留inflightBatchSize个已发送未确认的batch, 上一个batch还在flush时即可获取并构造下一个batch
+     * 2. 发送回调只记录结果, 由当前线程按batch顺序ack
+     * 3. 任意batch发送失败后不再投递新的batch, 等待所有已投递batch的回调完成后, ack失败之前的batch并rollback其余的batch,
+     *    回滚之后的重新投递不会和仍在发送中的batch交错
+     * 4. 失败batch之后已经发送成功的batch会被重新投递(at least once)
+     * </pre>
+     */
+    private void pipeline(ClientIdentity clientIdentity, MQDestination canalDestination, int inflightBatchSize,
+                          AtomicBoolean destinationRunning) {
+        Integer getTimeout = mqProperties.getFetchTimeout();
+        Integer getBatchSize = mqProperties.getBatchSize();
+        LinkedList<InflightBatch> inflightBatches = new LinkedList<>();
+        try {
+            while (running && destinationRunning.get()) {
+                completeBatches(clientIdentity, inflightBatches);
+                InflightBatch pending = firstPending(inflightBatches);
+                if (pending != null && (inflightBatches.size() >= inflightBatchSize || hasFailed(inflightBatches))) {
+                    // 窗口已满, 或者已有batch失败时等待所有回调完成后再回滚
+                    pending.await(100L);
+                    continue;
+                }
+
+                Message message;
+                if (getTimeout != null && getTimeout > 0) {
+                    message = canalServer.getWithoutAck(clientIdentity,
+                        getBatchSize,
+                        getTimeout.longValue(),
+                        TimeUnit.MILLISECONDS);
+                } else {
+                    message = canalServer.getWithoutAck(clientIdentity, getBatchSize);
+                }
+
+                long batchId = message.getId();
+                int size = message.isRaw() ? message.getRawEntries().size() : message.getEntries().size();
+                if (batchId != -1 && size != 0) {
+                    InflightBatch inflightBatch = new InflightBatch(batchId);
+                    inflightBatches.addLast(inflightBatch);
+                    canalMQProducer.sendAsync(canalDestination, message, inflightBatch); // 发送message到topic
+                } else if (pending != null) {
+                    pending.await(100L);
+                } else {
+                    Thread.sleep(100);
+                }
+            }
+
+            // 停止时等待已发送的batch完成确认
+            awaitInflight(clientIdentity, inflightBatches);
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            // 等待已投递的batch回调完成后, 未确认的batch全部回滚, 避免ack时出现跳跃
+            try {
+                awaitInflight(clientIdentity, inflightBatches);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            if (!inflightBatches.isEmpty()) {
+                canalServer.rollback(clientIdentity);
+            }
+        }
+    }
+
+    private void awaitInflight(ClientIdentity clientIdentity, LinkedList<InflightBatch> inflightBatches)
+                                                                                                       throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 3000L;
+        InflightBatch pending;
+        while ((pending = firstPending(inflightBatches)) != null && System.currentTimeMillis() < deadline) {
+            pending.await(100L);
+        }
+        completeBatches(clientIdentity, inflightBatches);
+    }
+
+    /**
+     * 按顺序ack已经发送成功的batch, 遇到发送失败的batch时, 等所有已投递batch的回调都完成后再回滚所有未确认的batch
+     */
+    private void completeBatches(ClientIdentity clientIdentity, LinkedList<InflightBatch> inflightBatches) {
+        while (!inflightBatches.isEmpty()) {
+            InflightBatch inflightBatch = inflightBatches.getFirst();
+            if (inflightBatch.state == InflightBatch.SUCCESS) {
+                canalServer.ack(clientIdentity, inflightBatch.batchId); // 提交确认
+                inflightBatches.removeFirst();
+            } else if (inflightBatch.state == InflightBatch.FAILED && firstPending(inflightBatches) == null) {
+                canalServer.rollback(clientIdentity);
+                inflightBatches.clear();
+            } else {
+                break;
+            }
+        }
+    }
+
+    private static InflightBatch firstPending(LinkedList<InflightBatch> inflightBatches) {
+        for (InflightBatch inflightBatch : inflightBatches) {
+            if (inflightBatch.state == InflightBatch.PENDING) {
+                return inflightBatch;
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasFailed(LinkedList<InflightBatch> inflightBatches) {
+        for (InflightBatch inflightBatch : inflightBatches) {
+            if (inflightBatch.state == InflightBatch.FAILED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 已发送未确认的batch, 记录发送回调的结果
+     */
+    private static class InflightBatch implements Callback {
+
+        private static final int     PENDING = 0;
+        private static final int     SUCCESS = 1;
+        private static final int     FAILED  = 2;
+
+        private final long           batchId;
+        private final CountDownLatch latch   = new CountDownLatch(1);
+        private volatile int         state   = PENDING;
+
+        InflightBatch(long batchId){
+            this.batchId = batchId;
+        }
+
+        @Override
+        public void commit() {
+            state = SUCCESS;
+            latch.countDown();
+        }
+
+        @Override
+        public void rollback() {
+            state = FAILED;
+            latch.countDown();
+        }
+
+        void await(long timeoutMs) throws InterruptedException {
+            latch.await(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
     private class CanalMQRunnable implements Runnable {
 
         private String destination;
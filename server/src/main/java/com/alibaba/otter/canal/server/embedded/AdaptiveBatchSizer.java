@@ -0,0 +1,146 @@
+package com.alibaba.otter.canal.server.embedded;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.alibaba.otter.canal.protocol.ClientIdentity;
+
+/**
+ * getWithoutAck的自适应攒批控制，按client维护一个目标batchSize
+ *
+ * <pre>
+ * 1. 非阻塞的get改为按目标batchSize最多等待lingerMs，带timeout的get按目标batchSize等待，数据够了立即返回
+ * 2. 等待结束前就取满了目标batch，说明有积压，ack延迟没有超过maxAckLatencyMs时目标翻倍，最大为client请求的batchSize
+ * 3. 等到超时才返回，说明流量小，目标减半，最小为minBatchSize，保证低延迟
+ * 4. 从返回batch到收到ack的延迟(ewma)超过maxAckLatencyMs，说明消费端处理一批太慢，目标同样减半
+ * 5. batchSize的单位跟随store的batchMode，MEMSIZE模式下即按内存大小攒批
+ * </pre>
+ *
+ * @since 1.1.5
+ */
+public class AdaptiveBatchSizer {
+
+    private static final int                       MAX_PENDING_BATCHS = 1024;
+
+    private long                                   lingerMs           = 50;
+    private int                                    minBatchSize       = 1;
+    private long                                   maxAckLatencyMs    = 1000;
+    private final Map<ClientIdentity, ClientState> states             = new ConcurrentHashMap<>();
+
+    /**
+     * 当前client的目标batchSize，不会超过client请求的batchSize
+     */
+    public int batchSize(ClientIdentity clientIdentity, int requestSize) {
+        return state(clientIdentity, requestSize).batchSize(requestSize);
+    }
+
+    /**
+     * 记录一次get的结果
+     *
+     * @param full 是否在等待结束前就取满了目标batch
+     * @param batchId 生成的batchId，没有数据时为-1
+     */
+    public void onGet(ClientIdentity clientIdentity, int requestSize, boolean full, long batchId) {
+        state(clientIdentity, requestSize).onGet(requestSize, full, batchId);
+    }
+
+    public void onAck(ClientIdentity clientIdentity, long batchId) {
+        ClientState state = states.get(clientIdentity);
+        if (state != null) {
+            state.onAck(batchId);
+        }
+    }
+
+    public void onRollback(ClientIdentity clientIdentity) {
+        ClientState state = states.get(clientIdentity);
+        if (state != null) {
+            state.clearPending();
+        }
+    }
+
+    public void remove(ClientIdentity clientIdentity) {
+        states.remove(clientIdentity);
+    }
+
+    public long getLingerMs() {
+        return lingerMs;
+    }
+
+    private ClientState state(ClientIdentity clientIdentity, int requestSize) {
+        return states.computeIfAbsent(clientIdentity, k -> new ClientState(requestSize));
+    }
+
+    private class ClientState {
+
+        private int                             target;
+        private long                            ackLatencyNanos;                       // ack延迟的ewma
+        private final LinkedHashMap<Long, Long> pending = new LinkedHashMap<Long, Long>() {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                // client一直不ack时避免无限增长
+                return size() > MAX_PENDING_BATCHS;
+            }
+        };
+
+        ClientState(int requestSize){
+            this.target = requestSize;
+        }
+
+        synchronized int batchSize(int requestSize) {
+            target = Math.max(Math.min(target, requestSize), Math.min(minBatchSize, requestSize));
+            return target;
+        }
+
+        synchronized void onGet(int requestSize, boolean full, long batchId) {
+            if (full) {
+                if (ackLatencyNanos <= TimeUnit.MILLISECONDS.toNanos(maxAckLatencyMs)) {
+                    target = (int) Math.min((long) target * 2, requestSize);
+                }
+            } else {
+                shrink();
+            }
+
+            if (batchId > 0) {
+                pending.put(batchId, System.nanoTime());
+            }
+        }
+
+        synchronized void onAck(long batchId) {
+            Long getTime = pending.remove(batchId);
+            if (getTime == null) {
+                return;
+            }
+
+            long latency = System.nanoTime() - getTime;
+            ackLatencyNanos = ackLatencyNanos == 0 ? latency : (ackLatencyNanos * 4 + latency) / 5;
+            if (ackLatencyNanos > TimeUnit.MILLISECONDS.toNanos(maxAckLatencyMs)) {
+                shrink();
+            }
+        }
+
+        synchronized void clearPending() {
+            pending.clear();
+        }
+
+        private void shrink() {
+            target = Math.max(target / 2, minBatchSize);
+        }
+    }
+
+    // ========= setter ==========
+
+    public void setLingerMs(long lingerMs) {
+        this.lingerMs = lingerMs;
+    }
+
+    public void setMinBatchSize(int minBatchSize) {
+        this.minBatchSize = Math.max(minBatchSize, 1);
+    }
+
+    public void setMaxAckLatencyMs(long maxAckLatencyMs) {
+        this.maxAckLatencyMs = maxAckLatencyMs;
+    }
+}
@@ -30,6 +30,8 @@ import com.alibaba.otter.canal.spi.CanalMetricsProvider;
 import com.alibaba.otter.canal.spi.CanalMetricsService;
 import com.alibaba.otter.canal.spi.NopCanalMetricsService;
 import com.alibaba.otter.canal.store.CanalEventStore;
+import com.alibaba.otter.canal.store.CanalMultiClientEventStore;
+import com.alibaba.otter.canal.store.file.FileEventStoreWithSegment;
 import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer;
 import com.alibaba.otter.canal.store.model.Event;
 import com.alibaba.otter.canal.store.model.Events;
@@ -54,6 +56,7 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
     private CanalMetricsService        metrics = NopCanalMetricsService.NOP;
     private String                     user;
     private String                     passwd;
+    private AdaptiveBatchSizer         adaptiveBatchSizer;                    // 为null时不开启自适应攒批
 
     private static class SingletonHolder {
 
@@ -175,10 +178,15 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
         }
 
         canalInstance.getMetaManager().subscribe(clientIdentity); // 执行一下meta订阅
-
+        CanalEventStore eventStore = canalInstance.getEventStore();
         Position position = canalInstance.getMetaManager().getCursor(clientIdentity);
+        if (eventStore instanceof CanalMultiClientEventStore) {
+            // 创建store中独立的游标，从客户端上一次ack的位置开始
+            ((CanalMultiClientEventStore) eventStore).subscribe(clientIdentity, position);
+        }
+
         if (position == null) {
-            position = canalInstance.getEventStore().getFirstPosition();// 获取一下store中的第一条
+            position = getFirstPosition(eventStore, clientIdentity);// 获取一下store中的第一条
             if (position != null) {
                 canalInstance.getMetaManager().updateCursor(clientIdentity, position); // 更新一下cursor
             }
@@ -198,6 +206,13 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
     public void unsubscribe(ClientIdentity clientIdentity) throws CanalServerException {
         CanalInstance canalInstance = canalInstances.get(clientIdentity.getDestination());
         canalInstance.getMetaManager().unsubscribe(clientIdentity); // 执行一下meta订阅
+        CanalEventStore eventStore = canalInstance.getEventStore();
+        if (eventStore instanceof CanalMultiClientEventStore) {
+            ((CanalMultiClientEventStore) eventStore).unsubscribe(clientIdentity);
+        }
+        if (adaptiveBatchSizer != null) {
+            adaptiveBatchSizer.remove(clientIdentity);
+        }
 
         logger.info("unsubscribe successfully, {}", clientIdentity);
     }
@@ -231,6 +246,8 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
      * b. 如果timeout不为null
      *    1. timeout为0，则采用get阻塞方式，获取数据，不设置超时，直到有足够的batchSize数据才返回
      *    2. timeout不为0，则采用get+timeout方式，获取数据，超时还没有batchSize足够的数据，有多少返回多少
+     * c. 如果开启了自适应攒批({@linkplain AdaptiveBatchSizer})，a和b.2两种情况按client当前的目标batchSize获取，tryGet最多等待lingerMs
+     *    等待在instance锁之外进行，不阻塞同一instance的其他client，是否攒满按store的batchMode计算
      * 
      * 注意： meta获取和数据的获取需要保证顺序性，优先拿到meta的，一定也会是优先拿到数据，所以需要加同步. (不能出现先拿到meta，拿到第二批数据，这样就会导致数据顺序性出现问题)
      * </pre>
@@ -253,7 +270,7 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
 
             Events<Event> events = null;
             Position start = canalInstance.getMetaManager().getCursor(clientIdentity);
-            events = getEvents(canalInstance.getEventStore(), start, batchSize, timeout, unit);
+            events = getEvents(canalInstance.getEventStore(), clientIdentity, start, batchSize, timeout, unit);
 
             if (CollectionUtils.isEmpty(events.getEvents())) {
                 logger.debug("get successfully, clientId:{} batchSize:{} but result is null",
@@ -308,6 +325,8 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
      * b. 如果timeout不为null
      *    1. timeout为0，则采用get阻塞方式，获取数据，不设置超时，直到有足够的batchSize数据才返回
      *    2. timeout不为0，则采用get+timeout方式，获取数据，超时还没有batchSize足够的数据，有多少返回多少
+     * c. 如果开启了自适应攒批({@linkplain AdaptiveBatchSizer})，a和b.2两种情况按client当前的目标batchSize获取，tryGet最多等待lingerMs
+     *    等待在instance锁之外进行，不阻塞同一instance的其他client，是否攒满按store的batchMode计算
      * 
      * 注意： meta获取和数据的获取需要保证顺序性，优先拿到meta的，一定也会是优先拿到数据，所以需要加同步. (不能出现先拿到meta，拿到第二批数据，这样就会导致数据顺序性出现问题)
      * </pre>
@@ -319,23 +338,50 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
         checkSubscribe(clientIdentity);
 
         CanalInstance canalInstance = canalInstances.get(clientIdentity.getDestination());
+        // 自适应攒批，阻塞到取满batchSize的get保持原有语义
+        int fetchSize = batchSize;
+        Long fetchTimeout = timeout;
+        boolean adaptive = adaptiveBatchSizer != null && (timeout == null || timeout > 0);
+        boolean full = false;
+        if (adaptive) {
+            fetchSize = adaptiveBatchSizer.batchSize(clientIdentity, batchSize);
+            // 在instance锁之外等待数据攒满，之后在锁内直接tryGet
+            long nanos = timeout == null ? TimeUnit.MILLISECONDS.toNanos(adaptiveBatchSizer.getLingerMs()) : unit
+                .toNanos(timeout);
+            full = awaitEvents(canalInstance, clientIdentity, fetchSize, Math.max(nanos, 0));
+            fetchTimeout = null;
+        }
+
         synchronized (canalInstance) {
             // 获取到流式数据中的最后一批获取的位置
             PositionRange<LogPosition> positionRanges = canalInstance.getMetaManager().getLastestBatch(clientIdentity);
 
             Events<Event> events = null;
             if (positionRanges != null) { // 存在流数据
-                events = getEvents(canalInstance.getEventStore(), positionRanges.getStart(), batchSize, timeout, unit);
+                events = getEvents(canalInstance.getEventStore(),
+                    clientIdentity,
+                    positionRanges.getStart(),
+                    fetchSize,
+                    fetchTimeout,
+                    unit);
             } else {// ack后第一次获取
                 Position start = canalInstance.getMetaManager().getCursor(clientIdentity);
                 if (start == null) { // 第一次，还没有过ack记录，则获取当前store中的第一条
-                    start = canalInstance.getEventStore().getFirstPosition();
+                    start = getFirstPosition(canalInstance.getEventStore(), clientIdentity);
                 }
 
-                events = getEvents(canalInstance.getEventStore(), start, batchSize, timeout, unit);
+                events = getEvents(canalInstance.getEventStore(),
+                    clientIdentity,
+                    start,
+                    fetchSize,
+                    fetchTimeout,
+                    unit);
             }
 
             if (CollectionUtils.isEmpty(events.getEvents())) {
+                if (adaptive) {
+                    adaptiveBatchSizer.onGet(clientIdentity, batchSize, false, -1);
+                }
                 // logger.debug("getWithoutAck successfully, clientId:{}
                 // batchSize:{} but result
                 // is null",
@@ -345,6 +391,9 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
             } else {
                 // 记录到流式信息
                 Long batchId = canalInstance.getMetaManager().addBatch(clientIdentity, events.getPositionRange());
+                if (adaptive) {
+                    adaptiveBatchSizer.onGet(clientIdentity, batchSize, full, batchId);
+                }
                 boolean raw = isRaw(canalInstance.getEventStore());
                 List entrys = null;
                 if (raw) {
@@ -418,6 +467,10 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
         // }
         // }
 
+        if (adaptiveBatchSizer != null) {
+            adaptiveBatchSizer.onAck(clientIdentity, batchId);
+        }
+
         // 更新cursor
         if (positionRanges.getAck() != null) {
             canalInstance.getMetaManager().updateCursor(clientIdentity, positionRanges.getAck());
@@ -430,7 +483,14 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
         }
 
         // 可定时清理数据
-        canalInstance.getEventStore().ack(positionRanges.getEnd(), positionRanges.getEndSeq());
+        CanalEventStore eventStore = canalInstance.getEventStore();
+        if (eventStore instanceof CanalMultiClientEventStore) {
+            ((CanalMultiClientEventStore) eventStore).ack(clientIdentity,
+                positionRanges.getEnd(),
+                positionRanges.getEndSeq());
+        } else {
+            eventStore.ack(positionRanges.getEnd(), positionRanges.getEndSeq());
+        }
     }
 
     /**
@@ -450,7 +510,10 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
             // 清除batch信息
             canalInstance.getMetaManager().clearAllBatchs(clientIdentity);
             // rollback eventStore中的状态信息
-            canalInstance.getEventStore().rollback();
+            rollback(canalInstance.getEventStore(), clientIdentity);
+            if (adaptiveBatchSizer != null) {
+                adaptiveBatchSizer.onRollback(clientIdentity);
+            }
             logger.info("rollback successfully, clientId:{}", new Object[] { clientIdentity.getClientId() });
         }
     }
@@ -481,8 +544,11 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
             // lastRollbackPostions.put(clientIdentity,
             // positionRanges.getEnd());// 记录一下最后rollback的位置
             // TODO 后续rollback到指定的batchId位置
-            canalInstance.getEventStore().rollback();// rollback
-                                                     // eventStore中的状态信息
+            rollback(canalInstance.getEventStore(), clientIdentity);// rollback
+                                                                    // eventStore中的状态信息
+            if (adaptiveBatchSizer != null) {
+                adaptiveBatchSizer.onRollback(clientIdentity);
+            }
             logger.info("rollback successfully, clientId:{} batchId:{} position:{}",
                 clientIdentity.getClientId(),
                 batchId,
@@ -497,10 +563,27 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
     // ======================== helper method =======================
 
     /**
-     * 根据不同的参数，选择不同的方式获取数据
+     * 根据不同的参数，选择不同的方式获取数据，支持多客户端的store按clientIdentity的游标获取
      */
-    private Events<Event> getEvents(CanalEventStore eventStore, Position start, int batchSize, Long timeout,
-                                    TimeUnit unit) {
+    private Events<Event> getEvents(CanalEventStore eventStore, ClientIdentity clientIdentity, Position start,
+                                    int batchSize, Long timeout, TimeUnit unit) {
+        if (eventStore instanceof CanalMultiClientEventStore) {
+            CanalMultiClientEventStore multiClientEventStore = (CanalMultiClientEventStore) eventStore;
+            if (timeout == null) {
+                return multiClientEventStore.tryGet(clientIdentity, start, batchSize);
+            } else {
+                try {
+                    if (timeout <= 0) {
+                        return multiClientEventStore.get(clientIdentity, start, batchSize);
+                    } else {
+                        return multiClientEventStore.get(clientIdentity, start, batchSize, timeout, unit);
+                    }
+                } catch (Exception e) {
+                    throw new CanalServerException(e);
+                }
+            }
+        }
+
         if (timeout == null) {
             return eventStore.tryGet(start, batchSize);
         } else {
@@ -516,6 +599,48 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
         }
     }
 
+    /**
+     * 等待store中的数据攒满batchSize(按store的batchMode计算)，不获取数据，返回是否已经攒满
+     */
+    private boolean awaitEvents(CanalInstance canalInstance, ClientIdentity clientIdentity, int batchSize, long nanos) {
+        PositionRange<LogPosition> positionRanges = canalInstance.getMetaManager().getLastestBatch(clientIdentity);
+        CanalEventStore eventStore = canalInstance.getEventStore();
+        Position start = positionRanges != null ? positionRanges.getStart() : canalInstance.getMetaManager()
+            .getCursor(clientIdentity);
+        if (start == null) { // 第一次，还没有过ack记录，则从store中的第一条开始
+            start = getFirstPosition(eventStore, clientIdentity);
+        }
+        try {
+            if (eventStore instanceof CanalMultiClientEventStore) {
+                return ((CanalMultiClientEventStore) eventStore).await(clientIdentity,
+                    start,
+                    batchSize,
+                    nanos,
+                    TimeUnit.NANOSECONDS);
+            } else {
+                return eventStore.await(start, batchSize, nanos, TimeUnit.NANOSECONDS);
+            }
+        } catch (Exception e) {
+            throw new CanalServerException(e);
+        }
+    }
+
+    private Position getFirstPosition(CanalEventStore eventStore, ClientIdentity clientIdentity) {
+        if (eventStore instanceof CanalMultiClientEventStore) {
+            return ((CanalMultiClientEventStore) eventStore).getFirstPosition(clientIdentity);
+        } else {
+            return eventStore.getFirstPosition();
+        }
+    }
+
+    private void rollback(CanalEventStore eventStore, ClientIdentity clientIdentity) {
+        if (eventStore instanceof CanalMultiClientEventStore) {
+            ((CanalMultiClientEventStore) eventStore).rollback(clientIdentity);
+        } else {
+            eventStore.rollback();
+        }
+    }
+
     private void checkSubscribe(ClientIdentity clientIdentity) {
         CanalInstance canalInstance = canalInstances.get(clientIdentity.getDestination());
         boolean hasSubscribe = canalInstance.getMetaManager().hasSubscribe(clientIdentity);
@@ -558,6 +683,8 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
     private boolean isRaw(CanalEventStore eventStore) {
         if (eventStore instanceof MemoryEventStoreWithBuffer) {
             return ((MemoryEventStoreWithBuffer) eventStore).isRaw();
+        } else if (eventStore instanceof FileEventStoreWithSegment) {
+            return ((FileEventStoreWithSegment) eventStore).isRaw();
         }
 
         return true;
@@ -581,4 +708,8 @@ public class CanalServerWithEmbedded extends AbstractCanalLifeCycle implements C
         this.passwd = passwd;
     }
 
+    public void setAdaptiveBatchSizer(AdaptiveBatchSizer adaptiveBatchSizer) {
+        this.adaptiveBatchSizer = adaptiveBatchSizer;
+    }
+
 }
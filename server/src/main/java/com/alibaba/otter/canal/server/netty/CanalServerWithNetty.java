@@ -1,18 +1,13 @@
 package com.alibaba.otter.canal.server.netty;
 
 import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import org.apache.commons.lang.StringUtils;
-import org.jboss.netty.bootstrap.ServerBootstrap;
-import org.jboss.netty.channel.Channel;
-import org.jboss.netty.channel.ChannelPipeline;
-import org.jboss.netty.channel.Channels;
-import org.jboss.netty.channel.group.ChannelGroup;
-import org.jboss.netty.channel.group.DefaultChannelGroup;
-import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 
 import com.alibaba.otter.canal.common.AbstractCanalLifeCycle;
+import com.alibaba.otter.canal.common.utils.NamedThreadFactory;
 import com.alibaba.otter.canal.server.CanalServer;
 import com.alibaba.otter.canal.server.embedded.CanalServerWithEmbedded;
 import com.alibaba.otter.canal.server.netty.handler.ClientAuthenticationHandler;
@@ -20,9 +15,33 @@ import com.alibaba.otter.canal.server.netty.handler.FixedHeaderFrameDecoder;
 import com.alibaba.otter.canal.server.netty.handler.HandshakeInitializationHandler;
 import com.alibaba.otter.canal.server.netty.handler.SessionHandler;
 
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
 /**
  * 基于netty网络服务的server实现
  * 
+ * <pre>
+ * 1. 基于netty4，使用池化的direct buffer
+ * 2. 写出缓冲超过高水位后channel变为不可写，session暂停读取请求，实现背压
+ * 3. 通过FlushConsolidationHandler合并同一次读循环中的多次flush
+ * 4. 流式推送的会话使用独立的线程池，避免阻塞io线程
+ * </pre>
+ * 
  * @author jianghang 2012-7-12 下午01:34:49
  * @version 1.0.0
  */
@@ -31,12 +50,16 @@ public class CanalServerWithNetty extends AbstractCanalLifeCycle implements Cana
     private CanalServerWithEmbedded embeddedServer;      // 嵌入式server
     private String                  ip;
     private int                     port;
-    private Channel                 serverChannel = null;
-    private ServerBootstrap         bootstrap     = null;
-    private ChannelGroup            childGroups   = null; // socket channel
-                                                          // container, used to
-                                                          // close sockets
-                                                          // explicitly.
+    private int                     lowWaterMark   = 32 * 1024;  // 写出缓冲低水位
+    private int                     highWaterMark  = 64 * 1024;  // 写出缓冲高水位
+    private Channel                 serverChannel  = null;
+    private EventLoopGroup          bossGroup      = null;
+    private EventLoopGroup          workerGroup    = null;
+    private ExecutorService         streamExecutor = null;       // 流式推送线程池
+    private ChannelGroup            childGroups    = null;       // socket channel
+                                                                 // container, used to
+                                                                 // close sockets
+                                                                 // explicitly.
 
     private static class SingletonHolder {
 
@@ -45,7 +68,7 @@ public class CanalServerWithNetty extends AbstractCanalLifeCycle implements Cana
 
     private CanalServerWithNetty(){
         this.embeddedServer = CanalServerWithEmbedded.instance();
-        this.childGroups = new DefaultChannelGroup();
+        this.childGroups = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
     }
 
     public static CanalServerWithNetty instance() {
@@ -59,41 +82,54 @@ public class CanalServerWithNetty extends AbstractCanalLifeCycle implements Cana
             embeddedServer.start();
         }
 
-        this.bootstrap = new ServerBootstrap(new NioServerSocketChannelFactory(Executors.newCachedThreadPool(),
-            Executors.newCachedThreadPool()));
+        this.streamExecutor = Executors.newCachedThreadPool(new NamedThreadFactory("canal-server-stream"));
+        this.bossGroup = new NioEventLoopGroup(1);
+        this.workerGroup = new NioEventLoopGroup();
+
+        ServerBootstrap bootstrap = new ServerBootstrap();
+        bootstrap.group(bossGroup, workerGroup).channel(NioServerSocketChannel.class);
+        bootstrap.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+        bootstrap.childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
         /*
          * enable keep-alive mechanism, handle abnormal network connection
          * scenarios on OS level. the threshold parameters are depended on OS.
          * e.g. On Linux: net.ipv4.tcp_keepalive_time = 300
          * net.ipv4.tcp_keepalive_probes = 2 net.ipv4.tcp_keepalive_intvl = 30
          */
-        bootstrap.setOption("child.keepAlive", true);
+        bootstrap.childOption(ChannelOption.SO_KEEPALIVE, true);
         /*
          * optional parameter.
          */
-        bootstrap.setOption("child.tcpNoDelay", true);
+        bootstrap.childOption(ChannelOption.TCP_NODELAY, true);
+        bootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+            new WriteBufferWaterMark(lowWaterMark, highWaterMark));
 
         // 构造对应的pipeline
-        bootstrap.setPipelineFactory(() -> {
-            ChannelPipeline pipelines = Channels.pipeline();
-            pipelines.addLast(FixedHeaderFrameDecoder.class.getName(), new FixedHeaderFrameDecoder());
-            // support to maintain child socket channel.
-            pipelines.addLast(HandshakeInitializationHandler.class.getName(),
-                new HandshakeInitializationHandler(childGroups));
-            pipelines.addLast(ClientAuthenticationHandler.class.getName(),
-                new ClientAuthenticationHandler(embeddedServer));
-
-            SessionHandler sessionHandler = new SessionHandler(embeddedServer);
-            pipelines.addLast(SessionHandler.class.getName(), sessionHandler);
-            return pipelines;
+        bootstrap.childHandler(new ChannelInitializer<SocketChannel>() {
+
+            protected void initChannel(SocketChannel ch) throws Exception {
+                ChannelPipeline pipelines = ch.pipeline();
+                pipelines.addLast(FlushConsolidationHandler.class.getName(), new FlushConsolidationHandler());
+                pipelines.addLast(FixedHeaderFrameDecoder.class.getName(), new FixedHeaderFrameDecoder());
+                // support to maintain child socket channel.
+                pipelines.addLast(HandshakeInitializationHandler.class.getName(),
+                    new HandshakeInitializationHandler(childGroups));
+                pipelines.addLast(ClientAuthenticationHandler.class.getName(),
+                    new ClientAuthenticationHandler(embeddedServer));
+
+                SessionHandler sessionHandler = new SessionHandler(embeddedServer, streamExecutor);
+                pipelines.addLast(SessionHandler.class.getName(), sessionHandler);
+            }
         });
 
         // 启动
+        InetSocketAddress address;
         if (StringUtils.isNotEmpty(ip)) {
-            this.serverChannel = bootstrap.bind(new InetSocketAddress(this.ip, this.port));
+            address = new InetSocketAddress(this.ip, this.port);
         } else {
-            this.serverChannel = bootstrap.bind(new InetSocketAddress(this.port));
+            address = new InetSocketAddress(this.port);
         }
+        this.serverChannel = bootstrap.bind(address).syncUninterruptibly().channel();
     }
 
     public void stop() {
@@ -109,8 +145,15 @@ public class CanalServerWithNetty extends AbstractCanalLifeCycle implements Cana
             this.childGroups.close().awaitUninterruptibly(5000);
         }
 
-        if (this.bootstrap != null) {
-            this.bootstrap.releaseExternalResources();
+        if (this.streamExecutor != null) {
+            this.streamExecutor.shutdownNow();
+        }
+
+        if (this.bossGroup != null && this.workerGroup != null) {
+            Future<?> bossFuture = this.bossGroup.shutdownGracefully();
+            Future<?> workerFuture = this.workerGroup.shutdownGracefully();
+            bossFuture.awaitUninterruptibly(5000);
+            workerFuture.awaitUninterruptibly(5000);
         }
 
         if (embeddedServer.isStart()) {
@@ -126,6 +169,14 @@ public class CanalServerWithNetty extends AbstractCanalLifeCycle implements Cana
         this.port = port;
     }
 
+    public void setLowWaterMark(int lowWaterMark) {
+        this.lowWaterMark = lowWaterMark;
+    }
+
+    public void setHighWaterMark(int highWaterMark) {
+        this.highWaterMark = highWaterMark;
+    }
+
     public void setEmbeddedServer(CanalServerWithEmbedded embeddedServer) {
         this.embeddedServer = embeddedServer;
     }
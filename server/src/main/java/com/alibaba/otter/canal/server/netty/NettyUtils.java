@@ -1,53 +1,138 @@
 package com.alibaba.otter.canal.server.netty;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBuffers;
-import org.jboss.netty.buffer.CompositeChannelBuffer;
-import org.jboss.netty.channel.Channel;
-import org.jboss.netty.channel.ChannelFutureListener;
-import org.jboss.netty.channel.Channels;
-import org.jboss.netty.util.HashedWheelTimer;
-import org.jboss.netty.util.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.util.CollectionUtils;
 
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
 import com.alibaba.otter.canal.protocol.CanalPacket;
 import com.alibaba.otter.canal.protocol.CanalPacket.Ack;
+import com.alibaba.otter.canal.protocol.CanalPacket.Messages;
 import com.alibaba.otter.canal.protocol.CanalPacket.Packet;
+import com.alibaba.otter.canal.protocol.CanalPacket.PacketType;
+import com.alibaba.otter.canal.protocol.Message;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 
 public class NettyUtils {
 
-    private static final Logger logger           = LoggerFactory.getLogger(NettyUtils.class);
-    public static int           HEADER_LENGTH    = 4;
-    public static Timer         hashedWheelTimer = new HashedWheelTimer();
-    public static int           VERSION          = 1;
+    private static final Logger logger        = LoggerFactory.getLogger(NettyUtils.class);
+    public static int           HEADER_LENGTH = 4;
+    public static int           VERSION       = 1;
 
     public static void write(Channel channel, ByteBuffer body, ChannelFutureListener channelFutureListner) {
-        byte[] header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.BIG_ENDIAN).putInt(body.limit()).array();
-        List<ChannelBuffer> components = new ArrayList<>(2);
-        components.add(ChannelBuffers.wrappedBuffer(ByteOrder.BIG_ENDIAN, header));
-        components.add(ChannelBuffers.wrappedBuffer(body));
-
-        if (channelFutureListner == null) {
-            Channels.write(channel, new CompositeChannelBuffer(ByteOrder.BIG_ENDIAN, components));
-        } else {
-            Channels.write(channel, new CompositeChannelBuffer(ByteOrder.BIG_ENDIAN, components))
-                .addListener(channelFutureListner);
-        }
+        ByteBuf buffer = channel.alloc().ioBuffer(HEADER_LENGTH + body.remaining());
+        buffer.writeInt(body.remaining()).writeBytes(body.duplicate());
+        writeAndFlush(channel, buffer, channelFutureListner);
     }
 
     public static void write(Channel channel, byte[] body, ChannelFutureListener channelFutureListner) {
-        byte[] header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.BIG_ENDIAN).putInt(body.length).array();
-        if (channelFutureListner == null) {
-            Channels.write(channel, ChannelBuffers.wrappedBuffer(header, body));
-        } else {
-            Channels.write(channel, ChannelBuffers.wrappedBuffer(header, body)).addListener(channelFutureListner);
+        ByteBuf buffer = channel.alloc().ioBuffer(HEADER_LENGTH + body.length);
+        buffer.writeInt(body.length).writeBytes(body);
+        writeAndFlush(channel, buffer, channelFutureListner);
+    }
+
+    /**
+     * 写出一个完整的packet body，body的引用计数由netty在写出完成后释放
+     */
+    public static void write(Channel channel, ByteBuf body, ChannelFutureListener channelFutureListner) {
+        ByteBuf header = channel.alloc().ioBuffer(HEADER_LENGTH).writeInt(body.readableBytes());
+        writeAndFlush(channel,
+            channel.alloc().compositeDirectBuffer(2).addComponents(true, header, body),
+            channelFutureListner);
+    }
+
+    private static void writeAndFlush(Channel channel, ByteBuf buffer, ChannelFutureListener channelFutureListner) {
+        ChannelFuture future = channel.writeAndFlush(buffer);
+        if (channelFutureListner != null) {
+            future.addListener(channelFutureListner);
+        }
+    }
+
+    /**
+     * 构造MESSAGES类型的packet，raw模式下entry数据直接wrap，不做拷贝
+     */
+    public static ByteBuf messagesPacket(ByteBufAllocator allocator, Message message) throws IOException {
+        if (message.getId() != -1 && message.isRaw()) {
+            return rawMessagesPacket(allocator, message.getId(), message.getRawEntries());
+        }
+
+        Packet.Builder packetBuilder = CanalPacket.Packet.newBuilder();
+        packetBuilder.setType(PacketType.MESSAGES).setVersion(VERSION);
+
+        Messages.Builder messageBuilder = CanalPacket.Messages.newBuilder();
+        messageBuilder.setBatchId(message.getId());
+        if (message.getId() != -1 && !CollectionUtils.isEmpty(message.getEntries())) {
+            for (Entry entry : message.getEntries()) {
+                messageBuilder.addMessages(entry.toByteString());
+            }
+        }
+        return Unpooled.wrappedBuffer(packetBuilder.setBody(messageBuilder.build().toByteString())
+            .build()
+            .toByteArray());
+    }
+
+    /**
+     * 基于raw entry构造MESSAGES类型的packet，entry数据直接wrap成CompositeByteBuf的组件，只对protobuf的tag/length做少量编码
+     */
+    public static ByteBuf rawMessagesPacket(ByteBufAllocator allocator, long batchId, List<ByteString> rawEntries)
+                                                                                                                   throws IOException {
+        // message size
+        int messageSize = CodedOutputStream.computeInt64Size(1, batchId);
+        // 每条entry的tag(1字节) + length(varint)
+        int prefixSize = 0;
+        for (ByteString rawEntry : rawEntries) {
+            int length = CodedOutputStream.computeUInt32SizeNoTag(rawEntry.size());
+            prefixSize += 1 + length;
+            messageSize += 1 + length + rawEntry.size();
+        }
+        // packet header size
+        int headerSize = CodedOutputStream.computeEnumSize(3, PacketType.MESSAGES.getNumber())
+                         + CodedOutputStream.computeTagSize(5) + CodedOutputStream.computeUInt32SizeNoTag(messageSize)
+                         + CodedOutputStream.computeInt64Size(1, batchId);
+
+        byte[] header = new byte[headerSize];
+        CodedOutputStream output = CodedOutputStream.newInstance(header);
+        output.writeEnum(3, PacketType.MESSAGES.getNumber());
+        output.writeTag(5, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        output.writeUInt32NoTag(messageSize);
+        output.writeInt64(1, batchId);
+        output.checkNoSpaceLeft();
+
+        // 所有entry的前缀共用一个数组，按照offset切分
+        byte[] prefixes = new byte[prefixSize];
+        output = CodedOutputStream.newInstance(prefixes);
+        List<ByteBuf> components = new ArrayList<>(1 + rawEntries.size() * 2);
+        components.add(Unpooled.wrappedBuffer(header));
+        int offset = 0;
+        for (ByteString rawEntry : rawEntries) {
+            output.writeTag(2, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            output.writeUInt32NoTag(rawEntry.size());
+            int length = prefixSize - output.spaceLeft() - offset;
+            components.add(Unpooled.wrappedBuffer(prefixes, offset, length));
+            offset += length;
+            for (ByteBuffer data : rawEntry.asReadOnlyByteBufferList()) {
+                if (data.hasRemaining()) {
+                    components.add(Unpooled.wrappedBuffer(data));
+                }
+            }
         }
+        output.checkNoSpaceLeft();
+        // maxNumComponents设置为组件数，避免超过默认值16时合并拷贝
+        return allocator.compositeBuffer(components.size()).addComponents(true, components);
     }
 
     public static void ack(Channel channel, ChannelFutureListener channelFutureListner) {
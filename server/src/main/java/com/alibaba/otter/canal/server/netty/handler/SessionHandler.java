@@ -1,32 +1,25 @@
 package com.alibaba.otter.canal.server.netty.handler;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
-import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.channel.ChannelStateEvent;
-import org.jboss.netty.channel.ExceptionEvent;
-import org.jboss.netty.channel.MessageEvent;
-import org.jboss.netty.channel.SimpleChannelHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 import org.slf4j.helpers.MessageFormatter;
-import org.springframework.util.CollectionUtils;
 
 import com.alibaba.otter.canal.common.zookeeper.running.ServerRunningMonitor;
 import com.alibaba.otter.canal.common.zookeeper.running.ServerRunningMonitors;
-import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
 import com.alibaba.otter.canal.protocol.CanalPacket;
 import com.alibaba.otter.canal.protocol.CanalPacket.ClientAck;
 import com.alibaba.otter.canal.protocol.CanalPacket.ClientRollback;
 import com.alibaba.otter.canal.protocol.CanalPacket.Get;
-import com.alibaba.otter.canal.protocol.CanalPacket.Messages;
 import com.alibaba.otter.canal.protocol.CanalPacket.Packet;
 import com.alibaba.otter.canal.protocol.CanalPacket.PacketType;
+import com.alibaba.otter.canal.protocol.CanalPacket.Stream;
 import com.alibaba.otter.canal.protocol.CanalPacket.Sub;
 import com.alibaba.otter.canal.protocol.CanalPacket.Unsub;
 import com.alibaba.otter.canal.protocol.ClientIdentity;
@@ -34,14 +27,17 @@ import com.alibaba.otter.canal.protocol.Message;
 import com.alibaba.otter.canal.server.embedded.CanalServerWithEmbedded;
 import com.alibaba.otter.canal.server.netty.NettyUtils;
 import com.alibaba.otter.canal.server.netty.listener.ChannelFutureAggregator;
-import com.google.protobuf.ByteString;
-import com.google.protobuf.CodedOutputStream;
-import com.google.protobuf.WireFormat;
 
-public class SessionHandler extends SimpleChannelHandler {
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+
+public class SessionHandler extends SimpleChannelInboundHandler<ByteBuf> {
 
     private static final Logger     logger = LoggerFactory.getLogger(SessionHandler.class);
     private CanalServerWithEmbedded embeddedServer;
+    private ExecutorService         streamExecutor;                                       // 流式推送线程池
+    private volatile StreamSession  streamSession;                                        // 当前channel的流式推送会话
 
     public SessionHandler(){
     }
@@ -50,12 +46,16 @@ public class SessionHandler extends SimpleChannelHandler {
         this.embeddedServer = embeddedServer;
     }
 
+    public SessionHandler(CanalServerWithEmbedded embeddedServer, ExecutorService streamExecutor){
+        this.embeddedServer = embeddedServer;
+        this.streamExecutor = streamExecutor;
+    }
+
     @SuppressWarnings({ "deprecation" })
-    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf buffer) throws Exception {
         logger.info("message receives in session handler...");
         long start = System.nanoTime();
-        ChannelBuffer buffer = (ChannelBuffer) e.getMessage();
-        Packet packet = Packet.parseFrom(buffer.readBytes(buffer.readableBytes()).array());
+        Packet packet = Packet.parseFrom(buffer.nioBuffer());
         ClientIdentity clientIdentity = null;
         try {
             switch (packet.getType()) {
@@ -78,7 +78,7 @@ public class SessionHandler extends SimpleChannelHandler {
                         embeddedServer.subscribe(clientIdentity);
                         // ctx.setAttachment(clientIdentity);// 设置状态数据
                         byte[] ackBytes = NettyUtils.ackPacket();
-                        NettyUtils.write(ctx.getChannel(), ackBytes, new ChannelFutureAggregator(sub.getDestination(),
+                        NettyUtils.write(ctx.channel(), ackBytes, new ChannelFutureAggregator(sub.getDestination(),
                             sub,
                             packet.getType(),
                             ackBytes.length,
@@ -86,7 +86,7 @@ public class SessionHandler extends SimpleChannelHandler {
                     } else {
                         byte[] errorBytes = NettyUtils.errorPacket(401,
                             MessageFormatter.format("destination or clientId is null", sub.toString()).getMessage());
-                        NettyUtils.write(ctx.getChannel(),
+                        NettyUtils.write(ctx.channel(),
                             errorBytes,
                             new ChannelFutureAggregator(sub.getDestination(),
                                 sub,
@@ -103,10 +103,11 @@ public class SessionHandler extends SimpleChannelHandler {
                             Short.valueOf(unsub.getClientId()),
                             unsub.getFilter());
                         MDC.put("destination", clientIdentity.getDestination());
+                        stopStream(false);
                         embeddedServer.unsubscribe(clientIdentity);
                         stopCanalInstanceIfNecessary(clientIdentity);// 尝试关闭
                         byte[] ackBytes = NettyUtils.ackPacket();
-                        NettyUtils.write(ctx.getChannel(),
+                        NettyUtils.write(ctx.channel(),
                             ackBytes,
                             new ChannelFutureAggregator(unsub.getDestination(),
                                 unsub,
@@ -116,7 +117,7 @@ public class SessionHandler extends SimpleChannelHandler {
                     } else {
                         byte[] errorBytes = NettyUtils.errorPacket(401,
                             MessageFormatter.format("destination or clientId is null", unsub.toString()).getMessage());
-                        NettyUtils.write(ctx.getChannel(),
+                        NettyUtils.write(ctx.channel(),
                             errorBytes,
                             new ChannelFutureAggregator(unsub.getDestination(),
                                 unsub,
@@ -154,90 +155,18 @@ public class SessionHandler extends SimpleChannelHandler {
                         }
                         // }
 
-                        if (message.getId() != -1 && message.isRaw()) {
-                            List<ByteString> rowEntries = message.getRawEntries();
-                            // message size
-                            int messageSize = 0;
-                            messageSize += com.google.protobuf.CodedOutputStream.computeInt64Size(1, message.getId());
-
-                            int dataSize = 0;
-                            for (ByteString rowEntry : rowEntries) {
-                                dataSize += CodedOutputStream.computeBytesSizeNoTag(rowEntry);
-                            }
-                            messageSize += dataSize;
-                            messageSize += 1 * rowEntries.size();
-                            // packet size
-                            int size = 0;
-                            size += com.google.protobuf.CodedOutputStream.computeEnumSize(3,
-                                PacketType.MESSAGES.getNumber());
-                            size += com.google.protobuf.CodedOutputStream.computeTagSize(5)
-                                    + com.google.protobuf.CodedOutputStream.computeRawVarint32Size(messageSize)
-                                    + messageSize;
-                            // recyle bytes
-                            // ByteBuffer byteBuffer = (ByteBuffer)
-                            // ctx.getAttachment();
-                            // if (byteBuffer != null && size <=
-                            // byteBuffer.capacity()) {
-                            // byteBuffer.clear();
-                            // } else {
-                            // byteBuffer =
-                            // ByteBuffer.allocate(size).order(ByteOrder.BIG_ENDIAN);
-                            // ctx.setAttachment(byteBuffer);
-                            // }
-                            // CodedOutputStream output =
-                            // CodedOutputStream.newInstance(byteBuffer);
-                            byte[] body = new byte[size];
-                            CodedOutputStream output = CodedOutputStream.newInstance(body);
-                            output.writeEnum(3, PacketType.MESSAGES.getNumber());
-
-                            output.writeTag(5, WireFormat.WIRETYPE_LENGTH_DELIMITED);
-                            output.writeRawVarint32(messageSize);
-                            // message
-                            output.writeInt64(1, message.getId());
-                            for (ByteString rowEntry : rowEntries) {
-                                output.writeBytes(2, rowEntry);
-                            }
-                            output.checkNoSpaceLeft();
-                            NettyUtils.write(ctx.getChannel(), body, new ChannelFutureAggregator(get.getDestination(),
-                                get,
-                                packet.getType(),
-                                body.length,
-                                System.nanoTime() - start,
-                                message.getId() == -1));
-
-                            // output.flush();
-                            // byteBuffer.flip();
-                            // NettyUtils.write(ctx.getChannel(), byteBuffer,
-                            // null);
-                        } else {
-                            Packet.Builder packetBuilder = CanalPacket.Packet.newBuilder();
-                            packetBuilder.setType(PacketType.MESSAGES).setVersion(NettyUtils.VERSION);
-
-                            Messages.Builder messageBuilder = CanalPacket.Messages.newBuilder();
-                            messageBuilder.setBatchId(message.getId());
-                            if (message.getId() != -1) {
-                                if (message.isRaw() && !CollectionUtils.isEmpty(message.getRawEntries())) {
-                                    messageBuilder.addAllMessages(message.getRawEntries());
-                                } else if (!CollectionUtils.isEmpty(message.getEntries())) {
-                                    for (Entry entry : message.getEntries()) {
-                                        messageBuilder.addMessages(entry.toByteString());
-                                    }
-                                }
-                            }
-                            byte[] body = packetBuilder.setBody(messageBuilder.build().toByteString())
-                                .build()
-                                .toByteArray();
-                            NettyUtils.write(ctx.getChannel(), body, new ChannelFutureAggregator(get.getDestination(),
-                                get,
-                                packet.getType(),
-                                body.length,
-                                System.nanoTime() - start,
-                                message.getId() == -1));// 输出数据
-                        }
+                        ByteBuf body = NettyUtils.messagesPacket(ctx.alloc(), message);
+                        int bodyLength = body.readableBytes();
+                        NettyUtils.write(ctx.channel(), body, new ChannelFutureAggregator(get.getDestination(),
+                            get,
+                            packet.getType(),
+                            bodyLength,
+                            System.nanoTime() - start,
+                            message.getId() == -1));// 输出数据
                     } else {
                         byte[] errorBytes = NettyUtils.errorPacket(401,
                             MessageFormatter.format("destination or clientId is null", get.toString()).getMessage());
-                        NettyUtils.write(ctx.getChannel(),
+                        NettyUtils.write(ctx.channel(),
                             errorBytes,
                             new ChannelFutureAggregator(get.getDestination(),
                                 get,
@@ -254,7 +183,7 @@ public class SessionHandler extends SimpleChannelHandler {
                         if (ack.getBatchId() == 0L) {
                             byte[] errorBytes = NettyUtils.errorPacket(402,
                                 MessageFormatter.format("batchId should assign value", ack.toString()).getMessage());
-                            NettyUtils.write(ctx.getChannel(),
+                            NettyUtils.write(ctx.channel(),
                                 errorBytes,
                                 new ChannelFutureAggregator(ack.getDestination(),
                                     ack,
@@ -267,6 +196,10 @@ public class SessionHandler extends SimpleChannelHandler {
                         } else {
                             clientIdentity = new ClientIdentity(ack.getDestination(), Short.valueOf(ack.getClientId()));
                             embeddedServer.ack(clientIdentity, ack.getBatchId());
+                            StreamSession session = streamSession;
+                            if (session != null && session.getClientIdentity().equals(clientIdentity)) {
+                                session.ack();// 归还window
+                            }
                             new ChannelFutureAggregator(ack.getDestination(),
                                 ack,
                                 packet.getType(),
@@ -276,7 +209,7 @@ public class SessionHandler extends SimpleChannelHandler {
                     } else {
                         byte[] errorBytes = NettyUtils.errorPacket(401,
                             MessageFormatter.format("destination or clientId is null", ack.toString()).getMessage());
-                        NettyUtils.write(ctx.getChannel(),
+                        NettyUtils.write(ctx.channel(),
                             errorBytes,
                             new ChannelFutureAggregator(ack.getDestination(),
                                 ack,
@@ -293,7 +226,11 @@ public class SessionHandler extends SimpleChannelHandler {
                         && StringUtils.isNotEmpty(rollback.getClientId())) {
                         clientIdentity = new ClientIdentity(rollback.getDestination(),
                             Short.valueOf(rollback.getClientId()));
-                        if (rollback.getBatchId() == 0L) {
+                        StreamSession session = streamSession;
+                        if (session != null && session.isRunning()
+                            && session.getClientIdentity().equals(clientIdentity)) {
+                            session.rollback();// 流式推送下由推送线程串行回滚所有批次，完成后回复ACK
+                        } else if (rollback.getBatchId() == 0L) {
                             embeddedServer.rollback(clientIdentity);// 回滚所有批次
                         } else {
                             embeddedServer.rollback(clientIdentity, rollback.getBatchId()); // 只回滚单个批次
@@ -307,7 +244,7 @@ public class SessionHandler extends SimpleChannelHandler {
                         byte[] errorBytes = NettyUtils.errorPacket(401,
                             MessageFormatter.format("destination or clientId is null", rollback.toString())
                                 .getMessage());
-                        NettyUtils.write(ctx.getChannel(),
+                        NettyUtils.write(ctx.channel(),
                             errorBytes,
                             new ChannelFutureAggregator(rollback.getDestination(),
                                 rollback,
@@ -317,36 +254,97 @@ public class SessionHandler extends SimpleChannelHandler {
                                 (short) 401));
                     }
                     break;
+                case STREAM:
+                    Stream stream = CanalPacket.Stream.parseFrom(packet.getBody());
+                    if (StringUtils.isNotEmpty(stream.getDestination())
+                        && StringUtils.isNotEmpty(stream.getClientId())) {
+                        clientIdentity = new ClientIdentity(stream.getDestination(),
+                            Short.valueOf(stream.getClientId()));
+                        MDC.put("destination", clientIdentity.getDestination());
+                        if (stream.getWindow() <= 0) {
+                            // 停止推送，由推送线程写出最后一批数据后回复ACK
+                            if (!stopStream(true)) {
+                                NettyUtils.write(ctx.channel(), NettyUtils.ackPacket(), null);
+                            }
+                        } else if (streamExecutor == null || (streamSession != null && streamSession.isRunning())) {
+                            byte[] errorBytes = NettyUtils.errorPacket(403,
+                                MessageFormatter.format("stream is not supported or already started", stream.toString())
+                                    .getMessage());
+                            NettyUtils.write(ctx.channel(),
+                                errorBytes,
+                                new ChannelFutureAggregator(stream.getDestination(),
+                                    stream,
+                                    packet.getType(),
+                                    errorBytes.length,
+                                    System.nanoTime() - start,
+                                    (short) 403));
+                        } else {
+                            // 先回复ACK再启动推送，保证ACK在第一批数据之前
+                            byte[] ackBytes = NettyUtils.ackPacket();
+                            NettyUtils.write(ctx.channel(),
+                                ackBytes,
+                                new ChannelFutureAggregator(stream.getDestination(),
+                                    stream,
+                                    packet.getType(),
+                                    ackBytes.length,
+                                    System.nanoTime() - start));
+                            streamSession = new StreamSession(embeddedServer,
+                                ctx.channel(),
+                                clientIdentity,
+                                stream,
+                                convertTimeUnit(stream.getUnit()));
+                            streamExecutor.execute(streamSession);
+                        }
+                    } else {
+                        byte[] errorBytes = NettyUtils.errorPacket(401,
+                            MessageFormatter.format("destination or clientId is null", stream.toString()).getMessage());
+                        NettyUtils.write(ctx.channel(),
+                            errorBytes,
+                            new ChannelFutureAggregator(stream.getDestination(),
+                                stream,
+                                packet.getType(),
+                                errorBytes.length,
+                                System.nanoTime() - start,
+                                (short) 401));
+                    }
+                    break;
                 default:
                     byte[] errorBytes = NettyUtils.errorPacket(400,
                         MessageFormatter.format("packet type={} is NOT supported!", packet.getType()).getMessage());
-                    NettyUtils.write(ctx.getChannel(), errorBytes, new ChannelFutureAggregator(ctx.getChannel()
-                        .getRemoteAddress()
+                    NettyUtils.write(ctx.channel(), errorBytes, new ChannelFutureAggregator(ctx.channel()
+                        .remoteAddress()
                         .toString(), null, packet.getType(), errorBytes.length, System.nanoTime() - start, (short) 400));
                     break;
             }
         } catch (Throwable exception) {
             byte[] errorBytes = NettyUtils.errorPacket(400,
                 MessageFormatter.format("something goes wrong with channel:{}, exception={}",
-                    ctx.getChannel(),
+                    ctx.channel(),
                     ExceptionUtils.getStackTrace(exception)).getMessage());
-            NettyUtils.write(ctx.getChannel(), errorBytes, new ChannelFutureAggregator(ctx.getChannel()
-                .getRemoteAddress()
+            NettyUtils.write(ctx.channel(), errorBytes, new ChannelFutureAggregator(ctx.channel()
+                .remoteAddress()
                 .toString(), null, packet.getType(), errorBytes.length, System.nanoTime() - start, (short) 400));
         } finally {
             MDC.remove("destination");
         }
     }
 
-    public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         logger.error("something goes wrong with channel:{}, exception={}",
-            ctx.getChannel(),
-            ExceptionUtils.getStackTrace(e.getCause()));
+            ctx.channel(),
+            ExceptionUtils.getStackTrace(cause));
+
+        ctx.channel().close();
+    }
 
-        ctx.getChannel().close();
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        // 写出缓冲超过高水位时暂停读取客户端请求，低于低水位后恢复，避免慢客户端堆积大量待发送数据
+        ctx.channel().config().setAutoRead(ctx.channel().isWritable());
+        super.channelWritabilityChanged(ctx);
     }
 
-    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        stopStream(false);
         // logger.info("remove binding subscription value object if any...");
         // ClientIdentity clientIdentity = (ClientIdentity) ctx.getAttachment();
         // // 如果唯一的订阅者都取消了订阅，直接关闭服务，针对内部版本模式下可以减少资源浪费
@@ -355,6 +353,19 @@ public class SessionHandler extends SimpleChannelHandler {
         // }
     }
 
+    /**
+     * 停止当前channel的流式推送，返回是否存在运行中的推送
+     */
+    private boolean stopStream(boolean reply) {
+        StreamSession session = streamSession;
+        streamSession = null;
+        if (session != null && session.isRunning()) {
+            session.stop(reply);
+            return true;
+        }
+        return false;
+    }
+
     private void stopCanalInstanceIfNecessary(ClientIdentity clientIdentity) {
         List<ClientIdentity> clientIdentitys = embeddedServer.listAllSubscribe(clientIdentity.getDestination());
         if (clientIdentitys != null && clientIdentitys.size() == 1 && clientIdentitys.contains(clientIdentity)) {
@@ -390,4 +401,8 @@ public class SessionHandler extends SimpleChannelHandler {
         this.embeddedServer = embeddedServer;
     }
 
+    public void setStreamExecutor(ExecutorService streamExecutor) {
+        this.streamExecutor = streamExecutor;
+    }
+
 }
@@ -0,0 +1,203 @@
+package com.alibaba.otter.canal.server.netty.handler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.slf4j.helpers.MessageFormatter;
+
+import com.alibaba.otter.canal.protocol.CanalPacket.PacketType;
+import com.alibaba.otter.canal.protocol.CanalPacket.Stream;
+import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.protocol.Message;
+import com.alibaba.otter.canal.server.embedded.CanalServerWithEmbedded;
+import com.alibaba.otter.canal.server.netty.NettyUtils;
+import com.alibaba.otter.canal.server.netty.listener.ChannelFutureAggregator;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+
+/**
+ * 流式推送的会话，每个订阅了{@linkplain PacketType#STREAM}的channel对应一个
+ *
+ * <pre>
+ * 1. 独立线程阻塞等待store中的数据，有数据后立即推送MESSAGES，不需要客户端每批发起一次GET
+ * 2. 基于window控制未ack的batch数，window用完后等待客户端ack归还
+ * 3. 无数据时按照timeout推送空包(batchId=-1)，不占用window
+ * 4. rollback统一回滚所有未ack的batch，由推送线程串行执行，完成后回复ACK，客户端丢弃ACK之前收到的数据
+ * 5. 客户端停止推送时，推送线程写出最后一批数据后再回复ACK，保证ACK之后不会再有推送的数据
+ * </pre>
+ *
+ * @since 1.1.5
+ */
+public class StreamSession implements Runnable {
+
+    private static final Logger           logger          = LoggerFactory.getLogger(StreamSession.class);
+    private static final long             DEFAULT_TIMEOUT = 1000L;                                   // 默认空包间隔，单位ms
+
+    private final CanalServerWithEmbedded embeddedServer;
+    private final Channel                 channel;
+    private final ClientIdentity          clientIdentity;
+    private final Stream                  stream;
+    private final long                    timeout;
+    private final TimeUnit                unit;
+
+    private final ReentrantLock           lock            = new ReentrantLock();
+    private final Condition               notFull         = lock.newCondition();
+    private int                           inflight        = 0;                                       // 已推送未ack的batch数
+    private boolean                       rollback        = false;                                   // 是否有待执行的rollback
+    private volatile boolean              running         = true;
+    private volatile boolean              replyOnStop     = false;                                   // 停止后是否回复ACK
+
+    public StreamSession(CanalServerWithEmbedded embeddedServer, Channel channel, ClientIdentity clientIdentity,
+                         Stream stream, TimeUnit unit){
+        this.embeddedServer = embeddedServer;
+        this.channel = channel;
+        this.clientIdentity = clientIdentity;
+        this.stream = stream;
+        if (stream.getTimeout() > 0) {
+            this.timeout = stream.getTimeout();
+            this.unit = unit;
+        } else {
+            this.timeout = DEFAULT_TIMEOUT;
+            this.unit = TimeUnit.MILLISECONDS;
+        }
+    }
+
+    public void run() {
+        MDC.put("destination", clientIdentity.getDestination());
+        try {
+            while (running && channel.isActive()) {
+                if (!awaitWindow()) {
+                    continue;
+                }
+
+                long start = System.nanoTime();
+                Message message = embeddedServer.getWithoutAck(clientIdentity, stream.getFetchSize(), timeout, unit);
+                if (message.getId() != -1) {
+                    lock.lock();
+                    try {
+                        // 先占用window再写出，避免客户端的ack先于计数到达
+                        inflight++;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+
+                ByteBuf body = NettyUtils.messagesPacket(channel.alloc(), message);
+                int bodyLength = body.readableBytes();
+                NettyUtils.write(channel, body, new ChannelFutureAggregator(clientIdentity.getDestination(),
+                    stream,
+                    PacketType.STREAM,
+                    bodyLength,
+                    System.nanoTime() - start,
+                    message.getId() == -1));
+            }
+        } catch (Throwable e) {
+            if (running) {
+                logger.error("stream to channel:{} failed", channel, e);
+                byte[] errorBytes = NettyUtils.errorPacket(400,
+                    MessageFormatter.format("something goes wrong with channel:{}, exception={}",
+                        channel,
+                        ExceptionUtils.getStackTrace(e)).getMessage());
+                NettyUtils.write(channel, errorBytes, null);
+            }
+        } finally {
+            running = false;
+            if (replyOnStop) {
+                NettyUtils.write(channel, NettyUtils.ackPacket(), null);
+            }
+            MDC.remove("destination");
+        }
+    }
+
+    /**
+     * 等待window可用，期间执行客户端提交的rollback，返回false代表需要重新检查运行状态
+     */
+    private boolean awaitWindow() throws InterruptedException {
+        boolean doRollback;
+        lock.lock();
+        try {
+            while (running && !rollback && inflight >= stream.getWindow()) {
+                notFull.await(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+
+            if (!running) {
+                return false;
+            }
+
+            doRollback = rollback;
+            if (doRollback) {
+                rollback = false;
+                inflight = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (doRollback) {
+            embeddedServer.rollback(clientIdentity);
+            NettyUtils.write(channel, NettyUtils.ackPacket(), null);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 客户端ack了一个batch，归还window
+     */
+    public void ack() {
+        lock.lock();
+        try {
+            if (inflight > 0) {
+                inflight--;
+            }
+            notFull.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 提交rollback请求，由推送线程在两次推送之间执行
+     */
+    public void rollback() {
+        lock.lock();
+        try {
+            rollback = true;
+            notFull.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void stop() {
+        stop(false);
+    }
+
+    /**
+     * 停止推送，reply为true时由推送线程在退出时回复ACK
+     */
+    public void stop(boolean reply) {
+        replyOnStop = reply;
+        running = false;
+        lock.lock();
+        try {
+            notFull.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public ClientIdentity getClientIdentity() {
+        return clientIdentity;
+    }
+}
@@ -3,8 +3,8 @@ package com.alibaba.otter.canal.server.netty.listener;
 import com.alibaba.otter.canal.protocol.CanalPacket;
 import com.google.common.base.Preconditions;
 import com.google.protobuf.GeneratedMessageV3;
-import org.jboss.netty.channel.ChannelFuture;
-import org.jboss.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 
 import static com.alibaba.otter.canal.server.netty.CanalServerWithNettyProfiler.profiler;
 import static com.alibaba.otter.canal.server.netty.NettyUtils.HEADER_LENGTH;
@@ -43,8 +43,8 @@ public class ChannelFutureAggregator implements ChannelFutureListener {
     @Override
     public void operationComplete(ChannelFuture future) {
         // profiling after I/O operation
-        if (future != null && future.getCause() != null) {
-            result.channelError = future.getCause();
+        if (future != null && future.cause() != null) {
+            result.channelError = future.cause();
         }
         profiler().profiling(result);
     }
@@ -9,9 +9,14 @@ import com.alibaba.otter.canal.protocol.CanalPacket.Packet;
 import com.alibaba.otter.canal.protocol.CanalPacket.PacketType;
 import com.alibaba.otter.canal.protocol.Message;
 import com.alibaba.otter.canal.protocol.exception.CanalClientException;
+import com.alibaba.otter.canal.server.netty.NettyUtils;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.WireFormat;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -55,6 +60,36 @@ public class ProtocolTest {
         }
     }
 
+    @Test
+    public void testRawMessagesPacket() throws IOException {
+        Header.Builder headerBuilder = Header.newBuilder();
+        headerBuilder.setLogfileName("mysql-bin.000001");
+        headerBuilder.setLogfileOffset(1024);
+        headerBuilder.setExecuteTime(1024);
+        Entry.Builder entryBuilder = Entry.newBuilder();
+        entryBuilder.setHeader(headerBuilder.build());
+        entryBuilder.setEntryType(EntryType.ROWDATA);
+        ByteString small = entryBuilder.build().toByteString();
+        // 超过一个pool page大小的entry
+        ByteString large = entryBuilder.setStoreValue(ByteString.copyFrom(new byte[128 * 1024])).build().toByteString();
+        Message message = new Message(3, true, Arrays.asList(small, large, small.concat(ByteString.EMPTY)));
+
+        ByteBuf buffer = NettyUtils.rawMessagesPacket(PooledByteBufAllocator.DEFAULT,
+            message.getId(),
+            message.getRawEntries());
+        // entry数据直接作为组件，不会合并拷贝: 包头 + 每条entry的前缀和数据
+        Assert.assertTrue(buffer instanceof CompositeByteBuf);
+        Assert.assertEquals(1 + 2 * 3, ((CompositeByteBuf) buffer).numComponents());
+        byte[] body = new byte[buffer.readableBytes()];
+        buffer.getBytes(buffer.readerIndex(), body);
+        Assert.assertTrue(buffer.release());
+        Assert.assertArrayEquals(buildData(message), body);
+
+        Messages messages = Messages.parseFrom(Packet.parseFrom(body).getBody());
+        Assert.assertEquals(3, messages.getBatchId());
+        Assert.assertEquals(message.getRawEntries(), messages.getMessagesList());
+    }
+
     @SuppressWarnings("deprecation")
     private byte[] buildData(Message message) throws IOException {
         List<ByteString> rowEntries = message.getRawEntries();
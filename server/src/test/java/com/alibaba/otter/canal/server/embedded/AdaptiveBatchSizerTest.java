@@ -0,0 +1,56 @@
+package com.alibaba.otter.canal.server.embedded;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.ClientIdentity;
+
+/**
+ * @since 1.1.5
+ */
+public class AdaptiveBatchSizerTest {
+
+    private ClientIdentity clientIdentity = new ClientIdentity("example", (short) 1001, "");
+
+    @Test
+    public void testShrinkAndGrow() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer();
+        sizer.setMinBatchSize(4);
+        Assert.assertEquals(64, sizer.batchSize(clientIdentity, 64));
+
+        // 流量小，等到linger超时，逐步减到minBatchSize
+        for (int i = 0; i < 10; i++) {
+            sizer.onGet(clientIdentity, 64, false, -1);
+        }
+        Assert.assertEquals(4, sizer.batchSize(clientIdentity, 64));
+
+        // 有积压，每次都能取满，逐步增加到client请求的batchSize
+        for (int i = 1; i <= 10; i++) {
+            sizer.onGet(clientIdentity, 64, true, i);
+            sizer.onAck(clientIdentity, i);
+        }
+        Assert.assertEquals(64, sizer.batchSize(clientIdentity, 64));
+        // client调小了batchSize
+        Assert.assertEquals(16, sizer.batchSize(clientIdentity, 16));
+    }
+
+    @Test
+    public void testAckLatency() throws InterruptedException {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer();
+        sizer.setMaxAckLatencyMs(10);
+        Assert.assertEquals(64, sizer.batchSize(clientIdentity, 64));
+
+        sizer.onGet(clientIdentity, 64, true, 1);
+        Thread.sleep(50);
+        sizer.onAck(clientIdentity, 1);
+        Assert.assertEquals(32, sizer.batchSize(clientIdentity, 64));
+
+        // ack延迟过高时，即使取满了也不再增加
+        sizer.onGet(clientIdentity, 64, true, 2);
+        Assert.assertEquals(32, sizer.batchSize(clientIdentity, 64));
+
+        sizer.onRollback(clientIdentity);
+        sizer.onAck(clientIdentity, 2);
+        Assert.assertEquals(32, sizer.batchSize(clientIdentity, 64));
+    }
+}
@@ -20,6 +20,7 @@ import com.alibaba.otter.canal.sink.CanalEventDownStreamHandler;
 import com.alibaba.otter.canal.sink.CanalEventSink;
 import com.alibaba.otter.canal.sink.exception.CanalSinkException;
 import com.alibaba.otter.canal.store.CanalEventStore;
+import com.alibaba.otter.canal.store.file.FileEventStoreWithSegment;
 import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer;
 import com.alibaba.otter.canal.store.model.Event;
 
@@ -56,6 +57,9 @@ public class EntryEventSink extends AbstractCanalEventSink<List<CanalEntry.Entry
 
         if (eventStore instanceof MemoryEventStoreWithBuffer) {
             this.raw = ((MemoryEventStoreWithBuffer) eventStore).isRaw();
+        } else if (eventStore instanceof FileEventStoreWithSegment) {
+            // 文件存储需要序列化entry，直接使用raw模式避免重复序列化
+            this.raw = true;
         }
 
         for (CanalEventDownStreamHandler handler : getHandlers()) {
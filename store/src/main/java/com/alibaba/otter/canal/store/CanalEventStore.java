@@ -61,6 +61,14 @@ public interface CanalEventStore<T> extends CanalLifeCycle, CanalStoreScavenge {
      */
     Events<T> tryGet(Position start, int batchSize) throws CanalStoreException;
 
+    /**
+     * 等待store中存在指定大小(按store的batchMode计算)的未获取数据，不会获取数据，超时返回false
+     */
+    default boolean await(Position start, int batchSize, long timeout, TimeUnit unit) throws InterruptedException,
+                                                                                     CanalStoreException {
+        return false;
+    }
+
     /**
      * 获取最后一条数据的position
      */
@@ -0,0 +1,77 @@
+package com.alibaba.otter.canal.store;
+
+import java.util.concurrent.TimeUnit;
+
+import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.store.model.Events;
+
+/**
+ * 支持多客户端订阅的数据存储接口
+ *
+ * <pre>
+ * 1. 所有客户端共享同一份buffer数据，每个{@linkplain ClientIdentity}拥有独立的get/ack游标
+ * 2. buffer空间的回收取决于所有客户端中最小的ack位置
+ * 3. 同一个客户端的get/ack/rollback需要由上层保证串行调用
+ * </pre>
+ *
+ * @since 1.1.5
+ */
+public interface CanalMultiClientEventStore<T> extends CanalEventStore<T> {
+
+    /**
+     * 客户端订阅，创建对应的游标，起始位置为当前store中的第一条数据，重复订阅不会改变游标
+     */
+    void subscribe(ClientIdentity clientIdentity) throws CanalStoreException;
+
+    /**
+     * 客户端订阅，创建对应的游标，起始位置为start(客户端meta中记录的ack位置)的下一条，start还未写入store时同subscribe(clientIdentity)，
+     * start已经被回收时抛出CanalStoreException
+     */
+    void subscribe(ClientIdentity clientIdentity, Position start) throws CanalStoreException;
+
+    /**
+     * 取消订阅，删除对应的游标，并尝试回收剩余客户端都已经ack的数据
+     */
+    void unsubscribe(ClientIdentity clientIdentity) throws CanalStoreException;
+
+    /**
+     * 获取指定客户端的指定大小的数据，阻塞等待其操作完成
+     */
+    Events<T> get(ClientIdentity clientIdentity, Position start, int batchSize) throws InterruptedException,
+                                                                                 CanalStoreException;
+
+    /**
+     * 获取指定客户端的指定大小的数据，阻塞等待其操作完成或者时间超时
+     */
+    Events<T> get(ClientIdentity clientIdentity, Position start, int batchSize, long timeout, TimeUnit unit)
+                                                                                                         throws InterruptedException,
+                                                                                                         CanalStoreException;
+
+    /**
+     * 根据指定位置，获取指定客户端的一个指定大小的数据
+     */
+    Events<T> tryGet(ClientIdentity clientIdentity, Position start, int batchSize) throws CanalStoreException;
+
+    /**
+     * 等待指定客户端存在指定大小的未获取数据，不会获取数据，超时返回false
+     */
+    boolean await(ClientIdentity clientIdentity, Position start, int batchSize, long timeout, TimeUnit unit)
+                                                                                                          throws InterruptedException,
+                                                                                                          CanalStoreException;
+
+    /**
+     * 获取指定客户端第一条未ack数据的position，如果没有数据返回为null
+     */
+    Position getFirstPosition(ClientIdentity clientIdentity) throws CanalStoreException;
+
+    /**
+     * 确认指定客户端seqId之前的数据
+     */
+    void ack(ClientIdentity clientIdentity, Position position, Long seqId) throws CanalStoreException;
+
+    /**
+     * 回滚指定客户端未提交ack的状态信息
+     */
+    void rollback(ClientIdentity clientIdentity) throws CanalStoreException;
+}
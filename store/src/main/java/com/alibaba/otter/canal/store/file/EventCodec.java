@@ -0,0 +1,250 @@
+package com.alibaba.otter.canal.store.file;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.position.LogIdentity;
+import com.alibaba.otter.canal.store.CanalStoreException;
+import com.alibaba.otter.canal.store.model.Event;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Event在segment文件中的序列化格式
+ *
+ * <pre>
+ * 固定头部(按固定偏移读取，recover时不需要完整反序列化)：
+ *   int  recordLength (不包含自身的4个字节)
+ *   long executeTime
+ *   long rawLength
+ *   int  rowsCount
+ *   int  entryType   (protobuf number, -1代表null)
+ *   int  eventType   (protobuf number, -1代表null)
+ * 变长部分：
+ *   string journalName / long position / long serverId / string gtid
+ *   logIdentity : byte flag / string host / bytes address / int port / long slaveId
+ *   bytes rawEntry
+ * </pre>
+ *
+ * @since 1.1.5
+ */
+class EventCodec {
+
+    static final int  OFFSET_ENTRY_TYPE = 4 + 8 + 8 + 4;
+    static final int  OFFSET_EVENT_TYPE = OFFSET_ENTRY_TYPE + 4;
+    static final int  OFFSET_RAW_LENGTH = 4 + 8;
+    static final int  HEADER_SIZE       = OFFSET_EVENT_TYPE + 4;
+
+    private static final int NULL_LENGTH = -1;
+
+    /**
+     * 计算序列化之后的大小
+     */
+    static int sizeOf(Event event, byte[] rawEntry) {
+        int size = HEADER_SIZE;
+        size += sizeOf(event.getJournalName()) + 8 + 8 + sizeOf(event.getGtid());
+        size += 1;
+        LogIdentity identity = event.getLogIdentity();
+        if (identity != null) {
+            InetSocketAddress address = identity.getSourceAddress();
+            size += 1;
+            if (address != null) {
+                size += sizeOf(address.getHostString());
+                size += 4 + (address.getAddress() == null ? 0 : address.getAddress().getAddress().length);
+                size += 4;
+            }
+            size += 1 + 8;
+        }
+        size += 4 + rawEntry.length;
+        return size;
+    }
+
+    /**
+     * 获取需要持久化的entry二进制数据，非raw模式下重新序列化一次
+     */
+    static byte[] rawBytes(Event event) {
+        if (event.getRawEntry() != null) {
+            return event.getRawEntry().toByteArray();
+        } else if (event.getEntry() != null) {
+            return event.getEntry().toByteArray();
+        } else {
+            return new byte[0];
+        }
+    }
+
+    /**
+     * 将event写入到buffer的当前position位置
+     */
+    static void encode(ByteBuffer buffer, Event event, byte[] rawEntry, int recordSize) {
+        buffer.putInt(recordSize - 4);
+        buffer.putLong(event.getExecuteTime());
+        buffer.putLong(event.getRawLength());
+        buffer.putInt(event.getRowsCount());
+        buffer.putInt(event.getEntryType() == null ? NULL_LENGTH : event.getEntryType().getNumber());
+        buffer.putInt(event.getEventType() == null ? NULL_LENGTH : event.getEventType().getNumber());
+        putString(buffer, event.getJournalName());
+        buffer.putLong(event.getPosition());
+        buffer.putLong(event.getServerId());
+        putString(buffer, event.getGtid());
+
+        LogIdentity identity = event.getLogIdentity();
+        if (identity == null) {
+            buffer.put((byte) 0);
+        } else {
+            buffer.put((byte) 1);
+            InetSocketAddress address = identity.getSourceAddress();
+            if (address == null) {
+                buffer.put((byte) 0);
+            } else {
+                buffer.put((byte) 1);
+                putString(buffer, address.getHostString());
+                if (address.getAddress() == null) {
+                    buffer.putInt(NULL_LENGTH);
+                } else {
+                    byte[] ip = address.getAddress().getAddress();
+                    buffer.putInt(ip.length);
+                    buffer.put(ip);
+                }
+                buffer.putInt(address.getPort());
+            }
+
+            if (identity.getSlaveId() == null) {
+                buffer.put((byte) 0);
+                buffer.putLong(0L);
+            } else {
+                buffer.put((byte) 1);
+                buffer.putLong(identity.getSlaveId());
+            }
+        }
+
+        buffer.putInt(rawEntry.length);
+        buffer.put(rawEntry);
+    }
+
+    /**
+     * 从buffer的指定offset位置反序列化一个event
+     */
+    static Event decode(ByteBuffer segment, int offset, boolean raw) {
+        return decode(segment, offset, raw, true);
+    }
+
+    /**
+     * 从buffer的指定offset位置反序列化一个event，withEntry=false时只解析位点信息，不复制entry数据
+     */
+    static Event decode(ByteBuffer segment, int offset, boolean raw, boolean withEntry) {
+        ByteBuffer buffer = segment.duplicate();
+        buffer.position(offset);
+        buffer.getInt(); // recordLength
+        Event event = new Event();
+        event.setExecuteTime(buffer.getLong());
+        event.setRawLength(buffer.getLong());
+        event.setRowsCount(buffer.getInt());
+        int entryType = buffer.getInt();
+        event.setEntryType(entryType == NULL_LENGTH ? null : EntryType.valueOf(entryType));
+        int eventType = buffer.getInt();
+        event.setEventType(eventType == NULL_LENGTH ? null : EventType.valueOf(eventType));
+        event.setJournalName(getString(buffer));
+        event.setPosition(buffer.getLong());
+        event.setServerId(buffer.getLong());
+        event.setGtid(getString(buffer));
+
+        if (buffer.get() == 1) {
+            LogIdentity identity = new LogIdentity();
+            if (buffer.get() == 1) {
+                String host = getString(buffer);
+                int length = buffer.getInt();
+                byte[] ip = null;
+                if (length != NULL_LENGTH) {
+                    ip = new byte[length];
+                    buffer.get(ip);
+                }
+                int port = buffer.getInt();
+                identity.setSourceAddress(buildAddress(host, ip, port));
+            }
+
+            boolean hasSlaveId = buffer.get() == 1;
+            long slaveId = buffer.getLong();
+            if (hasSlaveId) {
+                identity.setSlaveId(slaveId);
+            }
+            event.setLogIdentity(identity);
+        }
+
+        if (!withEntry) {
+            return event;
+        }
+
+        int length = buffer.getInt();
+        buffer.limit(buffer.position() + length);
+        ByteString rawEntry = ByteString.copyFrom(buffer);
+        if (raw) {
+            event.setRawEntry(rawEntry);
+        } else {
+            try {
+                event.setEntry(CanalEntry.Entry.parseFrom(rawEntry));
+            } catch (InvalidProtocolBufferException e) {
+                throw new CanalStoreException("parse stored entry failed", e);
+            }
+        }
+        return event;
+    }
+
+    static long decodeRawLength(ByteBuffer segment, int offset) {
+        return segment.getLong(offset + OFFSET_RAW_LENGTH);
+    }
+
+    static EntryType decodeEntryType(ByteBuffer segment, int offset) {
+        int entryType = segment.getInt(offset + OFFSET_ENTRY_TYPE);
+        return entryType == NULL_LENGTH ? null : EntryType.valueOf(entryType);
+    }
+
+    static EventType decodeEventType(ByteBuffer segment, int offset) {
+        int eventType = segment.getInt(offset + OFFSET_EVENT_TYPE);
+        return eventType == NULL_LENGTH ? null : EventType.valueOf(eventType);
+    }
+
+    // ================= helper method ==================
+
+    private static InetSocketAddress buildAddress(String host, byte[] ip, int port) {
+        if (ip != null) {
+            try {
+                // 直接使用ip构造，避免反序列化时出现dns解析
+                return new InetSocketAddress(InetAddress.getByAddress(host, ip), port);
+            } catch (UnknownHostException e) {
+                // ignore, fallback to unresolved
+            }
+        }
+        return InetSocketAddress.createUnresolved(host, port);
+    }
+
+    private static int sizeOf(String value) {
+        return value == null ? 4 : 4 + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(NULL_LENGTH);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
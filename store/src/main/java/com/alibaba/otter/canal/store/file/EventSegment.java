@@ -0,0 +1,186 @@
+package com.alibaba.otter.canal.store.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+import com.alibaba.otter.canal.common.utils.MappedBufferUtils;
+import com.alibaba.otter.canal.store.CanalStoreException;
+import com.alibaba.otter.canal.store.model.Event;
+
+/**
+ * 一个append-only的segment，由数据文件和offset索引文件组成，均使用mmap映射
+ *
+ * <pre>
+ * 1. 数据文件: {baseSequence}.data , 连续存放序列化之后的event
+ * 2. 索引文件: {baseSequence}.index , 第i个int记录第i条event在数据文件中的结束位置，0代表未写入
+ * </pre>
+ *
+ * 非线程安全，由{@linkplain FileEventStoreWithSegment}统一控制并发
+ *
+ * @since 1.1.5
+ */
+class EventSegment {
+
+    static final String       DATA_SUFFIX  = ".data";
+    static final String       INDEX_SUFFIX = ".index";
+
+    private final long        baseSequence;
+    private final File        dataFile;
+    private final File        indexFile;
+    private final int         dataCapacity;
+    private int               indexCapacity;
+    private MappedByteBuffer  data;
+    private MappedByteBuffer  index;
+    private int               count;                     // 已写入的记录数
+    private int               writePosition;             // 数据文件的写入位置
+
+    EventSegment(File dir, long baseSequence, int dataCapacity, int indexCapacity){
+        this.baseSequence = baseSequence;
+        this.dataFile = new File(dir, fileName(baseSequence) + DATA_SUFFIX);
+        this.indexFile = new File(dir, fileName(baseSequence) + INDEX_SUFFIX);
+        this.dataCapacity = dataCapacity;
+        this.indexCapacity = indexCapacity;
+    }
+
+    /**
+     * 打开segment，如果文件已经存在则根据索引文件恢复写入位置
+     */
+    void open() {
+        try {
+            // 已存在的文件以实际大小为准，避免配置调整之后截断历史数据
+            int dataSize = (int) Math.max(dataFile.length(), dataCapacity);
+            indexCapacity = (int) Math.max(indexFile.length() / 4, indexCapacity);
+            data = map(dataFile, dataSize);
+            index = map(indexFile, indexCapacity * 4);
+
+            count = 0;
+            writePosition = 0;
+            while (count < indexCapacity) {
+                int end = index.getInt(count * 4);
+                if (end <= 0) {
+                    break;
+                }
+                writePosition = end;
+                count++;
+            }
+        } catch (IOException e) {
+            throw new CanalStoreException("open segment " + dataFile.getPath() + " failed", e);
+        }
+    }
+
+    /**
+     * 尝试写入一条记录，空间不足时返回false
+     */
+    boolean append(Event event, byte[] rawEntry, int recordSize) {
+        if (count >= indexCapacity || writePosition + recordSize > data.capacity()) {
+            return false;
+        }
+
+        data.position(writePosition);
+        EventCodec.encode(data, event, rawEntry, recordSize);
+        writePosition += recordSize;
+        // 先写数据，再写索引，索引可见代表数据完整
+        index.putInt(count * 4, writePosition);
+        count++;
+        return true;
+    }
+
+    /**
+     * 判断是否还能容纳指定数量/大小的记录
+     */
+    boolean hasRoom(int records, long size) {
+        return count + records <= indexCapacity && writePosition + size <= data.capacity();
+    }
+
+    Event read(long sequence, boolean raw) {
+        return EventCodec.decode(data, offsetOf(sequence), raw);
+    }
+
+    /**
+     * 只读取位点相关的信息，用于ack匹配/recover，不复制entry数据
+     */
+    Event readHeader(long sequence) {
+        return EventCodec.decode(data, offsetOf(sequence), true, false);
+    }
+
+    long rawLength(long sequence) {
+        return EventCodec.decodeRawLength(data, offsetOf(sequence));
+    }
+
+    /**
+     * 截断sequence之后的所有记录(不包含sequence)
+     */
+    void truncateAfter(long sequence) {
+        int keep = (int) (sequence - baseSequence + 1);
+        for (int i = keep; i < count; i++) {
+            index.putInt(i * 4, 0);
+        }
+        count = Math.max(keep, 0);
+        writePosition = count == 0 ? 0 : index.getInt((count - 1) * 4);
+    }
+
+    void flush() {
+        if (data != null) {
+            data.force();
+            index.force();
+        }
+    }
+
+    void close() {
+        flush();
+        // 主动unmap，避免删除之后的文件一直被映射占用磁盘空间
+        MappedBufferUtils.unmap(data);
+        MappedBufferUtils.unmap(index);
+        data = null;
+        index = null;
+    }
+
+    void delete() {
+        close();
+        dataFile.delete();
+        indexFile.delete();
+    }
+
+    private int offsetOf(long sequence) {
+        int i = (int) (sequence - baseSequence);
+        if (i < 0 || i >= count) {
+            throw new CanalStoreException("sequence " + sequence + " out of segment " + dataFile.getName());
+        }
+        return i == 0 ? 0 : index.getInt((i - 1) * 4);
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    static String fileName(long baseSequence) {
+        return String.format(Locale.ROOT, "%020d", baseSequence);
+    }
+
+    // ================ setter / getter ==================
+
+    long getBaseSequence() {
+        return baseSequence;
+    }
+
+    /**
+     * 最后一条记录的sequence，没有记录时为baseSequence - 1
+     */
+    long getLastSequence() {
+        return baseSequence + count - 1;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+}
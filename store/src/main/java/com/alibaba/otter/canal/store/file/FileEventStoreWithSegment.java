@@ -0,0 +1,944 @@
+package com.alibaba.otter.canal.store.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.otter.canal.common.utils.MappedBufferUtils;
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.position.LogPosition;
+import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.protocol.position.PositionRange;
+import com.alibaba.otter.canal.store.AbstractCanalStoreScavenge;
+import com.alibaba.otter.canal.store.CanalEventStore;
+import com.alibaba.otter.canal.store.CanalStoreException;
+import com.alibaba.otter.canal.store.CanalStoreScavenge;
+import com.alibaba.otter.canal.store.helper.CanalEventUtils;
+import com.alibaba.otter.canal.store.model.BatchMode;
+import com.alibaba.otter.canal.store.model.Event;
+import com.alibaba.otter.canal.store.model.Events;
+
+/**
+ * 基于磁盘segment文件构建的持久化store，put/get/ack语义和{@linkplain com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer}保持一致
+ *
+ * <pre>
+ * 1. 数据按sequence顺序append到segment文件(mmap)，每个segment写满后滚动到下一个，ack之后整段回收
+ * 2. ack的sequence记录在store.ack文件中，重启之后get从最后一次ack的位置开始重新投递
+ * 3. 重启时会截断最后一个事务边界之后的数据，配合{@linkplain #getLatestPosition()}让parser从事务边界继续解析
+ * 4. 容量由segmentSize * maxSegmentCount控制，写满之后put阻塞，客户端长时间不消费时parser不会因为内存ringbuffer过小而被阻塞
+ * </pre>
+ *
+ * @since 1.1.5
+ */
+public class FileEventStoreWithSegment extends AbstractCanalStoreScavenge implements CanalEventStore<Event>, CanalStoreScavenge {
+
+    private static final Logger logger           = LoggerFactory.getLogger(FileEventStoreWithSegment.class);
+    private static final long   INIT_SEQUENCE    = -1;
+    private static final String ACK_FILE         = "store.ack";
+
+    private String              dataDir;
+    private int                 segmentSize      = 64 * 1024 * 1024;                                        // 单个segment数据文件的大小，默认64MB
+    private int                 segmentIndexSize = 64 * 1024;                                               // 单个segment最多存储的记录数
+    private int                 maxSegmentCount  = 64;                                                      // 最多保留的segment个数
+    private int                 bufferMemUnit    = 1024;                                                    // memsize的单位，默认为1kb大小
+    private File                storeDir;
+    private TreeMap<Long, EventSegment> segments;
+    private MappedByteBuffer    ackBuffer;
+
+    // 记录下put/get/ack操作的三个下标
+    private AtomicLong          putSequence      = new AtomicLong(INIT_SEQUENCE);                           // 代表当前put操作最后一次写操作发生的位置
+    private AtomicLong          getSequence      = new AtomicLong(INIT_SEQUENCE);                           // 代表当前get操作读取的最后一条的位置
+    private AtomicLong          ackSequence      = new AtomicLong(INIT_SEQUENCE);                           // 代表当前ack操作的最后一条的位置
+
+    // 记录下put/get/ack操作的三个memsize大小
+    private AtomicLong          putMemSize       = new AtomicLong(0);
+    private AtomicLong          getMemSize       = new AtomicLong(0);
+    private AtomicLong          ackMemSize       = new AtomicLong(0);
+
+    // 记录下put/get/ack操作的三个execTime
+    private AtomicLong          putExecTime      = new AtomicLong(System.currentTimeMillis());
+    private AtomicLong          getExecTime      = new AtomicLong(System.currentTimeMillis());
+    private AtomicLong          ackExecTime      = new AtomicLong(System.currentTimeMillis());
+
+    // 记录下put/get/ack操作的三个table rows
+    private AtomicLong          putTableRows     = new AtomicLong(0);
+    private AtomicLong          getTableRows     = new AtomicLong(0);
+    private AtomicLong          ackTableRows     = new AtomicLong(0);
+
+    // 阻塞put/get操作控制信号
+    private ReentrantLock       lock             = new ReentrantLock();
+    private Condition           notFull          = lock.newCondition();
+    private Condition           notEmpty         = lock.newCondition();
+
+    private BatchMode           batchMode        = BatchMode.ITEMSIZE;
+    private boolean             ddlIsolation     = false;
+    private boolean             raw              = true;                                                    // get返回的event是否为raw模式
+
+    public FileEventStoreWithSegment(){
+
+    }
+
+    public FileEventStoreWithSegment(String dataDir){
+        this.dataDir = dataDir;
+    }
+
+    public void start() throws CanalStoreException {
+        super.start();
+        if (StringUtils.isEmpty(dataDir)) {
+            throw new IllegalArgumentException("dataDir must be set");
+        }
+        if (segmentSize <= 0 || segmentIndexSize <= 0 || maxSegmentCount < 2) {
+            throw new IllegalArgumentException("segmentSize/segmentIndexSize must be positive and maxSegmentCount must >= 2");
+        }
+
+        storeDir = StringUtils.isEmpty(destination) ? new File(dataDir) : new File(dataDir, destination);
+        if (!storeDir.exists() && !storeDir.mkdirs()) {
+            throw new CanalStoreException("create store dir " + storeDir.getPath() + " failed");
+        }
+
+        lock.lock();
+        try {
+            loadAckSequence();
+            loadSegments();
+            recover();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void stop() throws CanalStoreException {
+        super.stop();
+
+        lock.lock();
+        try {
+            if (segments != null) {
+                for (EventSegment segment : segments.values()) {
+                    segment.close();
+                }
+                segments = null;
+            }
+            if (ackBuffer != null) {
+                ackBuffer.force();
+                MappedBufferUtils.unmap(ackBuffer);
+                ackBuffer = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(List<Event> data) throws InterruptedException, CanalStoreException {
+        if (data == null || data.isEmpty()) {
+            return;
+        }
+
+        Records records = new Records(data);
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            try {
+                while (!checkFreeSpace(records)) { // 检查是否有空位
+                    notFull.await(); // wait until not full
+                }
+            } catch (InterruptedException ie) {
+                notFull.signal(); // propagate to non-interrupted thread
+                throw ie;
+            }
+            doPut(records);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean put(List<Event> data, long timeout, TimeUnit unit) throws InterruptedException, CanalStoreException {
+        if (data == null || data.isEmpty()) {
+            return true;
+        }
+
+        Records records = new Records(data);
+        long nanos = unit.toNanos(timeout);
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            for (;;) {
+                if (checkFreeSpace(records)) {
+                    doPut(records);
+                    return true;
+                }
+                if (nanos <= 0) {
+                    return false;
+                }
+
+                try {
+                    nanos = notFull.awaitNanos(nanos);
+                } catch (InterruptedException ie) {
+                    notFull.signal(); // propagate to non-interrupted thread
+                    throw ie;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean tryPut(List<Event> data) throws CanalStoreException {
+        if (data == null || data.isEmpty()) {
+            return true;
+        }
+
+        Records records = new Records(data);
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            if (!checkFreeSpace(records)) {
+                return false;
+            } else {
+                doPut(records);
+                return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(Event data) throws InterruptedException, CanalStoreException {
+        put(Arrays.asList(data));
+    }
+
+    public boolean put(Event data, long timeout, TimeUnit unit) throws InterruptedException, CanalStoreException {
+        return put(Arrays.asList(data), timeout, unit);
+    }
+
+    public boolean tryPut(Event data) throws CanalStoreException {
+        return tryPut(Arrays.asList(data));
+    }
+
+    /**
+     * 执行具体的put操作，序列化已经在锁外完成，这里只做内存拷贝
+     */
+    private void doPut(Records records) {
+        long current = putSequence.get();
+        List<Event> data = records.events;
+        for (int i = 0; i < data.size(); i++) {
+            EventSegment segment = segments.lastEntry().getValue();
+            if (!segment.append(data.get(i), records.raws[i], records.sizes[i])) {
+                segment = rollSegment(current + i + 1, records.sizes[i]);
+                if (!segment.append(data.get(i), records.raws[i], records.sizes[i])) {
+                    throw new CanalStoreException("append event to new segment failed, size:" + records.sizes[i]);
+                }
+            }
+        }
+
+        putSequence.set(current + data.size());
+
+        // 记录一下gets memsize信息，方便快速检索
+        if (batchMode.isMemSize()) {
+            long size = 0;
+            for (Event event : data) {
+                size += event.getRawLength();
+            }
+
+            putMemSize.getAndAdd(size);
+        }
+        profiling(data, OP.PUT);
+        // tell other threads that store is not empty
+        notEmpty.signal();
+    }
+
+    public Events<Event> get(Position start, int batchSize) throws InterruptedException, CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            try {
+                while (!checkUnGetSlotAt((LogPosition) start, batchSize))
+                    notEmpty.await();
+            } catch (InterruptedException ie) {
+                notEmpty.signal(); // propagate to non-interrupted thread
+                throw ie;
+            }
+
+            return doGet(start, batchSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Events<Event> get(Position start, int batchSize, long timeout, TimeUnit unit) throws InterruptedException,
+                                                                                        CanalStoreException {
+        long nanos = unit.toNanos(timeout);
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            for (;;) {
+                if (checkUnGetSlotAt((LogPosition) start, batchSize)) {
+                    return doGet(start, batchSize);
+                }
+
+                if (nanos <= 0) {
+                    // 如果时间到了，有多少取多少
+                    return doGet(start, batchSize);
+                }
+
+                try {
+                    nanos = notEmpty.awaitNanos(nanos);
+                } catch (InterruptedException ie) {
+                    notEmpty.signal(); // propagate to non-interrupted thread
+                    throw ie;
+                }
+
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean await(Position start, int batchSize, long timeout, TimeUnit unit) throws InterruptedException,
+                                                                                    CanalStoreException {
+        long nanos = unit.toNanos(timeout);
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            for (;;) {
+                if (checkUnGetSlotAt((LogPosition) start, batchSize)) {
+                    notEmpty.signal(); // 没有获取数据，继续唤醒其他等待的线程
+                    return true;
+                }
+
+                if (nanos <= 0) {
+                    return false;
+                }
+
+                try {
+                    nanos = notEmpty.awaitNanos(nanos);
+                } catch (InterruptedException ie) {
+                    notEmpty.signal(); // propagate to non-interrupted thread
+                    throw ie;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Events<Event> tryGet(Position start, int batchSize) throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return doGet(start, batchSize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Events<Event> doGet(Position start, int batchSize) throws CanalStoreException {
+        LogPosition startPosition = (LogPosition) start;
+
+        long current = getSequence.get();
+        long maxAbleSequence = putSequence.get();
+        long next = current;
+        long end = current;
+        // 如果startPosition为null，说明是第一次，默认+1处理
+        if (startPosition == null || !startPosition.getPostion().isIncluded()) { // 第一次订阅之后，需要包含一下start位置，防止丢失第一条记录
+            next = next + 1;
+        }
+
+        if (current >= maxAbleSequence) {
+            return new Events<>();
+        }
+
+        Events<Event> result = new Events<>();
+        List<Event> entrys = result.getEvents();
+        long memsize = 0;
+        if (batchMode.isItemSize()) {
+            end = (next + batchSize - 1) < maxAbleSequence ? (next + batchSize - 1) : maxAbleSequence;
+            // 提取数据并返回
+            for (; next <= end; next++) {
+                Event event = read(next);
+                if (ddlIsolation && isDdl(event.getEventType())) {
+                    // 如果是ddl隔离，直接返回
+                    if (entrys.size() == 0) {
+                        entrys.add(event);// 如果没有DML事件，加入当前的DDL事件
+                        end = next; // 更新end为当前
+                    } else {
+                        // 如果之前已经有DML事件，直接返回了，因为不包含当前next这记录，需要回退一个位置
+                        end = next - 1; // next-1一定大于current，不需要判断
+                    }
+                    break;
+                } else {
+                    entrys.add(event);
+                }
+            }
+        } else {
+            long maxMemSize = batchSize * bufferMemUnit;
+            for (; memsize <= maxMemSize && next <= maxAbleSequence; next++) {
+                // 永远保证可以取出第一条的记录，避免死锁
+                Event event = read(next);
+                if (ddlIsolation && isDdl(event.getEventType())) {
+                    // 如果是ddl隔离，直接返回
+                    if (entrys.size() == 0) {
+                        entrys.add(event);// 如果没有DML事件，加入当前的DDL事件
+                        end = next; // 更新end为当前
+                    } else {
+                        // 如果之前已经有DML事件，直接返回了，因为不包含当前next这记录，需要回退一个位置
+                        end = next - 1; // next-1一定大于current，不需要判断
+                    }
+                    break;
+                } else {
+                    entrys.add(event);
+                    memsize += event.getRawLength();
+                    end = next;// 记录end位点
+                }
+            }
+
+        }
+
+        PositionRange<LogPosition> range = new PositionRange<>();
+        result.setPositionRange(range);
+
+        range.setStart(CanalEventUtils.createPosition(entrys.get(0)));
+        range.setEnd(CanalEventUtils.createPosition(entrys.get(result.getEvents().size() - 1)));
+        range.setEndSeq(end);
+        // 记录一下是否存在可以被ack的点
+
+        for (int i = entrys.size() - 1; i >= 0; i--) {
+            Event event = entrys.get(i);
+            if (isAckable(event)) {
+                // 将事务头/尾设置可被为ack的点
+                range.setAck(CanalEventUtils.createPosition(event));
+                break;
+            }
+        }
+
+        if (getSequence.compareAndSet(current, end)) {
+            getMemSize.addAndGet(memsize);
+            profiling(result.getEvents(), OP.GET);
+            return result;
+        } else {
+            return new Events<>();
+        }
+    }
+
+    public LogPosition getFirstPosition() throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            long firstSeqeuence = ackSequence.get();
+            if (firstSeqeuence == INIT_SEQUENCE && firstSeqeuence < putSequence.get()) {
+                // 没有ack过数据
+                Event event = readHeader(firstSeqeuence + 1); // 最后一次ack为-1，需要移动到下一条,included = false
+                return event == null ? null : CanalEventUtils.createPosition(event, false);
+            } else if (firstSeqeuence > INIT_SEQUENCE && firstSeqeuence <= putSequence.get()) {
+                // ack未追上put操作 or 已经追上，都以最后一次ack的位置数据为准
+                Event event = readHeader(firstSeqeuence);
+                return event == null ? null : CanalEventUtils.createPosition(event, false);
+            } else {
+                // 没有任何数据
+                return null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public LogPosition getLatestPosition() throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            long latestSequence = putSequence.get();
+            if (latestSequence > INIT_SEQUENCE) {
+                Event event = readHeader(latestSequence); // 最后一次写入的数据
+                if (event == null) {
+                    return null;
+                }
+                // ack已经追上了put操作时，included = false
+                return CanalEventUtils.createPosition(event, latestSequence != ackSequence.get());
+            } else {
+                // 没有任何数据
+                return null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void ack(Position position) throws CanalStoreException {
+        cleanUntil(position, -1L);
+    }
+
+    public void ack(Position position, Long seqId) throws CanalStoreException {
+        cleanUntil(position, seqId);
+    }
+
+    @Override
+    public void cleanUntil(Position position) throws CanalStoreException {
+        cleanUntil(position, -1L);
+    }
+
+    public void cleanUntil(Position position, Long seqId) throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            long sequence = ackSequence.get();
+            long maxSequence = getSequence.get();
+
+            boolean hasMatch = false;
+            long memsize = 0;
+            long localExecTime = 0L;
+            int deltaRows = 0;
+            if (seqId > 0) {
+                maxSequence = seqId;
+            }
+            for (long next = sequence + 1; next <= maxSequence; next++) {
+                Event event = readHeader(next);
+                if (localExecTime == 0 && event.getExecuteTime() > 0) {
+                    localExecTime = event.getExecuteTime();
+                }
+                deltaRows += event.getRowsCount();
+                memsize += event.getRawLength();
+                if ((seqId < 0 || next == seqId) && CanalEventUtils.checkPosition(event, (LogPosition) position)) {
+                    // 找到对应的position，更新ack seq
+                    hasMatch = true;
+                    if (batchMode.isMemSize()) {
+                        ackMemSize.addAndGet(memsize);
+                    }
+
+                    if (ackSequence.compareAndSet(sequence, next)) {// 避免并发ack
+                        ackBuffer.putLong(0, next);
+                        reclaimSegments();
+                        notFull.signal();
+                        ackTableRows.addAndGet(deltaRows);
+                        if (localExecTime > 0) {
+                            ackExecTime.lazySet(localExecTime);
+                        }
+                        return;
+                    }
+                }
+            }
+            if (!hasMatch) {// 找不到对应需要ack的position
+                throw new CanalStoreException("no match ack position" + position.toString());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void rollback() throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            getSequence.set(ackSequence.get());
+            getMemSize.set(ackMemSize.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 清空磁盘上的所有数据，下一次put从当前的putSequence继续
+     */
+    public void cleanAll() throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            if (segments != null) {
+                for (EventSegment segment : segments.values()) {
+                    segment.delete();
+                }
+                segments.clear();
+                rollSegment(putSequence.get() + 1, 0);
+            }
+
+            getSequence.set(putSequence.get());
+            ackSequence.set(putSequence.get());
+            if (ackBuffer != null) {
+                ackBuffer.putLong(0, ackSequence.get());
+            }
+
+            putMemSize.set(0);
+            getMemSize.set(0);
+            ackMemSize.set(0);
+            notFull.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // =================== helper method =================
+
+    private void loadAckSequence() {
+        File ackFile = new File(storeDir, ACK_FILE);
+        boolean exist = ackFile.exists() && ackFile.length() >= 8;
+        try (RandomAccessFile raf = new RandomAccessFile(ackFile, "rw"); FileChannel channel = raf.getChannel()) {
+            ackBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 8);
+        } catch (IOException e) {
+            throw new CanalStoreException("open ack file " + ackFile.getPath() + " failed", e);
+        }
+
+        if (!exist) {
+            ackBuffer.putLong(0, INIT_SEQUENCE);
+        }
+        ackSequence.set(ackBuffer.getLong(0));
+    }
+
+    private void loadSegments() {
+        segments = new TreeMap<>();
+        File[] files = storeDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.endsWith(EventSegment.DATA_SUFFIX)) {
+                    continue;
+                }
+
+                long baseSequence = Long.parseLong(StringUtils.removeEnd(name, EventSegment.DATA_SUFFIX));
+                EventSegment segment = new EventSegment(storeDir, baseSequence, segmentSize, segmentIndexSize);
+                segment.open();
+                segments.put(baseSequence, segment);
+            }
+        }
+
+        if (segments.isEmpty()) {
+            putSequence.set(ackSequence.get());
+            rollSegment(ackSequence.get() + 1, 0);
+        } else {
+            putSequence.set(segments.lastEntry().getValue().getLastSequence());
+        }
+    }
+
+    /**
+     * 重启之后的恢复: 截断最后一个事务边界之后的数据，保证parser从{@linkplain #getLatestPosition()}继续解析时不会重复
+     */
+    private void recover() {
+        long ack = Math.min(ackSequence.get(), putSequence.get());
+        ack = Math.max(ack, segments.firstKey() - 1);
+        long put = putSequence.get();
+        long last = put;
+        while (last > ack && !isAckable(readHeader(last))) {
+            last--;
+        }
+
+        if (last < put) {
+            logger.warn("truncate store {} from sequence {} to {} after the last transaction boundary",
+                storeDir.getPath(),
+                put,
+                last);
+            while (segments.size() > 1 && segments.lastKey() > last) {
+                segments.pollLastEntry().getValue().delete();
+            }
+            segments.lastEntry().getValue().truncateAfter(last);
+        }
+
+        putSequence.set(last);
+        ackSequence.set(ack);
+        getSequence.set(ack);
+        ackBuffer.putLong(0, ack);
+
+        putMemSize.set(0);
+        getMemSize.set(0);
+        ackMemSize.set(0);
+        if (batchMode.isMemSize()) {
+            long memsize = 0;
+            for (long next = ack + 1; next <= last; next++) {
+                memsize += segmentOf(next).rawLength(next);
+            }
+            putMemSize.set(memsize);
+        }
+        logger.info("load store {} with {} segments, ack sequence:{}, put sequence:{}",
+            storeDir.getPath(),
+            segments.size(),
+            ack,
+            last);
+    }
+
+    private EventSegment rollSegment(long baseSequence, int recordSize) {
+        EventSegment segment = new EventSegment(storeDir,
+            baseSequence,
+            Math.max(segmentSize, recordSize),
+            segmentIndexSize);
+        segment.open();
+        // 当前segment已经写满，先刷盘
+        Map.Entry<Long, EventSegment> last = segments.lastEntry();
+        if (last != null) {
+            last.getValue().flush();
+        }
+        segments.put(baseSequence, segment);
+        return segment;
+    }
+
+    /**
+     * 回收已经被ack的segment，保留ackSequence所在的segment(getFirstPosition需要读取)以及当前写入的segment
+     */
+    private void reclaimSegments() {
+        long ack = ackSequence.get();
+        while (segments.size() > 1) {
+            EventSegment first = segments.firstEntry().getValue();
+            if (first.getLastSequence() >= ack) {
+                break;
+            }
+
+            segments.pollFirstEntry();
+            first.delete();
+        }
+    }
+
+    /**
+     * 查询是否有足够的磁盘空间
+     */
+    private boolean checkFreeSpace(Records records) {
+        if (segments.size() <= 1) {
+            // 只有当前写入的segment，永远允许写入，避免超大事务出现死锁
+            return true;
+        }
+
+        if (segments.lastEntry().getValue().hasRoom(records.events.size(), records.totalSize)) {
+            return true;
+        }
+
+        int needSegments = (int) ((records.totalSize + segmentSize - 1) / segmentSize);
+        return segments.size() + needSegments <= maxSegmentCount;
+    }
+
+    /**
+     * 检查是否存在需要get的数据,并且数量>=batchSize
+     */
+    private boolean checkUnGetSlotAt(LogPosition startPosition, int batchSize) {
+        if (batchMode.isItemSize()) {
+            long current = getSequence.get();
+            long maxAbleSequence = putSequence.get();
+            long next = current;
+            if (startPosition == null || !startPosition.getPostion().isIncluded()) { // 第一次订阅之后，需要包含一下start位置，防止丢失第一条记录
+                next = next + 1;// 少一条数据
+            }
+
+            if (current < maxAbleSequence && next + batchSize - 1 <= maxAbleSequence) {
+                return true;
+            } else {
+                return false;
+            }
+        } else {
+            // 处理内存大小判断
+            long currentSize = getMemSize.get();
+            long maxAbleSize = putMemSize.get();
+
+            if (maxAbleSize - currentSize >= batchSize * bufferMemUnit) {
+                return true;
+            } else {
+                return false;
+            }
+        }
+    }
+
+    private Event read(long sequence) {
+        return segmentOf(sequence).read(sequence, raw);
+    }
+
+    private Event readHeader(long sequence) {
+        EventSegment segment = segmentOf(sequence);
+        if (segment == null || sequence > segment.getLastSequence()) {
+            return null;
+        }
+        return segment.readHeader(sequence);
+    }
+
+    private EventSegment segmentOf(long sequence) {
+        Map.Entry<Long, EventSegment> entry = segments.floorEntry(sequence);
+        return entry == null ? null : entry.getValue();
+    }
+
+    private boolean isAckable(Event event) {
+        // GTID模式,ack的位点必须是事务结尾,因为下一次订阅的时候mysql会发送这个gtid之后的next,如果在事务头就记录了会丢这最后一个事务
+        return (CanalEntry.EntryType.TRANSACTIONBEGIN == event.getEntryType() && StringUtils.isEmpty(event.getGtid()))
+               || CanalEntry.EntryType.TRANSACTIONEND == event.getEntryType() || isDdl(event.getEventType());
+    }
+
+    private boolean isDdl(EventType type) {
+        return type == EventType.ALTER || type == EventType.CREATE || type == EventType.ERASE
+               || type == EventType.RENAME || type == EventType.TRUNCATE || type == EventType.CINDEX
+               || type == EventType.DINDEX;
+    }
+
+    private void profiling(List<Event> events, OP op) {
+        long localExecTime = 0L;
+        int deltaRows = 0;
+        if (events != null && !events.isEmpty()) {
+            for (Event e : events) {
+                if (localExecTime == 0 && e.getExecuteTime() > 0) {
+                    localExecTime = e.getExecuteTime();
+                }
+                deltaRows += e.getRowsCount();
+            }
+        }
+        switch (op) {
+            case PUT:
+                putTableRows.addAndGet(deltaRows);
+                if (localExecTime > 0) {
+                    putExecTime.lazySet(localExecTime);
+                }
+                break;
+            case GET:
+                getTableRows.addAndGet(deltaRows);
+                if (localExecTime > 0) {
+                    getExecTime.lazySet(localExecTime);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private enum OP {
+        PUT, GET
+    }
+
+    /**
+     * 在锁外完成序列化前的准备工作，减少锁的持有时间
+     */
+    private static class Records {
+
+        private final List<Event> events;
+        private final byte[][]    raws;
+        private final int[]       sizes;
+        private long              totalSize;
+
+        private Records(List<Event> events){
+            this.events = events;
+            this.raws = new byte[events.size()][];
+            this.sizes = new int[events.size()];
+            for (int i = 0; i < events.size(); i++) {
+                raws[i] = EventCodec.rawBytes(events.get(i));
+                sizes[i] = EventCodec.sizeOf(events.get(i), raws[i]);
+                totalSize += sizes[i];
+            }
+        }
+    }
+
+    // ================ setter / getter ==================
+
+    public List<String> listSegmentFiles() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            List<String> result = new ArrayList<>();
+            if (segments != null) {
+                for (Long baseSequence : segments.keySet()) {
+                    result.add(EventSegment.fileName(baseSequence) + EventSegment.DATA_SUFFIX);
+                }
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getDataDir() {
+        return dataDir;
+    }
+
+    public void setDataDir(String dataDir) {
+        this.dataDir = dataDir;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public void setSegmentIndexSize(int segmentIndexSize) {
+        this.segmentIndexSize = segmentIndexSize;
+    }
+
+    public int getMaxSegmentCount() {
+        return maxSegmentCount;
+    }
+
+    public void setMaxSegmentCount(int maxSegmentCount) {
+        this.maxSegmentCount = maxSegmentCount;
+    }
+
+    public void setBufferMemUnit(int bufferMemUnit) {
+        this.bufferMemUnit = bufferMemUnit;
+    }
+
+    public void setBatchMode(BatchMode batchMode) {
+        this.batchMode = batchMode;
+    }
+
+    public void setDdlIsolation(boolean ddlIsolation) {
+        this.ddlIsolation = ddlIsolation;
+    }
+
+    public boolean isRaw() {
+        return raw;
+    }
+
+    public void setRaw(boolean raw) {
+        this.raw = raw;
+    }
+
+    public AtomicLong getPutSequence() {
+        return putSequence;
+    }
+
+    public AtomicLong getAckSequence() {
+        return ackSequence;
+    }
+
+    public AtomicLong getPutMemSize() {
+        return putMemSize;
+    }
+
+    public AtomicLong getAckMemSize() {
+        return ackMemSize;
+    }
+
+    public BatchMode getBatchMode() {
+        return batchMode;
+    }
+
+    public AtomicLong getPutExecTime() {
+        return putExecTime;
+    }
+
+    public AtomicLong getGetExecTime() {
+        return getExecTime;
+    }
+
+    public AtomicLong getAckExecTime() {
+        return ackExecTime;
+    }
+
+    public AtomicLong getPutTableRows() {
+        return putTableRows;
+    }
+
+    public AtomicLong getGetTableRows() {
+        return getTableRows;
+    }
+
+    public AtomicLong getAckTableRows() {
+        return ackTableRows;
+    }
+
+}
@@ -2,26 +2,34 @@ package com.alibaba.otter.canal.store.memory;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.alibaba.otter.canal.protocol.CanalEntry;
 import com.alibaba.otter.canal.protocol.CanalEntry.EventType;
+import com.alibaba.otter.canal.protocol.ClientIdentity;
 import com.alibaba.otter.canal.protocol.position.LogPosition;
 import com.alibaba.otter.canal.protocol.position.Position;
 import com.alibaba.otter.canal.protocol.position.PositionRange;
 import com.alibaba.otter.canal.store.AbstractCanalStoreScavenge;
-import com.alibaba.otter.canal.store.CanalEventStore;
+import com.alibaba.otter.canal.store.CanalMultiClientEventStore;
 import com.alibaba.otter.canal.store.CanalStoreException;
 import com.alibaba.otter.canal.store.CanalStoreScavenge;
 import com.alibaba.otter.canal.store.helper.CanalEventUtils;
 import com.alibaba.otter.canal.store.model.BatchMode;
 import com.alibaba.otter.canal.store.model.Event;
 import com.alibaba.otter.canal.store.model.Events;
+import com.alibaba.otter.canal.store.model.WaitStrategy;
 
 /**
  * 基于内存buffer构建内存memory store
@@ -30,14 +38,27 @@ import com.alibaba.otter.canal.store.model.Events;
  * 变更记录：
  * 1. 新增BatchMode类型，支持按内存大小获取批次数据，内存大小更加可控.
  *   a. put操作，会首先根据bufferSize进行控制，然后再进行bufferSize * bufferMemUnit进行控制. 因存储的内容是以Event，如果纯依赖于memsize进行控制，会导致RingBuffer出现动态伸缩
+ * 2. 新增lockFree模式，只作用于put：put只依赖put/get/ack三个sequence的内存屏障，生产者不再和消费者竞争同一把锁(参考disruptor的单生产者模式)
+ *   a. 只支持单个生产者(sink线程)，group模式下存在多个parser并发put，不能开启
+ *   b. get/ack/rollback/getLatestPosition等消费端操作仍然加锁串行，ack释放的空位只有在清理完成后才会对生产者可见；get等待数据时不持有锁
+ *   c. 等待数据/空位时按waitStrategy进行等待，BLOCKING模式下只有存在等待者时才会加锁signal
+ * 3. 新增多客户端订阅(multiClient，默认关闭)，所有客户端共享同一份buffer，每个ClientIdentity拥有独立的get/ack游标
+ *   a. 存在客户端订阅时，ackSequence代表所有客户端中最小的ack位置，只有超过该位置的空间才会被回收
+ *   b. 不带ClientIdentity的get/ack/rollback操作的是默认游标，不能和客户端游标混用；关闭multiClient时所有客户端都使用默认游标
+ *   c. 新客户端的游标从其meta中记录的ack位置开始，该位置已经被回收时直接抛出异常，不会跳过数据
+ *   d. 客户端断开后游标不会主动删除，超过clientIdleTimeout未访问且未追上put的游标会被删除，避免阻塞回收
  * </pre>
  * 
  * @author jianghang 2012-6-20 上午09:46:31
  * @version 1.0.0
  */
-public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge implements CanalEventStore<Event>, CanalStoreScavenge {
+public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge implements CanalMultiClientEventStore<Event>, CanalStoreScavenge {
 
+    private static final Logger logger      = LoggerFactory.getLogger(MemoryEventStoreWithBuffer.class);
     private static final long INIT_SEQUENCE = -1;
+    private static final int  SPIN_TRIES    = 200;
+    private static final long PARK_NANOS    = 100 * 1000;                                // sleeping模式下每次park 100us
+    private static final long MAX_BLOCKING_NANOS = 10 * 1000 * 1000;                     // blocking模式下单次最多等待10ms，再重新检查一次
     private int               bufferSize    = 16 * 1024;
     private int               bufferMemUnit = 1024;                                      // memsize的单位，默认为1kb大小
     private int               indexMask;
@@ -53,6 +74,10 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
     private AtomicLong        getMemSize    = new AtomicLong(0);
     private AtomicLong        ackMemSize    = new AtomicLong(0);
 
+    // 默认游标直接复用上面的get/ack下标，多客户端订阅时每个客户端一个独立游标
+    private Cursor            defaultCursor = new Cursor(getSequence, ackSequence, getMemSize, ackMemSize);
+    private Map<ClientIdentity, Cursor> cursors = new ConcurrentHashMap<>();
+
     // 记录下put/get/ack操作的三个execTime
     private AtomicLong        putExecTime   = new AtomicLong(System.currentTimeMillis());
     private AtomicLong        getExecTime   = new AtomicLong(System.currentTimeMillis());
@@ -67,6 +92,12 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
     private ReentrantLock     lock          = new ReentrantLock();
     private Condition         notFull       = lock.newCondition();
     private Condition         notEmpty      = lock.newCondition();
+    private AtomicInteger     waiters       = new AtomicInteger(0);                      // lockFree模式下处于blocking等待的线程数
+
+    private boolean           lockFree      = false;                                     // 是否开启无锁模式，只作用于put，只支持单生产者
+    private WaitStrategy      waitStrategy  = WaitStrategy.BLOCKING;                     // lockFree模式下的等待策略
+    private boolean           multiClient   = false;                                     // 是否开启多客户端独立游标
+    private long              clientIdleTimeout = 10 * 60 * 1000L;                       // 客户端游标的空闲超时时间，单位ms
 
     private BatchMode         batchMode     = BatchMode.ITEMSIZE;                        // 默认为内存大小模式
     private boolean           ddlIsolation  = false;
@@ -101,6 +132,13 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
             return;
         }
 
+        if (lockFree) {
+            final long sequence = putSequence.get() + data.size();
+            waitFor(() -> checkFreeSlotAt(sequence), notFull, Long.MAX_VALUE);
+            doPut(data);
+            return;
+        }
+
         final ReentrantLock lock = this.lock;
         lock.lockInterruptibly();
         try {
@@ -127,6 +165,15 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
         }
 
         long nanos = unit.toNanos(timeout);
+        if (lockFree) {
+            final long sequence = putSequence.get() + data.size();
+            if (!waitFor(() -> checkFreeSlotAt(sequence), notFull, nanos)) {
+                return false;
+            }
+            doPut(data);
+            return true;
+        }
+
         final ReentrantLock lock = this.lock;
         lock.lockInterruptibly();
         try {
@@ -156,6 +203,14 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
             return true;
         }
 
+        if (lockFree) {
+            if (!checkFreeSlotAt(putSequence.get() + data.size())) {
+                return false;
+            }
+            doPut(data);
+            return true;
+        }
+
         final ReentrantLock lock = this.lock;
         lock.lock();
         try {
@@ -207,41 +262,83 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
         }
         profiling(data, OP.PUT);
         // tell other threads that store is not empty
-        notEmpty.signal();
+        signal(notEmpty);
     }
 
     public Events<Event> get(Position start, int batchSize) throws InterruptedException, CanalStoreException {
+        return get(defaultCursor, start, batchSize);
+    }
+
+    public Events<Event> get(Position start, int batchSize, long timeout, TimeUnit unit) throws InterruptedException,
+                                                                                        CanalStoreException {
+        return get(defaultCursor, start, batchSize, timeout, unit);
+    }
+
+    public Events<Event> tryGet(Position start, int batchSize) throws CanalStoreException {
+        return tryGet(defaultCursor, start, batchSize);
+    }
+
+    public Events<Event> get(ClientIdentity clientIdentity, Position start, int batchSize) throws InterruptedException,
+                                                                                            CanalStoreException {
+        return get(getCursor(clientIdentity, start), start, batchSize);
+    }
+
+    public Events<Event> get(ClientIdentity clientIdentity, Position start, int batchSize, long timeout, TimeUnit unit)
+                                                                                                                    throws InterruptedException,
+                                                                                                                    CanalStoreException {
+        return get(getCursor(clientIdentity, start), start, batchSize, timeout, unit);
+    }
+
+    public Events<Event> tryGet(ClientIdentity clientIdentity, Position start, int batchSize) throws CanalStoreException {
+        return tryGet(getCursor(clientIdentity, start), start, batchSize);
+    }
+
+    private Events<Event> get(Cursor cursor, Position start, int batchSize) throws InterruptedException,
+                                                                             CanalStoreException {
+        if (lockFree) {
+            // 等待数据时不持有锁，读取时和ack/rollback串行
+            waitFor(() -> checkUnGetSlotAt(cursor, (LogPosition) start, batchSize), notEmpty, Long.MAX_VALUE);
+            return tryGet(cursor, start, batchSize);
+        }
+
         final ReentrantLock lock = this.lock;
         lock.lockInterruptibly();
         try {
             try {
-                while (!checkUnGetSlotAt((LogPosition) start, batchSize))
+                while (!checkUnGetSlotAt(cursor, (LogPosition) start, batchSize))
                     notEmpty.await();
             } catch (InterruptedException ie) {
                 notEmpty.signal(); // propagate to non-interrupted thread
                 throw ie;
             }
 
-            return doGet(start, batchSize);
+            return doGet(cursor, start, batchSize);
         } finally {
             lock.unlock();
         }
     }
 
-    public Events<Event> get(Position start, int batchSize, long timeout, TimeUnit unit) throws InterruptedException,
-                                                                                        CanalStoreException {
+    private Events<Event> get(Cursor cursor, Position start, int batchSize, long timeout, TimeUnit unit)
+                                                                                                      throws InterruptedException,
+                                                                                                      CanalStoreException {
         long nanos = unit.toNanos(timeout);
+        if (lockFree) {
+            // 如果时间到了，有多少取多少
+            waitFor(() -> checkUnGetSlotAt(cursor, (LogPosition) start, batchSize), notEmpty, nanos);
+            return tryGet(cursor, start, batchSize);
+        }
+
         final ReentrantLock lock = this.lock;
         lock.lockInterruptibly();
         try {
             for (;;) {
-                if (checkUnGetSlotAt((LogPosition) start, batchSize)) {
-                    return doGet(start, batchSize);
+                if (checkUnGetSlotAt(cursor, (LogPosition) start, batchSize)) {
+                    return doGet(cursor, start, batchSize);
                 }
 
                 if (nanos <= 0) {
                     // 如果时间到了，有多少取多少
-                    return doGet(start, batchSize);
+                    return doGet(cursor, start, batchSize);
                 }
 
                 try {
@@ -257,20 +354,63 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
         }
     }
 
-    public Events<Event> tryGet(Position start, int batchSize) throws CanalStoreException {
+    public boolean await(Position start, int batchSize, long timeout, TimeUnit unit) throws InterruptedException,
+                                                                                    CanalStoreException {
+        return await(defaultCursor, start, batchSize, timeout, unit);
+    }
+
+    public boolean await(ClientIdentity clientIdentity, Position start, int batchSize, long timeout, TimeUnit unit)
+                                                                                                                 throws InterruptedException,
+                                                                                                                 CanalStoreException {
+        return await(getCursor(clientIdentity, start), start, batchSize, timeout, unit);
+    }
+
+    private boolean await(Cursor cursor, Position start, int batchSize, long timeout, TimeUnit unit)
+                                                                                                  throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        if (lockFree) {
+            return waitFor(() -> checkUnGetSlotAt(cursor, (LogPosition) start, batchSize), notEmpty, nanos);
+        }
+
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            for (;;) {
+                if (checkUnGetSlotAt(cursor, (LogPosition) start, batchSize)) {
+                    notEmpty.signal(); // 没有获取数据，继续唤醒其他等待的线程
+                    return true;
+                }
+
+                if (nanos <= 0) {
+                    return false;
+                }
+
+                try {
+                    nanos = notEmpty.awaitNanos(nanos);
+                } catch (InterruptedException ie) {
+                    notEmpty.signal(); // propagate to non-interrupted thread
+                    throw ie;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Events<Event> tryGet(Cursor cursor, Position start, int batchSize) throws CanalStoreException {
         final ReentrantLock lock = this.lock;
         lock.lock();
         try {
-            return doGet(start, batchSize);
+            return doGet(cursor, start, batchSize);
         } finally {
             lock.unlock();
         }
     }
 
-    private Events<Event> doGet(Position start, int batchSize) throws CanalStoreException {
+    private Events<Event> doGet(Cursor cursor, Position start, int batchSize) throws CanalStoreException {
         LogPosition startPosition = (LogPosition) start;
 
-        long current = getSequence.get();
+        long current = cursor.getSequence.get();
         long maxAbleSequence = putSequence.get();
         long next = current;
         long end = current;
@@ -348,9 +488,9 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
             }
         }
 
-        if (getSequence.compareAndSet(current, end)) {
-            getMemSize.addAndGet(memsize);
-            notFull.signal();
+        if (cursor.getSequence.compareAndSet(current, end)) {
+            cursor.getMemSize.addAndGet(memsize);
+            signal(notFull);
             profiling(result.getEvents(), OP.GET);
             return result;
         } else {
@@ -359,57 +499,73 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
     }
 
     public LogPosition getFirstPosition() throws CanalStoreException {
+        return getFirstPosition(defaultCursor);
+    }
+
+    public LogPosition getFirstPosition(ClientIdentity clientIdentity) throws CanalStoreException {
+        return getFirstPosition(getCursor(clientIdentity, null));
+    }
+
+    private LogPosition getFirstPosition(Cursor cursor) throws CanalStoreException {
         final ReentrantLock lock = this.lock;
         lock.lock();
         try {
-            long firstSeqeuence = ackSequence.get();
-            if (firstSeqeuence == INIT_SEQUENCE && firstSeqeuence < putSequence.get()) {
-                // 没有ack过数据
-                Event event = entries[getIndex(firstSeqeuence + 1)]; // 最后一次ack为-1，需要移动到下一条,included
-                                                                     // = false
-                return CanalEventUtils.createPosition(event, false);
-            } else if (firstSeqeuence > INIT_SEQUENCE && firstSeqeuence < putSequence.get()) {
-                // ack未追上put操作
-                Event event = entries[getIndex(firstSeqeuence)]; // 最后一次ack的位置数据,需要移动到下一条,included
-                // = false
-                return CanalEventUtils.createPosition(event, false);
-            } else if (firstSeqeuence > INIT_SEQUENCE && firstSeqeuence == putSequence.get()) {
-                // 已经追上，store中没有数据
-                Event event = entries[getIndex(firstSeqeuence)]; // 最后一次ack的位置数据，和last为同一条，included
-                                                                 // = false
-                return CanalEventUtils.createPosition(event, false);
-            } else {
-                // 没有任何数据
-                return null;
-            }
+            return doGetFirstPosition(cursor);
         } finally {
             lock.unlock();
         }
     }
 
+    private LogPosition doGetFirstPosition(Cursor cursor) {
+        long firstSeqeuence = cursor.ackSequence.get();
+        if (firstSeqeuence == INIT_SEQUENCE && firstSeqeuence < putSequence.get()) {
+            // 没有ack过数据
+            Event event = entries[getIndex(firstSeqeuence + 1)]; // 最后一次ack为-1，需要移动到下一条,included
+                                                                 // = false
+            return CanalEventUtils.createPosition(event, false);
+        } else if (firstSeqeuence > INIT_SEQUENCE && firstSeqeuence < putSequence.get()) {
+            // ack未追上put操作
+            Event event = entries[getIndex(firstSeqeuence)]; // 最后一次ack的位置数据,需要移动到下一条,included
+            // = false
+            return CanalEventUtils.createPosition(event, false);
+        } else if (firstSeqeuence > INIT_SEQUENCE && firstSeqeuence == putSequence.get()) {
+            // 已经追上，store中没有数据
+            Event event = entries[getIndex(firstSeqeuence)]; // 最后一次ack的位置数据，和last为同一条，included
+                                                             // = false
+            return CanalEventUtils.createPosition(event, false);
+        } else {
+            // 没有任何数据
+            return null;
+        }
+    }
+
     public LogPosition getLatestPosition() throws CanalStoreException {
         final ReentrantLock lock = this.lock;
         lock.lock();
         try {
-            long latestSequence = putSequence.get();
-            if (latestSequence > INIT_SEQUENCE && latestSequence != ackSequence.get()) {
-                Event event = entries[(int) putSequence.get() & indexMask]; // 最后一次写入的数据，最后一条未消费的数据
-                return CanalEventUtils.createPosition(event, true);
-            } else if (latestSequence > INIT_SEQUENCE && latestSequence == ackSequence.get()) {
-                // ack已经追上了put操作
-                Event event = entries[(int) putSequence.get() & indexMask]; // 最后一次写入的数据，included
-                                                                            // =
-                                                                            // false
-                return CanalEventUtils.createPosition(event, false);
-            } else {
-                // 没有任何数据
-                return null;
-            }
+            return doGetLatestPosition();
         } finally {
             lock.unlock();
         }
     }
 
+    private LogPosition doGetLatestPosition() {
+        long latestSequence = putSequence.get();
+        if (latestSequence > INIT_SEQUENCE && latestSequence != ackSequence.get()) {
+            Event event = entries[(int) latestSequence & indexMask]; // 最后一次写入的数据，最后一条未消费的数据
+            return CanalEventUtils.createPosition(event, true);
+        } else if (latestSequence > INIT_SEQUENCE && latestSequence == ackSequence.get()) {
+            // ack已经追上了put操作
+            Event event = entries[(int) putSequence.get() & indexMask]; // 最后一次写入的数据，included
+                                                                        // =
+                                                                        // false
+            return CanalEventUtils.createPosition(event, false);
+        } else {
+            // 没有任何数据
+            return null;
+        }
+    }
+
     public void ack(Position position) throws CanalStoreException {
         cleanUntil(position, -1L);
     }
@@ -424,69 +580,125 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
     }
 
     public void cleanUntil(Position position, Long seqId) throws CanalStoreException {
+        cleanUntil(defaultCursor, position, seqId);
+    }
+
+    public void ack(ClientIdentity clientIdentity, Position position, Long seqId) throws CanalStoreException {
+        cleanUntil(getCursor(clientIdentity, null), position, seqId);
+    }
+
+    private void cleanUntil(Cursor cursor, Position position, Long seqId) throws CanalStoreException {
         final ReentrantLock lock = this.lock;
         lock.lock();
         try {
-            long sequence = ackSequence.get();
-            long maxSequence = getSequence.get();
+            doCleanUntil(cursor, position, seqId);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            boolean hasMatch = false;
-            long memsize = 0;
-            // ack没有list，但有已存在的foreach，还是节省一下list的开销
-            long localExecTime = 0L;
-            int deltaRows = 0;
-            if (seqId > 0) {
-                maxSequence = seqId;
+    private void doCleanUntil(Cursor cursor, Position position, Long seqId) throws CanalStoreException {
+        long sequence = cursor.ackSequence.get();
+        long maxSequence = cursor.getSequence.get();
+
+        boolean hasMatch = false;
+        long memsize = 0;
+        // ack没有list，但有已存在的foreach，还是节省一下list的开销
+        long localExecTime = 0L;
+        int deltaRows = 0;
+        if (seqId > 0) {
+            maxSequence = seqId;
+        }
+        for (long next = sequence + 1; next <= maxSequence; next++) {
+            Event event = entries[getIndex(next)];
+            if (localExecTime == 0 && event.getExecuteTime() > 0) {
+                localExecTime = event.getExecuteTime();
             }
-            for (long next = sequence + 1; next <= maxSequence; next++) {
-                Event event = entries[getIndex(next)];
-                if (localExecTime == 0 && event.getExecuteTime() > 0) {
-                    localExecTime = event.getExecuteTime();
-                }
-                deltaRows += event.getRowsCount();
-                memsize += calculateSize(event);
-                if ((seqId < 0 || next == seqId) && CanalEventUtils.checkPosition(event, (LogPosition) position)) {
-                    // 找到对应的position，更新ack seq
-                    hasMatch = true;
-
-                    if (batchMode.isMemSize()) {
-                        ackMemSize.addAndGet(memsize);
-                        // 尝试清空buffer中的内存，将ack之前的内存全部释放掉
-                        for (long index = sequence + 1; index < next; index++) {
-                            entries[getIndex(index)] = null;// 设置为null
+            deltaRows += event.getRowsCount();
+            memsize += calculateSize(event);
+            if ((seqId < 0 || next == seqId) && CanalEventUtils.checkPosition(event, (LogPosition) position)) {
+                // 找到对应的position，更新ack seq
+                hasMatch = true;
+
+                if (cursor != defaultCursor) {
+                    // 客户端游标只推进自己的ack位置，buffer的回收取决于所有客户端中最小的ack
+                    if (cursor.ackSequence.compareAndSet(sequence, next)) {
+                        if (batchMode.isMemSize()) {
+                            cursor.ackMemSize.addAndGet(memsize);
                         }
+                        reclaim();
+                        return;
+                    }
+                    continue;
+                }
 
-                        // 考虑getFirstPosition/getLastPosition会获取最后一次ack的position信息
-                        // ack清理的时候只处理entry=null，释放内存
-                        Event lastEvent = entries[getIndex(next)];
-                        lastEvent.setEntry(null);
-                        lastEvent.setRawEntry(null);
+                if (batchMode.isMemSize()) {
+                    ackMemSize.addAndGet(memsize);
+                    // 尝试清空buffer中的内存，将ack之前的内存全部释放掉
+                    for (long index = sequence + 1; index < next; index++) {
+                        entries[getIndex(index)] = null;// 设置为null
                     }
 
-                    if (ackSequence.compareAndSet(sequence, next)) {// 避免并发ack
-                        notFull.signal();
-                        ackTableRows.addAndGet(deltaRows);
-                        if (localExecTime > 0) {
-                            ackExecTime.lazySet(localExecTime);
-                        }
-                        return;
+                    // 考虑getFirstPosition/getLastPosition会获取最后一次ack的position信息
+                    // ack清理的时候只处理entry=null，释放内存
+                    Event lastEvent = entries[getIndex(next)];
+                    lastEvent.setEntry(null);
+                    lastEvent.setRawEntry(null);
+                }
+
+                if (ackSequence.compareAndSet(sequence, next)) {// 避免并发ack
+                    signal(notFull);
+                    ackTableRows.addAndGet(deltaRows);
+                    if (localExecTime > 0) {
+                        ackExecTime.lazySet(localExecTime);
                     }
+                    return;
                 }
             }
-            if (!hasMatch) {// 找不到对应需要ack的position
-                throw new CanalStoreException("no match ack position" + position.toString());
-            }
+        }
+        if (!hasMatch) {// 找不到对应需要ack的position
+            throw new CanalStoreException("no match ack position" + position.toString());
+        }
+    }
+
+    public void rollback() throws CanalStoreException {
+        rollback(defaultCursor);
+    }
+
+    public void rollback(ClientIdentity clientIdentity) throws CanalStoreException {
+        rollback(getCursor(clientIdentity, null));
+    }
+
+    private void rollback(Cursor cursor) throws CanalStoreException {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            cursor.getSequence.set(cursor.ackSequence.get());
+            cursor.getMemSize.set(cursor.ackMemSize.get());
         } finally {
             lock.unlock();
         }
     }
 
-    public void rollback() throws CanalStoreException {
+    public void subscribe(ClientIdentity clientIdentity) throws CanalStoreException {
+        getCursor(clientIdentity, null);
+    }
+
+    public void subscribe(ClientIdentity clientIdentity, Position start) throws CanalStoreException {
+        getCursor(clientIdentity, start);
+    }
+
+    public void unsubscribe(ClientIdentity clientIdentity) throws CanalStoreException {
+        if (!multiClient) {
+            return;
+        }
+
         final ReentrantLock lock = this.lock;
         lock.lock();
         try {
-            getSequence.set(ackSequence.get());
-            getMemSize.set(ackMemSize.get());
+            if (cursors.remove(clientIdentity) != null) {
+                reclaim();
+            }
         } finally {
             lock.unlock();
         }
@@ -503,6 +715,7 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
             putMemSize.set(0);
             getMemSize.set(0);
             ackMemSize.set(0);
+            cursors.clear();
             entries = null;
             // for (int i = 0; i < entries.length; i++) {
             // entries[i] = null;
@@ -514,6 +727,237 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
 
     // =================== helper method =================
 
+    /**
+     * 获取客户端对应的游标，不存在时从客户端meta中记录的ack位置开始创建
+     */
+    private Cursor getCursor(ClientIdentity clientIdentity, Position start) {
+        if (!multiClient) {
+            return defaultCursor;
+        }
+
+        long now = System.currentTimeMillis();
+        expireIdleCursors(now);
+        Cursor cursor = cursors.get(clientIdentity);
+        if (cursor == null) {
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                cursor = cursors.computeIfAbsent(clientIdentity,
+                    identity -> newCursor(identity, (LogPosition) start));
+            } finally {
+                lock.unlock();
+            }
+        }
+        cursor.lastAccess = now;
+        return cursor;
+    }
+
+    /**
+     * 在buffer中查找start对应的位置作为新游标的ack位置，没有meta记录或者还未写入buffer时从当前最小的ack位置开始，
+     * start已经被回收时抛出异常，避免跳过该客户端未ack的数据
+     */
+    private Cursor newCursor(ClientIdentity clientIdentity, LogPosition start) {
+        long sequence = ackSequence.get();
+        long memsize = ackMemSize.get();
+        if (start != null && start.getPostion() != null) {
+            long maxSequence = putSequence.get();
+            long size = 0;
+            for (long next = sequence + 1; next <= maxSequence; next++) {
+                Event event = entries[getIndex(next)];
+                size += calculateSize(event);
+                if (CanalEventUtils.checkPosition(event, start)) {
+                    return new Cursor(next, memsize + size);
+                }
+            }
+
+            if (sequence > INIT_SEQUENCE && maxSequence - sequence < bufferSize) {
+                Event acked = entries[getIndex(sequence)]; // 最后一次回收的位置数据
+                if (before(start, acked)) {
+                    throw new CanalStoreException(String.format("%s position %s has been reclaimed, first position is %s",
+                        clientIdentity,
+                        start,
+                        CanalEventUtils.createPosition(acked, false)));
+                }
+            }
+        }
+        return new Cursor(sequence, memsize);
+    }
+
+    private boolean before(LogPosition position, Event event) {
+        String journalName = position.getPostion().getJournalName();
+        Long offset = position.getPostion().getPosition();
+        if (StringUtils.isEmpty(journalName) || offset == null) {
+            return false;
+        }
+
+        int compare = journalName.compareTo(event.getJournalName());
+        return compare < 0 || (compare == 0 && offset < event.getPosition());
+    }
+
+    /**
+     * 删除超过clientIdleTimeout未访问且还有未ack数据的客户端游标，客户端断开后不再阻塞buffer的回收
+     */
+    private void expireIdleCursors(long now) {
+        if (clientIdleTimeout <= 0 || !hasIdleCursor(now)) {
+            return;
+        }
+
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            boolean removed = false;
+            for (Map.Entry<ClientIdentity, Cursor> entry : cursors.entrySet()) {
+                if (isIdle(entry.getValue(), now) && cursors.remove(entry.getKey(), entry.getValue())) {
+                    logger.warn("remove idle cursor of {}, last access at {}", entry.getKey(), entry.getValue().lastAccess);
+                    removed = true;
+                }
+            }
+            if (removed) {
+                reclaim();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean hasIdleCursor(long now) {
+        for (Cursor cursor : cursors.values()) {
+            if (isIdle(cursor, now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isIdle(Cursor cursor, long now) {
+        return now - cursor.lastAccess > clientIdleTimeout && cursor.ackSequence.get() < putSequence.get();
+    }
+
+    /**
+     * 将默认游标推进到所有客户端中最小的ack位置，释放所有客户端都已经ack的空间，调用方需要持有lock
+     */
+    private void reclaim() {
+        Cursor minCursor = null;
+        for (Cursor cursor : cursors.values()) {
+            if (minCursor == null || cursor.ackSequence.get() < minCursor.ackSequence.get()) {
+                minCursor = cursor;
+            }
+        }
+
+        long sequence = ackSequence.get();
+        if (minCursor == null || minCursor.ackSequence.get() <= sequence) {
+            return;
+        }
+
+        long minSequence = minCursor.ackSequence.get();
+        long localExecTime = 0L;
+        int deltaRows = 0;
+        for (long next = sequence + 1; next <= minSequence; next++) {
+            Event event = entries[getIndex(next)];
+            if (localExecTime == 0 && event.getExecuteTime() > 0) {
+                localExecTime = event.getExecuteTime();
+            }
+            deltaRows += event.getRowsCount();
+            if (batchMode.isMemSize()) {
+                if (next < minSequence) {
+                    entries[getIndex(next)] = null;// 设置为null
+                } else {
+                    // 保留最后一条的position信息，只释放entry
+                    event.setEntry(null);
+                    event.setRawEntry(null);
+                }
+            }
+        }
+
+        if (batchMode.isMemSize()) {
+            ackMemSize.set(minCursor.ackMemSize.get());
+        }
+        // 默认游标不会被get，保证get >= ack，避免put时判断空位出错
+        if (getSequence.get() < minSequence) {
+            getSequence.set(minSequence);
+            getMemSize.set(ackMemSize.get());
+        }
+        ackSequence.set(minSequence);
+        signal(notFull);
+        ackTableRows.addAndGet(deltaRows);
+        if (localExecTime > 0) {
+            ackExecTime.lazySet(localExecTime);
+        }
+    }
+
+    /**
+     * lockFree模式下按照waitStrategy等待条件满足，超时返回false
+     */
+    private boolean waitFor(Checker checker, Condition condition, long nanos) throws InterruptedException {
+        final long deadline = nanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + nanos;
+        int counter = SPIN_TRIES;
+        while (!checker.check()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            long remaining = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+
+            if (waitStrategy.isBlocking()) {
+                waiters.incrementAndGet();
+                final ReentrantLock lock = this.lock;
+                lock.lockInterruptibly();
+                try {
+                    // 先登记waiter再检查一次，避免丢失生产者的signal
+                    if (!checker.check()) {
+                        condition.awaitNanos(Math.min(remaining, MAX_BLOCKING_NANOS));
+                    }
+                } finally {
+                    lock.unlock();
+                    waiters.decrementAndGet();
+                }
+            } else if (waitStrategy.isSleeping()) {
+                if (counter > SPIN_TRIES / 2) {
+                    --counter;
+                } else if (counter > 0) {
+                    --counter;
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(Math.min(remaining, PARK_NANOS));
+                }
+            } else if (waitStrategy.isYielding()) {
+                if (counter > 0) {
+                    --counter;
+                } else {
+                    Thread.yield();
+                }
+            }
+            // BUSY_SPIN: 直接重新检查
+        }
+
+        return true;
+    }
+
+    /**
+     * 唤醒等待的线程，lockFree模式下只有存在blocking等待者时才需要加锁
+     */
+    private void signal(Condition condition) {
+        if (!lockFree) {
+            condition.signal(); // 已经持有锁
+        } else if (waiters.get() > 0) {
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                condition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private interface Checker {
+
+        boolean check();
+    }
+
     private long getMinimumGetOrAck() {
         long get = getSequence.get();
         long ack = ackSequence.get();
@@ -546,9 +990,9 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
     /**
      * 检查是否存在需要get的数据,并且数量>=batchSize
      */
-    private boolean checkUnGetSlotAt(LogPosition startPosition, int batchSize) {
+    private boolean checkUnGetSlotAt(Cursor cursor, LogPosition startPosition, int batchSize) {
         if (batchMode.isItemSize()) {
-            long current = getSequence.get();
+            long current = cursor.getSequence.get();
             long maxAbleSequence = putSequence.get();
             long next = current;
             if (startPosition == null || !startPosition.getPostion().isIncluded()) { // 第一次订阅之后，需要包含一下start位置，防止丢失第一条记录
@@ -562,7 +1006,7 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
             }
         } else {
             // 处理内存大小判断
-            long currentSize = getMemSize.get();
+            long currentSize = cursor.getMemSize.get();
             long maxAbleSize = putMemSize.get();
 
             if (maxAbleSize - currentSize >= batchSize * bufferMemUnit) {
@@ -627,6 +1071,29 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
         PUT, GET, ACK
     }
 
+    /**
+     * 一个消费者的get/ack游标
+     */
+    private static class Cursor {
+
+        private final AtomicLong getSequence;
+        private final AtomicLong ackSequence;
+        private final AtomicLong getMemSize;
+        private final AtomicLong ackMemSize;
+        private volatile long    lastAccess = System.currentTimeMillis();
+
+        Cursor(long sequence, long memsize){
+            this(new AtomicLong(sequence), new AtomicLong(sequence), new AtomicLong(memsize), new AtomicLong(memsize));
+        }
+
+        Cursor(AtomicLong getSequence, AtomicLong ackSequence, AtomicLong getMemSize, AtomicLong ackMemSize){
+            this.getSequence = getSequence;
+            this.ackSequence = ackSequence;
+            this.getMemSize = getMemSize;
+            this.ackMemSize = ackMemSize;
+        }
+    }
+
     // ================ setter / getter ==================
     public int getBufferSize() {
         return this.bufferSize;
@@ -656,6 +1123,22 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
         this.raw = raw;
     }
 
+    public boolean isLockFree() {
+        return lockFree;
+    }
+
+    public void setLockFree(boolean lockFree) {
+        this.lockFree = lockFree;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    public void setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
     public AtomicLong getPutSequence() {
         return putSequence;
     }
@@ -664,6 +1147,26 @@ public class MemoryEventStoreWithBuffer extends AbstractCanalStoreScavenge imple
         return ackSequence;
     }
 
+    public boolean isMultiClient() {
+        return multiClient;
+    }
+
+    public void setMultiClient(boolean multiClient) {
+        this.multiClient = multiClient;
+    }
+
+    public long getClientIdleTimeout() {
+        return clientIdleTimeout;
+    }
+
+    public void setClientIdleTimeout(long clientIdleTimeout) {
+        this.clientIdleTimeout = clientIdleTimeout;
+    }
+
+    public int getClientCount() {
+        return cursors.size();
+    }
+
     public AtomicLong getPutMemSize() {
         return putMemSize;
     }
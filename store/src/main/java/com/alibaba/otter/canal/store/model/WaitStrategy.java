@@ -0,0 +1,34 @@
+package com.alibaba.otter.canal.store.model;
+
+/**
+ * 无锁模式下put/get等待数据(或空位)时的策略，语义参考disruptor的WaitStrategy
+ *
+ * @since 1.1.5
+ */
+public enum WaitStrategy {
+
+    /** 基于lock + condition的阻塞等待，只有存在等待者时生产者才会触发signal，cpu占用最低 */
+    BLOCKING,
+    /** 先自旋再yield，最后park一小段时间，在延迟和cpu占用之间取折中 */
+    SLEEPING,
+    /** 自旋 + Thread.yield()，延迟低，但会占用cpu */
+    YIELDING,
+    /** 纯自旋，延迟最低，需要独占cpu核 */
+    BUSY_SPIN;
+
+    public boolean isBlocking() {
+        return this == WaitStrategy.BLOCKING;
+    }
+
+    public boolean isSleeping() {
+        return this == WaitStrategy.SLEEPING;
+    }
+
+    public boolean isYielding() {
+        return this == WaitStrategy.YIELDING;
+    }
+
+    public boolean isBusySpin() {
+        return this == WaitStrategy.BUSY_SPIN;
+    }
+}
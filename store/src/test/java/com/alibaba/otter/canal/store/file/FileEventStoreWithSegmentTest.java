@@ -0,0 +1,145 @@
+package com.alibaba.otter.canal.store.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.CanalEntry.Entry;
+import com.alibaba.otter.canal.protocol.CanalEntry.EntryType;
+import com.alibaba.otter.canal.protocol.CanalEntry.Header;
+import com.alibaba.otter.canal.protocol.position.LogIdentity;
+import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.store.helper.CanalEventUtils;
+import com.alibaba.otter.canal.store.model.Event;
+import com.alibaba.otter.canal.store.model.Events;
+
+/**
+ * 测试文件store的put/get/ack以及重启恢复
+ */
+public class FileEventStoreWithSegmentTest {
+
+    private File dataDir;
+
+    @Before
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("canal-store").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dataDir);
+    }
+
+    @Test
+    public void testPutGetAck() {
+        FileEventStoreWithSegment eventStore = buildStore();
+        eventStore.start();
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L + i, 1L + i, EntryType.ROWDATA)));
+        }
+
+        Position first = eventStore.getFirstPosition();
+        Assert.assertEquals(first, CanalEventUtils.createPosition(buildEvent("1", 1L, 1L, EntryType.ROWDATA)));
+
+        Events<Event> events = eventStore.tryGet(first, 4);
+        Assert.assertEquals(4, events.getEvents().size());
+        Assert.assertEquals(4L, events.getEvents().get(3).getPosition());
+        Assert.assertNotNull(events.getEvents().get(0).getRawEntry());
+
+        eventStore.rollback();
+        events = eventStore.tryGet(first, 20);
+        Assert.assertEquals(10, events.getEvents().size());
+
+        eventStore.ack(events.getPositionRange().getEnd());
+        Assert.assertEquals(9L, eventStore.getAckSequence().get());
+        eventStore.stop();
+    }
+
+    @Test
+    public void testSegmentRollAndReclaim() {
+        FileEventStoreWithSegment eventStore = buildStore();
+        eventStore.setSegmentIndexSize(4);
+        eventStore.setMaxSegmentCount(3);
+        eventStore.start();
+
+        for (int i = 0; i < 12; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L + i, 1L + i, EntryType.ROWDATA)));
+        }
+        // 三个segment都已经写满，达到上限
+        Assert.assertEquals(3, eventStore.listSegmentFiles().size());
+        Assert.assertFalse(eventStore.tryPut(buildEvent("1", 13L, 13L, EntryType.ROWDATA)));
+
+        Events<Event> events = eventStore.tryGet(null, 6);
+        Assert.assertEquals(6, events.getEvents().size());
+        eventStore.ack(events.getPositionRange().getEnd());
+        // 第一个segment已经全部ack，被回收
+        Assert.assertEquals(2, eventStore.listSegmentFiles().size());
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 13L, 13L, EntryType.ROWDATA)));
+        Assert.assertEquals(3, eventStore.listSegmentFiles().size());
+        eventStore.stop();
+    }
+
+    @Test
+    public void testRestartRecover() {
+        FileEventStoreWithSegment eventStore = buildStore();
+        eventStore.setSegmentIndexSize(4);
+        eventStore.start();
+        for (int i = 0; i < 6; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L + i, 1L + i, EntryType.ROWDATA)));
+        }
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 7L, 7L, EntryType.TRANSACTIONEND)));
+        // 最后一个事务未完整写入
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 8L, 8L, EntryType.ROWDATA)));
+
+        Events<Event> events = eventStore.tryGet(null, 2);
+        eventStore.ack(events.getPositionRange().getEnd());
+        eventStore.stop();
+
+        eventStore = buildStore();
+        eventStore.setSegmentIndexSize(4);
+        eventStore.start();
+        Assert.assertEquals(1L, eventStore.getAckSequence().get());
+        Assert.assertEquals(6L, eventStore.getPutSequence().get());
+        Assert.assertEquals(eventStore.getLatestPosition(),
+            CanalEventUtils.createPosition(buildEvent("1", 7L, 7L, EntryType.TRANSACTIONEND), true));
+
+        events = eventStore.tryGet(eventStore.getFirstPosition(), 10);
+        Assert.assertEquals(5, events.getEvents().size());
+        Assert.assertEquals(3L, events.getEvents().get(0).getPosition());
+        Assert.assertEquals(EntryType.TRANSACTIONEND, events.getEvents().get(4).getEntryType());
+        Assert.assertEquals(new InetSocketAddress("127.0.0.1", 3306), events.getEvents()
+            .get(0)
+            .getLogIdentity()
+            .getSourceAddress());
+        eventStore.stop();
+    }
+
+    private FileEventStoreWithSegment buildStore() {
+        FileEventStoreWithSegment eventStore = new FileEventStoreWithSegment(dataDir.getPath());
+        eventStore.setDestination("example");
+        eventStore.setSegmentSize(64 * 1024);
+        return eventStore;
+    }
+
+    private Event buildEvent(String binlogFile, long offset, long timestamp, EntryType entryType) {
+        Header.Builder headerBuilder = Header.newBuilder();
+        headerBuilder.setLogfileName(binlogFile);
+        headerBuilder.setLogfileOffset(offset);
+        headerBuilder.setExecuteTime(timestamp);
+        headerBuilder.setEventLength(1024);
+        Entry.Builder entryBuilder = Entry.newBuilder();
+        entryBuilder.setHeader(headerBuilder.build());
+        entryBuilder.setEntryType(entryType);
+        Entry entry = entryBuilder.build();
+
+        return new Event(new LogIdentity(new InetSocketAddress("127.0.0.1", 3306), 1234L), entry);
+    }
+}
@@ -0,0 +1,89 @@
+package com.alibaba.otter.canal.store.memory.buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.position.Position;
+import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer;
+import com.alibaba.otter.canal.store.model.BatchMode;
+import com.alibaba.otter.canal.store.model.Event;
+import com.alibaba.otter.canal.store.model.Events;
+import com.alibaba.otter.canal.store.model.WaitStrategy;
+
+/**
+ * 测试lockFree模式下单生产者/单消费者的put/get/ack
+ */
+public class MemoryEventStoreLockFreeTest extends MemoryEventStoreBase {
+
+    private static final int COUNT = 20000;
+
+    @Test
+    public void testBlocking() throws Exception {
+        doTest(WaitStrategy.BLOCKING, BatchMode.ITEMSIZE);
+        doTest(WaitStrategy.BLOCKING, BatchMode.MEMSIZE);
+    }
+
+    @Test
+    public void testSleeping() throws Exception {
+        doTest(WaitStrategy.SLEEPING, BatchMode.ITEMSIZE);
+    }
+
+    @Test
+    public void testYielding() throws Exception {
+        doTest(WaitStrategy.YIELDING, BatchMode.MEMSIZE);
+    }
+
+    private void doTest(WaitStrategy waitStrategy, BatchMode batchMode) throws Exception {
+        final MemoryEventStoreWithBuffer eventStore = new MemoryEventStoreWithBuffer();
+        eventStore.setBufferSize(64);
+        eventStore.setBatchMode(batchMode);
+        eventStore.setBufferMemUnit(16);
+        eventStore.setLockFree(true);
+        eventStore.setWaitStrategy(waitStrategy);
+        eventStore.start();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<?> producer = executor.submit(() -> {
+            for (int i = 0; i < COUNT; i++) {
+                eventStore.put(buildEvent("1", i, 1L + i));
+            }
+            return null;
+        });
+
+        Future<List<Long>> consumer = executor.submit(() -> {
+            List<Long> result = new ArrayList<>();
+            Position position = null;
+            while (result.size() < COUNT) {
+                Events<Event> events = eventStore.get(position, 10, 100L, TimeUnit.MILLISECONDS);
+                if (events.getEvents().isEmpty()) {
+                    continue;
+                }
+
+                for (Event event : events.getEvents()) {
+                    result.add(event.getPosition());
+                }
+                position = events.getPositionRange().getEnd();
+                eventStore.ack(position);
+            }
+            return result;
+        });
+
+        producer.get(30, TimeUnit.SECONDS);
+        List<Long> result = consumer.get(30, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        Assert.assertEquals(COUNT, result.size());
+        for (int i = 0; i < COUNT; i++) {
+            Assert.assertEquals(i, result.get(i).longValue());// 取出来的数据一定是递增的
+        }
+        Assert.assertEquals(COUNT - 1, eventStore.getAckSequence().get());
+        eventStore.stop();
+    }
+}
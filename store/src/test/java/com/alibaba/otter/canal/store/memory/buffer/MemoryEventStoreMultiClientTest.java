@@ -0,0 +1,290 @@
+package com.alibaba.otter.canal.store.memory.buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.alibaba.otter.canal.protocol.ClientIdentity;
+import com.alibaba.otter.canal.store.CanalStoreException;
+import com.alibaba.otter.canal.store.helper.CanalEventUtils;
+import com.alibaba.otter.canal.store.memory.MemoryEventStoreWithBuffer;
+import com.alibaba.otter.canal.store.model.BatchMode;
+import com.alibaba.otter.canal.store.model.Event;
+import com.alibaba.otter.canal.store.model.Events;
+import com.alibaba.otter.canal.store.model.WaitStrategy;
+
+/**
+ * 测试多客户端订阅时独立的get/ack游标，以及按最小ack回收空间
+ */
+public class MemoryEventStoreMultiClientTest extends MemoryEventStoreBase {
+
+    private static final ClientIdentity CLIENT_1 = new ClientIdentity("example", (short) 1001);
+    private static final ClientIdentity CLIENT_2 = new ClientIdentity("example", (short) 1002);
+    private static final ClientIdentity CLIENT_3 = new ClientIdentity("example", (short) 1003);
+
+    @Test
+    public void testIndependentCursor() {
+        MemoryEventStoreWithBuffer eventStore = buildStore(BatchMode.ITEMSIZE);
+        eventStore.subscribe(CLIENT_1);
+        eventStore.subscribe(CLIENT_2);
+        for (int i = 0; i < 16; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L + i, 1L + i)));
+        }
+        Assert.assertFalse(eventStore.tryPut(buildEvent("1", 17L, 17L)));
+
+        // 两个客户端各自拿到完整的数据
+        Events<Event> events1 = eventStore.tryGet(CLIENT_1, null, 10);
+        Events<Event> events2 = eventStore.tryGet(CLIENT_2, null, 4);
+        Assert.assertEquals(10, events1.getEvents().size());
+        Assert.assertEquals(4, events2.getEvents().size());
+        Assert.assertEquals(1L, events1.getEvents().get(0).getPosition());
+        Assert.assertEquals(1L, events2.getEvents().get(0).getPosition());
+
+        // client1 ack之后，client2还未ack，空间不会被回收
+        eventStore.ack(CLIENT_1, events1.getPositionRange().getEnd(), events1.getPositionRange().getEndSeq());
+        Assert.assertEquals(-1L, eventStore.getAckSequence().get());
+        Assert.assertFalse(eventStore.tryPut(buildEvent("1", 17L, 17L)));
+
+        // client2 rollback后重新获取，不影响client1
+        eventStore.rollback(CLIENT_2);
+        events2 = eventStore.tryGet(CLIENT_2, null, 4);
+        Assert.assertEquals(1L, events2.getEvents().get(0).getPosition());
+        eventStore.ack(CLIENT_2, events2.getPositionRange().getEnd(), events2.getPositionRange().getEndSeq());
+        // 回收到两个客户端中最小的ack位置
+        Assert.assertEquals(3L, eventStore.getAckSequence().get());
+        Assert.assertEquals(4L, eventStore.getFirstPosition(CLIENT_2).getPostion().getPosition().longValue());
+        for (int i = 16; i < 20; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L + i, 1L + i)));
+        }
+        Assert.assertFalse(eventStore.tryPut(buildEvent("1", 21L, 21L)));
+
+        events1 = eventStore.tryGet(CLIENT_1, null, 20);
+        Assert.assertEquals(10, events1.getEvents().size());
+        Assert.assertEquals(11L, events1.getEvents().get(0).getPosition());
+        Assert.assertEquals(20L, events1.getEvents().get(9).getPosition());
+        eventStore.stop();
+    }
+
+    @Test
+    public void testMemSizeReclaim() {
+        MemoryEventStoreWithBuffer eventStore = buildStore(BatchMode.MEMSIZE);
+        eventStore.subscribe(CLIENT_1);
+        eventStore.subscribe(CLIENT_2);
+        for (int i = 0; i < 8; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L + i, 1L + i)));
+        }
+
+        Events<Event> events = eventStore.tryGet(CLIENT_1, null, 16);
+        Assert.assertEquals(8, events.getEvents().size());
+        eventStore.ack(CLIENT_1, events.getPositionRange().getEnd(), events.getPositionRange().getEndSeq());
+        Assert.assertEquals(0L, eventStore.getAckMemSize().get());
+
+        events = eventStore.tryGet(CLIENT_2, null, 16);
+        Assert.assertEquals(8, events.getEvents().size());
+        eventStore.ack(CLIENT_2, events.getPositionRange().getEnd(), events.getPositionRange().getEndSeq());
+        Assert.assertEquals(7L, eventStore.getAckSequence().get());
+        Assert.assertEquals(eventStore.getPutMemSize().get(), eventStore.getAckMemSize().get());
+        eventStore.stop();
+    }
+
+    @Test
+    public void testUnsubscribeReclaim() {
+        MemoryEventStoreWithBuffer eventStore = buildStore(BatchMode.ITEMSIZE);
+        eventStore.subscribe(CLIENT_1);
+        eventStore.subscribe(CLIENT_2);
+        for (int i = 0; i < 16; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L + i, 1L + i)));
+        }
+
+        Events<Event> events = eventStore.tryGet(CLIENT_1, null, 16);
+        eventStore.ack(CLIENT_1, events.getPositionRange().getEnd(), events.getPositionRange().getEndSeq());
+        // client2一直没有ack，空间无法回收
+        Assert.assertFalse(eventStore.tryPut(buildEvent("1", 17L, 17L)));
+
+        eventStore.unsubscribe(CLIENT_2);
+        Assert.assertEquals(1, eventStore.getClientCount());
+        Assert.assertEquals(15L, eventStore.getAckSequence().get());
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 17L, 17L)));
+
+        // 新订阅的客户端从当前最小的ack位置开始
+        eventStore.subscribe(CLIENT_2);
+        events = eventStore.tryGet(CLIENT_2, eventStore.getFirstPosition(CLIENT_2), 16);
+        Assert.assertEquals(1, events.getEvents().size());
+        Assert.assertEquals(17L, events.getEvents().get(0).getPosition());
+        eventStore.stop();
+    }
+
+    @Test
+    public void testSubscribeFromMetaPosition() {
+        MemoryEventStoreWithBuffer eventStore = buildStore(BatchMode.ITEMSIZE);
+        eventStore.subscribe(CLIENT_1);
+        Event acked = null;
+        for (int i = 0; i < 8; i++) {
+            Event event = buildEvent("1", 1L + i, 1L + i);
+            Assert.assertTrue(eventStore.tryPut(event));
+            if (i == 3) {
+                acked = event;
+            }
+        }
+
+        // client2重启后从meta中记录的ack位置之后开始，不会重复拿到已经ack过的数据
+        eventStore.subscribe(CLIENT_2, CanalEventUtils.createPosition(acked, false));
+        Events<Event> events = eventStore.tryGet(CLIENT_2, null, 16);
+        Assert.assertEquals(4, events.getEvents().size());
+        Assert.assertEquals(5L, events.getEvents().get(0).getPosition());
+
+        // meta中的位置已经不在buffer中，从当前最小的ack位置开始
+        eventStore.subscribe(CLIENT_3, CanalEventUtils.createPosition(buildEvent("0", 100L, 100L), false));
+        events = eventStore.tryGet(CLIENT_3, null, 16);
+        Assert.assertEquals(8, events.getEvents().size());
+        eventStore.stop();
+    }
+
+    @Test
+    public void testSubscribeReclaimedPosition() {
+        MemoryEventStoreWithBuffer eventStore = buildStore(BatchMode.ITEMSIZE);
+        eventStore.subscribe(CLIENT_1);
+        Event acked = null;
+        for (int i = 0; i < 8; i++) {
+            Event event = buildEvent("1", 1L + i, 1L + i);
+            Assert.assertTrue(eventStore.tryPut(event));
+            if (i == 1) {
+                acked = event;
+            }
+        }
+        Events<Event> events = eventStore.tryGet(CLIENT_1, null, 4);
+        eventStore.ack(CLIENT_1, events.getPositionRange().getEnd(), events.getPositionRange().getEndSeq());
+        Assert.assertEquals(3L, eventStore.getAckSequence().get());
+
+        // client2在meta中记录的位置已经被回收，不能跳过数据
+        try {
+            eventStore.subscribe(CLIENT_2, CanalEventUtils.createPosition(acked, false));
+            Assert.fail();
+        } catch (CanalStoreException e) {
+            Assert.assertEquals(1, eventStore.getClientCount());
+        }
+        eventStore.stop();
+    }
+
+    @Test
+    public void testIdleCursorExpired() throws Exception {
+        MemoryEventStoreWithBuffer eventStore = buildStore(BatchMode.ITEMSIZE);
+        eventStore.setClientIdleTimeout(50);
+        eventStore.subscribe(CLIENT_1);
+        eventStore.subscribe(CLIENT_2);
+        for (int i = 0; i < 16; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L + i, 1L + i)));
+        }
+
+        // client2断开后不再访问，超时之后不再阻塞回收
+        Thread.sleep(100);
+        Events<Event> events = eventStore.tryGet(CLIENT_1, null, 16);
+        eventStore.ack(CLIENT_1, events.getPositionRange().getEnd(), events.getPositionRange().getEndSeq());
+        Assert.assertEquals(1, eventStore.getClientCount());
+        Assert.assertEquals(15L, eventStore.getAckSequence().get());
+        Assert.assertTrue(eventStore.tryPut(buildEvent("1", 17L, 17L)));
+
+        // 已经追上put的客户端不会因为空闲被删除
+        Thread.sleep(100);
+        eventStore.tryGet(CLIENT_1, null, 16);
+        Assert.assertEquals(1, eventStore.getClientCount());
+        eventStore.stop();
+    }
+
+    @Test
+    public void testMultiClientDisabled() {
+        MemoryEventStoreWithBuffer eventStore = new MemoryEventStoreWithBuffer();
+        eventStore.setBufferSize(16);
+        eventStore.start();
+        eventStore.subscribe(CLIENT_1);
+        eventStore.subscribe(CLIENT_2);
+        Assert.assertEquals(0, eventStore.getClientCount());
+        for (int i = 0; i < 16; i++) {
+            Assert.assertTrue(eventStore.tryPut(buildEvent("1", 1L + i, 1L + i)));
+        }
+
+        // 关闭时所有客户端共用默认游标
+        Events<Event> events = eventStore.tryGet(CLIENT_1, null, 10);
+        Assert.assertEquals(10, events.getEvents().size());
+        events = eventStore.tryGet(CLIENT_2, null, 10);
+        Assert.assertEquals(6, events.getEvents().size());
+        eventStore.ack(CLIENT_2, events.getPositionRange().getEnd(), events.getPositionRange().getEndSeq());
+        Assert.assertEquals(15L, eventStore.getAckSequence().get());
+        eventStore.stop();
+    }
+
+    @Test
+    public void testConcurrentAck() throws Exception {
+        final int count = 5000;
+        final MemoryEventStoreWithBuffer eventStore = new MemoryEventStoreWithBuffer();
+        eventStore.setBufferSize(16);
+        eventStore.setBatchMode(BatchMode.MEMSIZE);
+        eventStore.setBufferMemUnit(64);
+        eventStore.setLockFree(true);
+        eventStore.setWaitStrategy(WaitStrategy.BLOCKING);
+        eventStore.setMultiClient(true);
+        eventStore.start();
+        ClientIdentity[] clients = { CLIENT_1, CLIENT_2, CLIENT_3 };
+        for (ClientIdentity client : clients) {
+            eventStore.subscribe(client);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(clients.length + 1);
+        Future<?> producer = executor.submit(() -> {
+            for (int i = 0; i < count; i++) {
+                Event event = buildEvent("1", 1L + i, 1L + i);
+                event.setRowsCount(1);
+                eventStore.put(event);
+            }
+            return null;
+        });
+
+        // 多个客户端同时ack，并发回收空间
+        List<Future<List<Long>>> consumers = new ArrayList<>();
+        for (ClientIdentity client : clients) {
+            consumers.add(executor.submit(() -> {
+                List<Long> positions = new ArrayList<>(count);
+                while (positions.size() < count) {
+                    Events<Event> events = eventStore.get(client, null, 2, 10, TimeUnit.MILLISECONDS);
+                    if (events.getEvents().isEmpty()) {
+                        continue;
+                    }
+                    for (Event event : events.getEvents()) {
+                        positions.add(event.getPosition());
+                    }
+                    eventStore.ack(client, events.getPositionRange().getEnd(), events.getPositionRange().getEndSeq());
+                }
+                return positions;
+            }));
+        }
+
+        producer.get(30, TimeUnit.SECONDS);
+        for (Future<List<Long>> consumer : consumers) {
+            List<Long> positions = consumer.get(30, TimeUnit.SECONDS);
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals(1L + i, positions.get(i).longValue());
+            }
+        }
+        executor.shutdownNow();
+
+        Assert.assertEquals(count - 1, eventStore.getAckSequence().get());
+        Assert.assertEquals(count, eventStore.getAckTableRows().get());
+        Assert.assertEquals(eventStore.getPutMemSize().get(), eventStore.getAckMemSize().get());
+        eventStore.stop();
+    }
+
+    private MemoryEventStoreWithBuffer buildStore(BatchMode batchMode) {
+        MemoryEventStoreWithBuffer eventStore = new MemoryEventStoreWithBuffer();
+        eventStore.setBufferSize(16);
+        eventStore.setBatchMode(batchMode);
+        eventStore.setMultiClient(true);
+        eventStore.start();
+        return eventStore;
+    }
+}